@@ -1,31 +1,128 @@
 package ch.wiss.forum.config;
 
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
 import org.springframework.data.redis.cache.RedisCacheConfiguration;
 import org.springframework.data.redis.cache.RedisCacheManager;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
 
+import com.fasterxml.jackson.annotation.JsonIdentityReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+import ch.wiss.forum.model.Post;
+import ch.wiss.forum.model.Topic;
+import ch.wiss.forum.service.FileContentCache;
+import ch.wiss.forum.service.ResponseCacheService;
+import ch.wiss.forum.service.UserCacheService;
+
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 @Configuration
 @EnableCaching
 @ConditionalOnProperty(name = "spring.cache.type", havingValue = "redis")
 public class CacheConfig {
 
+    // application caches with a local tier, size and ttl from app.cache.<name>.maximum-size/ttl
+    public static final String CATEGORIES = "categories";
+    public static final String TOPICS = "topics";
+    public static final String USER_SUMMARIES = "user-summaries";
+    public static final String LEADERBOARDS = "leaderboards";
+
+    private static final Map<String, TwoLevelCacheManager.Spec> DEFAULT_SPECS = Map.of(
+        CATEGORIES, new TwoLevelCacheManager.Spec(Duration.ofMinutes(30), 200),
+        TOPICS, new TwoLevelCacheManager.Spec(Duration.ofMinutes(1), 100),
+        USER_SUMMARIES, new TwoLevelCacheManager.Spec(Duration.ofMinutes(5), 100),
+        LEADERBOARDS, new TwoLevelCacheManager.Spec(Duration.ofMinutes(2), 100));
+
     @Bean
-    public RedisCacheManager cacheManager(RedisConnectionFactory connectionFactory) {
+    public TwoLevelCacheManager cacheManager(RedisConnectionFactory connectionFactory,
+                                             ObjectProvider<StringRedisTemplate> redisTemplate,
+                                             Environment environment) {
+        // cached entities carry dates and UserDetails getters without setters; topic and post references
+        // are written in full, as ids only (like in the api) they couldn't be read back
+        GenericJackson2JsonRedisSerializer serializer = new GenericJackson2JsonRedisSerializer().configure(mapper -> mapper
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .configure(MapperFeature.USE_GETTERS_AS_SETTERS, false)
+            .addMixIn(Topic.class, CachedTopic.class)
+            .addMixIn(Post.class, CachedPost.class));
+
         RedisCacheConfiguration config = RedisCacheConfiguration.defaultCacheConfig()
             .entryTtl(Duration.ofHours(1)) // Cache for 1 hour
-            .serializeValuesWith(RedisSerializationContext.SerializationPair
-                .fromSerializer(new GenericJackson2JsonRedisSerializer()));
+            .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(serializer));
+
+        // file contents are stored as they are, not as base64 inside json
+        RedisCacheConfiguration fileCacheConfig = RedisCacheConfiguration.defaultCacheConfig()
+            .entryTtl(Duration.ofHours(1))
+            .serializeValuesWith(RedisSerializationContext.SerializationPair.byteArray());
 
-        return RedisCacheManager.builder(connectionFactory)
+        Map<String, TwoLevelCacheManager.Spec> specs = new LinkedHashMap<>();
+        DEFAULT_SPECS.forEach((name, defaults) -> specs.put(name, new TwoLevelCacheManager.Spec(
+            environment.getProperty("app.cache." + name + ".ttl", Duration.class, defaults.ttl()),
+            environment.getProperty("app.cache." + name + ".maximum-size", Long.class, defaults.maximumSize()))));
+
+        RedisCacheManager.RedisCacheManagerBuilder redis = RedisCacheManager.builder(connectionFactory)
             .cacheDefaults(config)
-            .build();
+            .withCacheConfiguration(FileContentCache.CACHE_NAME, fileCacheConfig);
+        specs.forEach((name, spec) -> redis.withCacheConfiguration(name, config.entryTtl(spec.ttl())));
+        RedisCacheManager sharedManager = redis.build();
+        // not a bean of its own, the two-level manager is the only CacheManager
+        sharedManager.afterPropertiesSet();
+
+        return new TwoLevelCacheManager(sharedManager, redisTemplate, specs,
+            environment.getProperty("app.cache.redis-retry-interval", Duration.class, Duration.ofSeconds(30)));
+    }
+    
+    private abstract static class CachedTopic {
+        @JsonIdentityReference(alwaysAsId = false)
+        private Post lastPost;
+    }
+
+    private abstract static class CachedPost {
+        @JsonIdentityReference(alwaysAsId = false)
+        private Topic topic;
+
+        @JsonIdentityReference(alwaysAsId = false)
+        private Post replyTo;
+    }
+
+    // receives user, file, application and response cache invalidations published by the other nodes
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                       UserCacheService userCacheService,
+                                                                       FileContentCache fileContentCache,
+                                                                       TwoLevelCacheManager cacheManager,
+                                                                       ResponseCacheService responseCacheService) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(
+            (message, pattern) -> userCacheService.onInvalidationMessage(new String(message.getBody(), StandardCharsets.UTF_8)),
+            new ChannelTopic(UserCacheService.INVALIDATION_CHANNEL));
+        container.addMessageListener(
+            (message, pattern) -> fileContentCache.onInvalidationMessage(new String(message.getBody(), StandardCharsets.UTF_8)),
+            new ChannelTopic(FileContentCache.INVALIDATION_CHANNEL));
+        container.addMessageListener(
+            (message, pattern) -> cacheManager.onInvalidationMessage(new String(message.getBody(), StandardCharsets.UTF_8)),
+            new ChannelTopic(TwoLevelCacheManager.INVALIDATION_CHANNEL));
+        container.addMessageListener(
+            (message, pattern) -> responseCacheService.onInvalidationMessage(new String(message.getBody(), StandardCharsets.UTF_8)),
+            new ChannelTopic(ResponseCacheService.INVALIDATION_CHANNEL));
+        return container;
     }
 } 
\ No newline at end of file
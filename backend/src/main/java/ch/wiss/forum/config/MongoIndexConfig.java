@@ -0,0 +1,66 @@
+package ch.wiss.forum.config;
+
+import java.util.List;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.IndexResolver;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import ch.wiss.forum.model.FileEntity;
+import ch.wiss.forum.model.FileVariant;
+import ch.wiss.forum.model.JobRun;
+import ch.wiss.forum.model.Post;
+import ch.wiss.forum.model.ScoreBucket;
+import ch.wiss.forum.model.ScoreEvent;
+import ch.wiss.forum.model.Topic;
+import ch.wiss.forum.model.User;
+import ch.wiss.forum.model.UserDeletionJob;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * creates the @Indexed / @CompoundIndex indexes of the collections listed below.
+ * auto index creation is off in spring data mongodb, and a failing index (e.g. duplicates in an
+ * old database) should be logged instead of stopping the application.
+ */
+@Configuration
+@RequiredArgsConstructor
+@Slf4j
+public class MongoIndexConfig {
+    
+    private static final List<Class<?>> INDEXED_TYPES = List.of(
+        User.class,
+        Topic.class,
+        Post.class,
+        FileEntity.class,
+        FileVariant.class,
+        ScoreBucket.class,
+        ScoreEvent.class,
+        UserDeletionJob.class,
+        JobRun.class
+    );
+    
+    private final MongoTemplate mongoTemplate;
+    private final MongoMappingContext mappingContext;
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureIndexes() {
+        IndexResolver resolver = new MongoPersistentEntityIndexResolver(mappingContext);
+        
+        for (Class<?> type : INDEXED_TYPES) {
+            IndexOperations indexOps = mongoTemplate.indexOps(type);
+            resolver.resolveIndexFor(type).forEach(index -> {
+                try {
+                    indexOps.ensureIndex(index);
+                } catch (Exception e) {
+                    log.warn("Could not create index {} on {}: {}", index.getIndexKeys(), type.getSimpleName(), e.getMessage());
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package ch.wiss.forum.config;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import ch.wiss.forum.service.ResponseCacheService;
+import ch.wiss.forum.util.AcceptEncoding;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * serves the public GET endpoints to anonymous clients from ResponseCacheService, without touching
+ * the controllers, mongo or jackson; a miss is computed as usual and its bytes are stored on the way
+ * out. requests with an Authorization header always go through. registered after the security
+ * chain, so cors and security headers are set on hits as well.
+ */
+@Component
+@RequiredArgsConstructor
+public class ResponseCacheFilter extends OncePerRequestFilter {
+
+    // path prefix -> what its responses show; topics embed their category
+    private static final Map<String, Set<String>> CACHED_PATHS = Map.of(
+        "/api/categories", Set.of(ResponseCacheService.CATEGORIES),
+        "/api/topics", Set.of(ResponseCacheService.TOPICS, ResponseCacheService.CATEGORIES),
+        "/api/posts", Set.of(ResponseCacheService.POSTS),
+        "/api/users/leaderboard", Set.of(ResponseCacheService.LEADERBOARD));
+
+    private static final String CACHE_STATUS_HEADER = "X-Response-Cache";
+
+    private final ResponseCacheService responseCacheService;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !responseCacheService.isEnabled()
+            || !"GET".equals(request.getMethod())
+            || tagsFor(pathOf(request)) == null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        if (request.getHeader(HttpHeaders.AUTHORIZATION) != null) {
+            responseCacheService.recordBypass();
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        String path = pathOf(request);
+        String key = keyOf(path, request);
+        response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+
+        ResponseCacheService.CachedResponse cached = responseCacheService.get(key);
+        if (cached != null) {
+            writeCached(cached, request, response);
+            return;
+        }
+
+        long epoch = responseCacheService.currentEpoch();
+        ContentCachingResponseWrapper wrapper = new ContentCachingResponseWrapper(response);
+        wrapper.setHeader(CACHE_STATUS_HEADER, "MISS");
+        try {
+            filterChain.doFilter(request, wrapper);
+            if (isCacheable(wrapper)) {
+                responseCacheService.put(key, wrapper.getContentType(), wrapper.getContentAsByteArray(), tagsFor(path), epoch);
+            }
+        } finally {
+            wrapper.copyBodyToResponse();
+        }
+    }
+
+    private static void writeCached(ResponseCacheService.CachedResponse cached, HttpServletRequest request,
+                                    HttpServletResponse response) throws IOException {
+        List<String> acceptEncoding = Collections.list(request.getHeaders(HttpHeaders.ACCEPT_ENCODING));
+        boolean gzip = cached.gzipped() != null && AcceptEncoding.acceptsGzip(acceptEncoding);
+        byte[] body = gzip ? cached.gzipped() : cached.body();
+
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(cached.contentType());
+        response.setHeader(CACHE_STATUS_HEADER, "HIT");
+        if (gzip) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, AcceptEncoding.GZIP);
+        }
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+
+    // successful json that is the same for every anonymous client
+    private static boolean isCacheable(ContentCachingResponseWrapper response) {
+        if (response.getStatus() != HttpServletResponse.SC_OK || response.containsHeader(HttpHeaders.SET_COOKIE)) {
+            return false;
+        }
+        String contentType = response.getContentType();
+        try {
+            return contentType != null && MediaType.APPLICATION_JSON.isCompatibleWith(MediaType.parseMediaType(contentType));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static Set<String> tagsFor(String path) {
+        for (Map.Entry<String, Set<String>> entry : CACHED_PATHS.entrySet()) {
+            String prefix = entry.getKey();
+            if (path.equals(prefix) || path.startsWith(prefix + "/")) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static String pathOf(HttpServletRequest request) {
+        return request.getRequestURI().substring(request.getContextPath().length());
+    }
+
+    // the path with the query parameters sorted by name, so ?a=1&b=2 and ?b=2&a=1 share an entry
+    private static String keyOf(String path, HttpServletRequest request) {
+        StringBuilder key = new StringBuilder(path);
+        char separator = '?';
+        for (Map.Entry<String, String[]> parameter : new TreeMap<>(request.getParameterMap()).entrySet()) {
+            for (String value : parameter.getValue()) {
+                key.append(separator)
+                    .append(URLEncoder.encode(parameter.getKey(), StandardCharsets.UTF_8))
+                    .append('=')
+                    .append(URLEncoder.encode(value, StandardCharsets.UTF_8));
+                separator = '&';
+            }
+        }
+        return key.toString();
+    }
+}
@@ -20,9 +20,11 @@ import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 import ch.wiss.forum.security.AuthEntryPointJwt;
 import ch.wiss.forum.security.AuthTokenFilter;
 import ch.wiss.forum.service.UserDetailsServiceImpl;
+import jakarta.servlet.DispatcherType;
 import lombok.RequiredArgsConstructor;
 
 import java.util.Arrays;
+import java.util.List;
 
 @Configuration
 @EnableWebSecurity
@@ -30,6 +32,10 @@ import java.util.Arrays;
 @RequiredArgsConstructor
 public class SecurityConfig {
     
+    // origins of the frontend, for cors and the websocket handshake
+    public static final List<String> ALLOWED_ORIGINS = List.of(
+        "http://localhost:3000", "http://localhost:5173", "http://192.168.1.32:3000", "http://172.21.112.174:3000");
+    
     private final UserDetailsServiceImpl userDetailsService;
     private final AuthEntryPointJwt unauthorizedHandler;
     private final AuthTokenFilter authTokenFilter;
@@ -60,17 +66,24 @@ public class SecurityConfig {
             .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
             .authorizeHttpRequests(auth -> {
                 auth
+                    // the request that opened a notification stream was authorized already
+                    .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                     .requestMatchers("/api/auth/**").permitAll()
                     .requestMatchers("/api/users/public").permitAll()
                     .requestMatchers("/api/users/bootstrap-admin").permitAll()
                     .requestMatchers("/api/users/bootstrap-teacher").permitAll()
                     .requestMatchers("/api/users/{username}").permitAll()
                     .requestMatchers("/api/users/{username}/gamification").permitAll()
+                    .requestMatchers("GET", "/api/users/{username}/overview").permitAll()
                     .requestMatchers("/api/users/leaderboard").permitAll()
                     .requestMatchers("GET", "/api/categories/**").permitAll()
                     .requestMatchers("GET", "/api/topics/**").permitAll()
                     .requestMatchers("GET", "/api/posts/**").permitAll()
                     .requestMatchers("GET", "/api/files/**").permitAll()
+                    // the token is checked in the stomp CONNECT frame, see StompAuthChannelInterceptor
+                    .requestMatchers("GET", "/ws").permitAll()
+                    // authenticated by the Authorization header or a stream ticket, see NotificationController
+                    .requestMatchers("GET", "/api/notifications/stream").permitAll()
                     .requestMatchers("/error").permitAll()
                     .anyRequest().authenticated();
             });
@@ -84,9 +97,9 @@ public class SecurityConfig {
     @Bean
     public CorsConfigurationSource corsConfigurationSource() {
         CorsConfiguration configuration = new CorsConfiguration();
-        configuration.setAllowedOrigins(Arrays.asList("http://localhost:3000", "http://localhost:5173", "http://192.168.1.32:3000", "http://172.21.112.174:3000"));
+        configuration.setAllowedOrigins(ALLOWED_ORIGINS);
         configuration.setAllowedMethods(Arrays.asList("GET", "POST", "PUT", "PATCH", "DELETE", "OPTIONS"));
-        configuration.setAllowedHeaders(Arrays.asList("Authorization", "Content-Type", "X-Auth-Token"));
+        configuration.setAllowedHeaders(Arrays.asList("Authorization", "Content-Type", "X-Auth-Token", "Last-Event-ID"));
         configuration.setExposedHeaders(Arrays.asList("Authorization", "Content-Type"));
         configuration.setAllowCredentials(true);
         configuration.setMaxAge(3600L);
@@ -0,0 +1,177 @@
+package ch.wiss.forum.config;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.AbstractValueAdaptingCache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+/**
+ * one application cache: a bounded caffeine cache on this node in front of the shared redis cache.
+ * reads go to this node, then redis, then the loader; writes and evictions go to both tiers and are
+ * broadcast so the other nodes drop their copy. while redis is unreachable the manager skips it and
+ * the cache runs on this node only. keys are compared as strings, the way redis stores them.
+ */
+public class TwoLevelCache extends AbstractValueAdaptingCache {
+
+    private final String name;
+    private final Cache shared;
+    private final TwoLevelCacheManager manager;
+
+    private final com.github.benmanes.caffeine.cache.Cache<String, Object> local;
+    private final Map<String, CompletableFuture<Object>> loading = new ConcurrentHashMap<>();
+
+    // bumped on every eviction, a load that raced with one is not kept on this node
+    private final AtomicLong invalidationEpoch = new AtomicLong();
+
+    private final LongAdder localHits = new LongAdder();
+    private final LongAdder sharedHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    TwoLevelCache(String name, Cache shared, TwoLevelCacheManager manager, Duration ttl, long maximumSize) {
+        super(true);
+        this.name = name;
+        this.shared = shared;
+        this.manager = manager;
+        this.local = Caffeine.newBuilder()
+            .maximumSize(maximumSize)
+            .expireAfterWrite(ttl)
+            .recordStats()
+            .build();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return local;
+    }
+
+    @Override
+    protected Object lookup(Object key) {
+        String id = String.valueOf(key);
+        Object cached = local.getIfPresent(id);
+        if (cached != null) {
+            localHits.increment();
+            return cached;
+        }
+
+        long epoch = invalidationEpoch.get();
+        ValueWrapper fromShared = manager.readShared(shared, id);
+        if (fromShared == null) {
+            misses.increment();
+            return null;
+        }
+        sharedHits.increment();
+        Object value = toStoreValue(fromShared.get());
+        keepLocal(id, value, epoch);
+        return value;
+    }
+
+    // used by @Cacheable(sync = true): concurrent misses for a key on this node wait for one load
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        ValueWrapper cached = get(key);
+        if (cached != null) {
+            return (T) cached.get();
+        }
+
+        String id = String.valueOf(key);
+        CompletableFuture<Object> load = new CompletableFuture<>();
+        CompletableFuture<Object> running = loading.putIfAbsent(id, load);
+        if (running != null) {
+            try {
+                return (T) fromStoreValue(running.join());
+            } catch (CompletionException e) {
+                throw new ValueRetrievalException(key, valueLoader, e.getCause());
+            }
+        }
+
+        try {
+            long epoch = invalidationEpoch.get();
+            Object value = toStoreValue(valueLoader.call());
+            if (invalidationEpoch.get() == epoch) {
+                manager.writeShared(shared, id, fromStoreValue(value));
+                keepLocal(id, value, epoch);
+            }
+            load.complete(value);
+            return (T) fromStoreValue(value);
+        } catch (Exception e) {
+            load.completeExceptionally(e);
+            throw new ValueRetrievalException(key, valueLoader, e);
+        } finally {
+            loading.remove(id, load);
+        }
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        String id = String.valueOf(key);
+        evictLocal(id);
+        manager.writeShared(shared, id, value);
+        local.put(id, toStoreValue(value));
+        // the other nodes load the new value from redis on their next read
+        manager.broadcast(name, id);
+    }
+
+    @Override
+    public void evict(Object key) {
+        String id = String.valueOf(key);
+        evictLocal(id);
+        manager.evictShared(shared, id);
+        manager.broadcast(name, id);
+    }
+
+    @Override
+    public void clear() {
+        clearLocal();
+        manager.clearShared(shared);
+        manager.broadcast(name, null);
+    }
+
+    void evictLocal(String id) {
+        invalidationEpoch.incrementAndGet();
+        local.invalidate(id);
+    }
+
+    void clearLocal() {
+        invalidationEpoch.incrementAndGet();
+        local.invalidateAll();
+    }
+
+    Map<String, Object> getStats() {
+        CacheStats stats = local.stats();
+        long hits = localHits.sum() + sharedHits.sum();
+        long lookups = hits + misses.sum();
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("entries", local.estimatedSize());
+        result.put("localHits", localHits.sum());
+        result.put("sharedHits", sharedHits.sum());
+        result.put("misses", misses.sum());
+        result.put("hitRate", lookups == 0 ? 0.0 : (double) hits / lookups);
+        result.put("localHitRate", lookups == 0 ? 0.0 : (double) localHits.sum() / lookups);
+        result.put("evictions", stats.evictionCount());
+        return result;
+    }
+
+    private void keepLocal(String id, Object value, long epoch) {
+        local.asMap().compute(id, (key, existing) ->
+            // evicted while loading, the loaded value may already be stale
+            invalidationEpoch.get() == epoch ? value : existing);
+    }
+}
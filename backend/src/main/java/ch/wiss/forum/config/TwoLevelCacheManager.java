@@ -0,0 +1,196 @@
+package ch.wiss.forum.config;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * the application's cache manager: the caches declared with a spec get a local tier on every node in
+ * front of redis (see TwoLevelCache), all other names (the file-cache) are plain redis caches.
+ * evictions are broadcast over redis pub/sub and applied by the other nodes to their local tier.
+ * a failed redis call switches the declared caches to local-only for the retry interval; when redis
+ * is back the local tiers are cleared, since invalidations sent in the meantime were lost.
+ */
+@Slf4j
+public class TwoLevelCacheManager implements CacheManager {
+
+    public static final String INVALIDATION_CHANNEL = "wiss-forum:app-cache:invalidate";
+    private static final String ALL_KEYS = "*";
+
+    // local size and ttl of a declared cache, the ttl applies to redis as well
+    public record Spec(Duration ttl, long maximumSize) {}
+
+    private final CacheManager sharedManager;
+    private final ObjectProvider<StringRedisTemplate> redisTemplate;
+    private final Duration retryInterval;
+
+    private final Map<String, TwoLevelCache> caches = new LinkedHashMap<>();
+
+    // identifies this node so it can ignore its own broadcasts
+    private final String nodeId = UUID.randomUUID().toString();
+
+    // redis is skipped until then after a failure, 0 while it is up
+    private volatile long sharedRetryAt;
+
+    private final LongAdder sharedErrors = new LongAdder();
+    private final LongAdder invalidationsSent = new LongAdder();
+    private final LongAdder invalidationsReceived = new LongAdder();
+
+    public TwoLevelCacheManager(CacheManager sharedManager, ObjectProvider<StringRedisTemplate> redisTemplate,
+                                Map<String, Spec> specs, Duration retryInterval) {
+        this.sharedManager = sharedManager;
+        this.redisTemplate = redisTemplate;
+        this.retryInterval = retryInterval;
+        specs.forEach((name, spec) -> caches.put(name,
+            new TwoLevelCache(name, sharedManager.getCache(name), this, spec.ttl(), spec.maximumSize())));
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        TwoLevelCache cache = caches.get(name);
+        return cache != null ? cache : sharedManager.getCache(name);
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        Set<String> names = new LinkedHashSet<>(caches.keySet());
+        names.addAll(sharedManager.getCacheNames());
+        return names;
+    }
+
+    // handles an eviction broadcast by another node ("<nodeId>|<cache>|<key or *>")
+    public void onInvalidationMessage(String message) {
+        String[] parts = message.split("\\|", 3);
+        if (parts.length < 3 || nodeId.equals(parts[0])) {
+            return;
+        }
+        TwoLevelCache cache = caches.get(parts[1]);
+        if (cache == null) {
+            return;
+        }
+
+        invalidationsReceived.increment();
+        if (ALL_KEYS.equals(parts[2])) {
+            cache.clearLocal();
+        } else {
+            cache.evictLocal(parts[2]);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> perCache = new LinkedHashMap<>();
+        caches.forEach((name, cache) -> perCache.put(name, cache.getStats()));
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("caches", perCache);
+        result.put("sharedTier", isSharedAvailable() ? "up" : "local-only");
+        result.put("sharedErrors", sharedErrors.sum());
+        result.put("invalidationsSent", invalidationsSent.sum());
+        result.put("invalidationsReceived", invalidationsReceived.sum());
+        return result;
+    }
+
+    Cache.ValueWrapper readShared(Cache shared, String key) {
+        if (shared == null || !isSharedAvailable()) {
+            return null;
+        }
+        try {
+            return shared.get(key);
+        } catch (SerializationException e) {
+            // an entry written by an older version of a class, redis itself is fine
+            log.warn("Could not read {} from redis cache {}: {}", key, shared.getName(), e.getMessage());
+            evictShared(shared, key);
+            return null;
+        } catch (Exception e) {
+            sharedFailed("read", e);
+            return null;
+        }
+    }
+
+    void writeShared(Cache shared, String key, Object value) {
+        if (shared == null || !isSharedAvailable()) {
+            return;
+        }
+        try {
+            shared.put(key, value);
+        } catch (Exception e) {
+            sharedFailed("write", e);
+        }
+    }
+
+    void evictShared(Cache shared, String key) {
+        if (shared == null || !isSharedAvailable()) {
+            return;
+        }
+        try {
+            shared.evict(key);
+        } catch (Exception e) {
+            sharedFailed("evict", e);
+        }
+    }
+
+    void clearShared(Cache shared) {
+        if (shared == null || !isSharedAvailable()) {
+            return;
+        }
+        try {
+            shared.clear();
+        } catch (Exception e) {
+            sharedFailed("clear", e);
+        }
+    }
+
+    // key null drops the whole cache
+    void broadcast(String cacheName, String key) {
+        StringRedisTemplate template = redisTemplate.getIfAvailable();
+        if (template == null || !isSharedAvailable()) {
+            return;
+        }
+        try {
+            template.convertAndSend(INVALIDATION_CHANNEL, nodeId + "|" + cacheName + "|" + (key != null ? key : ALL_KEYS));
+            invalidationsSent.increment();
+        } catch (Exception e) {
+            sharedFailed("broadcast", e);
+        }
+    }
+
+    private boolean isSharedAvailable() {
+        long retryAt = sharedRetryAt;
+        if (retryAt == 0) {
+            return true;
+        }
+        if (System.currentTimeMillis() < retryAt) {
+            return false;
+        }
+
+        // only the first caller after the interval brings the tier back
+        synchronized (this) {
+            if (sharedRetryAt != 0) {
+                sharedRetryAt = 0;
+                caches.values().forEach(TwoLevelCache::clearLocal);
+                log.info("Retrying redis for the application caches, local tiers cleared");
+            }
+        }
+        return true;
+    }
+
+    private void sharedFailed(String operation, Exception e) {
+        sharedErrors.increment();
+        // when the retry fails too the caches go back to local-only for another interval
+        sharedRetryAt = System.currentTimeMillis() + retryInterval.toMillis();
+        log.warn("Application cache {} in redis failed, local-only for {}: {}", operation, retryInterval, e.getMessage());
+    }
+}
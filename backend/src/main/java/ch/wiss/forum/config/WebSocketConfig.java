@@ -0,0 +1,80 @@
+package ch.wiss.forum.config;
+
+import java.time.Duration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.simp.config.ChannelRegistration;
+import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
+import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
+import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+
+import ch.wiss.forum.security.StompAuthChannelInterceptor;
+
+/**
+ * stomp over websocket at /ws with the in-memory broker, clients subscribe to /topic/topics/{topicId}
+ * for new, edited and deleted posts and like counts (see TopicEventPublisher). every session gets a
+ * bounded send buffer: a client that does not read its messages within send-time-limit, or lets more
+ * than send-buffer-size pile up, is disconnected instead of buffering without limit.
+ */
+@Configuration
+@EnableWebSocketMessageBroker
+public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
+
+    private final StompAuthChannelInterceptor authInterceptor;
+    private final DataSize sendBufferSize;
+    private final Duration sendTimeLimit;
+    private final DataSize messageSizeLimit;
+    private final Duration heartbeat;
+
+    public WebSocketConfig(StompAuthChannelInterceptor authInterceptor,
+                           @Value("${app.websocket.send-buffer-size:512KB}") DataSize sendBufferSize,
+                           @Value("${app.websocket.send-time-limit:10s}") Duration sendTimeLimit,
+                           @Value("${app.websocket.message-size-limit:16KB}") DataSize messageSizeLimit,
+                           @Value("${app.websocket.heartbeat:25s}") Duration heartbeat) {
+        this.authInterceptor = authInterceptor;
+        this.sendBufferSize = sendBufferSize;
+        this.sendTimeLimit = sendTimeLimit;
+        this.messageSizeLimit = messageSizeLimit;
+        this.heartbeat = heartbeat;
+    }
+
+    @Override
+    public void registerStompEndpoints(StompEndpointRegistry registry) {
+        registry.addEndpoint("/ws")
+            .setAllowedOrigins(SecurityConfig.ALLOWED_ORIGINS.toArray(String[]::new));
+    }
+
+    @Override
+    public void configureMessageBroker(MessageBrokerRegistry registry) {
+        // not a bean, so @Scheduled keeps its own scheduler
+        ThreadPoolTaskScheduler heartbeatScheduler = new ThreadPoolTaskScheduler();
+        heartbeatScheduler.setPoolSize(1);
+        heartbeatScheduler.setThreadNamePrefix("ws-heartbeat-");
+        heartbeatScheduler.setDaemon(true);
+        heartbeatScheduler.initialize();
+
+        // heartbeats let both sides notice a dead connection behind a proxy
+        registry.enableSimpleBroker("/topic")
+            .setHeartbeatValue(new long[] {heartbeat.toMillis(), heartbeat.toMillis()})
+            .setTaskScheduler(heartbeatScheduler);
+    }
+
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        registration
+            .setSendBufferSizeLimit((int) sendBufferSize.toBytes())
+            .setSendTimeLimit((int) sendTimeLimit.toMillis())
+            // clients only send CONNECT and SUBSCRIBE frames
+            .setMessageSizeLimit((int) messageSizeLimit.toBytes());
+    }
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        registration.interceptors(authInterceptor);
+    }
+}
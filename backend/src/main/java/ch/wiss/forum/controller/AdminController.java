@@ -0,0 +1,165 @@
+package ch.wiss.forum.controller;
+
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import ch.wiss.forum.config.TwoLevelCacheManager;
+import ch.wiss.forum.model.JobRun;
+import ch.wiss.forum.payload.response.MessageResponse;
+import ch.wiss.forum.service.AvailabilityService;
+import ch.wiss.forum.service.AvatarMigrationService;
+import ch.wiss.forum.service.BlobStoreMigrationService;
+import ch.wiss.forum.service.FileBlobMigrationService;
+import ch.wiss.forum.service.FileContentCache;
+import ch.wiss.forum.service.FileGarbageCollectionService;
+import ch.wiss.forum.service.FileStorageService;
+import ch.wiss.forum.service.GamificationBackfillService;
+import ch.wiss.forum.service.JobRunner;
+import ch.wiss.forum.service.NotificationHub;
+import ch.wiss.forum.service.ResponseCacheService;
+import ch.wiss.forum.service.ScoreLedgerService;
+import ch.wiss.forum.service.ScoreReplayService;
+import ch.wiss.forum.service.UserCacheService;
+import lombok.RequiredArgsConstructor;
+
+// operational endpoints for admins (cache statistics, maintenance jobs)
+
+@RestController
+@RequestMapping("/api/admin")
+@RequiredArgsConstructor
+@PreAuthorize("hasRole('ROLE_ADMIN')")
+public class AdminController {
+    
+    private final UserCacheService userCacheService;
+    private final FileContentCache fileContentCache;
+    private final AvailabilityService availabilityService;
+    private final JobRunner jobRunner;
+    private final ScoreLedgerService scoreLedgerService;
+    private final ScoreReplayService scoreReplayService;
+    private final GamificationBackfillService gamificationBackfillService;
+    private final FileBlobMigrationService fileBlobMigrationService;
+    private final BlobStoreMigrationService blobStoreMigrationService;
+    private final FileStorageService fileStorageService;
+    private final FileGarbageCollectionService fileGarbageCollectionService;
+    private final AvatarMigrationService avatarMigrationService;
+    private final ResponseCacheService responseCacheService;
+    private final NotificationHub notificationHub;
+    // absent when caching is disabled
+    private final ObjectProvider<TwoLevelCacheManager> cacheManager;
+    
+    // user cache hit rates and invalidation counters
+    @GetMapping("/cache/users")
+    public ResponseEntity<Map<String, Object>> getUserCacheStats() {
+        return ResponseEntity.ok(userCacheService.getStats());
+    }
+    
+    // file content cache hits per tier, coalesced loads and evictions
+    @GetMapping("/cache/files")
+    public ResponseEntity<Map<String, Object>> getFileCacheStats() {
+        return ResponseEntity.ok(fileContentCache.getStats());
+    }
+    
+    // hit rates of the application caches per tier, and whether redis is in use or skipped
+    @GetMapping("/cache/app")
+    public ResponseEntity<Map<String, Object>> getAppCacheStats() {
+        TwoLevelCacheManager manager = cacheManager.getIfAvailable();
+        return manager != null
+            ? ResponseEntity.ok(manager.getStats())
+            : ResponseEntity.ok(Map.of("enabled", false));
+    }
+    
+    // anonymous GET responses served from memory, bypassed requests and invalidations
+    @GetMapping("/cache/responses")
+    public ResponseEntity<Map<String, Object>> getResponseCacheStats() {
+        return ResponseEntity.ok(responseCacheService.getStats());
+    }
+    
+    // open notification streams on this node, replayed notifications and streams closed for falling behind
+    @GetMapping("/notifications")
+    public ResponseEntity<Map<String, Object>> getNotificationStats() {
+        return ResponseEntity.ok(notificationHub.getStats());
+    }
+    
+    // bloom filter sizing and how many checks it answered without the database
+    @GetMapping("/availability")
+    public ResponseEntity<Map<String, Object>> getAvailabilityStats() {
+        return ResponseEntity.ok(availabilityService.getStats());
+    }
+    
+    // recent maintenance job runs, optionally for one job
+    @GetMapping("/jobs")
+    public ResponseEntity<List<JobRun>> getJobRuns(@RequestParam(required = false) String name) {
+        return ResponseEntity.ok(jobRunner.getRecentRuns(name));
+    }
+    
+    // score ledger write counters
+    @GetMapping("/gamification/ledger")
+    public ResponseEntity<Map<String, Object>> getLedgerStats() {
+        return ResponseEntity.ok(scoreLedgerService.getStats());
+    }
+    
+    // rebuild all user stats from the ledger, e.g. after changing score values or level thresholds
+    @PostMapping("/gamification/replay")
+    public ResponseEntity<MessageResponse> replayScores() {
+        scoreReplayService.startReplay();
+        return ResponseEntity.accepted()
+            .body(new MessageResponse("Replay started, see /api/admin/jobs?name=" + ScoreReplayService.REPLAY_JOB));
+    }
+    
+    // recompute the counters from topics and posts, a dry run (the default) only reports the diff
+    @PostMapping("/gamification/backfill")
+    public ResponseEntity<MessageResponse> backfillScores(@RequestParam(defaultValue = "false") boolean apply) {
+        gamificationBackfillService.startBackfill(apply);
+        return ResponseEntity.accepted()
+            .body(new MessageResponse((apply ? "Backfill" : "Backfill dry run") + " started, see /api/admin/jobs?name="
+                + GamificationBackfillService.BACKFILL_JOB));
+    }
+    
+    // stored versus referenced bytes, i.e. what deduplication saves
+    @GetMapping("/files/storage")
+    public ResponseEntity<Map<String, Object>> getFileStorageStats() {
+        return ResponseEntity.ok(fileStorageService.getStorageStats());
+    }
+    
+    // move files still stored inline into the blob store, also runs on startup
+    @PostMapping("/files/migrate")
+    public ResponseEntity<MessageResponse> migrateFiles() {
+        fileBlobMigrationService.startMigration();
+        return ResponseEntity.accepted()
+            .body(new MessageResponse("Migration started, see /api/admin/jobs?name=" + FileBlobMigrationService.MIGRATION_JOB));
+    }
+    
+    // move stored blobs into the tier set by app.file-storage.blob-store
+    @PostMapping("/files/migrate-store")
+    public ResponseEntity<MessageResponse> migrateBlobStore() {
+        blobStoreMigrationService.startMigration();
+        return ResponseEntity.accepted()
+            .body(new MessageResponse("Migration started, see /api/admin/jobs?name=" + BlobStoreMigrationService.MIGRATION_JOB));
+    }
+    
+    // delete files nothing references any more; without apply it only reports what would be reclaimed
+    @PostMapping("/files/gc")
+    public ResponseEntity<MessageResponse> collectFiles(@RequestParam(defaultValue = "false") boolean apply) {
+        fileGarbageCollectionService.startCollection(apply);
+        return ResponseEntity.accepted()
+            .body(new MessageResponse((apply ? "Collection" : "Collection dry run") + " started, see /api/admin/jobs?name="
+                + FileGarbageCollectionService.GC_JOB));
+    }
+    
+    // convert avatars stored as data urls into files, continues an interrupted run unless restart is set
+    @PostMapping("/users/avatars/migrate")
+    public ResponseEntity<MessageResponse> migrateAvatars(@RequestParam(defaultValue = "false") boolean restart) {
+        avatarMigrationService.startMigration(restart);
+        return ResponseEntity.accepted()
+            .body(new MessageResponse("Migration started, see /api/admin/jobs?name=" + AvatarMigrationService.MIGRATION_JOB));
+    }
+}
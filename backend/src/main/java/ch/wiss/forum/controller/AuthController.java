@@ -1,5 +1,8 @@
 package ch.wiss.forum.controller;
 
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -9,6 +12,7 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 
@@ -20,6 +24,7 @@ import ch.wiss.forum.payload.request.ResetPasswordRequest;
 import ch.wiss.forum.payload.response.JwtResponse;
 import ch.wiss.forum.payload.response.MessageResponse;
 import ch.wiss.forum.service.AuthService;
+import ch.wiss.forum.service.AvailabilityService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -31,6 +36,7 @@ import lombok.extern.slf4j.Slf4j;
 public class AuthController {
     
     private final AuthService authService;
+    private final AvailabilityService availabilityService;
     
     // register
     @PostMapping("/register")
@@ -45,6 +51,19 @@ public class AuthController {
         }
     }
     
+    // live username/email availability for the registration form
+    @GetMapping("/availability")
+    public ResponseEntity<?> checkAvailability(@RequestParam(required = false) String username,
+                                               @RequestParam(required = false) String email) {
+        if (username == null && email == null) {
+            return ResponseEntity.badRequest()
+                    .body(new MessageResponse("Provide a username or an email to check"));
+        }
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(5, TimeUnit.SECONDS).cachePrivate())
+                .body(availabilityService.checkAvailability(username, email));
+    }
+    
     // login
     @PostMapping("/login")
     public ResponseEntity<?> authenticateUser(@Valid @RequestBody LoginRequest loginRequest) {
@@ -1,11 +1,26 @@
 package ch.wiss.forum.controller;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+import org.springframework.data.domain.Page;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -14,15 +29,25 @@ import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
 
 import ch.wiss.forum.model.FileEntity;
+import ch.wiss.forum.model.FileVariant;
 import ch.wiss.forum.model.User;
+import ch.wiss.forum.payload.request.UploadByHashRequest;
 import ch.wiss.forum.payload.response.MessageResponse;
 import ch.wiss.forum.service.FileStorageService;
+import ch.wiss.forum.service.ImageVariantService;
+import ch.wiss.forum.service.StorageQuotaService;
+import ch.wiss.forum.util.AcceptEncoding;
+import ch.wiss.forum.util.SizeLimitedInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
@@ -33,8 +58,16 @@ import lombok.extern.slf4j.Slf4j;
 public class FileController {
     
     private final FileStorageService fileStorageService;
+    private final ImageVariantService imageVariantService;
     
     private static final long MAX_FILE_SIZE = 10L * 1024 * 1024; // 10MB
+    private static final CacheControl IMMUTABLE = CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic().immutable();
+    // request attributes of Tomcat's sendfile support, the threshold is the one of its DefaultServlet
+    private static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+    private static final long SENDFILE_MIN_SIZE = 48 * 1024;
     private static final String[] ALLOWED_IMAGE_TYPES = {
         "image/jpeg", "image/jpg", "image/png", "image/gif", "image/webp"
     };
@@ -66,8 +99,10 @@ public class FileController {
             
             // Check file size
             if (file.getSize() > MAX_FILE_SIZE) {
-                return ResponseEntity.status(HttpStatus.BAD_REQUEST)
-                        .body(new MessageResponse("File size must be less than " + (MAX_FILE_SIZE / (1024 * 1024)) + "MB"));
+                return fileTooLarge();
+            }
+            if (file.getSize() > fileStorageService.getRemainingQuota(currentUser.getId())) {
+                return quotaExceeded();
             }
             
             // Check file type
@@ -78,23 +113,73 @@ public class FileController {
             }
             
             // Store file in database and get file ID
-            String fileId = fileStorageService.storeFile(file, currentUser.getId());
-            String fileUrl = fileStorageService.generateFileUrl(fileId);
-            
-            // Create response with file information
-            Map<String, Object> response = new HashMap<>();
-            response.put("id", fileId);
-            response.put("name", file.getOriginalFilename());
-            response.put("size", file.getSize());
-            response.put("type", contentType);
-            response.put("url", fileUrl);
-            response.put("uploadedBy", currentUser.getId());
-            response.put("uploadedAt", java.time.LocalDateTime.now());
+            FileEntity stored;
+            try (InputStream content = file.getInputStream()) {
+                stored = fileStorageService.storeFile(content, file.getOriginalFilename(), contentType, currentUser.getId());
+            }
             
             log.info("File uploaded successfully to database: {} by user {}", file.getOriginalFilename(), currentUser.getUsername());
             
-            return ResponseEntity.ok(response);
+            imageVariantService.generateInBackground(stored);
+            return ResponseEntity.ok(uploadResponse(stored));
+            
+        } catch (SizeLimitedInputStream.SizeLimitExceededException e) {
+            return fileTooLarge();
+        } catch (StorageQuotaService.QuotaExceededException e) {
+            return quotaExceeded();
+        } catch (Exception e) {
+            log.error("Failed to upload file: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(new MessageResponse("Failed to upload file: " + e.getMessage()));
+        }
+    }
+    
+    /**
+     * upload with the raw request body as the content (?name= gives the file name, Content-Type its type).
+     * unlike multipart it is never spooled anywhere first, the body is piped straight into the blob store.
+     * a declared Content-Length over the limit is refused before reading, a chunked body when it passes it.
+     */
+    @PostMapping("/upload/stream")
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<?> uploadStream(@RequestParam("name") String name, HttpServletRequest request) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        
+        if (authentication == null || !(authentication.getPrincipal() instanceof User)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(new MessageResponse("User not authenticated"));
+        }
+        
+        User currentUser = (User) authentication.getPrincipal();
+        
+        if (request.getContentLengthLong() > MAX_FILE_SIZE) {
+            return fileTooLarge();
+        }
+        if (request.getContentLengthLong() > fileStorageService.getRemainingQuota(currentUser.getId())) {
+            return quotaExceeded();
+        }
+        if (request.getContentLengthLong() == 0) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(new MessageResponse("Please select a file to upload"));
+        }
+        
+        String contentType = baseType(request.getContentType());
+        if (contentType == null || !isAllowedFileType(contentType)) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(new MessageResponse("File type not supported. Allowed types: images, PDFs, and documents"));
+        }
+        
+        try {
+            FileEntity stored = fileStorageService.storeFile(request.getInputStream(), name, contentType, currentUser.getId());
+            
+            log.info("File streamed to storage: {} ({} bytes) by user {}", name, stored.getSize(), currentUser.getUsername());
             
+            imageVariantService.generateInBackground(stored);
+            return ResponseEntity.ok(uploadResponse(stored));
+            
+        } catch (SizeLimitedInputStream.SizeLimitExceededException e) {
+            return fileTooLarge();
+        } catch (StorageQuotaService.QuotaExceededException e) {
+            return quotaExceeded();
         } catch (Exception e) {
             log.error("Failed to upload file: {}", e.getMessage());
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -102,8 +187,82 @@ public class FileController {
         }
     }
     
+    /**
+     * a file for content that is already stored, identified by its SHA-256: a duplicate upload is
+     * answered without sending the bytes. 404 means the content is unknown and has to be uploaded.
+     */
+    @PostMapping("/upload/by-hash")
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<?> uploadByHash(@Valid @RequestBody UploadByHashRequest uploadRequest) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        
+        if (authentication == null || !(authentication.getPrincipal() instanceof User)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(new MessageResponse("User not authenticated"));
+        }
+        
+        User currentUser = (User) authentication.getPrincipal();
+        
+        String contentType = baseType(uploadRequest.getContentType());
+        if (contentType == null || !isAllowedFileType(contentType)) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(new MessageResponse("File type not supported. Allowed types: images, PDFs, and documents"));
+        }
+        
+        try {
+            return fileStorageService.storeFileByHash(uploadRequest.getSha256(), uploadRequest.getName(), contentType, currentUser.getId())
+                    .<ResponseEntity<?>>map(stored -> ResponseEntity.ok(uploadResponse(stored)))
+                    .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND)
+                            .body(new MessageResponse("Content not stored yet, upload the file")));
+        } catch (StorageQuotaService.QuotaExceededException e) {
+            return quotaExceeded();
+        } catch (Exception e) {
+            log.error("Failed to store file by hash: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(new MessageResponse("Failed to upload file: " + e.getMessage()));
+        }
+    }
+    
+    /**
+     * the current user's files without their content, newest first, and how much of the quota they use.
+     */
+    @GetMapping("/files/mine")
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<?> getMyFiles(@RequestParam(defaultValue = "0") int page,
+                                        @RequestParam(defaultValue = "20") int size) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        
+        if (authentication == null || !(authentication.getPrincipal() instanceof User)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(new MessageResponse("User not authenticated"));
+        }
+        
+        User currentUser = (User) authentication.getPrincipal();
+        
+        Page<FileEntity> files = fileStorageService.getFilesByUser(currentUser.getId(), Math.max(0, page), Math.min(Math.max(1, size), 100));
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("files", files.getContent().stream().map(this::uploadResponse).toList());
+        response.put("page", files.getNumber());
+        response.put("totalPages", files.getTotalPages());
+        response.put("totalElements", files.getTotalElements());
+        response.put("usage", fileStorageService.getStorageUsage(currentUser.getId()));
+        return ResponseEntity.ok(response);
+    }
+    
+    /**
+     * streams the content. a file id never changes its content, so responses are cacheable for good
+     * and validated with a strong ETag (the content hash) and Last-Modified: a 304 is answered from the
+     * metadata alone, without touching the stored content. Range requests (single and multiple ranges,
+     * 416 when unsatisfiable) are served by Spring from the resource; a stale If-Range gets the full body.
+     * full bodies of files on the local disk tier are left to Tomcat's sendfile. images take ?size=
+     * (longest side in pixels) and get the nearest resized variant, other files ignore it.
+     */
     @GetMapping("/files/{fileId}")
-    public ResponseEntity<byte[]> serveFile(@PathVariable String fileId) {
+    public ResponseEntity<Resource> serveFile(@PathVariable String fileId,
+                                              @RequestParam(required = false) Integer size,
+                                              @RequestHeader HttpHeaders requestHeaders,
+                                              HttpServletRequest request) {
         try {
             Optional<FileEntity> fileOptional = fileStorageService.getFile(fileId);
             
@@ -114,17 +273,96 @@ public class FileController {
             
             FileEntity file = fileOptional.get();
             
+            Integer variantSize = size != null && size > 0 && imageVariantService.supports(file)
+                    ? imageVariantService.sizeFor(size)
+                    : null;
+            // compressed files go out as stored to clients accepting gzip; ranges are of the original content
+            boolean rangeRequested = requestHeaders.getFirst(HttpHeaders.RANGE) != null;
+            boolean compressed = FileStorageService.GZIP.equals(file.getContentEncoding());
+            boolean sendCompressed = compressed && !rangeRequested && AcceptEncoding.acceptsGzip(requestHeaders.get(HttpHeaders.ACCEPT_ENCODING));
+            String eTag = eTagOf(file, variantSize, sendCompressed);
+            long lastModified = lastModifiedOf(file);
+            
+            HttpHeaders responseHeaders = new HttpHeaders();
+            if (compressed) {
+                responseHeaders.setVary(List.of(HttpHeaders.ACCEPT_ENCODING));
+            }
+            if (sendCompressed) {
+                responseHeaders.set(HttpHeaders.CONTENT_ENCODING, FileStorageService.GZIP);
+            }
+            
+            if (isNotModified(requestHeaders, eTag, lastModified)) {
+                responseHeaders.remove(HttpHeaders.CONTENT_ENCODING);
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                        .headers(responseHeaders)
+                        .eTag(eTag)
+                        .lastModified(lastModified)
+                        .cacheControl(IMMUTABLE)
+                        .build();
+            }
+            
             // Determine content type
             String contentType = file.getContentType();
             if (contentType == null) {
                 contentType = "application/octet-stream";
             }
             
+            Resource content = null;
+            CacheControl cacheControl = IMMUTABLE;
+            // the file on disk holds the stored bytes, compressed ones can only be sent as they are
+            Optional<Path> localPath = compressed && !sendCompressed ? Optional.empty() : fileStorageService.localPath(file);
+            if (variantSize != null) {
+                Optional<FileVariant> variant = imageVariantService.getVariant(file, variantSize);
+                if (variant.isPresent()) {
+                    content = fileStorageService.loadVariant(variant.get());
+                    contentType = variant.get().getContentType();
+                    localPath = Optional.empty();
+                } else {
+                    // not decodable or not generated in time, the original stands in and is revalidated,
+                    // a later request gets the variant
+                    eTag = eTagOf(file, null, false);
+                    cacheControl = CacheControl.noCache();
+                }
+            }
+            
+            boolean rangeValid = isRangeStillValid(requestHeaders.getFirst(HttpHeaders.IF_RANGE), eTag, lastModified);
+            
+            if ((!rangeRequested || !rangeValid) && localPath.isPresent() && canSendFile(request, localPath.get())) {
+                // Tomcat writes the file to the socket after the response headers with FileChannel.transferTo,
+                // the content never passes through the heap
+                long length = Files.size(localPath.get());
+                request.setAttribute(SENDFILE_FILENAME, localPath.get().toString());
+                request.setAttribute(SENDFILE_START, 0L);
+                request.setAttribute(SENDFILE_END, length);
+                responseHeaders.setContentLength(length);
+                return ResponseEntity.ok()
+                        .headers(responseHeaders)
+                        .contentType(MediaType.parseMediaType(contentType))
+                        .eTag(eTag)
+                        .lastModified(lastModified)
+                        .cacheControl(cacheControl)
+                        .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + file.getOriginalName() + "\"")
+                        .build();
+            }
+            
+            if (content == null) {
+                content = sendCompressed ? fileStorageService.loadEncodedContent(file) : fileStorageService.loadContent(file);
+            }
+            if (rangeRequested && !rangeValid) {
+                // the client's partial copy is outdated, an InputStreamResource makes Spring ignore the Range;
+                // its length is unknown to Spring, a resource's length is set by Spring itself (per range)
+                responseHeaders.setContentLength(content.contentLength());
+                content = new InputStreamResource(content.getInputStream());
+            }
+            
             return ResponseEntity.ok()
+                    .headers(responseHeaders)
                     .contentType(MediaType.parseMediaType(contentType))
-                    .header(HttpHeaders.CACHE_CONTROL, "public, max-age=3600") // Cache for 1 hour
+                    .eTag(eTag)
+                    .lastModified(lastModified)
+                    .cacheControl(cacheControl)
                     .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + file.getOriginalName() + "\"")
-                    .body(file.getData());
+                    .body(content);
                     
         } catch (Exception e) {
             log.error("Error serving file: {}", e.getMessage());
@@ -132,6 +370,101 @@ public class FileController {
         }
     }
     
+    // sendfile needs a connector that supports it (NIO, no compression) and only pays off for larger files
+    private static boolean canSendFile(HttpServletRequest request, Path path) throws IOException {
+        return "GET".equals(request.getMethod())
+                && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))
+                && Files.size(path) >= SENDFILE_MIN_SIZE;
+    }
+    
+    // the content hash for deduplicated files, the immutable id for the others; variants add their size,
+    // the gzip encoding of a file is a representation of its own
+    private static String eTagOf(FileEntity file, Integer variantSize, boolean gzip) {
+        String tag = file.getSha256() != null ? file.getSha256() : "file-" + file.getId();
+        return "\"" + tag + (variantSize != null ? "-" + variantSize : "") + (gzip ? "-gzip" : "") + "\"";
+    }
+    
+    // http dates have second precision
+    private static long lastModifiedOf(FileEntity file) {
+        if (file.getUploadedAt() == null) {
+            return -1;
+        }
+        return file.getUploadedAt().atZone(ZoneId.systemDefault()).toInstant().getEpochSecond() * 1000;
+    }
+    
+    // If-None-Match (weak comparison) takes precedence over If-Modified-Since
+    private static boolean isNotModified(HttpHeaders requestHeaders, String eTag, long lastModified) {
+        List<String> ifNoneMatch = requestHeaders.getIfNoneMatch();
+        if (!ifNoneMatch.isEmpty()) {
+            for (String candidate : ifNoneMatch) {
+                if (candidate.equals("*") || opaqueTag(candidate).equals(opaqueTag(eTag))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        
+        long ifModifiedSince = requestHeaders.getIfModifiedSince();
+        return ifModifiedSince >= 0 && lastModified >= 0 && lastModified <= ifModifiedSince;
+    }
+    
+    // If-Range needs a strong ETag match or exactly the Last-Modified date
+    private static boolean isRangeStillValid(String ifRange, String eTag, long lastModified) {
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return ifRange.equals(eTag);
+        }
+        try {
+            return lastModified >= 0
+                    && ZonedDateTime.parse(ifRange, DateTimeFormatter.RFC_1123_DATE_TIME).toEpochSecond() * 1000 == lastModified;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+    
+    private static String opaqueTag(String eTag) {
+        return eTag.startsWith("W/") ? eTag.substring(2) : eTag;
+    }
+    
+    private Map<String, Object> uploadResponse(FileEntity stored) {
+        // Create response with file information
+        Map<String, Object> response = new HashMap<>();
+        response.put("id", stored.getId());
+        response.put("name", stored.getOriginalName());
+        response.put("size", stored.getSize());
+        response.put("type", stored.getContentType());
+        response.put("sha256", stored.getSha256());
+        response.put("url", fileStorageService.generateFileUrl(stored.getId()));
+        response.put("uploadedBy", stored.getUploadedBy());
+        response.put("uploadedAt", stored.getUploadedAt());
+        return response;
+    }
+    
+    private ResponseEntity<MessageResponse> quotaExceeded() {
+        return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE)
+                .body(new MessageResponse("Storage quota exceeded, delete some files first"));
+    }
+    
+    private ResponseEntity<MessageResponse> fileTooLarge() {
+        return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE)
+                .body(new MessageResponse("File size must be less than " + (MAX_FILE_SIZE / (1024 * 1024)) + "MB"));
+    }
+    
+    // type/subtype without parameters such as charset
+    private static String baseType(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        try {
+            MediaType mediaType = MediaType.parseMediaType(contentType);
+            return mediaType.getType() + "/" + mediaType.getSubtype();
+        } catch (InvalidMediaTypeException e) {
+            return null;
+        }
+    }
+    
     private boolean isAllowedFileType(String contentType) {
         // Check if it's an allowed image type
         for (String allowedType : ALLOWED_IMAGE_TYPES) {
@@ -0,0 +1,88 @@
+package ch.wiss.forum.controller;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import ch.wiss.forum.model.User;
+import ch.wiss.forum.security.JwtUtils;
+import ch.wiss.forum.service.NotificationHub;
+import ch.wiss.forum.service.UserCacheService;
+
+@RestController
+@RequestMapping("/api/notifications")
+public class NotificationController {
+
+    private final NotificationHub notificationHub;
+    private final JwtUtils jwtUtils;
+    private final UserCacheService userCacheService;
+    private final Duration ticketTtl;
+
+    public NotificationController(NotificationHub notificationHub, JwtUtils jwtUtils, UserCacheService userCacheService,
+                                  @Value("${app.notifications.ticket-ttl:30s}") Duration ticketTtl) {
+        this.notificationHub = notificationHub;
+        this.jwtUtils = jwtUtils;
+        this.userCacheService = userCacheService;
+        this.ticketTtl = ticketTtl;
+    }
+
+    // a browser EventSource can't send the Authorization header, it opens /stream?ticket= with this instead
+    @PostMapping("/stream-ticket")
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<Map<String, Object>> streamTicket() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        User currentUser = (User) authentication.getPrincipal();
+
+        return ResponseEntity.ok(Map.of(
+                "ticket", jwtUtils.generateStreamTicket(currentUser, ticketTtl.toMillis()),
+                "expiresIn", ticketTtl.toSeconds()));
+    }
+
+    /**
+     * server-sent events for the current user, authenticated by the Authorization header (fetch clients)
+     * or a ticket from /stream-ticket (EventSource). a reconnecting client sends Last-Event-ID to get what
+     * it missed; the ticket expires quickly, so an EventSource whose reconnect is refused gets a new ticket
+     * and passes the last id as lastEventId.
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> stream(@RequestParam(required = false) String ticket,
+                                             @RequestParam(value = "lastEventId", required = false) String lastEventIdParam,
+                                             @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        Optional<String> userId = ticket != null
+                ? Optional.ofNullable(jwtUtils.getUserIdFromStreamTicket(ticket))
+                        .flatMap(userCacheService::findById)
+                        .filter(User::isEnabled)
+                        .map(User::getId)
+                : currentUserId();
+        if (userId.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+
+        return ResponseEntity.ok()
+                // nginx would otherwise buffer the stream
+                .header("X-Accel-Buffering", "no")
+                .body(notificationHub.subscribe(userId.get(), lastEventId != null ? lastEventId : lastEventIdParam));
+    }
+
+    private static Optional<String> currentUserId() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication != null && authentication.getPrincipal() instanceof User user
+                ? Optional.of(user.getId())
+                : Optional.empty();
+    }
+}
@@ -1,5 +1,10 @@
 package ch.wiss.forum.controller;
 
+import java.net.URI;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDate;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.Map;
 
@@ -7,7 +12,10 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
@@ -21,19 +29,30 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import ch.wiss.forum.model.Post;
 import ch.wiss.forum.model.Role;
 import ch.wiss.forum.model.Topic;
 import ch.wiss.forum.model.User;
+import ch.wiss.forum.model.UserDeletionJob;
 import ch.wiss.forum.payload.request.PasswordUpdateRequest;
 import ch.wiss.forum.payload.request.RoleBootstrapRequest;
 import ch.wiss.forum.payload.response.MessageResponse;
+import ch.wiss.forum.payload.response.UserProfileResponse;
 import ch.wiss.forum.service.FileStorageService;
 import ch.wiss.forum.service.GamificationService;
+import ch.wiss.forum.service.ImageVariantService;
+import ch.wiss.forum.service.LeaderboardService;
 import ch.wiss.forum.service.PostService;
+import ch.wiss.forum.service.StorageQuotaService;
 import ch.wiss.forum.service.TopicService;
+import ch.wiss.forum.service.UserDeletionService;
+import ch.wiss.forum.service.UserProfileService;
 import ch.wiss.forum.service.UserService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
@@ -47,7 +66,12 @@ public class UserController {
     private final TopicService topicService;
     private final PostService postService;
     private final GamificationService gamificationService;
+    private final LeaderboardService leaderboardService;
+    private final UserProfileService userProfileService;
+    private final UserDeletionService userDeletionService;
     private final FileStorageService fileStorageService;
+    private final ImageVariantService imageVariantService;
+    private final ObjectMapper objectMapper;
     
     // secret key for bootstrap process (JUST IN DEVELOPMENT, IN PRODUCTION I'LL USE ENV VARIABLES)
     private static final String BOOTSTRAP_ADMIN_KEY = "WISS_ADMIN_SETUP_2024";
@@ -72,8 +96,7 @@ public class UserController {
             }
             
             // update role to admin
-            user.setRole(Role.ADMIN);
-            User updatedUser = userService.save(user);
+            userService.changeRole(user.getId(), Role.ADMIN);
             
             return ResponseEntity.ok(new MessageResponse("User role updated to ADMIN successfully"));
         } catch (Exception e) {
@@ -100,8 +123,7 @@ public class UserController {
             }
             
             // update role to student
-            user.setRole(Role.STUDENT);
-            User updatedUser = userService.save(user);
+            userService.changeRole(user.getId(), Role.STUDENT);
             
             return ResponseEntity.ok(new MessageResponse("User role updated to STUDENT successfully"));
         } catch (Exception e) {
@@ -127,8 +149,7 @@ public class UserController {
             }
             
             // update role to teacher
-            user.setRole(Role.TEACHER);
-            User updatedUser = userService.save(user);
+            userService.changeRole(user.getId(), Role.TEACHER);
             
             return ResponseEntity.ok(new MessageResponse("User role updated to TEACHER successfully"));
         } catch (Exception e) {
@@ -152,6 +173,42 @@ public class UserController {
         return ResponseEntity.ok(user);
     }
     
+    // get profile overview: user, gamification stats and recent activity in one request
+    @GetMapping("/{username}/overview")
+    public ResponseEntity<?> getUserProfileOverview(@PathVariable String username, WebRequest request) {
+        UserProfileResponse overview;
+        try {
+            overview = userProfileService.getProfileOverview(username);
+        } catch (RuntimeException e) {
+            if (e.getMessage() != null && e.getMessage().startsWith("User not found")) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(new MessageResponse(e.getMessage()));
+            }
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(new MessageResponse("Failed to fetch profile: " + e.getMessage()));
+        }
+        
+        // strong etag, the SHA-256 of the bytes sent; clients revalidate instead of re-downloading
+        byte[] body;
+        String etag;
+        try {
+            body = objectMapper.writeValueAsBytes(overview);
+            etag = "\"" + HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(body)) + "\"";
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(new MessageResponse("Failed to fetch profile: " + e.getMessage()));
+        }
+        if (request.checkNotModified(etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        
+        return ResponseEntity.ok()
+            .eTag(etag)
+            .cacheControl(CacheControl.noCache())
+            .contentType(MediaType.APPLICATION_JSON)
+            .body(body);
+    }
+    
     // get recent users
     @GetMapping("/public")
     public ResponseEntity<List<User>> getRecentUsers() {
@@ -278,10 +335,16 @@ public class UserController {
                 String filePath = fileStorageService.storeFile(file, currentUser.getId());
                 String avatarUrl = fileStorageService.generateFileUrl(filePath);
                 
+                // avatars are mostly shown small, the resized variants are ready before the first list renders
+                fileStorageService.getFile(filePath).ifPresent(imageVariantService::generateInBackground);
+                
                 // Update user avatar
                 User updatedUser = userService.updateUserAvatar(currentUser.getId(), avatarUrl, currentUser);
                 
                 return ResponseEntity.ok(new MessageResponse("Profile picture updated successfully"));
+            } catch (StorageQuotaService.QuotaExceededException e) {
+                return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE)
+                        .body(new MessageResponse(e.getMessage()));
             } catch (Exception e) {
                 return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                         .body(new MessageResponse("Failed to upload profile picture: " + e.getMessage()));
@@ -329,20 +392,37 @@ public class UserController {
         }
     }
 
-    // delete user (admin only)
+    // delete user (admin only), runs in the background and returns the job to poll
     @DeleteMapping("/{id}")
     @PreAuthorize("hasRole('ROLE_ADMIN')")
-    public ResponseEntity<Void> deleteUser(@PathVariable String id) {
+    public ResponseEntity<UserDeletionJob> deleteUser(@PathVariable String id) {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
         User currentUser = (User) authentication.getPrincipal();
         
-        userService.deleteUser(id, currentUser);
-        return ResponseEntity.noContent().build();
+        UserDeletionJob job = userService.deleteUser(id, currentUser);
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/users/deletions/" + job.getId()))
+                .body(job);
+    }
+    
+    // progress of a user deletion (admin only)
+    @GetMapping("/deletions/{jobId}")
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    public ResponseEntity<?> getDeletionJob(@PathVariable String jobId) {
+        try {
+            return ResponseEntity.ok(userDeletionService.getJob(jobId));
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(new MessageResponse(e.getMessage()));
+        }
     }
 
     // get user leaderboard
     @GetMapping("/leaderboard")
-    public ResponseEntity<?> getUserLeaderboard(@RequestParam(defaultValue = "overall") String type) {
+    public ResponseEntity<?> getUserLeaderboard(
+            @RequestParam(defaultValue = "overall") String type,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
         try {
             List<Map<String, Object>> leaderboard;
             
@@ -353,6 +433,19 @@ public class UserController {
                 case "likes":
                     leaderboard = userService.getUserLeaderboard();
                     break;
+                case "weekly":
+                    leaderboard = leaderboardService.getWindowLeaderboard(LeaderboardService.Window.WEEKLY);
+                    break;
+                case "monthly":
+                    leaderboard = leaderboardService.getWindowLeaderboard(LeaderboardService.Window.MONTHLY);
+                    break;
+                case "term":
+                    leaderboard = leaderboardService.getTermLeaderboard();
+                    break;
+                case "range":
+                    // custom range, defaults to today when "to" is omitted
+                    leaderboard = leaderboardService.getRangeLeaderboard(from, to != null ? to : LocalDate.now());
+                    break;
                 default:
                     leaderboard = gamificationService.getEnhancedLeaderboard();
                     break;
@@ -1,11 +1,15 @@
 package ch.wiss.forum.model;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.Field;
 import java.time.LocalDateTime;
 
 @Document(collection = "files")
+// a user's files, newest first; also covers lookups by uploader alone
+@CompoundIndex(name = "uploaded_by_uploaded_at", def = "{ 'uploaded_by': 1, 'uploaded_at': -1 }")
 public class FileEntity {
     @Id
     private String id;
@@ -22,9 +26,27 @@ public class FileEntity {
     @Field("size")
     private Long size;
     
+    // inline content of files uploaded before the blob store, moved out by FileBlobMigrationService
     @Field("data")
     private byte[] data;
     
+    // key of the content in the BlobStore
+    @Field("storage_key")
+    private String storageKey;
+    
+    // hex SHA-256 of the content, computed while it was uploaded; the id of its StoredBlob
+    @Indexed
+    @Field("sha256")
+    private String sha256;
+    
+    // "gzip" if the stored content is compressed, copied from its StoredBlob; size and sha256 are of the original
+    @Field("content_encoding")
+    private String contentEncoding;
+    
+    // bytes of the compressed content, null if it isn't compressed
+    @Field("stored_size")
+    private Long storedSize;
+    
     @Field("uploaded_by")
     private String uploadedBy;
     
@@ -93,6 +115,38 @@ public class FileEntity {
         this.data = data;
     }
     
+    public String getStorageKey() {
+        return storageKey;
+    }
+    
+    public void setStorageKey(String storageKey) {
+        this.storageKey = storageKey;
+    }
+    
+    public String getSha256() {
+        return sha256;
+    }
+    
+    public void setSha256(String sha256) {
+        this.sha256 = sha256;
+    }
+    
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+    
+    public void setContentEncoding(String contentEncoding) {
+        this.contentEncoding = contentEncoding;
+    }
+    
+    public Long getStoredSize() {
+        return storedSize;
+    }
+    
+    public void setStoredSize(Long storedSize) {
+        this.storedSize = storedSize;
+    }
+    
     public String getUploadedBy() {
         return uploadedBy;
     }
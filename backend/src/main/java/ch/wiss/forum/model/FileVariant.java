@@ -0,0 +1,45 @@
+package ch.wiss.forum.model;
+
+import java.time.LocalDateTime;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// a resized, re-encoded copy of an uploaded image, served for ?size= instead of the original
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "file_variants")
+public class FileVariant {
+
+    // "<fileId>:<size>", so generating the same variant twice collides on insert
+    @Id
+    private String id;
+
+    @Indexed
+    private String fileId;
+
+    // longest side in pixels the image was scaled down to
+    private int size;
+
+    // key of the content in the BlobStore, owned by this variant alone
+    private String storageKey;
+
+    private String contentType;
+
+    private long length;
+
+    private LocalDateTime createdAt;
+
+    public static String idOf(String fileId, int size) {
+        return fileId + ":" + size;
+    }
+}
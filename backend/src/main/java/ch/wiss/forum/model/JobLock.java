@@ -0,0 +1,34 @@
+package ch.wiss.forum.model;
+
+import java.time.LocalDateTime;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// cluster-wide lock for a job, the id is the job name
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "job_locks")
+public class JobLock {
+    
+    @Id
+    private String id;
+    
+    // token of the run holding the lock
+    private String owner;
+    
+    private String node;
+    
+    private LocalDateTime lockedAt;
+    
+    // an expired lock may be taken over, so a crashed node doesn't block the job forever
+    private LocalDateTime lockedUntil;
+}
@@ -0,0 +1,58 @@
+package ch.wiss.forum.model;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// one execution of a scheduled or admin-triggered maintenance job
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "job_runs")
+public class JobRun {
+    
+    public enum Status {
+        RUNNING,
+        SUCCEEDED,
+        FAILED
+    }
+    
+    @Id
+    private String id;
+    
+    @Indexed
+    private String jobName;
+    
+    private String node;
+    
+    // owns the job lock while the run holds it, renewals and the release must present it
+    private String lockToken;
+    
+    private Status status;
+    
+    // documents changed by the run
+    private long affected;
+    
+    private long durationMs;
+    
+    // job specific figures, e.g. checkpoints or per-partition counts
+    @Builder.Default
+    private Map<String, Object> details = new LinkedHashMap<>();
+    
+    private String error;
+    
+    private LocalDateTime startedAt;
+    
+    private LocalDateTime finishedAt;
+}
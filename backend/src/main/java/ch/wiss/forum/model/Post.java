@@ -5,6 +5,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.DBRef;
 import org.springframework.data.mongodb.core.mapping.Document;
 
@@ -37,6 +38,7 @@ public class Post {
     private Topic topic;
     
     @DBRef
+    @Indexed
     private User author;
     
     private boolean isEdited;
@@ -47,6 +49,7 @@ public class Post {
     @JsonIdentityReference(alwaysAsId = true)
     private Post replyTo;
     
+    @Indexed
     @Builder.Default
     private List<String> likes = new ArrayList<>();
     
@@ -0,0 +1,37 @@
+package ch.wiss.forum.model;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// per-user, per-day sum of score deltas used for windowed leaderboards
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "score_buckets")
+@CompoundIndex(name = "user_day", def = "{'userId': 1, 'day': 1}", unique = true)
+public class ScoreBucket {
+    
+    @Id
+    private String id;
+    
+    private String userId;
+    
+    @Indexed
+    private LocalDate day;
+    
+    private int points;
+    
+    private LocalDateTime updatedAt;
+}
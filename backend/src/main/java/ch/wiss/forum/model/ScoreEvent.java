@@ -0,0 +1,74 @@
+package ch.wiss.forum.model;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// append-only gamification ledger entry, the id is the idempotency key of the event
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "score_events")
+@CompoundIndex(name = "user_time", def = "{'userId': 1, 'occurredAt': 1}")
+public class ScoreEvent {
+    
+    public enum Type {
+        // stats a user had when their first ledger event was written
+        OPENING_BALANCE,
+        TOPIC_CREATED,
+        POST_CREATED,
+        LIKE_RECEIVED,
+        LIKE_REMOVED,
+        // stats corrected by the backfill against the source collections, the snapshot holds the deltas
+        CORRECTION
+    }
+    
+    @Id
+    private String id;
+    
+    private String userId;
+    
+    private Type type;
+    
+    // topic or post the event is about, if any
+    private String refId;
+    
+    @Builder.Default
+    private int count = 1;
+    
+    private LocalDateTime occurredAt;
+    
+    // absolute values on OPENING_BALANCE, deltas on CORRECTION
+    private Snapshot snapshot;
+    
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Snapshot {
+        private int totalScore;
+        private int topicsCreated;
+        private int postsCreated;
+        private int likesReceived;
+        private int currentStreak;
+        private int longestStreak;
+        private LocalDateTime lastActivityDate;
+        
+        @Builder.Default
+        private List<String> badges = new ArrayList<>();
+        
+        @Builder.Default
+        private List<String> achievements = new ArrayList<>();
+    }
+}
@@ -0,0 +1,32 @@
+package ch.wiss.forum.model;
+
+import java.time.LocalDateTime;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// bytes a user's files take up, kept up to date on every upload and deletion
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "storage_usage")
+public class StorageUsage {
+
+    // the user's id
+    @Id
+    private String id;
+
+    // sum of the sizes of the user's files, shared content counts for every file
+    private long bytesUsed;
+
+    private long fileCount;
+
+    private LocalDateTime updatedAt;
+}
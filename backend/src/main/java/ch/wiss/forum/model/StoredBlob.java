@@ -0,0 +1,42 @@
+package ch.wiss.forum.model;
+
+import java.time.LocalDateTime;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// one stored content, shared by every FileEntity with the same SHA-256
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "stored_blobs")
+public class StoredBlob {
+
+    // hex SHA-256 of the content
+    @Id
+    private String id;
+
+    // key of the content in the BlobStore
+    private String storageKey;
+
+    // size of the original content
+    private long size;
+
+    // "gzip" if the content was compressed when it was stored, null if it is stored as is
+    private String contentEncoding;
+
+    // bytes the blob takes in the store, null if it isn't compressed
+    private Long storedSize;
+
+    // number of FileEntity records pointing here, the blob is deleted when it drops to 0
+    private int refCount;
+
+    private LocalDateTime createdAt;
+}
@@ -41,6 +41,7 @@ public class Topic {
     private Category category;
     
     @DBRef
+    @Indexed
     private User author;
     
     private int viewCount;
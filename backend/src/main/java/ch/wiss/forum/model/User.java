@@ -21,7 +21,7 @@ import lombok.NoArgsConstructor;
 // user model
 
 @Data
-@Builder
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 @Document(collection = "users")
@@ -82,13 +82,23 @@ public class User implements UserDetails {
     @Builder.Default
     private int longestStreak = 0;
     
+    @Indexed
     private LocalDateTime lastActivityDate;
     
+    // last time a score event was applied, null until the user's first ledger event
+    private LocalDateTime scoredAt;
+    
     @Builder.Default
     private List<String> badges = new ArrayList<>();
     
     @Builder.Default
     private List<String> achievements = new ArrayList<>();
+    
+    // bit per earned achievement (bits from gamification/achievements.json), kept in sync with the list
+    private long achievementMask;
+    
+    // set when the account is queued for deletion, it cannot sign in or act from then on
+    private LocalDateTime deletionRequestedAt;
 
     @Override
     public Collection<? extends GrantedAuthority> getAuthorities() {
@@ -112,6 +122,6 @@ public class User implements UserDetails {
     
     @Override
     public boolean isEnabled() {
-        return true;
+        return deletionRequestedAt == null;
     }
 } 
\ No newline at end of file
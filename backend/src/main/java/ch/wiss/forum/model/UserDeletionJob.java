@@ -0,0 +1,101 @@
+package ch.wiss.forum.model;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// background deletion of a user and the cleanup of everything that references them
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "user_deletion_jobs")
+public class UserDeletionJob {
+    
+    public enum Status {
+        QUEUED,
+        RUNNING,
+        COMPLETED,
+        FAILED
+    }
+    
+    // phases run in this order, a resumed job continues at the stored phase
+    public enum Phase {
+        LIKES,
+        POSTS,
+        TOPICS,
+        CATEGORIES,
+        FILES,
+        TOKENS,
+        SCORE_BUCKETS,
+        USER,
+        DONE
+    }
+    
+    @Id
+    private String id;
+    
+    @Indexed
+    private String userId;
+    
+    private String username;
+    
+    private String requestedBy;
+    
+    @Indexed
+    private Status status;
+    
+    private Phase phase;
+    
+    // documents handled per phase, for progress reporting
+    @Builder.Default
+    private Map<String, Long> processed = new LinkedHashMap<>();
+    
+    // documents found per phase when the job was created
+    @Builder.Default
+    private Map<String, Long> totals = new LinkedHashMap<>();
+    
+    // node currently running the job and until when its claim is valid
+    private String leaseOwner;
+    
+    private LocalDateTime leaseUntil;
+    
+    private int attempts;
+    
+    private String error;
+    
+    private LocalDateTime createdAt;
+    
+    private LocalDateTime updatedAt;
+    
+    private LocalDateTime completedAt;
+    
+    // the likes chunk in progress, stored before its likes are pulled so a resumed job finishes it
+    private LikeWithdrawal pendingLikes;
+    
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class LikeWithdrawal {
+        // idempotency key of the chunk's score events
+        private String key;
+        
+        private List<Object> postIds;
+        
+        // likes to take back per liked author
+        @Builder.Default
+        private Map<String, Integer> likesByAuthor = new LinkedHashMap<>();
+    }
+}
@@ -0,0 +1,18 @@
+package ch.wiss.forum.payload.request;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Pattern;
+import lombok.Data;
+
+@Data
+public class UploadByHashRequest {
+    @NotBlank
+    @Pattern(regexp = "^[0-9a-fA-F]{64}$", message = "sha256 must be a hex SHA-256")
+    private String sha256;
+
+    @NotBlank
+    private String name;
+
+    @NotBlank
+    private String contentType;
+}
@@ -0,0 +1,24 @@
+package ch.wiss.forum.payload.response;
+
+import java.time.LocalDateTime;
+
+import ch.wiss.forum.model.Post;
+import ch.wiss.forum.model.User;
+
+// something that happened to a user's topic or post, sent on their notification stream
+public record Notification(Type type, String topicId, String topicTitle, String postId, String actorUsername,
+                           LocalDateTime createdAt) {
+
+    public enum Type {
+        // a new post in a topic the user started
+        TOPIC_REPLY,
+        // a reply to one of the user's posts
+        POST_REPLY,
+        POST_LIKED
+    }
+
+    public static Notification of(Type type, Post post, User actor) {
+        return new Notification(type, post.getTopic().getId(), post.getTopic().getTitle(), post.getId(),
+            actor.getUsername(), LocalDateTime.now());
+    }
+}
@@ -0,0 +1,33 @@
+package ch.wiss.forum.payload.response;
+
+import java.util.List;
+
+import ch.wiss.forum.model.Post;
+
+// change to a topic's posts, pushed to the topic's websocket subscribers; fields not used by a type are null
+public record TopicEvent(Type type, String topicId, Post post, List<String> postIds, String postId, Integer likeCount) {
+
+    public enum Type {
+        POST_CREATED,
+        POST_UPDATED,
+        POSTS_DELETED,
+        LIKES_CHANGED
+    }
+
+    public static TopicEvent postCreated(Post post) {
+        return new TopicEvent(Type.POST_CREATED, post.getTopic().getId(), post, null, null, null);
+    }
+
+    public static TopicEvent postUpdated(Post post) {
+        return new TopicEvent(Type.POST_UPDATED, post.getTopic().getId(), post, null, null, null);
+    }
+
+    // a deleted post takes its replies with it
+    public static TopicEvent postsDeleted(String topicId, List<String> postIds) {
+        return new TopicEvent(Type.POSTS_DELETED, topicId, null, postIds, null, null);
+    }
+
+    public static TopicEvent likesChanged(Post post) {
+        return new TopicEvent(Type.LIKES_CHANGED, post.getTopic().getId(), null, null, post.getId(), post.getLikes().size());
+    }
+}
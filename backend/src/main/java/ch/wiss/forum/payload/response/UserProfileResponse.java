@@ -0,0 +1,63 @@
+package ch.wiss.forum.payload.response;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// compact profile overview: public user fields, gamification stats and recent activity in one response
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserProfileResponse {
+    
+    private String id;
+    private String username;
+    private String displayName;
+    private String role;
+    private String avatar;
+    private String bio;
+    private String githubUrl;
+    private String websiteUrl;
+    private String linkedinUrl;
+    private String twitterUrl;
+    private LocalDateTime createdAt;
+    private LocalDateTime lastActive;
+    
+    private Map<String, Object> stats;
+    private List<TopicSummary> recentTopics;
+    private List<PostSummary> recentPosts;
+    
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class TopicSummary {
+        private String id;
+        private String title;
+        private String slug;
+        private int replyCount;
+        private int viewCount;
+        private LocalDateTime createdAt;
+    }
+    
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class PostSummary {
+        private String id;
+        private String excerpt;
+        private String topicId;
+        private String topicTitle;
+        private String topicSlug;
+        private int likeCount;
+        private LocalDateTime createdAt;
+    }
+}
@@ -1,14 +1,39 @@
 package ch.wiss.forum.repository;
 
 import ch.wiss.forum.model.FileEntity;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
 import java.util.List;
 import java.util.Optional;
+import java.util.regex.Pattern;
+
+// every query but findById leaves out the inline data of not yet migrated files,
+// it is only ever read to serve the content
 
 @Repository
 public interface FileRepository extends MongoRepository<FileEntity, String> {
+    @Query(value = "{ 'filename': ?0 }", fields = "{ 'data': 0 }")
     Optional<FileEntity> findByFilename(String filename);
+    
+    @Query(value = "{ '_id': ?0 }", fields = "{ 'data': 0 }")
+    Optional<FileEntity> findMetadataById(String id);
+    
+    @Query(value = "{ 'uploaded_by': ?0 }", fields = "{ 'data': 0 }")
     List<FileEntity> findByUploadedBy(String uploadedBy);
-    List<FileEntity> findByContentTypeStartingWith(String contentTypePrefix);
-} 
\ No newline at end of file
+    
+    @Query(value = "{ 'uploaded_by': ?0 }", fields = "{ 'data': 0 }")
+    Page<FileEntity> findByUploadedBy(String uploadedBy, Pageable pageable);
+    
+    @Query(value = "{ 'content_type': { '$regex': ?0 } }", fields = "{ 'data': 0 }")
+    List<FileEntity> findByContentTypeMatching(String regex);
+    
+    default List<FileEntity> findByContentTypeStartingWith(String contentTypePrefix) {
+        return findByContentTypeMatching("^" + Pattern.quote(contentTypePrefix));
+    }
+    
+    // the number of removed documents, only one of two concurrent deletions sees 1
+    long removeById(String id);
+}
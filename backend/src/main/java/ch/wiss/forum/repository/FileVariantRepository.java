@@ -0,0 +1,14 @@
+package ch.wiss.forum.repository;
+
+import java.util.List;
+
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import ch.wiss.forum.model.FileVariant;
+
+// file variant repository
+
+public interface FileVariantRepository extends MongoRepository<FileVariant, String> {
+    
+    List<FileVariant> findByFileId(String fileId);
+}
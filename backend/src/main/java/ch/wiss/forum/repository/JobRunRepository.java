@@ -0,0 +1,16 @@
+package ch.wiss.forum.repository;
+
+import java.util.List;
+
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import ch.wiss.forum.model.JobRun;
+
+// job run repository
+
+public interface JobRunRepository extends MongoRepository<JobRun, String> {
+    
+    List<JobRun> findTop20ByOrderByStartedAtDesc();
+    
+    List<JobRun> findTop20ByJobNameOrderByStartedAtDesc(String jobName);
+}
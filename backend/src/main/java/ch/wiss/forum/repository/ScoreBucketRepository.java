@@ -0,0 +1,19 @@
+package ch.wiss.forum.repository;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import ch.wiss.forum.model.ScoreBucket;
+
+// score bucket repository
+
+public interface ScoreBucketRepository extends MongoRepository<ScoreBucket, String> {
+    
+    Stream<ScoreBucket> streamByDayGreaterThanEqual(LocalDate day);
+    
+    List<ScoreBucket> findByUserIdInAndDayGreaterThanEqual(Collection<String> userIds, LocalDate day);
+}
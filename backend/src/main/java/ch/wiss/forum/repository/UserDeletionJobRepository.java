@@ -0,0 +1,18 @@
+package ch.wiss.forum.repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import ch.wiss.forum.model.UserDeletionJob;
+
+// user deletion job repository
+
+public interface UserDeletionJobRepository extends MongoRepository<UserDeletionJob, String> {
+    
+    Optional<UserDeletionJob> findFirstByUserIdAndStatusIn(String userId, Collection<UserDeletionJob.Status> statuses);
+    
+    List<UserDeletionJob> findByStatusIn(Collection<UserDeletionJob.Status> statuses);
+}
@@ -11,8 +11,9 @@ import org.springframework.security.web.authentication.WebAuthenticationDetailsS
 import org.springframework.util.StringUtils;
 import org.springframework.web.filter.OncePerRequestFilter;
 
+import ch.wiss.forum.model.User;
 import ch.wiss.forum.service.UserDetailsServiceImpl;
-import ch.wiss.forum.repository.UserRepository;
+import ch.wiss.forum.service.UserCacheService;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -28,7 +29,7 @@ public class AuthTokenFilter extends OncePerRequestFilter {
     
     private final JwtUtils jwtUtils;
     private final UserDetailsServiceImpl userDetailsService;
-    private final UserRepository userRepository;
+    private final UserCacheService userCacheService;
     
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
@@ -51,7 +52,7 @@ public class AuthTokenFilter extends OncePerRequestFilter {
                     // if username not found, try to find user by userId from token
                     String userId = jwtUtils.getUserIdFromJwtToken(jwt);
                     if (userId != null) {
-                        userRepository.findById(userId).ifPresent(user -> {
+                        userCacheService.findById(userId).filter(User::isEnabled).ifPresent(user -> {
                             UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
                                     user, null, user.getAuthorities());
                             authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
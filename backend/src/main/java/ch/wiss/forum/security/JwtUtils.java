@@ -9,6 +9,7 @@ import org.springframework.stereotype.Component;
 import ch.wiss.forum.model.User;
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtException;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.MalformedJwtException;
 import io.jsonwebtoken.SignatureAlgorithm;
@@ -27,6 +28,10 @@ import java.util.Base64;
 @Slf4j
 public class JwtUtils {
     
+    // set on tokens that only open one kind of request, such a token never authenticates a session
+    private static final String PURPOSE = "purpose";
+    private static final String NOTIFICATION_STREAM = "notification-stream";
+    
     @Value("${app.jwt.secret}")
     private String jwtSecret;
     
@@ -76,6 +81,34 @@ public class JwtUtils {
                 .compact();
     }
     
+    // a short-lived token for the notification stream url, EventSource can't send an Authorization header
+    public String generateStreamTicket(User user, long ttlMs) {
+        return Jwts.builder()
+                .setSubject(user.getUsername())
+                .setIssuedAt(new Date())
+                .setExpiration(new Date(new Date().getTime() + ttlMs))
+                .claim("userId", user.getId())
+                .claim(PURPOSE, NOTIFICATION_STREAM)
+                .signWith(key, SignatureAlgorithm.HS512)
+                .compact();
+    }
+    
+    // the user id of a valid stream ticket, null for anything else
+    public String getUserIdFromStreamTicket(String ticket) {
+        try {
+            Claims claims = Jwts.parserBuilder()
+                    .setSigningKey(key)
+                    .build()
+                    .parseClaimsJws(ticket)
+                    .getBody();
+            
+            return NOTIFICATION_STREAM.equals(claims.get(PURPOSE, String.class)) ? claims.get("userId", String.class) : null;
+        } catch (JwtException | IllegalArgumentException e) {
+            log.debug("Invalid stream ticket: {}", e.getMessage());
+            return null;
+        }
+    }
+    
     public String getUsernameFromJwtToken(String token) {
         return Jwts.parserBuilder()
                 .setSigningKey(key)
@@ -102,10 +135,16 @@ public class JwtUtils {
     
     public boolean validateJwtToken(String authToken) {
         try {
-            Jwts.parserBuilder()
+            Claims claims = Jwts.parserBuilder()
                     .setSigningKey(key)
                     .build()
-                    .parseClaimsJws(authToken);
+                    .parseClaimsJws(authToken)
+                    .getBody();
+            // a stream ticket travels in a url and may end up in logs, it must not work as a bearer token
+            if (claims.get(PURPOSE) != null) {
+                log.error("JWT token is a {} ticket, not a session token", claims.get(PURPOSE));
+                return false;
+            }
             return true;
         } catch (SignatureException e) {
             log.error("Invalid JWT signature: {}", e.getMessage());
@@ -0,0 +1,83 @@
+package ch.wiss.forum.security;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import ch.wiss.forum.model.User;
+import ch.wiss.forum.service.TopicEventPublisher;
+import ch.wiss.forum.service.UserCacheService;
+import ch.wiss.forum.service.UserDetailsServiceImpl;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * checks the jwt of a stomp connection once, in the Authorization header of its CONNECT frame, the
+ * same way AuthTokenFilter checks http requests. connected clients may only subscribe to topic
+ * updates; they cannot send, since anything sent to the broker would reach every subscriber.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class StompAuthChannelInterceptor implements ChannelInterceptor {
+
+    private final JwtUtils jwtUtils;
+    private final UserDetailsServiceImpl userDetailsService;
+    private final UserCacheService userCacheService;
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null || accessor.getCommand() == null) {
+            // heartbeats
+            return message;
+        }
+
+        StompCommand command = accessor.getCommand();
+        if (command == StompCommand.CONNECT) {
+            accessor.setUser(authenticate(accessor.getFirstNativeHeader("Authorization")));
+        } else if (command == StompCommand.SUBSCRIBE) {
+            String destination = accessor.getDestination();
+            if (destination == null || !destination.startsWith(TopicEventPublisher.DESTINATION_PREFIX)
+                    || destination.length() == TopicEventPublisher.DESTINATION_PREFIX.length()) {
+                throw new AccessDeniedException("Cannot subscribe to " + destination);
+            }
+        } else if (command == StompCommand.SEND) {
+            throw new AccessDeniedException("Sending messages is not supported");
+        }
+        return message;
+    }
+
+    private UsernamePasswordAuthenticationToken authenticate(String headerAuth) {
+        if (!StringUtils.hasText(headerAuth) || !headerAuth.startsWith("Bearer ")) {
+            throw new AccessDeniedException("Missing bearer token");
+        }
+
+        String jwt = headerAuth.substring(7);
+        if (!jwtUtils.validateJwtToken(jwt)) {
+            throw new AccessDeniedException("Invalid token");
+        }
+
+        UserDetails user;
+        try {
+            user = userDetailsService.loadUserByUsername(jwtUtils.getUsernameFromJwtToken(jwt));
+        } catch (UsernameNotFoundException e) {
+            // the username changed since the token was issued, the id in it still matches
+            String userId = jwtUtils.getUserIdFromJwtToken(jwt);
+            user = userId == null ? null : userCacheService.findById(userId).filter(User::isEnabled).orElse(null);
+            if (user == null) {
+                throw new AccessDeniedException("Unknown user");
+            }
+        }
+        return new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities());
+    }
+}
@@ -0,0 +1,216 @@
+package ch.wiss.forum.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.ToIntFunction;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import ch.wiss.forum.model.User;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * achievement rules compiled from gamification/achievements.json.
+ * every rule depends on one user counter and a threshold. per counter the rules are sorted by
+ * threshold and a prefix mask holds the bits of all rules up to that threshold, so evaluating a
+ * counter is one binary search and one AND against the user's achievementMask. nothing is
+ * allocated unless an achievement is actually earned.
+ * bits are part of the stored data: never reuse or renumber the bit of an existing achievement.
+ */
+public final class AchievementRules {
+
+    public static final String DEFAULT_RESOURCE = "gamification/achievements.json";
+
+    public enum Counter {
+        TOPICS_CREATED("topicsCreated", User::getTopicsCreated),
+        POSTS_CREATED("postsCreated", User::getPostsCreated),
+        LIKES_RECEIVED("likesReceived", User::getLikesReceived),
+        LONGEST_STREAK("longestStreak", User::getLongestStreak);
+
+        private final String field;
+        private final ToIntFunction<User> getter;
+
+        Counter(String field, ToIntFunction<User> getter) {
+            this.field = field;
+            this.getter = getter;
+        }
+
+        static Counter forField(String field) {
+            for (Counter counter : values()) {
+                if (counter.field.equals(field)) {
+                    return counter;
+                }
+            }
+            throw new IllegalArgumentException("Unknown achievement counter: " + field);
+        }
+    }
+
+    @Data
+    @NoArgsConstructor
+    public static class Definition {
+        private String id;
+        private int bit;
+        private String counter;
+        private int threshold;
+        private String description;
+    }
+
+    // rules of one counter, sorted by threshold
+    private static final class CounterTable {
+        private final int[] thresholds;
+        private final long[] prefixMasks;
+
+        private CounterTable(int[] thresholds, long[] prefixMasks) {
+            this.thresholds = thresholds;
+            this.prefixMasks = prefixMasks;
+        }
+
+        // bits of all rules whose threshold is reached by value
+        long reached(int value) {
+            int index = upperBound(thresholds, value) - 1;
+            return index < 0 ? 0L : prefixMasks[index];
+        }
+    }
+
+    private final Map<Counter, CounterTable> tables = new EnumMap<>(Counter.class);
+    private final String[] idsByBit = new String[Long.SIZE];
+    private final Map<String, Integer> bitsById = new HashMap<>();
+    private final Map<String, String> descriptions = new LinkedHashMap<>();
+
+    private AchievementRules(List<Definition> definitions) {
+        Map<Counter, List<Definition>> byCounter = new EnumMap<>(Counter.class);
+        Set<Integer> usedBits = new HashSet<>();
+
+        for (Definition definition : definitions) {
+            if (definition.getBit() < 0 || definition.getBit() >= Long.SIZE) {
+                throw new IllegalArgumentException("Achievement bit must be between 0 and 63: " + definition.getId());
+            }
+            if (!usedBits.add(definition.getBit()) || bitsById.containsKey(definition.getId())) {
+                throw new IllegalArgumentException("Duplicate achievement id or bit: " + definition.getId());
+            }
+
+            idsByBit[definition.getBit()] = definition.getId();
+            bitsById.put(definition.getId(), definition.getBit());
+            descriptions.put(definition.getId(), definition.getDescription());
+            byCounter.computeIfAbsent(Counter.forField(definition.getCounter()), c -> new ArrayList<>()).add(definition);
+        }
+
+        byCounter.forEach((counter, rules) -> {
+            rules.sort(Comparator.comparingInt(Definition::getThreshold));
+            int[] thresholds = new int[rules.size()];
+            long[] prefixMasks = new long[rules.size()];
+            long mask = 0L;
+            for (int i = 0; i < rules.size(); i++) {
+                mask |= 1L << rules.get(i).getBit();
+                thresholds[i] = rules.get(i).getThreshold();
+                prefixMasks[i] = mask;
+            }
+            tables.put(counter, new CounterTable(thresholds, prefixMasks));
+        });
+    }
+
+    public static AchievementRules fromClasspath() {
+        return fromClasspath(DEFAULT_RESOURCE);
+    }
+
+    public static AchievementRules fromClasspath(String resource) {
+        try (InputStream in = AchievementRules.class.getClassLoader().getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new IllegalStateException("Achievement definitions not found: " + resource);
+            }
+            return new AchievementRules(new ObjectMapper().readValue(in, new TypeReference<List<Definition>>() {}));
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read achievement definitions from " + resource, e);
+        }
+    }
+
+    /**
+     * awards the achievements reached through the given counters (pass a constant array,
+     * a varargs list would allocate on every call).
+     * keeps achievementMask and the achievements list in sync, users from before the mask existed
+     * get their mask derived from the list first. returns the bits awarded by this call.
+     */
+    public long evaluate(User user, Counter... changed) {
+        if (user.getAchievements() == null) {
+            user.setAchievements(new ArrayList<>());
+        }
+        if (user.getAchievementMask() == 0L && !user.getAchievements().isEmpty()) {
+            user.setAchievementMask(maskOf(user.getAchievements()));
+        }
+
+        long earned = 0L;
+        for (Counter counter : changed) {
+            CounterTable table = tables.get(counter);
+            if (table != null) {
+                earned |= table.reached(counter.getter.applyAsInt(user));
+            }
+        }
+
+        long newBits = earned & ~user.getAchievementMask();
+        if (newBits == 0L) {
+            return 0L;
+        }
+
+        user.setAchievementMask(user.getAchievementMask() | newBits);
+        for (String id : idsOf(newBits)) {
+            if (!user.getAchievements().contains(id)) {
+                user.getAchievements().add(id);
+            }
+        }
+        return newBits;
+    }
+
+    public List<String> idsOf(long mask) {
+        List<String> ids = new ArrayList<>(Long.bitCount(mask));
+        while (mask != 0L) {
+            int bit = Long.numberOfTrailingZeros(mask);
+            mask &= mask - 1;
+            if (idsByBit[bit] != null) {
+                ids.add(idsByBit[bit]);
+            }
+        }
+        return ids;
+    }
+
+    public long maskOf(Collection<String> achievementIds) {
+        long mask = 0L;
+        for (String id : achievementIds) {
+            Integer bit = bitsById.get(id);
+            if (bit != null) {
+                mask |= 1L << bit;
+            }
+        }
+        return mask;
+    }
+
+    public Map<String, String> getDescriptions() {
+        return descriptions;
+    }
+
+    // index of the first element greater than value
+    private static int upperBound(int[] sorted, int value) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted[mid] <= value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -3,6 +3,7 @@ package ch.wiss.forum.service;
 import java.time.LocalDateTime;
 
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
@@ -19,6 +20,7 @@ import ch.wiss.forum.payload.response.JwtResponse;
 import ch.wiss.forum.repository.PasswordResetTokenRepository;
 import ch.wiss.forum.repository.UserRepository;
 import ch.wiss.forum.security.JwtUtils;
+import ch.wiss.forum.util.DuplicateKeys;
 import ch.wiss.forum.validation.UserValidator;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -38,6 +40,9 @@ public class AuthService {
     private final UserValidator userValidator;
     private final EmailService emailService;
     private final PasswordResetTokenRepository passwordResetTokenRepository;
+    private final UserCacheService userCacheService;
+    private final AvailabilityService availabilityService;
+    private final UserService userService;
     
     @Value("${app.password-reset.expiration-minutes:30}")
     private int passwordResetExpirationMinutes;
@@ -66,9 +71,8 @@ public class AuthService {
         // generate token with user object to include userId
         String jwt = jwtUtils.generateJwtToken(userDetails);
         
-        // update last active time
-        userDetails.setLastActive(LocalDateTime.now());
-        userRepository.save(userDetails);
+        // update last active time, the principal may come from the user cache so only that field is written
+        userService.updateLastActive(userDetails);
         
         return createJwtResponse(jwt, userDetails);
     }
@@ -78,8 +82,7 @@ public class AuthService {
         String jwt = jwtUtils.generateJwtToken(user);
         
         // update last active time
-        user.setLastActive(LocalDateTime.now());
-        userRepository.save(user);
+        userService.updateLastActive(user);
         
         return createJwtResponse(jwt, user);
     }
@@ -111,12 +114,12 @@ public class AuthService {
         }
         
         // check if username is already taken
-        if (userRepository.existsByUsername(registerRequest.getUsername())) {
+        if (availabilityService.isUsernameTaken(registerRequest.getUsername())) {
             throw new RuntimeException("Username is already taken.");
         }
         
         // check if email is already in use
-        if (userRepository.existsByEmail(registerRequest.getEmail())) {
+        if (availabilityService.isEmailTaken(registerRequest.getEmail())) {
             throw new RuntimeException("Email is already in use.");
         }
         
@@ -140,13 +143,19 @@ public class AuthService {
                 .lastActive(LocalDateTime.now())
                 .build();
         
-        User savedUser = userRepository.save(user);
+        User savedUser;
+        try {
+            savedUser = userRepository.save(user);
+        } catch (DuplicateKeyException e) {
+            // lost a race with a concurrent registration, the unique index has the final say
+            throw new RuntimeException(DuplicateKeys.isOn(e, "username") ? "Username is already taken." : "Email is already in use.");
+        }
+        availabilityService.recordUser(savedUser.getUsername(), savedUser.getEmail());
         
         // Set avatar based on user ID if no custom avatar provided
         if (savedUser.getAvatar() == null || savedUser.getAvatar().isEmpty()) {
             String avatarUrl = "https://api.dicebear.com/9.x/thumbs/svg?seed=" + savedUser.getId();
-            savedUser.setAvatar(avatarUrl);
-            savedUser = userRepository.save(savedUser);
+            savedUser = userService.changeAvatar(savedUser.getId(), avatarUrl);
         }
         
         // generate JWT token for the new user
@@ -170,7 +179,7 @@ public class AuthService {
 
     // initiate password reset
     public void initiatePasswordReset(String email) {
-        Optional<User> userOpt = userRepository.findByEmail(email);
+        Optional<User> userOpt = userCacheService.findByEmail(email);
         
         // check if email exists and throw exception if not
         if (userOpt.isEmpty()) {
@@ -222,9 +231,7 @@ public class AuthService {
         }
         
         User user = passwordResetToken.getUser();
-        user.setPassword(passwordEncoder.encode(newPassword));
-        user.setUpdatedAt(LocalDateTime.now());
-        userRepository.save(user);
+        userService.changePassword(user.getId(), newPassword);
         
         // delete the used token
         passwordResetTokenRepository.delete(passwordResetToken);
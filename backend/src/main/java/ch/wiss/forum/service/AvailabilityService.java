@@ -0,0 +1,183 @@
+package ch.wiss.forum.service;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import ch.wiss.forum.model.User;
+import ch.wiss.forum.repository.UserRepository;
+import ch.wiss.forum.util.BloomFilter;
+import ch.wiss.forum.validation.UserValidator;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * username/email availability backed by in-memory bloom filters.
+ * a definite negative from the filter answers without touching mongo, only probable
+ * positives are confirmed with existsByUsername / existsByEmail.
+ * values are case-folded for the filter only, so a filter hit is a superset of the
+ * exact (case-sensitive) match login and the unique indexes use.
+ * the filters are rebuilt periodically to drop deleted users and pick up other nodes.
+ */
+@Service
+@Slf4j
+public class AvailabilityService {
+
+    private final UserRepository userRepository;
+    private final MongoTemplate mongoTemplate;
+    private final UserValidator userValidator;
+
+    private final long expectedUsers;
+    private final double falsePositiveRate;
+
+    private volatile BloomFilter usernames;
+    private volatile BloomFilter emails;
+    private volatile boolean loaded = false;
+
+    // values added since the last rebuild started, replayed into the new filters before and after the swap
+    private final Set<String> usernamesAddedDuringRebuild = ConcurrentHashMap.newKeySet();
+    private final Set<String> emailsAddedDuringRebuild = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder definiteNegatives = new LongAdder();
+    private final LongAdder databaseChecks = new LongAdder();
+
+    public AvailabilityService(UserRepository userRepository, MongoTemplate mongoTemplate, UserValidator userValidator,
+                               @Value("${app.availability.expected-users:20000}") long expectedUsers,
+                               @Value("${app.availability.false-positive-rate:0.01}") double falsePositiveRate) {
+        this.userRepository = userRepository;
+        this.mongoTemplate = mongoTemplate;
+        this.userValidator = userValidator;
+        this.expectedUsers = expectedUsers;
+        this.falsePositiveRate = falsePositiveRate;
+        this.usernames = BloomFilter.create(expectedUsers, falsePositiveRate);
+        this.emails = BloomFilter.create(expectedUsers, falsePositiveRate);
+    }
+
+    public boolean isUsernameTaken(String username) {
+        if (username == null) {
+            return false;
+        }
+        if (loaded && !usernames.mightContain(fold(username))) {
+            definiteNegatives.increment();
+            return false;
+        }
+        databaseChecks.increment();
+        return userRepository.existsByUsername(username);
+    }
+
+    public boolean isEmailTaken(String email) {
+        if (email == null) {
+            return false;
+        }
+        if (loaded && !emails.mightContain(fold(email))) {
+            definiteNegatives.increment();
+            return false;
+        }
+        databaseChecks.increment();
+        return userRepository.existsByEmail(email);
+    }
+
+    // call after a user was registered or renamed. the value is collected before the filter is read:
+    // a put into a filter that is being replaced was collected before the swap and is replayed after it
+    public void recordUser(String username, String email) {
+        if (username != null) {
+            usernamesAddedDuringRebuild.add(fold(username));
+            usernames.put(fold(username));
+        }
+        if (email != null) {
+            emailsAddedDuringRebuild.add(fold(email));
+            emails.put(fold(email));
+        }
+    }
+
+    // availability for the live registration form, either value may be omitted
+    public Map<String, Object> checkAvailability(String username, String email) {
+        Map<String, Object> result = new HashMap<>();
+
+        if (username != null) {
+            boolean valid = userValidator.isValidUsername(username);
+            result.put("username", Map.of(
+                "value", username,
+                "valid", valid,
+                "available", valid && !isUsernameTaken(username)));
+        }
+
+        if (email != null) {
+            boolean valid = userValidator.isValidEmail(email);
+            result.put("email", Map.of(
+                "value", email,
+                "valid", valid,
+                "available", valid && !isEmailTaken(email)));
+        }
+
+        return result;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("loaded", loaded);
+        stats.put("bitsPerFilter", usernames.bitSize());
+        stats.put("hashFunctions", usernames.hashCount());
+        stats.put("definiteNegatives", definiteNegatives.sum());
+        stats.put("databaseChecks", databaseChecks.sum());
+        return stats;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${app.availability.rebuild-interval-ms:3600000}", initialDelayString = "${app.availability.rebuild-interval-ms:3600000}")
+    public void rebuild() {
+        usernamesAddedDuringRebuild.clear();
+        emailsAddedDuringRebuild.clear();
+
+        long userCount = userRepository.count();
+        // leave headroom so the false positive rate holds until the next rebuild
+        long capacity = Math.max(expectedUsers, userCount * 2);
+        BloomFilter newUsernames = BloomFilter.create(capacity, falsePositiveRate);
+        BloomFilter newEmails = BloomFilter.create(capacity, falsePositiveRate);
+
+        Query query = new Query();
+        query.fields().include("username").include("email");
+
+        try (Stream<User> users = mongoTemplate.stream(query, User.class)) {
+            users.forEach(user -> {
+                if (user.getUsername() != null) {
+                    newUsernames.put(fold(user.getUsername()));
+                }
+                if (user.getEmail() != null) {
+                    newEmails.put(fold(user.getEmail()));
+                }
+            });
+        } catch (Exception e) {
+            log.error("Could not load availability filters, falling back to database checks: ", e);
+            return;
+        }
+
+        usernamesAddedDuringRebuild.forEach(newUsernames::put);
+        emailsAddedDuringRebuild.forEach(newEmails::put);
+
+        usernames = newUsernames;
+        emails = newEmails;
+        loaded = true;
+
+        // users recorded between the replay and the swap went into the old filters only
+        usernamesAddedDuringRebuild.forEach(newUsernames::put);
+        emailsAddedDuringRebuild.forEach(newEmails::put);
+
+        log.info("Loaded availability filters for {} users", userCount);
+    }
+
+    private static String fold(String value) {
+        return value.trim().toLowerCase(Locale.ROOT);
+    }
+}
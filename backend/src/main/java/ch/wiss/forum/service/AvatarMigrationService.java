@@ -0,0 +1,315 @@
+package ch.wiss.forum.service;
+
+import java.io.ByteArrayInputStream;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import ch.wiss.forum.model.FileEntity;
+import ch.wiss.forum.model.JobRun;
+import ch.wiss.forum.model.StoredBlob;
+import ch.wiss.forum.model.User;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * moves avatars stored as base64 data urls inside the user documents into stored files, in batches:
+ * users are read in id order, a batch is decoded and stored in parallel on a bounded pool, its files
+ * are inserted with one bulk write and its users repointed with another. a user is only repointed if
+ * the avatar is still the one that was converted, the file of a user who changed it meanwhile is
+ * deleted again. after every batch the last user id is saved in the job run, a run that was
+ * interrupted (node stopped, job failed) is continued from there by the next one.
+ */
+@Service
+@Slf4j
+public class AvatarMigrationService {
+
+    public static final String MIGRATION_JOB = "avatar-migration";
+
+    private static final Duration LOCK_DURATION = Duration.ofMinutes(10);
+    private static final String CHECKPOINT = "lastUserId";
+
+    private static final Map<String, String> EXTENSIONS = Map.of(
+        "image/png", ".png",
+        "image/jpeg", ".jpg",
+        "image/jpg", ".jpg",
+        "image/gif", ".gif",
+        "image/webp", ".webp");
+
+    private final MongoTemplate mongoTemplate;
+    private final BlobStore blobStore;
+    private final StoredBlobService storedBlobService;
+    private final StorageQuotaService storageQuotaService;
+    private final FileStorageService fileStorageService;
+    private final ImageVariantService imageVariantService;
+    private final UserCacheService userCacheService;
+    private final JobRunner jobRunner;
+
+    private final int batchSize;
+    private final long maxAvatarSize;
+
+    private final ExecutorService triggerExecutor;
+    private final ExecutorService decodeExecutor;
+
+    public AvatarMigrationService(MongoTemplate mongoTemplate, BlobStore blobStore, StoredBlobService storedBlobService,
+                                  StorageQuotaService storageQuotaService, FileStorageService fileStorageService,
+                                  ImageVariantService imageVariantService, UserCacheService userCacheService,
+                                  JobRunner jobRunner,
+                                  @Value("${app.avatar-migration.threads:4}") int threads,
+                                  @Value("${app.avatar-migration.batch-size:50}") int batchSize,
+                                  @Value("${app.file-storage.max-file-size:10MB}") DataSize maxAvatarSize) {
+        this.mongoTemplate = mongoTemplate;
+        this.blobStore = blobStore;
+        this.storedBlobService = storedBlobService;
+        this.storageQuotaService = storageQuotaService;
+        this.fileStorageService = fileStorageService;
+        this.imageVariantService = imageVariantService;
+        this.userCacheService = userCacheService;
+        this.jobRunner = jobRunner;
+        this.batchSize = batchSize;
+        this.maxAvatarSize = maxAvatarSize.toBytes();
+
+        this.triggerExecutor = DaemonPools.fixed(1, 1, "avatar-migration", new ThreadPoolExecutor.DiscardPolicy());
+        // at most one batch is decoded at a time, the caller helps out when the queue is full
+        this.decodeExecutor = DaemonPools.fixed(threads, batchSize, "avatar-migration-decode", new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    // restart ignores the checkpoint of an interrupted run and scans all users again
+    public void startMigration(boolean restart) {
+        triggerExecutor.execute(() -> migrate(restart));
+    }
+
+    public Optional<JobRun> migrate(boolean restart) {
+        return jobRunner.runExclusively(MIGRATION_JOB, LOCK_DURATION, run -> migrateAll(run, restart));
+    }
+
+    private long migrateAll(JobRun run, boolean restart) throws Exception {
+        String resumeAfter = restart ? null : lastCheckpoint(run.getId());
+        run.getDetails().put("resumedAfter", resumeAfter);
+
+        Criteria criteria = Criteria.where("avatar").regex("^data:");
+        if (resumeAfter != null) {
+            criteria = criteria.and("_id").gt(resumeAfter);
+        }
+        Query query = new Query(criteria).with(Sort.by("_id")).cursorBatchSize(batchSize);
+        query.fields().include("_id").include("avatar");
+
+        BatchResult total = new BatchResult();
+        List<Document> batch = new ArrayList<>();
+        try (Stream<Document> users = mongoTemplate.stream(query, Document.class, mongoTemplate.getCollectionName(User.class))) {
+            var iterator = users.iterator();
+            while (iterator.hasNext()) {
+                batch.add(iterator.next());
+                if (batch.size() == batchSize) {
+                    total.add(migrateBatch(batch));
+                    checkpoint(run, batch.get(batch.size() - 1).get("_id").toString(), total);
+                    batch.clear();
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            total.add(migrateBatch(batch));
+            checkpoint(run, batch.get(batch.size() - 1).get("_id").toString(), total);
+        }
+        return total.migrated;
+    }
+
+    private BatchResult migrateBatch(List<Document> users) throws InterruptedException {
+        BatchResult result = new BatchResult();
+
+        List<Future<FileEntity>> stored = new ArrayList<>();
+        for (Document user : users) {
+            stored.add(decodeExecutor.submit(() -> store(user.get("_id").toString(), user.getString("avatar"))));
+        }
+
+        // file -> the avatar it was converted from
+        List<FileEntity> files = new ArrayList<>();
+        List<String> avatars = new ArrayList<>();
+        for (int i = 0; i < users.size(); i++) {
+            try {
+                FileEntity file = stored.get(i).get();
+                if (file == null) {
+                    result.failed++;
+                    continue;
+                }
+                files.add(file);
+                avatars.add(users.get(i).getString("avatar"));
+            } catch (ExecutionException e) {
+                result.failed++;
+                log.warn("Could not convert the avatar of user {}: {}", users.get(i).get("_id"), e.getCause().getMessage());
+            }
+        }
+        if (files.isEmpty()) {
+            return result;
+        }
+
+        List<Integer> inserted = insertFiles(files);
+
+        BulkOperations repoint = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, User.class);
+        for (int index : inserted) {
+            FileEntity file = files.get(index);
+            repoint.updateOne(
+                new Query(Criteria.where("_id").is(file.getUploadedBy()).and("avatar").is(avatars.get(index))),
+                new Update().set("avatar", fileStorageService.generateFileUrl(file.getId())));
+        }
+        repoint.execute();
+
+        // users whose avatar changed since it was read keep the new one, their converted file goes again
+        Set<String> urls = inserted.stream()
+            .map(index -> fileStorageService.generateFileUrl(files.get(index).getId()))
+            .collect(Collectors.toSet());
+        Query repointed = new Query(Criteria.where("avatar").in(urls));
+        repointed.fields().include("avatar");
+        Set<String> applied = mongoTemplate.find(repointed, Document.class, mongoTemplate.getCollectionName(User.class)).stream()
+            .map(user -> user.getString("avatar"))
+            .collect(Collectors.toSet());
+
+        for (int index : inserted) {
+            FileEntity file = files.get(index);
+            // the bulk update bypasses the repository, the cached users still carry the data url
+            userCacheService.evict(file.getUploadedBy(), true);
+            if (applied.contains(fileStorageService.generateFileUrl(file.getId()))) {
+                result.migrated++;
+                result.bytes += file.getSize();
+                imageVariantService.generateInBackground(file);
+            } else {
+                fileStorageService.deleteFile(file.getId());
+                result.changed++;
+            }
+        }
+        return result;
+    }
+
+    // decodes a data url and stores its content, shared if it is already stored; null if it isn't an image
+    private FileEntity store(String userId, String avatar) throws Exception {
+        int comma = avatar.indexOf(',');
+        int semicolon = avatar.indexOf(';');
+        if (comma < 0 || semicolon < 0 || semicolon > comma || !avatar.substring(semicolon, comma).equals(";base64")) {
+            return null;
+        }
+        String contentType = avatar.substring("data:".length(), semicolon).toLowerCase();
+        if (!contentType.startsWith("image/")) {
+            return null;
+        }
+
+        byte[] content = Base64.getDecoder().decode(avatar.substring(comma + 1).trim());
+        if (content.length == 0 || content.length > maxAvatarSize) {
+            return null;
+        }
+
+        String sha256 = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        String extension = EXTENSIONS.getOrDefault(contentType, "");
+        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
+        String fileName = String.format("migrated_%s_%s_%s%s", userId, timestamp, UUID.randomUUID().toString().substring(0, 8), extension);
+
+        Optional<StoredBlob> existing = storedBlobService.acquire(sha256);
+        StoredBlob blob = existing.isPresent()
+            ? existing.get()
+            : storedBlobService.share(sha256, blobStore.store(new ByteArrayInputStream(content), fileName, contentType), content.length);
+
+        FileEntity file = new FileEntity(fileName, "avatar" + extension, contentType, (long) content.length, null, userId);
+        // bulk inserts don't write generated ids back, the user is repointed by this one
+        file.setId(new ObjectId().toHexString());
+        file.setStorageKey(blob.getStorageKey());
+        file.setSha256(sha256);
+        file.setContentEncoding(blob.getContentEncoding());
+        file.setStoredSize(blob.getStoredSize());
+        return file;
+    }
+
+    // indexes of the files that were inserted, the content of the others is released again
+    private List<Integer> insertFiles(List<FileEntity> files) {
+        BulkOperations insert = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, FileEntity.class);
+        insert.insert(files);
+
+        Set<Integer> failed = Set.of();
+        try {
+            insert.execute();
+        } catch (BulkOperationException e) {
+            failed = e.getErrors().stream().map(error -> error.getIndex()).collect(Collectors.toSet());
+            log.warn("{} of {} migrated avatars could not be inserted", failed.size(), files.size());
+        }
+
+        List<Integer> inserted = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            FileEntity file = files.get(i);
+            if (failed.contains(i)) {
+                storedBlobService.release(file.getSha256(), file.getStorageKey());
+                continue;
+            }
+            // avatars the user already had, counted but never refused
+            storageQuotaService.forceCharge(file.getUploadedBy(), file.getSize());
+            inserted.add(i);
+        }
+        return inserted;
+    }
+
+    private void checkpoint(JobRun run, String lastUserId, BatchResult total) {
+        run.getDetails().put(CHECKPOINT, lastUserId);
+        run.getDetails().put("migrated", total.migrated);
+        run.getDetails().put("changed", total.changed);
+        run.getDetails().put("failed", total.failed);
+        run.getDetails().put("bytes", total.bytes);
+        mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(run.getId())),
+            new Update().set("details", run.getDetails()), JobRun.class);
+        jobRunner.renewLock(run, LOCK_DURATION);
+    }
+
+    // the checkpoint of the latest earlier run, unless that run got through
+    private String lastCheckpoint(String currentRunId) {
+        return jobRunner.getRecentRuns(MIGRATION_JOB).stream()
+            .filter(run -> !run.getId().equals(currentRunId))
+            .findFirst()
+            .filter(run -> run.getStatus() != JobRun.Status.SUCCEEDED)
+            .map(run -> (String) run.getDetails().get(CHECKPOINT))
+            .orElse(null);
+    }
+
+    private static class BatchResult {
+        long migrated;
+        long changed;
+        long failed;
+        long bytes;
+
+        void add(BatchResult other) {
+            migrated += other.migrated;
+            changed += other.changed;
+            failed += other.failed;
+            bytes += other.bytes;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        triggerExecutor.shutdown();
+        decodeExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,35 @@
+package ch.wiss.forum.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * chunked storage for file contents. FileEntity keeps the metadata and the key returned by store,
+ * the content itself is only ever streamed, never held in memory as a whole.
+ */
+public interface BlobStore {
+
+    // a stored blob as listed for garbage collection
+    record Blob(String key, long size) {}
+
+    // reads the stream to its end and returns the key to open the content again
+    String store(InputStream content, String filename, String contentType) throws IOException;
+
+    // the content from offset on, a missing blob is a FileNotFoundException
+    InputStream open(String key, long offset) throws IOException;
+
+    // deleting a missing blob is not an error
+    void delete(String key);
+
+    // blobs stored before the cutoff, to find the ones no record points at any more; the stream must be closed
+    Stream<Blob> listOlderThan(Instant cutoff) throws IOException;
+
+    // the file holding the content if it is on local disk, it can then be sent without copying it through the heap
+    default Optional<Path> localPath(String key) {
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,199 @@
+package ch.wiss.forum.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import ch.wiss.forum.model.FileEntity;
+import ch.wiss.forum.model.JobRun;
+import ch.wiss.forum.model.StoredBlob;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * moves existing blobs into the tier new content is written to (app.file-storage.blob-store),
+ * in place and while the application runs. a blob is copied first and its key swapped afterwards,
+ * conditionally on the old key, so readers always find a complete copy; the old copy is only
+ * deleted once the files pointing at it have been repointed. shared blobs are moved once for all
+ * their files, blobs owned by a single file (stored before deduplication) per file.
+ */
+@Service
+@Slf4j
+public class BlobStoreMigrationService {
+
+    public static final String MIGRATION_JOB = "blob-store-migration";
+
+    private static final Duration LOCK_DURATION = Duration.ofMinutes(10);
+
+    private final MongoTemplate mongoTemplate;
+    private final RoutingBlobStore blobStore;
+    private final JobRunner jobRunner;
+
+    private final int batchSize;
+
+    private final ExecutorService migrationExecutor;
+
+    public BlobStoreMigrationService(MongoTemplate mongoTemplate, RoutingBlobStore blobStore, JobRunner jobRunner,
+                                     @Value("${app.file-storage.migration-batch-size:20}") int batchSize) {
+        this.mongoTemplate = mongoTemplate;
+        this.blobStore = blobStore;
+        this.jobRunner = jobRunner;
+        this.batchSize = batchSize;
+
+        this.migrationExecutor = DaemonPools.fixed(1, 1, "blob-store-migration", new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    public void startMigration() {
+        migrationExecutor.execute(this::migrate);
+    }
+
+    public Optional<JobRun> migrate() {
+        return jobRunner.runExclusively(MIGRATION_JOB, LOCK_DURATION, this::migrateAll);
+    }
+
+    private long migrateAll(JobRun run) {
+        run.getDetails().put("target", blobStore.isFileSystemTarget() ? "filesystem" : "gridfs");
+
+        long sharedMoved = 0;
+        long ownedMoved = 0;
+        long failed = 0;
+        long bytes = 0;
+        long processed = 0;
+
+        // old key -> new key, the old copies are deleted per batch after a last repoint
+        Map<String, String> moved = new LinkedHashMap<>();
+
+        Query shared = new Query(inOtherTier("storageKey")).cursorBatchSize(batchSize);
+        try (Stream<StoredBlob> blobs = mongoTemplate.stream(shared, StoredBlob.class)) {
+            var iterator = blobs.iterator();
+            while (iterator.hasNext()) {
+                StoredBlob blob = iterator.next();
+                try {
+                    String newKey = moveSharedBlob(blob);
+                    if (newKey != null) {
+                        moved.put(blob.getStorageKey(), newKey);
+                        sharedMoved++;
+                        bytes += blob.getSize();
+                    }
+                } catch (Exception e) {
+                    failed++;
+                    log.warn("Could not move blob {}: {}", blob.getId(), e.getMessage());
+                }
+
+                if (++processed % batchSize == 0) {
+                    deleteOldCopies(moved);
+                    jobRunner.renewLock(run, LOCK_DURATION);
+                }
+            }
+        }
+        deleteOldCopies(moved);
+
+        // what is left in the other tier belongs to a single file, or was shared after the query above
+        Query owned = new Query(inOtherTier("storage_key")).cursorBatchSize(batchSize);
+        owned.fields().exclude("data");
+        try (Stream<FileEntity> files = mongoTemplate.stream(owned, FileEntity.class)) {
+            var iterator = files.iterator();
+            while (iterator.hasNext()) {
+                FileEntity file = iterator.next();
+                try {
+                    if (moveOwnedBlob(file)) {
+                        ownedMoved++;
+                        bytes += file.getSize() != null ? file.getSize() : 0L;
+                    }
+                } catch (Exception e) {
+                    failed++;
+                    log.warn("Could not move the blob of file {}: {}", file.getId(), e.getMessage());
+                }
+
+                if (++processed % batchSize == 0) {
+                    jobRunner.renewLock(run, LOCK_DURATION);
+                }
+            }
+        }
+
+        run.getDetails().put("sharedBlobs", sharedMoved);
+        run.getDetails().put("ownedBlobs", ownedMoved);
+        run.getDetails().put("bytes", bytes);
+        run.getDetails().put("failed", failed);
+        return sharedMoved + ownedMoved;
+    }
+
+    // the new key, or null if the blob was released or moved since it was read
+    private String moveSharedBlob(StoredBlob blob) throws IOException {
+        String oldKey = blob.getStorageKey();
+        String newKey = copy(oldKey, blob.getId(), null);
+
+        Query current = new Query(Criteria.where("_id").is(blob.getId()).and("storageKey").is(oldKey).and("refCount").gt(0));
+        if (mongoTemplate.updateFirst(current, new Update().set("storageKey", newKey), StoredBlob.class).getModifiedCount() == 0) {
+            blobStore.delete(newKey);
+            return null;
+        }
+        repoint(oldKey, newKey);
+        return newKey;
+    }
+
+    private boolean moveOwnedBlob(FileEntity file) throws IOException {
+        String oldKey = file.getStorageKey();
+        if (mongoTemplate.exists(new Query(Criteria.where("storageKey").is(oldKey)), StoredBlob.class)) {
+            // became shared while this run was under way, the next run moves it with its blob record
+            return false;
+        }
+
+        String newKey = copy(oldKey, file.getFilename(), file.getContentType());
+        Query current = new Query(Criteria.where("_id").is(file.getId()).and("storage_key").is(oldKey));
+        if (mongoTemplate.updateFirst(current, new Update().set("storage_key", newKey), FileEntity.class).getModifiedCount() == 0) {
+            // deleted since it was read
+            blobStore.delete(newKey);
+            return false;
+        }
+        blobStore.delete(oldKey);
+        return true;
+    }
+
+    private String copy(String key, String filename, String contentType) throws IOException {
+        try (InputStream content = blobStore.open(key, 0)) {
+            return blobStore.store(content, filename, contentType);
+        }
+    }
+
+    private void repoint(String oldKey, String newKey) {
+        mongoTemplate.updateMulti(new Query(Criteria.where("storage_key").is(oldKey)),
+            new Update().set("storage_key", newKey), FileEntity.class);
+    }
+
+    private void deleteOldCopies(Map<String, String> moved) {
+        // an upload that took its reference just before the swap is saved with the old key, by now it
+        // is stored and a second repoint catches it before the old copy goes away
+        moved.forEach((oldKey, newKey) -> {
+            repoint(oldKey, newKey);
+            blobStore.delete(oldKey);
+        });
+        moved.clear();
+    }
+
+    private Criteria inOtherTier(String field) {
+        String fileSystemKeys = "^" + FileSystemBlobStore.KEY_PREFIX;
+        Criteria key = blobStore.isFileSystemTarget()
+            ? Criteria.where(field).not().regex(fileSystemKeys)
+            : Criteria.where(field).regex(fileSystemKeys);
+        return new Criteria().andOperator(Criteria.where(field).exists(true), key);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        migrationExecutor.shutdown();
+    }
+}
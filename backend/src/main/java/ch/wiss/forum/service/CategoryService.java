@@ -4,10 +4,13 @@ import java.time.LocalDateTime;
 import java.util.List;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
+import ch.wiss.forum.config.CacheConfig;
 import ch.wiss.forum.model.Category;
 import ch.wiss.forum.model.Topic;
 import ch.wiss.forum.model.User;
@@ -19,11 +22,13 @@ import ch.wiss.forum.repository.CategoryRepository;
 public class CategoryService {
     
     private final CategoryRepository categoryRepository;
+    private final ResponseCacheService responseCacheService;
     private TopicService topicService;
     
     @Autowired
-    public CategoryService(CategoryRepository categoryRepository) {
+    public CategoryService(CategoryRepository categoryRepository, ResponseCacheService responseCacheService) {
         this.categoryRepository = categoryRepository;
+        this.responseCacheService = responseCacheService;
     }
     
     @Autowired
@@ -31,6 +36,7 @@ public class CategoryService {
         this.topicService = topicService;
     }
     
+    @Cacheable(cacheNames = CacheConfig.CATEGORIES, key = "'all'", sync = true)
     public List<Category> getAllCategories() {
         return categoryRepository.findAllByOrderByOrderAsc();
     }
@@ -45,6 +51,7 @@ public class CategoryService {
                 .orElseThrow(() -> new RuntimeException("Category not found with slug: " + slug));
     }
     
+    @CacheEvict(cacheNames = CacheConfig.CATEGORIES, allEntries = true)
     public Category createCategory(Category category, User currentUser) {
         // set creation metadata
         category.setCreatedAt(LocalDateTime.now());
@@ -68,9 +75,12 @@ public class CategoryService {
             category.setSlug(category.getSlug() + "-" + System.currentTimeMillis());
         }
         
-        return categoryRepository.save(category);
+        Category savedCategory = categoryRepository.save(category);
+        responseCacheService.invalidate(ResponseCacheService.CATEGORIES);
+        return savedCategory;
     }
     
+    @CacheEvict(cacheNames = CacheConfig.CATEGORIES, allEntries = true)
     public Category updateCategory(String id, Category categoryDetails) {
         Category category = getCategoryById(id);
         
@@ -100,9 +110,12 @@ public class CategoryService {
         
         category.setUpdatedAt(LocalDateTime.now());
         
-        return categoryRepository.save(category);
+        Category savedCategory = categoryRepository.save(category);
+        responseCacheService.invalidate(ResponseCacheService.CATEGORIES);
+        return savedCategory;
     }
     
+    @CacheEvict(cacheNames = CacheConfig.CATEGORIES, allEntries = true)
     public void deleteCategory(String id) {
         Category category = getCategoryById(id);
         
@@ -113,8 +126,10 @@ public class CategoryService {
         }
         
         categoryRepository.delete(category);
+        responseCacheService.invalidate(ResponseCacheService.CATEGORIES);
     }
 
+    @Cacheable(cacheNames = CacheConfig.CATEGORIES, key = "#idOrSlug", sync = true)
     public Category getCategoryByIdOrSlug(String idOrSlug) {
         // First, try to find the category by its ID.
         // If that fails, try to find it by its slug.
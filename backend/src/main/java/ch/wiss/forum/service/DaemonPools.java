@@ -0,0 +1,32 @@
+package ch.wiss.forum.service;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * the fixed-size pools of the background jobs and workers. their threads are daemons, a job that is
+ * still running never holds up the shutdown, and the queue is bounded, what happens to work that
+ * doesn't fit is up to the rejection handler of each pool.
+ */
+final class DaemonPools {
+
+    private DaemonPools() {
+    }
+
+    // a single thread is called name, several are numbered name-1, name-2, ...
+    static ExecutorService fixed(int threads, int queueSize, String name, RejectedExecutionHandler rejectionHandler) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(queueSize),
+            runnable -> {
+                Thread thread = new Thread(runnable, threads == 1 ? name : name + "-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            },
+            rejectionHandler);
+    }
+}
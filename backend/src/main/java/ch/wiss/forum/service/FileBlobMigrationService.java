@@ -0,0 +1,145 @@
+package ch.wiss.forum.service;
+
+import java.io.ByteArrayInputStream;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import ch.wiss.forum.model.FileEntity;
+import ch.wiss.forum.model.JobRun;
+import ch.wiss.forum.model.StoredBlob;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * moves the inline data of files uploaded before the blob store into it, while the application runs.
+ * the files document stays where it is and only swaps data for storage_key, so every id and url
+ * keeps working; until a file is migrated it is served from its inline data. the swap is
+ * conditional, a file deleted or migrated elsewhere in the meantime gives its blob reference back.
+ * content that is already stored (the same slides uploaded twice) is shared, see StoredBlobService.
+ */
+@Service
+@Slf4j
+public class FileBlobMigrationService {
+
+    public static final String MIGRATION_JOB = "file-blob-migration";
+
+    private static final Duration LOCK_DURATION = Duration.ofMinutes(10);
+
+    private final MongoTemplate mongoTemplate;
+    private final BlobStore blobStore;
+    private final StoredBlobService storedBlobService;
+    private final JobRunner jobRunner;
+
+    private final int batchSize;
+    private final boolean migrateOnStartup;
+
+    private final ExecutorService migrationExecutor;
+
+    public FileBlobMigrationService(MongoTemplate mongoTemplate, BlobStore blobStore,
+                                    StoredBlobService storedBlobService, JobRunner jobRunner,
+                                    @Value("${app.file-storage.migration-batch-size:20}") int batchSize,
+                                    @Value("${app.file-storage.migrate-on-startup:true}") boolean migrateOnStartup) {
+        this.mongoTemplate = mongoTemplate;
+        this.blobStore = blobStore;
+        this.storedBlobService = storedBlobService;
+        this.jobRunner = jobRunner;
+        this.batchSize = batchSize;
+        this.migrateOnStartup = migrateOnStartup;
+
+        this.migrationExecutor = DaemonPools.fixed(1, 1, "file-blob-migration", new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (migrateOnStartup) {
+            startMigration();
+        }
+    }
+
+    public void startMigration() {
+        migrationExecutor.execute(this::migrate);
+    }
+
+    public Optional<JobRun> migrate() {
+        return jobRunner.runExclusively(MIGRATION_JOB, LOCK_DURATION, this::migrateAll);
+    }
+
+    private long migrateAll(JobRun run) {
+        // only a few documents per cursor batch, every one of them can hold up to 16 MB
+        Query legacy = new Query(Criteria.where("storage_key").exists(false).and("data").exists(true))
+            .cursorBatchSize(batchSize);
+
+        long processed = 0;
+        long migrated = 0;
+        long failed = 0;
+        long bytes = 0;
+
+        try (Stream<FileEntity> files = mongoTemplate.stream(legacy, FileEntity.class)) {
+            var iterator = files.iterator();
+            while (iterator.hasNext()) {
+                FileEntity file = iterator.next();
+                try {
+                    if (migrateFile(file)) {
+                        migrated++;
+                        bytes += file.getData().length;
+                    }
+                } catch (Exception e) {
+                    failed++;
+                    log.warn("Could not migrate file {} to the blob store: {}", file.getId(), e.getMessage());
+                }
+
+                if (++processed % batchSize == 0) {
+                    jobRunner.renewLock(run, LOCK_DURATION);
+                }
+            }
+        }
+
+        run.getDetails().put("bytes", bytes);
+        run.getDetails().put("failed", failed);
+        return migrated;
+    }
+
+    private boolean migrateFile(FileEntity file) throws Exception {
+        String sha256 = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(file.getData()));
+
+        // content that is already stored is shared instead of written again
+        Optional<StoredBlob> existing = storedBlobService.acquire(sha256);
+        StoredBlob blob = existing.isPresent()
+            ? existing.get()
+            : storedBlobService.share(sha256,
+                blobStore.store(new ByteArrayInputStream(file.getData()), file.getFilename(), file.getContentType()),
+                file.getData().length);
+
+        Query unmigrated = new Query(Criteria.where("_id").is(file.getId()).and("storage_key").exists(false));
+        Update update = new Update().set("storage_key", blob.getStorageKey()).set("sha256", sha256).unset("data");
+        if (blob.getContentEncoding() != null) {
+            // the same content was uploaded since and stored compressed
+            update.set("content_encoding", blob.getContentEncoding()).set("stored_size", blob.getStoredSize());
+        }
+        if (mongoTemplate.updateFirst(unmigrated, update, FileEntity.class).getModifiedCount() == 0) {
+            // deleted or migrated by someone else since it was read
+            storedBlobService.release(sha256, blob.getStorageKey());
+            return false;
+        }
+        return true;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        migrationExecutor.shutdown();
+    }
+}
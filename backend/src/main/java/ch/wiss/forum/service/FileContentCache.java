@@ -0,0 +1,275 @@
+package ch.wiss.forum.service;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * contents of small files (avatars, inline images) in two tiers: heap buffers bounded by their total
+ * size, and the shared redis "file-cache" behind them. the buffers stay on the heap so that evicting an
+ * entry actually frees its memory, direct buffers are only released whenever the gc gets to them. a file id never changes
+ * its content, so entries only go away when the budget is full or the file is deleted; deletions are
+ * broadcast to the other nodes. concurrent misses for the same id wait for one load instead of each
+ * reading the blob store. files above max-entry-size are never cached.
+ */
+@Service
+@Slf4j
+public class FileContentCache {
+
+    public static final String CACHE_NAME = "file-cache";
+    public static final String INVALIDATION_CHANNEL = "wiss-forum:file-cache:invalidate";
+
+    @FunctionalInterface
+    public interface ContentLoader {
+        byte[] load() throws IOException;
+    }
+
+    private final ObjectProvider<CacheManager> cacheManager;
+    private final ObjectProvider<StringRedisTemplate> redisTemplate;
+    private final boolean redisEnabled;
+    private final long maxEntrySize;
+
+    private final com.github.benmanes.caffeine.cache.Cache<String, ByteBuffer> local;
+    private final Map<String, CompletableFuture<ByteBuffer>> loading = new ConcurrentHashMap<>();
+
+    // bumped on every eviction, a load that raced with one is not cached
+    private final AtomicLong invalidationEpoch = new AtomicLong();
+
+    // identifies this node so it can ignore its own broadcasts
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final LongAdder localHits = new LongAdder();
+    private final LongAdder sharedHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder tooLarge = new LongAdder();
+    private final LongAdder sharedErrors = new LongAdder();
+
+    public FileContentCache(ObjectProvider<CacheManager> cacheManager,
+                            ObjectProvider<StringRedisTemplate> redisTemplate,
+                            @Value("${app.file-cache.max-bytes:64MB}") DataSize maxBytes,
+                            @Value("${app.file-cache.max-entry-size:256KB}") DataSize maxEntrySize,
+                            @Value("${spring.cache.type:none}") String cacheType) {
+        this.cacheManager = cacheManager;
+        this.redisTemplate = redisTemplate;
+        this.redisEnabled = "redis".equalsIgnoreCase(cacheType);
+        this.maxEntrySize = maxEntrySize.toBytes();
+        this.local = Caffeine.newBuilder()
+            .maximumWeight(maxBytes.toBytes())
+            .weigher((String id, ByteBuffer content) -> content.capacity())
+            .recordStats()
+            .build();
+    }
+
+    // whether a file of this size goes through the cache, the ones turned away are counted
+    public boolean admits(Long size) {
+        if (size != null && size <= maxEntrySize) {
+            return true;
+        }
+        tooLarge.increment();
+        return false;
+    }
+
+    /**
+     * the content of a file, from this node, redis or the loader in that order. only for files the
+     * cache admits, the loader reads the whole content. the buffer is read-only and positioned at 0,
+     * every call gets its own.
+     */
+    public ByteBuffer get(String fileId, ContentLoader loader) throws IOException {
+        ByteBuffer cached = local.getIfPresent(fileId);
+        if (cached != null) {
+            localHits.increment();
+            return cached.asReadOnlyBuffer();
+        }
+
+        CompletableFuture<ByteBuffer> load = new CompletableFuture<>();
+        CompletableFuture<ByteBuffer> running = loading.putIfAbsent(fileId, load);
+        if (running != null) {
+            coalesced.increment();
+            return await(running).asReadOnlyBuffer();
+        }
+
+        try {
+            ByteBuffer content = load(fileId, loader);
+            load.complete(content);
+            return content.asReadOnlyBuffer();
+        } catch (IOException | RuntimeException e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(fileId, load);
+        }
+    }
+
+    // key of the compressed content of a file stored with gzip, next to its decompressed content
+    public static String encodedKey(String fileId) {
+        return fileId + ":gzip";
+    }
+
+    // drop a deleted file (both forms of its content) on this node, in redis and on every other node
+    public void evict(String fileId) {
+        evictLocal(fileId);
+
+        Cache shared = sharedCache();
+        if (shared != null) {
+            try {
+                shared.evict(fileId);
+                shared.evict(encodedKey(fileId));
+            } catch (Exception e) {
+                sharedErrors.increment();
+                log.warn("Could not evict file {} from redis: {}", fileId, e.getMessage());
+            }
+        }
+        broadcast(fileId);
+    }
+
+    public void evictLocal(String fileId) {
+        invalidationEpoch.incrementAndGet();
+        local.invalidate(fileId);
+        local.invalidate(encodedKey(fileId));
+    }
+
+    // handles an eviction broadcast by another node ("<nodeId>|<fileId>")
+    public void onInvalidationMessage(String message) {
+        int separator = message.indexOf('|');
+        if (separator < 0 || nodeId.equals(message.substring(0, separator))) {
+            return;
+        }
+        evictLocal(message.substring(separator + 1));
+    }
+
+    public Map<String, Object> getStats() {
+        CacheStats stats = local.stats();
+        long hits = localHits.sum() + sharedHits.sum();
+        long lookups = hits + misses.sum();
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("entries", local.estimatedSize());
+        result.put("bytes", local.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0L)).orElse(0L));
+        result.put("maxEntrySize", maxEntrySize);
+        result.put("localHits", localHits.sum());
+        result.put("sharedHits", sharedHits.sum());
+        result.put("misses", misses.sum());
+        result.put("hitRate", lookups == 0 ? 0.0 : (double) hits / lookups);
+        result.put("coalescedLoads", coalesced.sum());
+        result.put("tooLarge", tooLarge.sum());
+        result.put("evictions", stats.evictionCount());
+        result.put("evictedBytes", stats.evictionWeight());
+        result.put("sharedTier", redisEnabled);
+        result.put("sharedErrors", sharedErrors.sum());
+        return result;
+    }
+
+    private ByteBuffer load(String fileId, ContentLoader loader) throws IOException {
+        long epoch = invalidationEpoch.get();
+
+        byte[] content = getShared(fileId);
+        if (content != null) {
+            sharedHits.increment();
+        } else {
+            misses.increment();
+            content = loader.load();
+            if (invalidationEpoch.get() == epoch) {
+                putShared(fileId, content);
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(content);
+        local.asMap().compute(fileId, (id, existing) ->
+            // deleted while loading, the content may already be gone for everyone else
+            invalidationEpoch.get() == epoch ? buffer : existing);
+        return buffer;
+    }
+
+    private byte[] getShared(String fileId) {
+        Cache shared = sharedCache();
+        if (shared == null) {
+            return null;
+        }
+        try {
+            return shared.get(fileId, byte[].class);
+        } catch (Exception e) {
+            // redis being down only costs the shared tier
+            sharedErrors.increment();
+            log.debug("Could not read file {} from redis: {}", fileId, e.getMessage());
+            return null;
+        }
+    }
+
+    private void putShared(String fileId, byte[] content) {
+        Cache shared = sharedCache();
+        if (shared == null) {
+            return;
+        }
+        try {
+            shared.put(fileId, content);
+        } catch (Exception e) {
+            sharedErrors.increment();
+            log.debug("Could not write file {} to redis: {}", fileId, e.getMessage());
+        }
+    }
+
+    private Cache sharedCache() {
+        if (!redisEnabled) {
+            return null;
+        }
+        CacheManager manager = cacheManager.getIfAvailable();
+        return manager != null ? manager.getCache(CACHE_NAME) : null;
+    }
+
+    private void broadcast(String fileId) {
+        if (!redisEnabled) {
+            return;
+        }
+
+        StringRedisTemplate template = redisTemplate.getIfAvailable();
+        if (template == null) {
+            return;
+        }
+
+        try {
+            template.convertAndSend(INVALIDATION_CHANNEL, nodeId + "|" + fileId);
+        } catch (Exception e) {
+            // other nodes keep serving the deleted content until it is evicted by size
+            log.warn("Could not broadcast file cache eviction for {}: {}", fileId, e.getMessage());
+        }
+    }
+
+    private static ByteBuffer await(CompletableFuture<ByteBuffer> load) throws IOException {
+        try {
+            return load.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a file load");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package ch.wiss.forum.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import ch.wiss.forum.model.FileEntity;
+import ch.wiss.forum.model.FileVariant;
+import ch.wiss.forum.model.JobRun;
+import ch.wiss.forum.model.StoredBlob;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * mark and sweep for uploaded files nothing points at any more (replaced avatars, edited or deleted
+ * posts). mark collects every file id referenced by a file url in user avatars and bios, topics and
+ * posts; sweep deletes the files older than the grace period that weren't marked, batch by batch with
+ * a pause in between. a candidate batch is checked against the content once more right before it is
+ * deleted, so a reference added while the job ran still saves it. afterwards the stored blobs no record
+ * points at (left behind by crashes between a record and its blob) are deleted too.
+ * a dry run only reports what would be reclaimed.
+ */
+@Service
+@Slf4j
+public class FileGarbageCollectionService {
+
+    public static final String GC_JOB = "file-gc";
+
+    private static final Duration LOCK_DURATION = Duration.ofMinutes(30);
+
+    // urls made by FileStorageService.generateFileUrl, whatever the configured host
+    private static final Pattern FILE_REFERENCE = Pattern.compile("files/([0-9a-fA-F]{24})");
+
+    // where file urls end up, by collection
+    private static final Map<String, List<String>> REFERENCING_FIELDS = Map.of(
+        "users", List.of("avatar", "bio"),
+        "topics", List.of("content"),
+        "posts", List.of("content"));
+
+    private final MongoTemplate mongoTemplate;
+    private final FileStorageService fileStorageService;
+    private final BlobStore blobStore;
+    private final JobRunner jobRunner;
+
+    private final boolean scheduledApply;
+    private final Duration grace;
+    private final int batchSize;
+    private final long pauseMs;
+    private final int reportLimit;
+
+    private final ExecutorService gcExecutor;
+
+    public FileGarbageCollectionService(MongoTemplate mongoTemplate, FileStorageService fileStorageService,
+                                        BlobStore blobStore, JobRunner jobRunner,
+                                        @Value("${app.file-gc.apply:false}") boolean scheduledApply,
+                                        @Value("${app.file-gc.grace:7d}") Duration grace,
+                                        @Value("${app.file-gc.batch-size:200}") int batchSize,
+                                        @Value("${app.file-gc.pause-ms:100}") long pauseMs,
+                                        @Value("${app.file-gc.report-limit:200}") int reportLimit) {
+        this.mongoTemplate = mongoTemplate;
+        this.fileStorageService = fileStorageService;
+        this.blobStore = blobStore;
+        this.jobRunner = jobRunner;
+        this.scheduledApply = scheduledApply;
+        this.grace = grace;
+        this.batchSize = batchSize;
+        this.pauseMs = pauseMs;
+        this.reportLimit = reportLimit;
+
+        this.gcExecutor = DaemonPools.fixed(1, 1, "file-gc", new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    // nightly, only reports unless app.file-gc.apply is set
+    @Scheduled(cron = "${app.file-gc.cron:0 30 3 * * *}")
+    public void scheduledCollection() {
+        collect(scheduledApply);
+    }
+
+    public void startCollection(boolean apply) {
+        gcExecutor.execute(() -> collect(apply));
+    }
+
+    public Optional<JobRun> collect(boolean apply) {
+        return jobRunner.runExclusively(GC_JOB, LOCK_DURATION, run -> collectAll(run, apply));
+    }
+
+    private long collectAll(JobRun run, boolean apply) throws Exception {
+        LocalDateTime cutoff = LocalDateTime.now().minus(grace);
+
+        Set<String> referenced = markReferencedFiles();
+
+        SweepResult files = sweepFiles(run, referenced, cutoff, apply);
+        SweepResult blobs = sweepBlobs(run, cutoff.atZone(ZoneId.systemDefault()).toInstant(), apply);
+
+        run.getDetails().put("mode", apply ? "apply" : "dry-run");
+        run.getDetails().put("cutoff", cutoff.toString());
+        run.getDetails().put("referencedFiles", referenced.size());
+        run.getDetails().put("unreferencedFiles", files.count);
+        run.getDetails().put("reclaimedFileBytes", files.bytes);
+        run.getDetails().put("orphanedBlobs", blobs.count);
+        run.getDetails().put("reclaimedBlobBytes", blobs.bytes);
+        run.getDetails().put("files", files.report);
+        run.getDetails().put("blobs", blobs.report);
+        return apply ? files.count + blobs.count : 0;
+    }
+
+    private Set<String> markReferencedFiles() {
+        Set<String> referenced = new HashSet<>();
+        REFERENCING_FIELDS.forEach((collection, fields) -> {
+            Query query = new Query(new Criteria().orOperator(fields.stream()
+                .map(field -> Criteria.where(field).regex(FILE_REFERENCE.pattern()))
+                .toArray(Criteria[]::new)));
+            fields.forEach(field -> query.fields().include(field));
+
+            try (Stream<Document> documents = mongoTemplate.stream(query, Document.class, collection)) {
+                documents.forEach(document -> fields.forEach(field -> collectIds(document.get(field), referenced)));
+            }
+        });
+        return referenced;
+    }
+
+    private SweepResult sweepFiles(JobRun run, Set<String> referenced, LocalDateTime cutoff, boolean apply) throws InterruptedException {
+        SweepResult result = new SweepResult();
+
+        // files without an upload date are from before it was recorded, so older than any grace period
+        Query old = new Query(Criteria.where("uploaded_at").not().gte(cutoff));
+        old.fields().include("_id").include("original_name").include("size").include("uploaded_by").include("uploaded_at");
+
+        List<FileEntity> batch = new ArrayList<>();
+        try (Stream<FileEntity> files = mongoTemplate.stream(old, FileEntity.class)) {
+            var iterator = files.iterator();
+            while (iterator.hasNext()) {
+                FileEntity file = iterator.next();
+                if (referenced.contains(file.getId())) {
+                    continue;
+                }
+                batch.add(file);
+                if (batch.size() == batchSize) {
+                    sweepBatch(run, batch, apply, result);
+                    batch.clear();
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            sweepBatch(run, batch, apply, result);
+        }
+        return result;
+    }
+
+    private void sweepBatch(JobRun run, List<FileEntity> batch, boolean apply, SweepResult result) throws InterruptedException {
+        Set<String> referencedNow = findReferences(batch.stream().map(FileEntity::getId).collect(Collectors.toSet()));
+
+        for (FileEntity file : batch) {
+            if (referencedNow.contains(file.getId())) {
+                continue;
+            }
+            if (apply) {
+                fileStorageService.deleteFile(file.getId());
+            }
+
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("id", file.getId());
+            entry.put("name", file.getOriginalName());
+            entry.put("size", file.getSize());
+            entry.put("uploadedBy", file.getUploadedBy());
+            entry.put("uploadedAt", file.getUploadedAt() != null ? file.getUploadedAt().toString() : null);
+            result.record(file.getSize() != null ? file.getSize() : 0L, entry, reportLimit);
+        }
+
+        jobRunner.renewLock(run, LOCK_DURATION);
+        if (apply) {
+            Thread.sleep(pauseMs);
+        }
+    }
+
+    // which of the candidates are referenced right now, one query per collection
+    private Set<String> findReferences(Set<String> candidates) {
+        Pattern anyCandidate = Pattern.compile("files/(" + String.join("|", candidates) + ")", Pattern.CASE_INSENSITIVE);
+        Set<String> found = new HashSet<>();
+        REFERENCING_FIELDS.forEach((collection, fields) -> {
+            Query query = new Query(new Criteria().orOperator(fields.stream()
+                .map(field -> Criteria.where(field).regex(anyCandidate))
+                .toArray(Criteria[]::new)));
+            fields.forEach(field -> query.fields().include(field));
+
+            for (Document document : mongoTemplate.find(query, Document.class, collection)) {
+                fields.forEach(field -> collectIds(document.get(field), found));
+            }
+        });
+        found.retainAll(candidates);
+        return found;
+    }
+
+    // blobs older than the cutoff that no file, shared blob or variant record points at
+    private SweepResult sweepBlobs(JobRun run, Instant cutoff, boolean apply) throws Exception {
+        Set<String> keys = new HashSet<>();
+        collectKeys(FileEntity.class, "storage_key", keys);
+        collectKeys(StoredBlob.class, "storageKey", keys);
+        collectKeys(FileVariant.class, "storageKey", keys);
+
+        SweepResult result = new SweepResult();
+        long processed = 0;
+        try (Stream<BlobStore.Blob> stored = blobStore.listOlderThan(cutoff)) {
+            var iterator = stored.iterator();
+            while (iterator.hasNext()) {
+                BlobStore.Blob blob = iterator.next();
+                if (keys.contains(blob.key())) {
+                    continue;
+                }
+                if (apply) {
+                    blobStore.delete(blob.key());
+                }
+
+                Map<String, Object> entry = new HashMap<>();
+                entry.put("key", blob.key());
+                entry.put("size", blob.size());
+                result.record(blob.size(), entry, reportLimit);
+
+                if (++processed % batchSize == 0) {
+                    jobRunner.renewLock(run, LOCK_DURATION);
+                    if (apply) {
+                        Thread.sleep(pauseMs);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private void collectKeys(Class<?> type, String field, Set<String> keys) {
+        Query query = new Query(Criteria.where(field).exists(true));
+        query.fields().include(field);
+        try (Stream<Document> documents = mongoTemplate.stream(query, Document.class, mongoTemplate.getCollectionName(type))) {
+            documents.forEach(document -> keys.add(document.getString(field)));
+        }
+    }
+
+    private static void collectIds(Object value, Set<String> ids) {
+        if (value instanceof String text) {
+            Matcher matcher = FILE_REFERENCE.matcher(text);
+            while (matcher.find()) {
+                ids.add(matcher.group(1).toLowerCase());
+            }
+        }
+    }
+
+    private static class SweepResult {
+        long count;
+        long bytes;
+        final List<Map<String, Object>> report = new ArrayList<>();
+
+        void record(long size, Map<String, Object> entry, int reportLimit) {
+            count++;
+            bytes += size;
+            if (report.size() < reportLimit) {
+                report.add(entry);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        gcExecutor.shutdown();
+    }
+}
@@ -1,33 +1,90 @@
 package ch.wiss.forum.service;
 
 import ch.wiss.forum.model.FileEntity;
+import ch.wiss.forum.model.FileVariant;
+import ch.wiss.forum.model.StoredBlob;
 import ch.wiss.forum.repository.FileRepository;
+import ch.wiss.forum.repository.FileVariantRepository;
+import ch.wiss.forum.util.GzipCompressingInputStream;
+import ch.wiss.forum.util.SizeLimitedInputStream;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.zip.GZIPInputStream;
 
 @Service
 @Slf4j
 @RequiredArgsConstructor
 public class FileStorageService {
 
+    public static final String GZIP = "gzip";
+
     private final FileRepository fileRepository;
+    private final FileVariantRepository fileVariantRepository;
+    private final BlobStore blobStore;
+    private final StoredBlobService storedBlobService;
+    private final FileContentCache fileContentCache;
+    private final StorageQuotaService storageQuotaService;
 
     @Value("${app.file-storage.base-url:http://localhost:8080/api/files}")
     private String baseUrl;
 
+    @Value("${app.file-storage.max-file-size:10MB}")
+    private DataSize maxFileSize;
+
+    @Value("${app.file-storage.compression.enabled:true}")
+    private boolean compressionEnabled;
+
+    @Value("${app.file-storage.compression.types:text/plain}")
+    private List<String> compressibleTypes;
+
+    // compression that saves less than this share of the size is undone
+    @Value("${app.file-storage.compression.min-savings:0.1}")
+    private double compressionMinSavings;
+
     public String storeFile(MultipartFile file, String userId) {
+        try (InputStream content = file.getInputStream()) {
+            return storeFile(content, file.getOriginalFilename(), file.getContentType(), userId).getId();
+        } catch (IOException ex) {
+            throw new RuntimeException("Could not store file " + file.getOriginalFilename() + ". Please try again!", ex);
+        }
+    }
+    
+    /**
+     * pipes the content into the blob store chunk by chunk, hashing it (SHA-256) and counting its size
+     * on the way. passing the size limit aborts the upload right there with a SizeLimitExceededException
+     * and nothing is stored, passing the remaining quota the same way with a QuotaExceededException. compressible types are gzipped on the way, hash and size stay the ones of
+     * the original.
+     */
+    public FileEntity storeFile(InputStream content, String originalName, String contentType, String userId) {
         // Normalize file name
-        String originalFilename = StringUtils.cleanPath(file.getOriginalFilename() != null ? file.getOriginalFilename() : "unknown");
+        String originalFilename = StringUtils.cleanPath(originalName != null ? originalName : "unknown");
         
         try {
             // Check if the file's name contains invalid characters
@@ -46,31 +103,163 @@ public class FileStorageService {
             String uniqueId = UUID.randomUUID().toString().substring(0, 8);
             String fileName = String.format("%s_%s_%s%s", userId, timestamp, uniqueId, fileExtension);
 
-            // Read file data
-            byte[] fileData = file.getBytes();
+            // a full quota is refused before a single byte is read, a nearly full one ends the upload
+            // where the quota runs out instead of after the whole file was stored
+            long remaining = storageQuotaService.remaining(userId);
+            if (remaining == 0) {
+                throw new StorageQuotaService.QuotaExceededException(storageQuotaService.getQuota());
+            }
+            long limit = Math.min(maxFileSize.toBytes(), remaining);
+
+            // the size and hash come from the bytes actually read, not from what the client declared
+            SizeLimitedInputStream limited = new SizeLimitedInputStream(content, limit);
+            DigestInputStream digest = new DigestInputStream(limited, MessageDigest.getInstance("SHA-256"));
+            GzipCompressingInputStream compressed = isCompressible(contentType) ? new GzipCompressingInputStream(digest) : null;
+            String storageKey;
+            try {
+                storageKey = blobStore.store(compressed != null ? compressed : digest, fileName, contentType);
+            } catch (SizeLimitedInputStream.SizeLimitExceededException e) {
+                if (limit < maxFileSize.toBytes()) {
+                    throw new StorageQuotaService.QuotaExceededException(storageQuotaService.getQuota());
+                }
+                throw e;
+            }
+            String sha256 = HexFormat.of().formatHex(digest.getMessageDigest().digest());
+            
+            String contentEncoding = null;
+            Long storedSize = null;
+            if (compressed != null) {
+                if (compressed.getCount() <= limited.getCount() * (1 - compressionMinSavings)) {
+                    contentEncoding = GZIP;
+                    storedSize = compressed.getCount();
+                } else {
+                    storageKey = storeUncompressed(storageKey, fileName, contentType);
+                }
+            }
+            
+            // content that is already stored is shared, the copy just written is dropped again
+            StoredBlob blob = storedBlobService.share(sha256, storageKey, limited.getCount(), contentEncoding, storedSize);
             
             // Create FileEntity and save to database
             FileEntity fileEntity = new FileEntity(
                 fileName,
                 originalFilename,
-                file.getContentType(),
-                file.getSize(),
-                fileData,
+                contentType,
+                limited.getCount(),
+                null,
                 userId
             );
+            fileEntity.setStorageKey(blob.getStorageKey());
+            fileEntity.setSha256(sha256);
+            fileEntity.setContentEncoding(blob.getContentEncoding());
+            fileEntity.setStoredSize(blob.getStoredSize());
+            chargeOrRelease(fileEntity);
             
-            FileEntity savedFile = fileRepository.save(fileEntity);
+            FileEntity savedFile = saveOrRelease(fileEntity);
             
             log.info("File stored successfully in database: {} (ID: {})", originalFilename, savedFile.getId());
-            return savedFile.getId(); // Return the database ID instead of file path
+            return savedFile;
             
-        } catch (IOException ex) {
+        } catch (IOException | NoSuchAlgorithmException ex) {
             throw new RuntimeException("Could not store file " + originalFilename + ". Please try again!", ex);
         }
     }
 
+    /**
+     * a new file record for content that is already stored, without uploading it again.
+     * empty if no content with this hash exists, the client then uploads it normally.
+     */
+    public Optional<FileEntity> storeFileByHash(String sha256, String originalName, String contentType, String userId) {
+        String originalFilename = StringUtils.cleanPath(originalName != null ? originalName : "unknown");
+        if (originalFilename.contains("..")) {
+            throw new RuntimeException("Sorry! Filename contains invalid path sequence " + originalFilename);
+        }
+        
+        return storedBlobService.acquire(sha256.toLowerCase()).map(blob -> {
+            String fileExtension = "";
+            int dotIndex = originalFilename.lastIndexOf('.');
+            if (dotIndex > 0) {
+                fileExtension = originalFilename.substring(dotIndex);
+            }
+            
+            String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
+            String uniqueId = UUID.randomUUID().toString().substring(0, 8);
+            String fileName = String.format("%s_%s_%s%s", userId, timestamp, uniqueId, fileExtension);
+            
+            FileEntity fileEntity = new FileEntity(fileName, originalFilename, contentType, blob.getSize(), null, userId);
+            fileEntity.setStorageKey(blob.getStorageKey());
+            fileEntity.setSha256(blob.getId());
+            fileEntity.setContentEncoding(blob.getContentEncoding());
+            fileEntity.setStoredSize(blob.getStoredSize());
+            chargeOrRelease(fileEntity);
+            
+            FileEntity savedFile = saveOrRelease(fileEntity);
+            log.info("File stored by hash without upload: {} (ID: {})", originalFilename, savedFile.getId());
+            return savedFile;
+        });
+    }
+    
+    public Map<String, Object> getStorageStats() {
+        return storedBlobService.getStats();
+    }
+    
+    // metadata only, the content is opened with loadContent
     public Optional<FileEntity> getFile(String fileId) {
-        return fileRepository.findById(fileId);
+        return fileRepository.findMetadataById(fileId);
+    }
+    
+    /**
+     * the content as a resource that opens a new stream on every read, so it can be written
+     * straight to the response and Spring can serve byte ranges from it.
+     */
+    public Resource loadContent(FileEntity file) {
+        return new FileContentResource(file.getId(), file.getSize(), file.getOriginalName(), () -> openContent(file));
+    }
+    
+    /**
+     * the content as stored, for files that are stored compressed: the gzip bytes that are sent with
+     * Content-Encoding to clients accepting it, without decompressing them on the way.
+     */
+    public Resource loadEncodedContent(FileEntity file) {
+        return new FileContentResource(FileContentCache.encodedKey(file.getId()), file.getStoredSize(), file.getOriginalName(),
+            () -> blobStore.open(file.getStorageKey(), 0));
+    }
+    
+    public Resource loadVariant(FileVariant variant) {
+        return new FileContentResource(variant.getId(), variant.getLength(), null,
+            () -> blobStore.open(variant.getStorageKey(), 0));
+    }
+    
+    // the file holding the content when it is on this node's disk, it can be sent with sendfile then
+    public Optional<Path> localPath(FileEntity file) {
+        return file.getStorageKey() != null ? blobStore.localPath(file.getStorageKey()) : Optional.empty();
+    }
+    
+    private InputStream openContent(FileEntity file) throws IOException {
+        if (file.getStorageKey() != null) {
+            InputStream stored = blobStore.open(file.getStorageKey(), 0);
+            // decompressed as it is read, for clients that don't accept gzip and for ranges
+            return GZIP.equals(file.getContentEncoding()) ? new GZIPInputStream(stored, 8192) : stored;
+        }
+        
+        // not migrated yet, the content is still inline in the document
+        byte[] data = fileRepository.findById(file.getId())
+            .map(FileEntity::getData)
+            .orElseThrow(() -> new FileNotFoundException("File not found: " + file.getId()));
+        return new ByteArrayInputStream(data);
+    }
+    
+    // a user's files without their content, newest first
+    public Page<FileEntity> getFilesByUser(String userId, int page, int size) {
+        return fileRepository.findByUploadedBy(userId, PageRequest.of(page, size, Sort.by(Sort.Direction.DESC, "uploadedAt")));
+    }
+    
+    public Map<String, Object> getStorageUsage(String userId) {
+        return storageQuotaService.getUsage(userId);
+    }
+    
+    public long getRemainingQuota(String userId) {
+        return storageQuotaService.remaining(userId);
     }
     
     public Optional<FileEntity> getFileByFilename(String filename) {
@@ -79,7 +268,17 @@ public class FileStorageService {
 
     public void deleteFile(String fileId) {
         try {
-            fileRepository.deleteById(fileId);
+            Optional<FileEntity> file = fileRepository.findMetadataById(fileId);
+            if (file.isEmpty() || fileRepository.removeById(fileId) == 0) {
+                // deleted concurrently, that deletion releases the content
+                return;
+            }
+            fileContentCache.evict(fileId);
+            
+            // the document goes first, a crash in between leaves an unreferenced blob rather than a broken file
+            releaseContent(file.get());
+            storageQuotaService.refund(file.get().getUploadedBy(), file.get().getSize() != null ? file.get().getSize() : 0L);
+            deleteVariants(fileId);
             log.info("File deleted from database: {}", fileId);
         } catch (Exception ex) {
             log.error("Could not delete file: {}", fileId, ex);
@@ -103,7 +302,7 @@ public class FileStorageService {
 
     public long getFileSize(String fileId) {
         try {
-            Optional<FileEntity> file = fileRepository.findById(fileId);
+            Optional<FileEntity> file = fileRepository.findMetadataById(fileId);
             return file.map(FileEntity::getSize).orElse(0L);
         } catch (Exception ex) {
             return 0;
@@ -135,17 +334,25 @@ public class FileStorageService {
             String uniqueId = UUID.randomUUID().toString().substring(0, 8);
             String fileName = String.format("migrated_%s_%s_%s%s", userId, timestamp, uniqueId, fileExtension);
 
+            String sha256 = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(decodedBytes));
+            StoredBlob blob = storedBlobService.acquire(sha256).orElseGet(() -> storeShared(decodedBytes, sha256, fileName, mimeType));
+            
             // Create FileEntity and save to database
             FileEntity fileEntity = new FileEntity(
                 fileName,
                 "migrated_file" + fileExtension,
                 mimeType,
                 (long) decodedBytes.length,
-                decodedBytes,
+                null,
                 userId
             );
+            fileEntity.setStorageKey(blob.getStorageKey());
+            fileEntity.setSha256(sha256);
+            fileEntity.setContentEncoding(blob.getContentEncoding());
+            fileEntity.setStoredSize(blob.getStoredSize());
+            storageQuotaService.forceCharge(userId, decodedBytes.length);
             
-            FileEntity savedFile = fileRepository.save(fileEntity);
+            FileEntity savedFile = saveOrRelease(fileEntity);
             
             log.info("Migrated base64 data to database: {}", savedFile.getId());
             return generateFileUrl(savedFile.getId());
@@ -155,4 +362,119 @@ public class FileStorageService {
             return base64Data; // Return original on failure
         }
     }
-} 
\ No newline at end of file
+
+    private StoredBlob storeShared(byte[] content, String sha256, String fileName, String contentType) {
+        try {
+            String storageKey = blobStore.store(new ByteArrayInputStream(content), fileName, contentType);
+            return storedBlobService.share(sha256, storageKey, content.length);
+        } catch (IOException ex) {
+            throw new RuntimeException("Could not store file " + fileName, ex);
+        }
+    }
+    
+    private boolean isCompressible(String contentType) {
+        if (!compressionEnabled || contentType == null) {
+            return false;
+        }
+        String baseType = contentType.split(";")[0].trim().toLowerCase();
+        return compressibleTypes.contains(baseType);
+    }
+    
+    // compression that didn't pay off (content that is compressed already) is undone, the raw copy is kept
+    private String storeUncompressed(String compressedKey, String fileName, String contentType) throws IOException {
+        try (InputStream original = new GZIPInputStream(blobStore.open(compressedKey, 0), 8192)) {
+            return blobStore.store(original, fileName, contentType);
+        } finally {
+            blobStore.delete(compressedKey);
+        }
+    }
+    
+    private void chargeOrRelease(FileEntity fileEntity) {
+        if (!storageQuotaService.tryCharge(fileEntity.getUploadedBy(), fileEntity.getSize())) {
+            releaseContent(fileEntity);
+            throw new StorageQuotaService.QuotaExceededException(storageQuotaService.getQuota());
+        }
+    }
+    
+    // the file was charged to its uploader, a failed save gives the bytes back
+    private FileEntity saveOrRelease(FileEntity fileEntity) {
+        try {
+            return fileRepository.save(fileEntity);
+        } catch (RuntimeException e) {
+            releaseContent(fileEntity);
+            storageQuotaService.refund(fileEntity.getUploadedBy(), fileEntity.getSize());
+            throw e;
+        }
+    }
+    
+    // shared content drops a reference, files from before deduplication own their blob
+    private void releaseContent(FileEntity file) {
+        if (file.getStorageKey() != null && !storedBlobService.release(file.getSha256(), file.getStorageKey())) {
+            blobStore.delete(file.getStorageKey());
+        }
+    }
+    
+    // resized copies of an image, each owns its blob
+    private void deleteVariants(String fileId) {
+        List<FileVariant> variants = fileVariantRepository.findByFileId(fileId);
+        fileVariantRepository.deleteAll(variants);
+        for (FileVariant variant : variants) {
+            fileContentCache.evict(variant.getId());
+            blobStore.delete(variant.getStorageKey());
+        }
+    }
+    
+    @FunctionalInterface
+    private interface ContentOpener {
+        InputStream open() throws IOException;
+    }
+    
+    private class FileContentResource extends AbstractResource {
+        
+        // id in the content cache, unique per stored content
+        private final String cacheKey;
+        private final Long length;
+        private final String filename;
+        private final ContentOpener opener;
+        
+        FileContentResource(String cacheKey, Long length, String filename, ContentOpener opener) {
+            this.cacheKey = cacheKey;
+            this.length = length;
+            this.filename = filename;
+            this.opener = opener;
+        }
+        
+        @Override
+        public boolean exists() {
+            // the metadata was found, checking by opening a stream would read the first chunk for nothing
+            return true;
+        }
+        
+        @Override
+        public long contentLength() {
+            return length != null ? length : 0L;
+        }
+        
+        @Override
+        public String getFilename() {
+            return filename;
+        }
+        
+        @Override
+        public InputStream getInputStream() throws IOException {
+            if (fileContentCache.admits(length)) {
+                return new ByteBufferBackedInputStream(fileContentCache.get(cacheKey, () -> {
+                    try (InputStream content = opener.open()) {
+                        return content.readAllBytes();
+                    }
+                }));
+            }
+            return opener.open();
+        }
+        
+        @Override
+        public String getDescription() {
+            return "file content [" + cacheKey + "]";
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package ch.wiss.forum.service;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * blobs as plain files below a local directory, for nodes that serve files from disk with sendfile.
+ * a blob id is 32 hex digits and lives at root/ab/cd/abcd..., so no directory grows past 256 entries
+ * per level. content is written to a temporary file next to its target and moved into place, a blob
+ * is either complete or not there. keys carry the "fs:" prefix so they can't be confused with GridFS keys.
+ */
+@Service
+@Slf4j
+public class FileSystemBlobStore implements BlobStore {
+
+    public static final String KEY_PREFIX = "fs:";
+
+    private static final Pattern BLOB_ID = Pattern.compile("[0-9a-f]{32}");
+
+    private final Path root;
+
+    public FileSystemBlobStore(@Value("${app.file-storage.local.root:data/blobs}") String root) {
+        this.root = Paths.get(root).toAbsolutePath().normalize();
+    }
+
+    public boolean owns(String key) {
+        return key != null && key.startsWith(KEY_PREFIX);
+    }
+
+    @Override
+    public String store(InputStream content, String filename, String contentType) throws IOException {
+        String id = UUID.randomUUID().toString().replace("-", "");
+        Path target = pathOf(id);
+        Files.createDirectories(target.getParent());
+
+        Path partial = Files.createTempFile(target.getParent(), id, ".part");
+        try {
+            Files.copy(content, partial, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(partial, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(partial);
+            throw e;
+        }
+        return KEY_PREFIX + id;
+    }
+
+    @Override
+    public InputStream open(String key, long offset) throws IOException {
+        Path path = localPath(key).orElseThrow(() -> new FileNotFoundException("Not a file system blob key: " + key));
+        try {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+            channel.position(offset);
+            return Channels.newInputStream(channel);
+        } catch (NoSuchFileException e) {
+            throw new FileNotFoundException("Blob not found: " + key);
+        }
+    }
+
+    @Override
+    public void delete(String key) {
+        localPath(key).ifPresent(path -> {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                log.warn("Could not delete blob {}: {}", key, e.getMessage());
+            }
+        });
+    }
+
+    @Override
+    public Stream<Blob> listOlderThan(Instant cutoff) throws IOException {
+        if (!Files.isDirectory(root)) {
+            return Stream.empty();
+        }
+        FileTime limit = FileTime.from(cutoff);
+        // root/ab/cd/<id>, partial files of interrupted writes don't match an id and are left alone
+        return Files.walk(root, 3)
+            .filter(path -> BLOB_ID.matcher(path.getFileName().toString()).matches())
+            .map(path -> {
+                try {
+                    BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                    return attributes.isRegularFile() && attributes.lastModifiedTime().compareTo(limit) < 0
+                        ? new Blob(KEY_PREFIX + path.getFileName(), attributes.size())
+                        : null;
+                } catch (IOException e) {
+                    // deleted while listing
+                    return null;
+                }
+            })
+            .filter(Objects::nonNull);
+    }
+
+    @Override
+    public Optional<Path> localPath(String key) {
+        if (!owns(key)) {
+            return Optional.empty();
+        }
+        // only well-formed ids, a key must never point outside the root
+        String id = key.substring(KEY_PREFIX.length());
+        return BLOB_ID.matcher(id).matches() ? Optional.of(pathOf(id)) : Optional.empty();
+    }
+
+    private Path pathOf(String id) {
+        return root.resolve(id.substring(0, 2)).resolve(id.substring(2, 4)).resolve(id);
+    }
+}
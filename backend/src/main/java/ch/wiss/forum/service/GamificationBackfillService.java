@@ -0,0 +1,321 @@
+package ch.wiss.forum.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import com.mongodb.DBRef;
+
+import ch.wiss.forum.model.JobRun;
+import ch.wiss.forum.model.ScoreEvent;
+import ch.wiss.forum.model.User;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * recomputes every user's counters from the topics and posts that actually exist and corrects
+ * the drift (deleted content that was never subtracted, likes taken back that never existed).
+ * the users are split into id ranges of about equal size (see UserIdRanges), each range aggregates its authors' topics and posts
+ * on a worker thread and compares them with the stored counters. corrections are $inc deltas in
+ * throttled unordered bulk writes, guarded like the replay: users that scored after the run started
+ * are left for the next run. the streak bonuses cannot be recomputed, whatever the stored score
+ * has on top of its counters is kept. a dry run only reports the diff.
+ */
+@Service
+@Slf4j
+public class GamificationBackfillService {
+
+    public static final String BACKFILL_JOB = "gamification-backfill";
+
+    private static final int PARTITIONS = 16;
+
+    private final MongoTemplate mongoTemplate;
+    private final GamificationService gamificationService;
+    private final ScoreLedgerService scoreLedgerService;
+    private final UserCacheService userCacheService;
+    private final JobRunner jobRunner;
+
+    private final int batchSize;
+    private final long pauseMs;
+    private final int reportLimit;
+
+    private final ExecutorService triggerExecutor;
+    private final ExecutorService partitionExecutor;
+
+    public GamificationBackfillService(MongoTemplate mongoTemplate, GamificationService gamificationService,
+                                       ScoreLedgerService scoreLedgerService, UserCacheService userCacheService,
+                                       JobRunner jobRunner,
+                                       @Value("${app.gamification-backfill.threads:4}") int threads,
+                                       @Value("${app.gamification-backfill.batch-size:500}") int batchSize,
+                                       @Value("${app.gamification-backfill.pause-ms:100}") long pauseMs,
+                                       @Value("${app.gamification-backfill.report-limit:200}") int reportLimit) {
+        this.mongoTemplate = mongoTemplate;
+        this.gamificationService = gamificationService;
+        this.scoreLedgerService = scoreLedgerService;
+        this.userCacheService = userCacheService;
+        this.jobRunner = jobRunner;
+        this.batchSize = batchSize;
+        this.pauseMs = pauseMs;
+        this.reportLimit = reportLimit;
+
+        this.triggerExecutor = DaemonPools.fixed(1, 1, "gamification-backfill", new ThreadPoolExecutor.DiscardPolicy());
+        this.partitionExecutor = DaemonPools.fixed(threads, 64, "gamification-backfill-partition", new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    // start a backfill in the background, the diff report ends up in job_runs
+    public void startBackfill(boolean apply) {
+        triggerExecutor.execute(() -> backfill(apply));
+    }
+
+    public Optional<JobRun> backfill(boolean apply) {
+        return jobRunner.runExclusively(BACKFILL_JOB, Duration.ofHours(1), run -> backfillAll(run, apply));
+    }
+
+    private long backfillAll(JobRun run, boolean apply) throws Exception {
+        LocalDateTime cutoff = LocalDateTime.now();
+
+        List<Future<PartitionResult>> futures = new ArrayList<>();
+        for (UserIdRanges.Range range : UserIdRanges.split(mongoTemplate, PARTITIONS)) {
+            futures.add(partitionExecutor.submit(() -> backfillPartition(run.getId(), range, cutoff, apply)));
+        }
+
+        PartitionResult total = new PartitionResult();
+        for (Future<PartitionResult> future : futures) {
+            total.add(future.get(), reportLimit);
+        }
+
+        if (apply && total.corrected > 0) {
+            // the bulk writes bypass the repository events
+            userCacheService.evictAll();
+        }
+
+        run.getDetails().put("mode", apply ? "apply" : "dry-run");
+        run.getDetails().put("cutoff", cutoff.toString());
+        run.getDetails().put("users", total.users);
+        run.getDetails().put("drifted", total.drifted);
+        run.getDetails().put("skippedUsers", total.skipped);
+        run.getDetails().put("deltas", total.deltas);
+        run.getDetails().put("diff", total.diff);
+        return total.corrected;
+    }
+
+    private PartitionResult backfillPartition(String runId, UserIdRanges.Range range, LocalDateTime cutoff, boolean apply) throws InterruptedException {
+        PartitionResult result = new PartitionResult();
+
+        Map<String, Integer> topics = new HashMap<>();
+        aggregateByAuthor("topics", range, new Document("topics", new Document("$sum", 1)))
+            .forEach((userId, counts) -> topics.put(userId, counts.getInteger("topics", 0)));
+
+        Map<String, Document> posts = aggregateByAuthor("posts", range, new Document("posts", new Document("$sum", 1))
+            .append("likes", new Document("$sum", new Document("$size", new Document("$ifNull", List.of("$likes", List.of()))))));
+
+        Query query = new Query(range.onObjectIds("_id")
+            .orOperator(Criteria.where("scoredAt").is(null), Criteria.where("scoredAt").lte(cutoff)));
+        query.fields().include("username", "totalScore", "level", "topicsCreated", "postsCreated", "likesReceived",
+            "currentStreak", "longestStreak", "lastActivityDate", "badges", "achievements", "scoredAt");
+        query.cursorBatchSize(batchSize);
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, User.class);
+        List<ScoreEvent> pending = new ArrayList<>();
+
+        try (Stream<User> users = mongoTemplate.stream(query, User.class)) {
+            var iterator = users.iterator();
+            while (iterator.hasNext()) {
+                User user = iterator.next();
+                result.users++;
+
+                Document postCounts = posts.getOrDefault(user.getId(), new Document());
+                int topicsCreated = topics.getOrDefault(user.getId(), 0);
+                int postsCreated = postCounts.getInteger("posts", 0);
+                int likesReceived = postCounts.getInteger("likes", 0);
+
+                // streak bonuses are not in any source collection, keep the part of the score they account for
+                int bonus = Math.max(0, user.getTotalScore()
+                    - gamificationService.scoreOf(user.getTopicsCreated(), user.getPostsCreated(), user.getLikesReceived()));
+                int totalScore = gamificationService.scoreOf(topicsCreated, postsCreated, likesReceived) + bonus;
+
+                ScoreEvent.Snapshot delta = ScoreEvent.Snapshot.builder()
+                    .totalScore(totalScore - user.getTotalScore())
+                    .topicsCreated(topicsCreated - user.getTopicsCreated())
+                    .postsCreated(postsCreated - user.getPostsCreated())
+                    .likesReceived(likesReceived - user.getLikesReceived())
+                    .build();
+                if (delta.getTotalScore() == 0 && delta.getTopicsCreated() == 0
+                        && delta.getPostsCreated() == 0 && delta.getLikesReceived() == 0) {
+                    continue;
+                }
+
+                result.drifted++;
+                result.record(user, delta, reportLimit);
+                if (!apply) {
+                    continue;
+                }
+
+                if (user.getScoredAt() == null) {
+                    // the replay starts from the opening balance, without one it would rebuild this user
+                    // from the correction alone; scored at the cutoff, so the guard below still matches
+                    gamificationService.openLedger(user, cutoff);
+                }
+
+                // $inc so live increments that slip in are kept, the guard stops those users anyway;
+                // the level only goes up like a live level-up, levels and badges already earned stay
+                Query guarded = new Query(Criteria.where("_id").is(user.getId())
+                    .orOperator(Criteria.where("scoredAt").is(null), Criteria.where("scoredAt").lte(cutoff)));
+                Update update = new Update()
+                    .inc("totalScore", delta.getTotalScore())
+                    .inc("topicsCreated", delta.getTopicsCreated())
+                    .inc("postsCreated", delta.getPostsCreated())
+                    .inc("likesReceived", delta.getLikesReceived());
+                int level = gamificationService.levelOf(totalScore);
+                if (level > user.getLevel()) {
+                    update.max("level", level).addToSet("badges", "LEVEL_" + level);
+                }
+                bulk.updateOne(guarded, update);
+                pending.add(correction(runId, user.getId(), delta, cutoff));
+
+                if (pending.size() >= batchSize) {
+                    flush(bulk, pending, cutoff, result);
+                    bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, User.class);
+                    pending.clear();
+                    // throttle, the live traffic shares the primary
+                    Thread.sleep(pauseMs);
+                }
+            }
+        }
+
+        if (!pending.isEmpty()) {
+            flush(bulk, pending, cutoff, result);
+        }
+        result.skipped = apply ? result.drifted - result.corrected : 0;
+        return result;
+    }
+
+    private void flush(BulkOperations bulk, List<ScoreEvent> pending, LocalDateTime cutoff, PartitionResult result) {
+        int matched = bulk.execute().getMatchedCount();
+        result.corrected += matched;
+
+        // only corrections that were applied go into the ledger, a replay would apply the others too
+        Set<String> skipped = Set.of();
+        if (matched < pending.size()) {
+            List<String> userIds = pending.stream().map(ScoreEvent::getUserId).toList();
+            Query scoredSince = new Query(Criteria.where("_id").in(userIds).and("scoredAt").gt(cutoff));
+            scoredSince.fields().include("_id");
+            skipped = mongoTemplate.find(scoredSince, User.class).stream()
+                .map(User::getId)
+                .collect(Collectors.toSet());
+        }
+
+        Set<String> notApplied = skipped;
+        scoreLedgerService.recordAll(pending.stream()
+            .filter(event -> !notApplied.contains(event.getUserId()))
+            .toList());
+    }
+
+    // sums per author over one user id range, keyed by the author's user id
+    private Map<String, Document> aggregateByAuthor(String collection, UserIdRanges.Range range, Document sums) {
+        Document group = new Document("_id", "$author");
+        sums.forEach(group::append);
+
+        List<Document> pipeline = List.of(
+            new Document("$match", range.onObjectIds("author.$id").getCriteriaObject()),
+            new Document("$group", group));
+
+        Map<String, Document> byAuthor = new HashMap<>();
+        for (Document counts : mongoTemplate.getCollection(collection).aggregate(pipeline).allowDiskUse(true)) {
+            String userId = authorId(counts.get("_id"));
+            if (userId != null) {
+                byAuthor.put(userId, counts);
+            }
+        }
+        return byAuthor;
+    }
+
+    // the group key is the whole DBRef, depending on the codec it comes back as a DBRef or a plain document
+    private static String authorId(Object ref) {
+        if (ref instanceof DBRef dbRef) {
+            return dbRef.getId().toString();
+        }
+        if (ref instanceof Document document && document.get("$id") != null) {
+            return document.get("$id").toString();
+        }
+        return null;
+    }
+
+    private static ScoreEvent correction(String runId, String userId, ScoreEvent.Snapshot delta, LocalDateTime cutoff) {
+        return ScoreEvent.builder()
+            .id(ScoreEvent.Type.CORRECTION + ":" + runId + ":" + userId)
+            .userId(userId)
+            .type(ScoreEvent.Type.CORRECTION)
+            .count(0)
+            .occurredAt(cutoff)
+            .snapshot(delta)
+            .build();
+    }
+
+    private static class PartitionResult {
+        long users;
+        long drifted;
+        long corrected;
+        long skipped;
+        final Map<String, Long> deltas = new LinkedHashMap<>();
+        final List<Map<String, Object>> diff = new ArrayList<>();
+
+        void record(User user, ScoreEvent.Snapshot delta, int reportLimit) {
+            deltas.merge("totalScore", (long) delta.getTotalScore(), Long::sum);
+            deltas.merge("topicsCreated", (long) delta.getTopicsCreated(), Long::sum);
+            deltas.merge("postsCreated", (long) delta.getPostsCreated(), Long::sum);
+            deltas.merge("likesReceived", (long) delta.getLikesReceived(), Long::sum);
+
+            if (diff.size() < reportLimit) {
+                Map<String, Object> entry = new LinkedHashMap<>();
+                entry.put("userId", user.getId());
+                entry.put("username", user.getUsername());
+                entry.put("totalScore", List.of(user.getTotalScore(), user.getTotalScore() + delta.getTotalScore()));
+                entry.put("topicsCreated", List.of(user.getTopicsCreated(), user.getTopicsCreated() + delta.getTopicsCreated()));
+                entry.put("postsCreated", List.of(user.getPostsCreated(), user.getPostsCreated() + delta.getPostsCreated()));
+                entry.put("likesReceived", List.of(user.getLikesReceived(), user.getLikesReceived() + delta.getLikesReceived()));
+                diff.add(entry);
+            }
+        }
+
+        void add(PartitionResult other, int reportLimit) {
+            users += other.users;
+            drifted += other.drifted;
+            corrected += other.corrected;
+            skipped += other.skipped;
+            other.deltas.forEach((field, value) -> deltas.merge(field, value, Long::sum));
+            for (Map<String, Object> entry : other.diff) {
+                if (diff.size() >= reportLimit) {
+                    break;
+                }
+                diff.add(entry);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        triggerExecutor.shutdown();
+        partitionExecutor.shutdown();
+    }
+}
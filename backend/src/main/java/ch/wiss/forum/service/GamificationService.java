@@ -1,11 +1,20 @@
 package ch.wiss.forum.service;
 
+import ch.wiss.forum.config.CacheConfig;
 import ch.wiss.forum.model.User;
 import ch.wiss.forum.model.Post;
+import ch.wiss.forum.model.ScoreEvent;
 import ch.wiss.forum.model.Topic;
 import ch.wiss.forum.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -19,6 +28,10 @@ import java.util.*;
 public class GamificationService {
     
     private final UserRepository userRepository;
+    private final LeaderboardService leaderboardService;
+    private final UserCacheService userCacheService;
+    private final MongoTemplate mongoTemplate;
+    private final ScoreLedgerService scoreLedgerService;
     
     // score values
     private static final int TOPIC_CREATED_POINTS = 10;
@@ -32,50 +45,46 @@ public class GamificationService {
         0, 50, 150, 300, 500, 800, 1200, 1700, 2300, 3000, 4000, 5500, 7500, 10000
     };
     
-    // achievement definitions
-    private static final Map<String, String> ACHIEVEMENTS = Map.of(
-        "FIRST_POST", "Made your first post",
-        "FIRST_TOPIC", "Created your first topic",
-        "POPULAR_POSTER", "Received 50 likes total",
-        "DISCUSSION_STARTER", "Created 10 topics",
-        "ACTIVE_PARTICIPANT", "Made 100 posts",
-        "STREAK_MASTER", "Maintained a 7-day activity streak",
-        "KNOWLEDGE_SHARER", "Created 5 topics in different categories",
-        "COMMUNITY_FAVORITE", "Received 100 likes total"
-    );
+    // achievement rules, defined in resources/gamification/achievements.json
+    private final AchievementRules achievementRules = AchievementRules.fromClasspath();
+    
+    // counters each event type can change, the only rules evaluated for it
+    private static final AchievementRules.Counter[] TOPIC_COUNTERS = {
+        AchievementRules.Counter.TOPICS_CREATED, AchievementRules.Counter.LONGEST_STREAK
+    };
+    private static final AchievementRules.Counter[] POST_COUNTERS = {
+        AchievementRules.Counter.POSTS_CREATED, AchievementRules.Counter.LONGEST_STREAK
+    };
+    private static final AchievementRules.Counter[] LIKE_COUNTERS = {
+        AchievementRules.Counter.LIKES_RECEIVED
+    };
+    private static final AchievementRules.Counter[] ALL_COUNTERS = AchievementRules.Counter.values();
+    private static final AchievementRules.Counter[] NO_COUNTERS = {};
     
-    @Transactional
     public void updateUserStatsOnTopicCreated(User user) {
+        updateUserStatsOnTopicCreated(user, null);
+    }
+    
+    @Transactional
+    public void updateUserStatsOnTopicCreated(User user, Topic topic) {
         try {
-            User dbUser = userRepository.findById(user.getId()).orElse(user);
-            
-            dbUser.setTopicsCreated(dbUser.getTopicsCreated() + 1);
-            dbUser.setTotalScore(dbUser.getTotalScore() + TOPIC_CREATED_POINTS);
-            
-            updateActivity(dbUser);
-            checkAchievements(dbUser);
-            updateLevel(dbUser);
-            
-            userRepository.save(dbUser);
+            String refId = topic != null ? topic.getId() : null;
+            copyStats(applyAndRecord(user.getId(), user, ScoreEvent.Type.TOPIC_CREATED, 1, eventKey(ScoreEvent.Type.TOPIC_CREATED, refId), refId), user);
             log.info("Updated user {} stats for topic creation", user.getUsername());
         } catch (Exception e) {
             log.error("Error updating user stats for topic creation: ", e);
         }
     }
     
-    @Transactional
     public void updateUserStatsOnPostCreated(User user) {
+        updateUserStatsOnPostCreated(user, null);
+    }
+    
+    @Transactional
+    public void updateUserStatsOnPostCreated(User user, Post post) {
         try {
-            User dbUser = userRepository.findById(user.getId()).orElse(user);
-            
-            dbUser.setPostsCreated(dbUser.getPostsCreated() + 1);
-            dbUser.setTotalScore(dbUser.getTotalScore() + POST_CREATED_POINTS);
-            
-            updateActivity(dbUser);
-            checkAchievements(dbUser);
-            updateLevel(dbUser);
-            
-            userRepository.save(dbUser);
+            String refId = post != null ? post.getId() : null;
+            copyStats(applyAndRecord(user.getId(), user, ScoreEvent.Type.POST_CREATED, 1, eventKey(ScoreEvent.Type.POST_CREATED, refId), refId), user);
             log.info("Updated user {} stats for post creation", user.getUsername());
         } catch (Exception e) {
             log.error("Error updating user stats for post creation: ", e);
@@ -83,17 +92,10 @@ public class GamificationService {
     }
     
     @Transactional
-    public void updateUserStatsOnLikeReceived(User user) {
+    public void updateUserStatsOnLikeReceived(User user, String postId, String likerId) {
         try {
-            User dbUser = userRepository.findById(user.getId()).orElse(user);
-            
-            dbUser.setLikesReceived(dbUser.getLikesReceived() + 1);
-            dbUser.setTotalScore(dbUser.getTotalScore() + LIKE_RECEIVED_POINTS);
-            
-            checkAchievements(dbUser);
-            updateLevel(dbUser);
-            
-            userRepository.save(dbUser);
+            String key = likeEventKey(ScoreEvent.Type.LIKE_RECEIVED, postId, likerId);
+            copyStats(applyAndRecord(user.getId(), user, ScoreEvent.Type.LIKE_RECEIVED, 1, key, postId), user);
             log.info("Updated user {} stats for like received", user.getUsername());
         } catch (Exception e) {
             log.error("Error updating user stats for like received: ", e);
@@ -101,26 +103,338 @@ public class GamificationService {
     }
     
     @Transactional
-    public void updateUserStatsOnLikeRemoved(User user) {
+    public void updateUserStatsOnLikeRemoved(User user, String postId, String likerId) {
         try {
-            User dbUser = userRepository.findById(user.getId()).orElse(user);
-            
-            dbUser.setLikesReceived(Math.max(0, dbUser.getLikesReceived() - 1));
-            dbUser.setTotalScore(Math.max(0, dbUser.getTotalScore() - LIKE_RECEIVED_POINTS));
-            
-            updateLevel(dbUser);
-            
-            userRepository.save(dbUser);
+            String key = likeEventKey(ScoreEvent.Type.LIKE_REMOVED, postId, likerId);
+            copyStats(applyAndRecord(user.getId(), user, ScoreEvent.Type.LIKE_REMOVED, 1, key, postId), user);
             log.info("Updated user {} stats for like removed", user.getUsername());
         } catch (Exception e) {
             log.error("Error updating user stats for like removed: ", e);
         }
     }
     
-
+    // several likes of one author's posts withdrawn at once (e.g. the liker's account was deleted),
+    // the key identifies the withdrawal so repeating it changes nothing
+    @Transactional
+    public void updateUserStatsOnLikesRemoved(String userId, int count, String key) {
+        if (count <= 0) {
+            return;
+        }
+        
+        if (applyAndRecord(userId, null, ScoreEvent.Type.LIKE_REMOVED, count, ScoreEvent.Type.LIKE_REMOVED + ":" + key, null) != null) {
+            log.info("Removed {} likes from user {} stats", count, userId);
+        }
+    }
+    
+    /**
+     * applies one event to a user's stats in memory, the projection the ledger replay folds with.
+     * the live path in applyAndRecord applies the same rules as atomic updates, keep both in step.
+     */
+    public void applyEvent(User user, ScoreEvent.Type type, int count, LocalDateTime occurredAt) {
+        switch (type) {
+            case TOPIC_CREATED -> {
+                user.setTopicsCreated(user.getTopicsCreated() + count);
+                user.setTotalScore(user.getTotalScore() + count * TOPIC_CREATED_POINTS);
+                updateActivity(user, occurredAt);
+                achievementRules.evaluate(user, TOPIC_COUNTERS);
+            }
+            case POST_CREATED -> {
+                user.setPostsCreated(user.getPostsCreated() + count);
+                user.setTotalScore(user.getTotalScore() + count * POST_CREATED_POINTS);
+                updateActivity(user, occurredAt);
+                achievementRules.evaluate(user, POST_COUNTERS);
+            }
+            case LIKE_RECEIVED -> {
+                user.setLikesReceived(user.getLikesReceived() + count);
+                user.setTotalScore(user.getTotalScore() + count * LIKE_RECEIVED_POINTS);
+                achievementRules.evaluate(user, LIKE_COUNTERS);
+            }
+            case LIKE_REMOVED -> {
+                user.setLikesReceived(Math.max(0, user.getLikesReceived() - count));
+                user.setTotalScore(Math.max(0, user.getTotalScore() - count * LIKE_RECEIVED_POINTS));
+            }
+            case OPENING_BALANCE, CORRECTION -> {
+                // the replay applies the snapshot itself; rules added since are awarded here
+                achievementRules.evaluate(user, ALL_COUNTERS);
+            }
+        }
+        
+        updateLevel(user);
+    }
+    
+    // the nightly reset, applied at the end of a replay
+    public void expireStreak(User user, LocalDateTime now) {
+        LocalDateTime yesterday = now.minusDays(1).truncatedTo(ChronoUnit.DAYS);
+        if (user.getLastActivityDate() != null && user.getLastActivityDate().isBefore(yesterday)) {
+            user.setCurrentStreak(0);
+        }
+    }
+    
+    /**
+     * the live counterpart of applyEvent, done server-side so concurrent events never lose an update.
+     * the event goes into the ledger first: one that is already there was applied before and is
+     * skipped, and a crash after the ledger write only leaves the stats behind until the next replay.
+     * the counters and score then move in one findAndModify with $inc that returns the post-image,
+     * the streak, achievements and level are conditional follow-up updates decided from it and
+     * only sent when something actually changes. returns the user as stored afterwards,
+     * null if the user does not exist or the event was applied already.
+     */
+    private User applyAndRecord(String userId, User known, ScoreEvent.Type type, int count, String key, String refId) {
+        LocalDateTime now = LocalDateTime.now();
+        
+        // a user that was already scored never goes back, only unknown/unscored users need the check
+        if (known == null || known.getScoredAt() == null) {
+            openLedger(userId, now);
+        }
+        
+        boolean recorded = scoreLedgerService.record(ScoreEvent.builder()
+            .id(key)
+            .userId(userId)
+            .type(type)
+            .refId(refId)
+            .count(count)
+            .occurredAt(now)
+            .build());
+        if (!recorded) {
+            log.info("Score event {} was applied already, skipping it", key);
+            return null;
+        }
+        
+        int points = pointsOf(type) * count;
+        Update increment = new Update().set("scoredAt", now);
+        switch (type) {
+            case TOPIC_CREATED -> increment.inc("topicsCreated", count);
+            case POST_CREATED -> increment.inc("postsCreated", count);
+            case LIKE_RECEIVED -> increment.inc("likesReceived", count);
+            case LIKE_REMOVED -> increment.inc("likesReceived", -count);
+            default -> throw new IllegalArgumentException("Not a live score event: " + type);
+        }
+        if (points != 0) {
+            increment.inc("totalScore", points);
+        }
+        
+        User current = mongoTemplate.findAndModify(byId(userId), increment, FindAndModifyOptions.options().returnNew(true), User.class);
+        if (current == null) {
+            log.warn("Cannot update stats of unknown user {}", userId);
+            return null;
+        }
+        int scoreDelta = points;
+        
+        if (type == ScoreEvent.Type.LIKE_REMOVED) {
+            scoreDelta -= clampAtZero(userId, current);
+        }
+        if (type == ScoreEvent.Type.TOPIC_CREATED || type == ScoreEvent.Type.POST_CREATED) {
+            Activity activity = recordActivity(userId, current, now);
+            if (activity.bonusAwarded()) {
+                scoreDelta += DAILY_STREAK_BONUS;
+            }
+            current = activity.user() != null ? activity.user() : current;
+        }
+        
+        awardAchievements(userId, current, countersOf(type));
+        promoteLevel(userId, current);
+        
+        // none of these writes go through the repository events
+        userCacheService.evict(userId);
+        leaderboardService.recordScoreDelta(userId, scoreDelta);
+        return current;
+    }
+    
+    // records the opening balance of a user that was never scored, then marks them as scored
+    private void openLedger(String userId, LocalDateTime now) {
+        User unscored = mongoTemplate.findOne(new Query(Criteria.where("_id").is(userId).and("scoredAt").is(null)), User.class);
+        if (unscored != null) {
+            openLedger(unscored, now);
+        }
+    }
+    
+    /**
+     * the opening balance holds the stats the user had before their first ledger event, the replay
+     * starts from it. it is written before scoredAt is set, so a user marked as scored always has one;
+     * a duplicate means a concurrent caller (or one that crashed before marking) opened it already.
+     */
+    public void openLedger(User user, LocalDateTime openedAt) {
+        scoreLedgerService.record(openingBalance(user, openedAt));
+        mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(user.getId()).and("scoredAt").is(null)),
+            new Update().set("scoredAt", openedAt), User.class);
+    }
+    
+    // the user after recording an activity, and whether this call's own update added the streak bonus
+    private record Activity(User user, boolean bonusAwarded) {}
+    
+    /**
+     * once a day the first creation extends or restarts the streak, guarded on the lastActivityDate it
+     * was computed from. only the caller whose findAndModify matched added the bonus; one that lost the
+     * race gets the user as the winner left it.
+     */
+    private Activity recordActivity(String userId, User current, LocalDateTime now) {
+        LocalDateTime today = now.truncatedTo(ChronoUnit.DAYS);
+        
+        for (int attempt = 0; attempt < 3 && current != null; attempt++) {
+            LocalDateTime lastActivity = current.getLastActivityDate();
+            if (lastActivity != null && !lastActivity.truncatedTo(ChronoUnit.DAYS).isBefore(today)) {
+                // same day, no streak change
+                return new Activity(current, false);
+            }
+            
+            boolean consecutive = lastActivity != null
+                && ChronoUnit.DAYS.between(lastActivity.truncatedTo(ChronoUnit.DAYS), today) == 1;
+            int streak = consecutive ? current.getCurrentStreak() + 1 : 1;
+            
+            Query unchanged = new Query(Criteria.where("_id").is(userId).and("lastActivityDate").is(lastActivity));
+            Update update = new Update()
+                .set("lastActivityDate", today)
+                .set("currentStreak", streak)
+                .max("longestStreak", streak)
+                .inc("totalScore", DAILY_STREAK_BONUS);
+            User updated = mongoTemplate.findAndModify(unchanged, update, FindAndModifyOptions.options().returnNew(true), User.class);
+            if (updated != null) {
+                return new Activity(updated, true);
+            }
+            
+            // a concurrent event moved the activity date first, decide again from what it wrote
+            current = mongoTemplate.findById(userId, User.class);
+        }
+        return new Activity(current, false);
+    }
+    
+    // a removal racing past zero is put back to zero, returns how many points were clamped away
+    private int clampAtZero(String userId, User current) {
+        int clamped = 0;
+        if (current.getLikesReceived() < 0) {
+            mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(userId).and("likesReceived").lt(0)),
+                new Update().set("likesReceived", 0), User.class);
+            current.setLikesReceived(0);
+        }
+        if (current.getTotalScore() < 0) {
+            clamped = current.getTotalScore();
+            mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(userId).and("totalScore").lt(0)),
+                new Update().set("totalScore", 0), User.class);
+            current.setTotalScore(0);
+        }
+        return clamped;
+    }
+    
+    private void awardAchievements(String userId, User current, AchievementRules.Counter[] counters) {
+        long maskBefore = current.getAchievementMask();
+        long earned = achievementRules.evaluate(current, counters);
+        if (current.getAchievementMask() == maskBefore) {
+            return;
+        }
+        
+        // $bit or and $addToSet only ever add, so concurrent awards merge instead of overwriting each other
+        Update update = new Update();
+        update.bitwise("achievementMask").or(current.getAchievementMask());
+        if (earned != 0L) {
+            update.addToSet("achievements").each(achievementRules.idsOf(earned).toArray());
+        }
+        mongoTemplate.updateFirst(byId(userId), update, User.class);
+    }
+    
+    private void promoteLevel(String userId, User current) {
+        int newLevel = calculateLevel(current.getTotalScore());
+        if (newLevel <= current.getLevel()) {
+            return;
+        }
+        
+        String levelBadge = "LEVEL_" + newLevel;
+        Query below = new Query(Criteria.where("_id").is(userId).and("level").lt(newLevel));
+        mongoTemplate.updateFirst(below, new Update().set("level", newLevel).addToSet("badges", levelBadge), User.class);
+        
+        current.setLevel(newLevel);
+        if (current.getBadges() == null) {
+            current.setBadges(new ArrayList<>());
+        }
+        if (!current.getBadges().contains(levelBadge)) {
+            current.getBadges().add(levelBadge);
+        }
+        log.info("User {} leveled up to level {}", current.getUsername(), newLevel);
+    }
+    
+    // the caller keeps working with its own instance (e.g. the authenticated principal)
+    private static void copyStats(User from, User to) {
+        if (from == null || from == to) {
+            return;
+        }
+        to.setTotalScore(from.getTotalScore());
+        to.setLevel(from.getLevel());
+        to.setTopicsCreated(from.getTopicsCreated());
+        to.setPostsCreated(from.getPostsCreated());
+        to.setLikesReceived(from.getLikesReceived());
+        to.setCurrentStreak(from.getCurrentStreak());
+        to.setLongestStreak(from.getLongestStreak());
+        to.setLastActivityDate(from.getLastActivityDate());
+        to.setScoredAt(from.getScoredAt());
+        to.setBadges(from.getBadges());
+        to.setAchievements(from.getAchievements());
+        to.setAchievementMask(from.getAchievementMask());
+    }
+    
+    private static int pointsOf(ScoreEvent.Type type) {
+        return switch (type) {
+            case TOPIC_CREATED -> TOPIC_CREATED_POINTS;
+            case POST_CREATED -> POST_CREATED_POINTS;
+            case LIKE_RECEIVED -> LIKE_RECEIVED_POINTS;
+            case LIKE_REMOVED -> -LIKE_RECEIVED_POINTS;
+            default -> 0;
+        };
+    }
+    
+    private static AchievementRules.Counter[] countersOf(ScoreEvent.Type type) {
+        return switch (type) {
+            case TOPIC_CREATED -> TOPIC_COUNTERS;
+            case POST_CREATED -> POST_COUNTERS;
+            case LIKE_RECEIVED -> LIKE_COUNTERS;
+            default -> NO_COUNTERS;
+        };
+    }
     
-    private void updateActivity(User user) {
-        LocalDateTime today = LocalDateTime.now().truncatedTo(ChronoUnit.DAYS);
+    private static Query byId(String userId) {
+        return new Query(Criteria.where("_id").is(userId));
+    }
+    
+    private ScoreEvent openingBalance(User user, LocalDateTime now) {
+        return ScoreEvent.builder()
+            .id(ScoreEvent.Type.OPENING_BALANCE + ":" + user.getId())
+            .userId(user.getId())
+            .type(ScoreEvent.Type.OPENING_BALANCE)
+            .count(0)
+            // just before the event that triggered it (mongo dates have millisecond precision)
+            .occurredAt(now.minusNanos(1_000_000))
+            .snapshot(ScoreEvent.Snapshot.builder()
+                .totalScore(user.getTotalScore())
+                .topicsCreated(user.getTopicsCreated())
+                .postsCreated(user.getPostsCreated())
+                .likesReceived(user.getLikesReceived())
+                .currentStreak(user.getCurrentStreak())
+                .longestStreak(user.getLongestStreak())
+                .lastActivityDate(user.getLastActivityDate())
+                .badges(user.getBadges() != null ? new ArrayList<>(user.getBadges()) : new ArrayList<>())
+                .achievements(user.getAchievements() != null ? new ArrayList<>(user.getAchievements()) : new ArrayList<>())
+                .build())
+            .build();
+    }
+    
+    // creations are keyed by the created document, so recording one twice keeps a single event
+    private static String eventKey(ScoreEvent.Type type, String refId) {
+        return type + ":" + (refId != null ? refId : new ObjectId().toHexString());
+    }
+    
+    /**
+     * a like is keyed by post, liker and how often the liker took a like of the post back before,
+     * so a duplicated like or unlike maps to the key already in the ledger while liking again after
+     * an unlike gets a new one. the n-th like pairs with the n-th unlike.
+     */
+    private String likeEventKey(ScoreEvent.Type type, String postId, String likerId) {
+        String pair = ":" + postId + ":" + likerId + ":";
+        long cycle = type == ScoreEvent.Type.LIKE_RECEIVED
+            ? scoreLedgerService.countWithIdPrefix(ScoreEvent.Type.LIKE_REMOVED + pair)
+            : Math.max(0, scoreLedgerService.countWithIdPrefix(ScoreEvent.Type.LIKE_RECEIVED + pair) - 1);
+        return type + pair + cycle;
+    }
+    
+    private void updateActivity(User user, LocalDateTime occurredAt) {
+        LocalDateTime today = occurredAt.truncatedTo(ChronoUnit.DAYS);
         LocalDateTime lastActivity = user.getLastActivityDate();
         
         if (lastActivity == null) {
@@ -151,58 +465,6 @@ public class GamificationService {
         }
     }
     
-    private void checkAchievements(User user) {
-        List<String> achievements = user.getAchievements();
-        if (achievements == null) {
-            achievements = new ArrayList<>();
-            user.setAchievements(achievements);
-        }
-        
-        // first post
-        if (user.getPostsCreated() >= 1 && !achievements.contains("FIRST_POST")) {
-            achievements.add("FIRST_POST");
-        }
-        
-        // first topic
-        if (user.getTopicsCreated() >= 1 && !achievements.contains("FIRST_TOPIC")) {
-            achievements.add("FIRST_TOPIC");
-        }
-        
-
-        
-        // popular poster
-        if (user.getLikesReceived() >= 50 && !achievements.contains("POPULAR_POSTER")) {
-            achievements.add("POPULAR_POSTER");
-        }
-        
-        // discussion starter
-        if (user.getTopicsCreated() >= 10 && !achievements.contains("DISCUSSION_STARTER")) {
-            achievements.add("DISCUSSION_STARTER");
-        }
-        
-        // active participant
-        if (user.getPostsCreated() >= 50 && !achievements.contains("ACTIVE_PARTICIPANT")) {
-            achievements.add("ACTIVE_PARTICIPANT");
-        }
-        
-        // streak master
-        if (user.getLongestStreak() >= 7 && !achievements.contains("STREAK_MASTER")) {
-            achievements.add("STREAK_MASTER");
-        }
-        
-        // knowledge sharer
-        if (user.getTopicsCreated() >= 25 && !achievements.contains("KNOWLEDGE_SHARER")) {
-            achievements.add("KNOWLEDGE_SHARER");
-        }
-        
-        // community favorite
-        if (user.getLikesReceived() >= 100 && !achievements.contains("COMMUNITY_FAVORITE")) {
-            achievements.add("COMMUNITY_FAVORITE");
-        }
-        
-
-    }
-    
     private void updateLevel(User user) {
         int currentLevel = user.getLevel();
         int newLevel = calculateLevel(user.getTotalScore());
@@ -226,15 +488,26 @@ public class GamificationService {
         }
     }
     
+    // score of the counters alone, without streak bonuses
+    public int scoreOf(int topicsCreated, int postsCreated, int likesReceived) {
+        return topicsCreated * TOPIC_CREATED_POINTS
+            + postsCreated * POST_CREATED_POINTS
+            + likesReceived * LIKE_RECEIVED_POINTS;
+    }
+    
+    public int levelOf(int totalScore) {
+        return calculateLevel(totalScore);
+    }
+    
     private int calculateLevel(int totalScore) {
-        for (int i = LEVEL_THRESHOLDS.length - 1; i >= 0; i--) {
-            if (totalScore >= LEVEL_THRESHOLDS[i]) {
-                return i + 1;
-            }
-        }
-        return 1;
+        // thresholds are ascending and distinct, the level is the number of thresholds reached
+        int index = Arrays.binarySearch(LEVEL_THRESHOLDS, totalScore);
+        int reached = index >= 0 ? index + 1 : -index - 1;
+        return Math.max(1, reached);
     }
+
     
+    @Cacheable(cacheNames = CacheConfig.LEADERBOARDS, key = "'enhanced'", sync = true)
     public List<Map<String, Object>> getEnhancedLeaderboard() {
         List<User> users = userRepository.findTop50ByOrderByTotalScoreDesc();
         List<Map<String, Object>> leaderboard = new ArrayList<>();
@@ -263,8 +536,12 @@ public class GamificationService {
     }
     
     public Map<String, Object> getUserGamificationStats(User user) {
-        User dbUser = userRepository.findById(user.getId()).orElse(user);
-        
+        User dbUser = userCacheService.findById(user.getId()).orElse(user);
+        return buildGamificationStats(dbUser);
+    }
+    
+    // computes the stats from an already loaded user, without going back to the database
+    public Map<String, Object> buildGamificationStats(User dbUser) {
         Map<String, Object> stats = new HashMap<>();
         stats.put("totalScore", dbUser.getTotalScore());
         stats.put("level", dbUser.getLevel());
@@ -299,24 +576,21 @@ public class GamificationService {
         return stats;
     }
     
+    // reset the streak of everyone without activity since yesterday, returns the number of reset streaks
     @Transactional
-    public void updateAllUserStreaks() {
-        List<User> users = userRepository.findAll();
+    public long updateAllUserStreaks() {
         LocalDateTime yesterday = LocalDateTime.now().minusDays(1).truncatedTo(ChronoUnit.DAYS);
         
-        for (User user : users) {
-            if (user.getLastActivityDate() != null) {
-                LocalDateTime lastActivity = user.getLastActivityDate().truncatedTo(ChronoUnit.DAYS);
-                long daysSinceActivity = ChronoUnit.DAYS.between(lastActivity, LocalDateTime.now().truncatedTo(ChronoUnit.DAYS));
-                
-                if (daysSinceActivity > 1) {
-                    // reset streak if no activity for more than 1 day
-                    user.setCurrentStreak(0);
-                    userRepository.save(user);
-                }
-            }
+        // one server-side update over the lastActivityDate index instead of loading every user
+        Query query = new Query(Criteria.where("lastActivityDate").lt(yesterday).and("currentStreak").gt(0));
+        long reset = mongoTemplate.updateMulti(query, new Update().set("currentStreak", 0), User.class).getModifiedCount();
+        
+        if (reset > 0) {
+            // the bulk update bypasses the repository events
+            userCacheService.evictAll();
         }
         
-        log.info("Updated streaks for all users");
+        log.info("Reset {} user streaks", reset);
+        return reset;
     }
 } 
\ No newline at end of file
@@ -0,0 +1,118 @@
+package ch.wiss.forum.service;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.Date;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+import com.mongodb.MongoGridFSException;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.gridfs.GridFSBucket;
+import com.mongodb.client.gridfs.GridFSBuckets;
+import com.mongodb.client.gridfs.GridFSDownloadStream;
+import com.mongodb.client.gridfs.GridFSUploadStream;
+import com.mongodb.client.gridfs.model.GridFSFile;
+import com.mongodb.client.gridfs.model.GridFSUploadOptions;
+import com.mongodb.client.model.Filters;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * blobs in a GridFS bucket (blobs.files / blobs.chunks). uploads are read one chunk at a time
+ * and reads seek to the chunk of the requested offset, so neither side buffers a whole file.
+ */
+@Service
+@Slf4j
+public class GridFsBlobStore implements BlobStore {
+
+    private final GridFSBucket bucket;
+    private final int chunkSize;
+
+    public GridFsBlobStore(MongoTemplate mongoTemplate,
+                           @Value("${app.file-storage.gridfs-bucket:blobs}") String bucketName,
+                           @Value("${app.file-storage.chunk-size-bytes:261120}") int chunkSize) {
+        this.bucket = GridFSBuckets.create(mongoTemplate.getDb(), bucketName);
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public String store(InputStream content, String filename, String contentType) throws IOException {
+        GridFSUploadOptions options = new GridFSUploadOptions()
+            .chunkSizeBytes(chunkSize)
+            .metadata(new Document("contentType", contentType));
+
+        // the upload stream buffers one chunk; on any failure of the source (including a size limit)
+        // the chunks written so far are removed, uploadFromStream would only do that for IOExceptions
+        GridFSUploadStream upload = bucket.openUploadStream(filename, options);
+        try {
+            content.transferTo(upload);
+        } catch (IOException | RuntimeException e) {
+            upload.abort();
+            throw e;
+        }
+        upload.close();
+        return upload.getObjectId().toHexString();
+    }
+
+    @Override
+    public InputStream open(String key, long offset) throws IOException {
+        ObjectId id = toObjectId(key);
+        if (id == null) {
+            throw new FileNotFoundException("Not a GridFS blob key: " + key);
+        }
+
+        GridFSDownloadStream stream;
+        try {
+            stream = bucket.openDownloadStream(id);
+        } catch (MongoGridFSException e) {
+            throw new FileNotFoundException("Blob not found: " + key);
+        }
+
+        // skip moves to the chunk holding the offset without reading the ones before it
+        long remaining = offset;
+        while (remaining > 0) {
+            long skipped = stream.skip(remaining);
+            if (skipped <= 0) {
+                break;
+            }
+            remaining -= skipped;
+        }
+        return stream;
+    }
+
+    @Override
+    public void delete(String key) {
+        ObjectId id = toObjectId(key);
+        if (id == null) {
+            return;
+        }
+
+        try {
+            bucket.delete(id);
+        } catch (MongoGridFSException e) {
+            log.debug("Blob {} already deleted", key);
+        }
+    }
+
+    @Override
+    public Stream<Blob> listOlderThan(Instant cutoff) {
+        MongoCursor<GridFSFile> files = bucket.find(Filters.lt("uploadDate", Date.from(cutoff))).iterator();
+        Iterable<GridFSFile> remaining = () -> files;
+        return StreamSupport.stream(remaining.spliterator(), false)
+            .map(file -> new Blob(file.getObjectId().toHexString(), file.getLength()))
+            .onClose(files::close);
+    }
+
+    private static ObjectId toObjectId(String key) {
+        return key != null && ObjectId.isValid(key) ? new ObjectId(key) : null;
+    }
+}
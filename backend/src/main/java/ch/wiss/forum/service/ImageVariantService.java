@@ -0,0 +1,304 @@
+package ch.wiss.forum.service;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import ch.wiss.forum.model.FileEntity;
+import ch.wiss.forum.model.FileVariant;
+import ch.wiss.forum.repository.FileVariantRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * resized copies of uploaded images for the sizes they are actually shown at (avatars in lists,
+ * thumbnails). uploads queue all sizes on a small bounded pool that decodes the original once; a size
+ * requested before it exists is queued on the same pool and waited for briefly, concurrent requests for
+ * it share one generation. when the pool is full or the wait runs out the original is served, request
+ * threads never decode themselves. variants are re-encoded without the original's metadata (EXIF, GPS),
+ * as PNG if the image has transparency and as JPEG otherwise. anything that can't be decoded is served
+ * as the original, and its file is not tried again for a while.
+ */
+@Service
+@Slf4j
+public class ImageVariantService {
+
+    // what ImageIO reads out of the box; gif is left alone, a variant would lose the animation
+    private static final Set<String> SUPPORTED_TYPES = Set.of("image/jpeg", "image/jpg", "image/png", "image/bmp");
+
+    private static final float JPEG_QUALITY = 0.85f;
+
+    private final FileStorageService fileStorageService;
+    private final FileVariantRepository fileVariantRepository;
+    private final BlobStore blobStore;
+
+    private final List<Integer> sizes;
+    private final long maxPixels;
+    private final Duration onDemandWait;
+
+    private final ExecutorService variantExecutor;
+    private final Map<String, CompletableFuture<Optional<FileVariant>>> generating = new ConcurrentHashMap<>();
+    // files whose generation failed, a broken upload is not decoded again on every request
+    private final Cache<String, Boolean> failedFiles;
+
+    public ImageVariantService(FileStorageService fileStorageService, FileVariantRepository fileVariantRepository,
+                               BlobStore blobStore,
+                               @Value("${app.image-variants.sizes:48,96,256}") List<Integer> sizes,
+                               @Value("${app.image-variants.max-pixels:40000000}") long maxPixels,
+                               @Value("${app.image-variants.threads:2}") int threads,
+                               @Value("${app.image-variants.queue-capacity:100}") int queueCapacity,
+                               @Value("${app.image-variants.on-demand-wait:2s}") Duration onDemandWait,
+                               @Value("${app.image-variants.failure-ttl:10m}") Duration failureTtl) {
+        this.fileStorageService = fileStorageService;
+        this.fileVariantRepository = fileVariantRepository;
+        this.blobStore = blobStore;
+        this.sizes = sizes.stream().sorted().toList();
+        this.maxPixels = maxPixels;
+        this.onDemandWait = onDemandWait;
+        this.failedFiles = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterWrite(failureTtl)
+            .build();
+
+        // uploads that don't fit the queue get their variants on a later request instead
+        this.variantExecutor = DaemonPools.fixed(threads, queueCapacity, "image-variants", new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    public boolean supports(FileEntity file) {
+        return file.getContentType() != null && SUPPORTED_TYPES.contains(file.getContentType());
+    }
+
+    // the smallest configured size that is at least the requested one
+    public int sizeFor(int requested) {
+        for (int size : sizes) {
+            if (size >= requested) {
+                return size;
+            }
+        }
+        return sizes.get(sizes.size() - 1);
+    }
+
+    // queue all sizes of a freshly uploaded image
+    public void generateInBackground(FileEntity file) {
+        if (supports(file)) {
+            try {
+                variantExecutor.execute(() -> generateAll(file));
+            } catch (RejectedExecutionException e) {
+                log.debug("Variant queue full, variants of file {} are generated on request", file.getId());
+            }
+        }
+    }
+
+    // the variant of an image for a size from sizeFor, empty if it doesn't exist and can't be generated in time
+    public Optional<FileVariant> getVariant(FileEntity file, int size) {
+        String id = FileVariant.idOf(file.getId(), size);
+        Optional<FileVariant> existing = fileVariantRepository.findById(id);
+        if (existing.isPresent() || failedFiles.getIfPresent(file.getId()) != null) {
+            return existing;
+        }
+
+        CompletableFuture<Optional<FileVariant>> result = new CompletableFuture<>();
+        CompletableFuture<Optional<FileVariant>> running = generating.putIfAbsent(id, result);
+        if (running == null) {
+            running = result;
+            try {
+                variantExecutor.execute(() -> generate(id, file.getId(), result, () -> {
+                    // an upload's task ahead in the queue may have stored it meanwhile
+                    Optional<FileVariant> stored = fileVariantRepository.findById(id);
+                    return stored.isPresent() ? stored : store(file, decode(file), size);
+                }));
+            } catch (RejectedExecutionException e) {
+                // the pool is busy, whoever joined this generation gets the original as well
+                generating.remove(id, result);
+                result.complete(Optional.empty());
+            }
+        }
+
+        try {
+            return running.get(onDemandWait.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // the generation goes on, the next request finds the stored variant
+            return Optional.empty();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Optional.empty();
+        } catch (ExecutionException e) {
+            return Optional.empty();
+        }
+    }
+
+    private void generateAll(FileEntity file) {
+        try {
+            BufferedImage original = null;
+            for (int size : sizes) {
+                String id = FileVariant.idOf(file.getId(), size);
+                if (fileVariantRepository.existsById(id)) {
+                    continue;
+                }
+                if (original == null) {
+                    original = decode(file);
+                }
+                BufferedImage image = original;
+                // a request may have queued this size already, it is not waited for: it could sit behind
+                // this task in the same pool
+                CompletableFuture<Optional<FileVariant>> result = new CompletableFuture<>();
+                if (generating.putIfAbsent(id, result) == null) {
+                    generate(id, file.getId(), result, () -> store(file, image, size));
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Could not generate variants of file {}: {}", file.getId(), e.getMessage());
+            failedFiles.put(file.getId(), Boolean.TRUE);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Generation {
+        Optional<FileVariant> run() throws Exception;
+    }
+
+    // runs a generation registered in generating, callers that joined it get its result
+    private void generate(String id, String fileId, CompletableFuture<Optional<FileVariant>> result, Generation generation) {
+        try {
+            result.complete(generation.run());
+        } catch (Exception e) {
+            log.warn("Could not generate image variant {}: {}", id, e.getMessage());
+            failedFiles.put(fileId, Boolean.TRUE);
+            result.complete(Optional.empty());
+        } finally {
+            generating.remove(id, result);
+        }
+    }
+
+    private Optional<FileVariant> store(FileEntity file, BufferedImage original, int size) throws IOException {
+        BufferedImage scaled = scale(original, size);
+        boolean png = scaled.getColorModel().hasAlpha();
+        byte[] encoded = encode(scaled, png ? "png" : "jpeg");
+        String contentType = png ? "image/png" : "image/jpeg";
+
+        String id = FileVariant.idOf(file.getId(), size);
+        String storageKey = blobStore.store(new ByteArrayInputStream(encoded), id, contentType);
+        try {
+            return Optional.of(fileVariantRepository.insert(FileVariant.builder()
+                .id(id)
+                .fileId(file.getId())
+                .size(size)
+                .storageKey(storageKey)
+                .contentType(contentType)
+                .length(encoded.length)
+                .createdAt(LocalDateTime.now())
+                .build()));
+        } catch (DuplicateKeyException e) {
+            // generated by another node in the meantime
+            blobStore.delete(storageKey);
+            return fileVariantRepository.findById(id);
+        }
+    }
+
+    private BufferedImage decode(FileEntity file) throws IOException {
+        try (InputStream content = fileStorageService.loadContent(file).getInputStream();
+             ImageInputStream input = ImageIO.createImageInputStream(content)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                throw new IOException("No image reader for " + file.getContentType());
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                // the header tells the dimensions, a decompression bomb is refused before it is decoded
+                long pixels = (long) reader.getWidth(0) * reader.getHeight(0);
+                if (pixels > maxPixels) {
+                    throw new IOException("Image has " + pixels + " pixels, more than " + maxPixels);
+                }
+                return reader.read(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    // halves the image step by step, a single bilinear step over a large factor skips most pixels
+    private static BufferedImage scale(BufferedImage original, int size) {
+        double factor = Math.min(1.0, (double) size / Math.max(original.getWidth(), original.getHeight()));
+        int targetWidth = Math.max(1, (int) Math.round(original.getWidth() * factor));
+        int targetHeight = Math.max(1, (int) Math.round(original.getHeight() * factor));
+        int type = original.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+
+        BufferedImage current = original;
+        int width = original.getWidth();
+        int height = original.getHeight();
+        do {
+            width = Math.max(targetWidth, width / 2);
+            height = Math.max(targetHeight, height / 2);
+
+            BufferedImage next = new BufferedImage(width, height, type);
+            Graphics2D graphics = next.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.drawImage(current, 0, 0, width, height, null);
+            } finally {
+                graphics.dispose();
+            }
+            current = next;
+        } while (width != targetWidth || height != targetHeight);
+        return current;
+    }
+
+    // written without metadata, nothing of the original but its pixels is kept
+    private static byte[] encode(BufferedImage image, String format) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName(format).next();
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(encoded)) {
+            writer.setOutput(output);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if ("jpeg".equals(format)) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(JPEG_QUALITY);
+            }
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return encoded.toByteArray();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        variantExecutor.shutdown();
+    }
+}
@@ -0,0 +1,128 @@
+package ch.wiss.forum.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import ch.wiss.forum.model.JobLock;
+import ch.wiss.forum.model.JobRun;
+import ch.wiss.forum.repository.JobRunRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * runs maintenance jobs on at most one node at a time and records every run in job_runs.
+ * the lock is a document per job name with an expiry, taken with a single upsert: either the
+ * lock is free/expired and the upsert updates it, or the insert collides on the id. every run owns
+ * the lock under a token of its own, so a second run on the same node is skipped just like one on
+ * another node, and only the run holding the lock can renew or release it.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class JobRunner {
+
+    private final MongoTemplate mongoTemplate;
+    private final JobRunRepository jobRunRepository;
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    @FunctionalInterface
+    public interface Job {
+        // returns the number of affected documents, figures for the report go into run.getDetails()
+        long run(JobRun run) throws Exception;
+    }
+
+    // runs the job unless another run (on any node) holds its lock, empty if it was skipped
+    public Optional<JobRun> runExclusively(String jobName, Duration lockDuration, Job job) {
+        Optional<String> lockToken = tryLock(jobName, lockDuration);
+        if (lockToken.isEmpty()) {
+            log.info("Skipping job {}, it is already running", jobName);
+            return Optional.empty();
+        }
+
+        try {
+            return Optional.of(run(jobName, lockToken.get(), job));
+        } finally {
+            unlock(jobName, lockToken.get());
+        }
+    }
+
+    // the token the lock is held under, empty if it is held by someone else
+    public Optional<String> tryLock(String jobName, Duration lockDuration) {
+        LocalDateTime now = LocalDateTime.now();
+        String lockToken = UUID.randomUUID().toString();
+        Query query = new Query(Criteria.where("_id").is(jobName).and("lockedUntil").lt(now));
+        Update update = new Update()
+            .set("owner", lockToken)
+            .set("node", nodeId)
+            .set("lockedAt", now)
+            .set("lockedUntil", now.plus(lockDuration));
+
+        try {
+            mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().upsert(true).returnNew(true), JobLock.class);
+            return Optional.of(lockToken);
+        } catch (DuplicateKeyException e) {
+            // the lock document exists and is held by another run
+            return Optional.empty();
+        }
+    }
+
+    // extend the lock a run holds, for jobs that run longer than the initial duration
+    public boolean renewLock(JobRun run, Duration lockDuration) {
+        Query query = new Query(Criteria.where("_id").is(run.getJobName()).and("owner").is(run.getLockToken()));
+        Update update = new Update().set("lockedUntil", LocalDateTime.now().plus(lockDuration));
+        return mongoTemplate.updateFirst(query, update, JobLock.class).getMatchedCount() > 0;
+    }
+
+    public void unlock(String jobName, String lockToken) {
+        try {
+            mongoTemplate.remove(new Query(Criteria.where("_id").is(jobName).and("owner").is(lockToken)), JobLock.class);
+        } catch (Exception e) {
+            // expires on its own
+            log.warn("Could not release lock for job {}: {}", jobName, e.getMessage());
+        }
+    }
+
+    public List<JobRun> getRecentRuns(String jobName) {
+        return jobName == null
+            ? jobRunRepository.findTop20ByOrderByStartedAtDesc()
+            : jobRunRepository.findTop20ByJobNameOrderByStartedAtDesc(jobName);
+    }
+
+    private JobRun run(String jobName, String lockToken, Job job) {
+        JobRun run = jobRunRepository.save(JobRun.builder()
+            .jobName(jobName)
+            .node(nodeId)
+            .lockToken(lockToken)
+            .status(JobRun.Status.RUNNING)
+            .startedAt(LocalDateTime.now())
+            .build());
+        long start = System.nanoTime();
+
+        try {
+            run.setAffected(job.run(run));
+            run.setStatus(JobRun.Status.SUCCEEDED);
+        } catch (Exception e) {
+            log.error("Job {} failed: ", jobName, e);
+            run.setStatus(JobRun.Status.FAILED);
+            run.setError(e.getMessage());
+        }
+
+        run.setDurationMs(Duration.ofNanos(System.nanoTime() - start).toMillis());
+        run.setFinishedAt(LocalDateTime.now());
+
+        log.info("Job {} {} in {} ms, {} documents affected", jobName, run.getStatus(), run.getDurationMs(), run.getAffected());
+        return jobRunRepository.save(run);
+    }
+}
@@ -0,0 +1,345 @@
+package ch.wiss.forum.service;
+
+import ch.wiss.forum.config.CacheConfig;
+import ch.wiss.forum.model.ScoreBucket;
+import ch.wiss.forum.model.User;
+import ch.wiss.forum.repository.ScoreBucketRepository;
+import ch.wiss.forum.repository.UserRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * time-windowed leaderboards.
+ * every score change is recorded as a delta in a per-user, per-day bucket (score_buckets).
+ * the weekly and monthly rankings are kept in memory as rolling totals: incoming deltas are
+ * added and whole days are subtracted again when they fall out of the window, so a ranking
+ * never has to rescan history. custom ranges and the term ranking are aggregated from the buckets.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class LeaderboardService {
+
+    private final ScoreBucketRepository scoreBucketRepository;
+    private final UserRepository userRepository;
+    private final MongoTemplate mongoTemplate;
+
+    private static final int LEADERBOARD_SIZE = 50;
+    private static final int MAX_RANGE_DAYS = 366;
+
+    // optional start of the current school term, e.g. 2026-08-17
+    @Value("${app.leaderboard.term-start:}")
+    private String termStart;
+
+    public enum Window {
+        WEEKLY(7),
+        MONTHLY(30);
+
+        private final int days;
+
+        Window(int days) {
+            this.days = days;
+        }
+
+        public int getDays() {
+            return days;
+        }
+    }
+
+    // per-day deltas kept for as long as the longest window needs them
+    private final NavigableMap<LocalDate, Map<String, Integer>> dailyDeltas = new TreeMap<>();
+
+    private final Map<Window, RollingWindow> windows = new EnumMap<>(Window.class);
+
+    private final Object lock = new Object();
+
+    // shared by recordings, exclusive for the start of a rebuild and for its swap
+    private final ReadWriteLock rebuildLock = new ReentrantReadWriteLock();
+
+    // users who recorded while a rebuild read the buckets, null when no rebuild is reading
+    private volatile Set<String> recordedDuringRebuild;
+
+    // record a score delta for today and keep the rolling windows current
+    public void recordScoreDelta(String userId, int delta) {
+        recordScoreDelta(userId, delta, LocalDate.now());
+    }
+
+    public void recordScoreDelta(String userId, int delta, LocalDate day) {
+        if (userId == null || delta == 0) {
+            return;
+        }
+
+        // the bucket write and the in-memory update happen together as far as a rebuild is concerned:
+        // the user is either re-read by the rebuild's swap or the delta lands in the swapped-in windows
+        rebuildLock.readLock().lock();
+        try {
+            try {
+                Query query = new Query(Criteria.where("userId").is(userId).and("day").is(day));
+                Update update = new Update()
+                    .inc("points", delta)
+                    .set("updatedAt", LocalDateTime.now());
+                mongoTemplate.upsert(query, update, ScoreBucket.class);
+            } catch (Exception e) {
+                log.error("Error recording score delta for user {}: ", userId, e);
+                return;
+            }
+
+            Set<String> recorded = recordedDuringRebuild;
+            if (recorded != null) {
+                recorded.add(userId);
+            }
+
+            synchronized (lock) {
+                advanceTo(LocalDate.now());
+                apply(userId, delta, day);
+            }
+        } finally {
+            rebuildLock.readLock().unlock();
+        }
+    }
+
+    public List<Map<String, Object>> getWindowLeaderboard(Window window) {
+        List<Map.Entry<String, Integer>> top;
+
+        synchronized (lock) {
+            advanceTo(LocalDate.now());
+            top = topEntries(windowFor(window).totals);
+        }
+
+        return toLeaderboard(top);
+    }
+
+    @Cacheable(cacheNames = CacheConfig.LEADERBOARDS, key = "'term'", sync = true)
+    public List<Map<String, Object>> getTermLeaderboard() {
+        if (termStart == null || termStart.isBlank()) {
+            throw new RuntimeException("No term start configured");
+        }
+
+        LocalDate from = LocalDate.parse(termStart.trim());
+        LocalDate to = LocalDate.now();
+        return getRangeLeaderboard(from.isAfter(to) ? to : from, to);
+    }
+
+    // sum the buckets of an arbitrary date range (both ends inclusive)
+    @Cacheable(cacheNames = CacheConfig.LEADERBOARDS, key = "'range:' + #from + ':' + #to", sync = true)
+    public List<Map<String, Object>> getRangeLeaderboard(LocalDate from, LocalDate to) {
+        if (from == null || to == null || from.isAfter(to)) {
+            throw new RuntimeException("Invalid date range");
+        }
+
+        if (from.plusDays(MAX_RANGE_DAYS).isBefore(to)) {
+            throw new RuntimeException("Date range must not exceed " + MAX_RANGE_DAYS + " days");
+        }
+
+        Aggregation aggregation = Aggregation.newAggregation(
+            Aggregation.match(Criteria.where("day").gte(from).lte(to)),
+            Aggregation.group("userId").sum("points").as("points"),
+            Aggregation.match(Criteria.where("points").gt(0)),
+            Aggregation.sort(Sort.Direction.DESC, "points"),
+            Aggregation.limit(LEADERBOARD_SIZE)
+        );
+
+        List<Map.Entry<String, Integer>> top = new ArrayList<>();
+        for (org.bson.Document result : mongoTemplate.aggregate(aggregation, ScoreBucket.class, org.bson.Document.class)) {
+            Number points = (Number) result.get("points");
+            top.add(Map.entry(result.getString("_id"), points.intValue()));
+        }
+
+        return toLeaderboard(top);
+    }
+
+    // expire days that fell out of the windows, scheduled so idle nodes don't keep stale totals
+    @Scheduled(cron = "0 0 0 * * *")
+    public void rollWindows() {
+        synchronized (lock) {
+            advanceTo(LocalDate.now());
+        }
+    }
+
+    /**
+     * rebuilds the windows from the bucket collection, on startup and periodically to pick up other nodes.
+     * the buckets are streamed while recordings go on; a bucket written during the stream may or may
+     * not have been read, so the users who recorded meanwhile are read again during the swap, which
+     * recordings wait for. the stream starts after the recordings in flight finished, their buckets are in it.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${app.leaderboard.resync-interval-ms:900000}", initialDelayString = "${app.leaderboard.resync-interval-ms:900000}")
+    public synchronized void rebuildWindows() {
+        NavigableMap<LocalDate, Map<String, Integer>> loaded = new TreeMap<>();
+        LocalDate today = LocalDate.now();
+        LocalDate oldestDay = today.minusDays(maxWindowDays() - 1);
+
+        // waits for the recordings in flight, from here on recordings register their user
+        rebuildLock.writeLock().lock();
+        recordedDuringRebuild = ConcurrentHashMap.newKeySet();
+        rebuildLock.writeLock().unlock();
+
+        try (Stream<ScoreBucket> buckets = scoreBucketRepository.streamByDayGreaterThanEqual(oldestDay)) {
+            buckets.forEach(bucket -> add(loaded, bucket));
+        } catch (Exception e) {
+            log.error("Error rebuilding leaderboard windows: ", e);
+            recordedDuringRebuild = null;
+            return;
+        }
+
+        rebuildLock.writeLock().lock();
+        try {
+            Set<String> recorded = recordedDuringRebuild;
+            recordedDuringRebuild = null;
+            if (!recorded.isEmpty()) {
+                try {
+                    List<ScoreBucket> current = scoreBucketRepository.findByUserIdInAndDayGreaterThanEqual(recorded, oldestDay);
+                    loaded.values().forEach(day -> day.keySet().removeAll(recorded));
+                    current.forEach(bucket -> add(loaded, bucket));
+                } catch (Exception e) {
+                    log.error("Error rebuilding leaderboard windows: ", e);
+                    return;
+                }
+            }
+
+            synchronized (lock) {
+                dailyDeltas.clear();
+                dailyDeltas.putAll(loaded);
+                windows.clear();
+
+                for (Window window : Window.values()) {
+                    RollingWindow rolling = new RollingWindow(today.minusDays(window.getDays() - 1));
+                    for (Map<String, Integer> day : dailyDeltas.tailMap(rolling.start, true).values()) {
+                        day.forEach((userId, points) -> rolling.add(userId, points));
+                    }
+                    windows.put(window, rolling);
+                }
+            }
+        } finally {
+            rebuildLock.writeLock().unlock();
+        }
+
+        log.info("Rebuilt leaderboard windows from {} days of score buckets", loaded.size());
+    }
+
+    private static void add(NavigableMap<LocalDate, Map<String, Integer>> days, ScoreBucket bucket) {
+        days.computeIfAbsent(bucket.getDay(), day -> new HashMap<>())
+            .merge(bucket.getUserId(), bucket.getPoints(), Integer::sum);
+    }
+
+    // --- in-memory window maintenance, callers hold the lock ---
+
+    private void apply(String userId, int delta, LocalDate day) {
+        // deltas for days older than the longest window only live in the buckets
+        if (day.isBefore(LocalDate.now().minusDays(maxWindowDays() - 1))) {
+            return;
+        }
+
+        dailyDeltas.computeIfAbsent(day, d -> new HashMap<>()).merge(userId, delta, Integer::sum);
+
+        for (Window window : Window.values()) {
+            RollingWindow rolling = windowFor(window);
+            if (!day.isBefore(rolling.start)) {
+                rolling.add(userId, delta);
+            }
+        }
+    }
+
+    private void advanceTo(LocalDate today) {
+        for (Window window : Window.values()) {
+            RollingWindow rolling = windowFor(window);
+            LocalDate newStart = today.minusDays(window.getDays() - 1);
+
+            while (rolling.start.isBefore(newStart)) {
+                Map<String, Integer> expired = dailyDeltas.get(rolling.start);
+                if (expired != null) {
+                    expired.forEach((userId, points) -> rolling.add(userId, -points));
+                }
+                rolling.start = rolling.start.plusDays(1);
+            }
+        }
+
+        dailyDeltas.headMap(today.minusDays(maxWindowDays() - 1), false).clear();
+    }
+
+    private RollingWindow windowFor(Window window) {
+        return windows.computeIfAbsent(window, w -> new RollingWindow(LocalDate.now().minusDays(w.getDays() - 1)));
+    }
+
+    private int maxWindowDays() {
+        return Arrays.stream(Window.values()).mapToInt(Window::getDays).max().orElse(1);
+    }
+
+    private List<Map.Entry<String, Integer>> topEntries(Map<String, Integer> totals) {
+        return totals.entrySet().stream()
+            .filter(entry -> entry.getValue() > 0)
+            .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+            .limit(LEADERBOARD_SIZE)
+            .map(entry -> Map.entry(entry.getKey(), entry.getValue()))
+            .collect(Collectors.toList());
+    }
+
+    private List<Map<String, Object>> toLeaderboard(List<Map.Entry<String, Integer>> top) {
+        List<String> userIds = top.stream().map(Map.Entry::getKey).collect(Collectors.toList());
+        Map<String, User> users = new HashMap<>();
+        for (User user : userRepository.findAllById(userIds)) {
+            users.put(user.getId(), user);
+        }
+
+        List<Map<String, Object>> leaderboard = new ArrayList<>();
+        int rank = 1;
+        for (Map.Entry<String, Integer> entry : top) {
+            User user = users.get(entry.getKey());
+            if (user == null) {
+                continue;
+            }
+
+            Map<String, Object> userStats = new HashMap<>();
+            userStats.put("rank", rank++);
+            userStats.put("username", user.getUsername());
+            userStats.put("displayName", user.getDisplayName());
+            userStats.put("avatar", user.getAvatar());
+            userStats.put("role", user.getRole());
+            userStats.put("score", entry.getValue());
+            userStats.put("totalScore", user.getTotalScore());
+            userStats.put("level", user.getLevel());
+
+            leaderboard.add(userStats);
+        }
+
+        return leaderboard;
+    }
+
+    // running totals of one window, starting at the oldest day still counted
+    private static class RollingWindow {
+        private final Map<String, Integer> totals = new HashMap<>();
+        private LocalDate start;
+
+        RollingWindow(LocalDate start) {
+            this.start = start;
+        }
+
+        void add(String userId, int delta) {
+            if (delta == 0) {
+                return;
+            }
+            totals.merge(userId, delta, (a, b) -> a + b == 0 ? null : a + b);
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package ch.wiss.forum.service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import ch.wiss.forum.payload.response.Notification;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * fans notifications out to the open server-sent event streams of a user on this node. every stream
+ * is served by its own virtual thread that waits on a bounded queue and sends a heartbeat comment when
+ * nothing arrived for a while, so idle connections cost no platform threads. a stream whose queue
+ * fills up is closed, the client reconnects and catches up from the replay buffer: the last
+ * notifications of every user, which a reconnect with Last-Event-ID replays from.
+ */
+@Service
+@Slf4j
+public class NotificationHub {
+
+    // a notification with the id it is sent with
+    private record Stored(long id, Notification notification) {}
+
+    private final Duration heartbeat;
+    private final long streamTimeout;
+    private final int replaySize;
+    private final int queueSize;
+    private final int maxStreamsPerUser;
+
+    // open streams by user id, oldest first; only changed inside a compute for the user's key
+    private final Map<String, Deque<Stream>> streams = new ConcurrentHashMap<>();
+
+    // recent notifications by user id, a user's buffer is dropped after replay-window without activity
+    private final Cache<String, Deque<Stored>> recent;
+
+    // starts at the current time so ids from before a restart are lower than the new ones
+    private final AtomicLong sequence = new AtomicLong(System.currentTimeMillis() * 1000);
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder replayed = new LongAdder();
+    private final LongAdder droppedStreams = new LongAdder();
+
+    public NotificationHub(@Value("${app.notifications.heartbeat:25s}") Duration heartbeat,
+                           @Value("${app.notifications.stream-timeout:30m}") Duration streamTimeout,
+                           @Value("${app.notifications.replay-size:50}") int replaySize,
+                           @Value("${app.notifications.replay-window:10m}") Duration replayWindow,
+                           @Value("${app.notifications.max-buffered-users:10000}") long maxBufferedUsers,
+                           @Value("${app.notifications.queue-size:100}") int queueSize,
+                           @Value("${app.notifications.max-streams-per-user:5}") int maxStreamsPerUser) {
+        this.heartbeat = heartbeat;
+        this.streamTimeout = streamTimeout.toMillis();
+        this.replaySize = replaySize;
+        this.queueSize = queueSize;
+        this.maxStreamsPerUser = maxStreamsPerUser;
+        this.recent = Caffeine.newBuilder()
+            .expireAfterAccess(replayWindow)
+            .maximumSize(maxBufferedUsers)
+            .build();
+    }
+
+    // opens a stream for the user, first sending what they missed after lastEventId (if they reconnect)
+    public SseEmitter subscribe(String userId, String lastEventId) {
+        SseEmitter emitter = new SseEmitter(streamTimeout);
+        Stream stream = new Stream(userId, emitter);
+        emitter.onCompletion(stream::close);
+        emitter.onTimeout(stream::close);
+        emitter.onError(e -> stream.close());
+
+        long since = parseEventId(lastEventId);
+        Deque<Stored> buffer = recent.get(userId, id -> new ArrayDeque<>());
+        // under the buffer's lock, so a notification is either replayed or delivered live, in order
+        synchronized (buffer) {
+            if (since >= 0) {
+                for (Stored stored : buffer) {
+                    if (stored.id() > since) {
+                        stream.offer(stored);
+                        replayed.increment();
+                    }
+                }
+            }
+            // the cap is checked and the stream added in one step, so concurrent connects cannot overshoot it
+            List<Stream> evicted = new ArrayList<>();
+            streams.compute(userId, (id, userStreams) -> {
+                Deque<Stream> open = userStreams != null ? userStreams : new ConcurrentLinkedDeque<>();
+                while (!open.isEmpty() && open.size() >= maxStreamsPerUser) {
+                    // an old tab that was never closed, keep the newest connections
+                    evicted.add(open.removeFirst());
+                }
+                open.addLast(stream);
+                return open;
+            });
+            // outside the compute, closing a stream updates the map again
+            evicted.forEach(Stream::close);
+        }
+
+        Thread.ofVirtual().name("sse-" + userId).start(stream);
+        return emitter;
+    }
+
+    public void publish(String userId, Notification notification) {
+        Deque<Stored> buffer = recent.get(userId, id -> new ArrayDeque<>());
+        synchronized (buffer) {
+            Stored stored = new Stored(sequence.incrementAndGet(), notification);
+            buffer.addLast(stored);
+            while (buffer.size() > replaySize) {
+                buffer.removeFirst();
+            }
+            published.increment();
+            Deque<Stream> userStreams = streams.get(userId);
+            if (userStreams != null) {
+                userStreams.forEach(stream -> stream.offer(stored));
+            }
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("users", streams.size());
+        result.put("streams", streams.values().stream().mapToInt(Deque::size).sum());
+        result.put("bufferedUsers", recent.estimatedSize());
+        result.put("published", published.sum());
+        result.put("replayed", replayed.sum());
+        result.put("droppedStreams", droppedStreams.sum());
+        return result;
+    }
+
+    private static long parseEventId(String lastEventId) {
+        if (lastEventId == null || lastEventId.isBlank()) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(lastEventId.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // one open connection and the virtual thread writing to it
+    private final class Stream implements Runnable {
+
+        private final String userId;
+        private final SseEmitter emitter;
+        private final BlockingQueue<Stored> queue = new LinkedBlockingQueue<>(queueSize);
+
+        private volatile Thread thread;
+        private volatile boolean closed;
+
+        Stream(String userId, SseEmitter emitter) {
+            this.userId = userId;
+            this.emitter = emitter;
+        }
+
+        void offer(Stored stored) {
+            if (!closed && !queue.offer(stored)) {
+                // the client does not keep up, it gets the rest from the replay buffer when it reconnects
+                droppedStreams.increment();
+                log.debug("Closing notification stream of user {}, {} notifications queued", userId, queueSize);
+                close();
+            }
+        }
+
+        @Override
+        public void run() {
+            thread = Thread.currentThread();
+            try {
+                while (!closed) {
+                    Stored next = queue.poll(heartbeat.toMillis(), TimeUnit.MILLISECONDS);
+                    if (closed) {
+                        break;
+                    }
+                    if (next == null) {
+                        // keeps proxies from closing an idle connection and finds dead ones
+                        emitter.send(SseEmitter.event().comment("heartbeat"));
+                    } else {
+                        emitter.send(SseEmitter.event().id(Long.toString(next.id())).data(next.notification()));
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException | IllegalStateException e) {
+                // the client went away
+                log.debug("Notification stream of user {} ended: {}", userId, e.getMessage());
+            } finally {
+                close();
+            }
+        }
+
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            streams.computeIfPresent(userId, (id, userStreams) -> {
+                userStreams.remove(this);
+                return userStreams.isEmpty() ? null : userStreams;
+            });
+            try {
+                emitter.complete();
+            } catch (IllegalStateException e) {
+                // already completed
+            }
+            Thread running = thread;
+            if (running != null && running != Thread.currentThread()) {
+                running.interrupt();
+            }
+        }
+    }
+}
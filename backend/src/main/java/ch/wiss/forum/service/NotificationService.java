@@ -0,0 +1,40 @@
+package ch.wiss.forum.service;
+
+import org.springframework.stereotype.Service;
+
+import ch.wiss.forum.model.Post;
+import ch.wiss.forum.model.User;
+import ch.wiss.forum.payload.response.Notification;
+import lombok.RequiredArgsConstructor;
+
+// decides who hears about a new post or like, NotificationHub delivers it
+@Service
+@RequiredArgsConstructor
+public class NotificationService {
+
+    private final NotificationHub notificationHub;
+
+    public void postCreated(Post post, User author) {
+        User replyToAuthor = post.getReplyTo() != null ? post.getReplyTo().getAuthor() : null;
+        if (replyToAuthor != null && !isSameUser(replyToAuthor, author)) {
+            notificationHub.publish(replyToAuthor.getId(), Notification.of(Notification.Type.POST_REPLY, post, author));
+        }
+
+        // the topic's author gets one notification, also when the reply was to their own post
+        User topicAuthor = post.getTopic().getAuthor();
+        if (topicAuthor != null && !isSameUser(topicAuthor, author) && !isSameUser(topicAuthor, replyToAuthor)) {
+            notificationHub.publish(topicAuthor.getId(), Notification.of(Notification.Type.TOPIC_REPLY, post, author));
+        }
+    }
+
+    public void postLiked(Post post, User liker) {
+        User author = post.getAuthor();
+        if (author != null && !isSameUser(author, liker)) {
+            notificationHub.publish(author.getId(), Notification.of(Notification.Type.POST_LIKED, post, liker));
+        }
+    }
+
+    private static boolean isSameUser(User user, User other) {
+        return other != null && user.getId() != null && user.getId().equals(other.getId());
+    }
+}
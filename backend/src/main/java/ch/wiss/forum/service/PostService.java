@@ -1,13 +1,16 @@
 package ch.wiss.forum.service;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 
+import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import ch.wiss.forum.config.CacheConfig;
 import ch.wiss.forum.model.Post;
 import ch.wiss.forum.model.Role;
 import ch.wiss.forum.model.Topic;
@@ -25,6 +28,9 @@ public class PostService {
     private final TopicRepository topicRepository;
     private final TopicService topicService;
     private final GamificationService gamificationService;
+    private final ResponseCacheService responseCacheService;
+    private final TopicEventPublisher topicEventPublisher;
+    private final NotificationService notificationService;
     
     public Page<Post> getPostsByTopic(String topicId, Pageable pageable) {
         Topic topic = topicService.getTopicById(topicId);
@@ -45,6 +51,7 @@ public class PostService {
     }
     
     @Transactional
+    @CacheEvict(cacheNames = CacheConfig.TOPICS, allEntries = true)
     public Post createPost(Post post, User currentUser) {
         String topicId = post.getTopic().getId();
         Topic topic = topicService.getTopicById(topicId);
@@ -66,7 +73,11 @@ public class PostService {
         topicRepository.save(topic);
         
         // Update gamification stats
-        gamificationService.updateUserStatsOnPostCreated(currentUser);
+        gamificationService.updateUserStatsOnPostCreated(currentUser, savedPost);
+        // topics show the reply count and last post
+        responseCacheService.invalidate(ResponseCacheService.POSTS, ResponseCacheService.TOPICS, ResponseCacheService.LEADERBOARD);
+        topicEventPublisher.postCreated(savedPost);
+        notificationService.postCreated(savedPost, currentUser);
         
         return savedPost;
     }
@@ -85,10 +96,14 @@ public class PostService {
         post.setEdited(true);
         post.setLastEditedAt(LocalDateTime.now());
         
-        return postRepository.save(post);
+        Post savedPost = postRepository.save(post);
+        responseCacheService.invalidate(ResponseCacheService.POSTS, ResponseCacheService.TOPICS);
+        topicEventPublisher.postUpdated(savedPost);
+        return savedPost;
     }
     
     @Transactional
+    @CacheEvict(cacheNames = CacheConfig.TOPICS, allEntries = true)
     public void deletePost(String id, User currentUser) {
         Post post = getPostById(id);
         
@@ -128,6 +143,12 @@ public class PostService {
         
         // delete the post
         postRepository.delete(post);
+        responseCacheService.invalidate(ResponseCacheService.POSTS, ResponseCacheService.TOPICS);
+        
+        List<String> deletedIds = new ArrayList<>();
+        deletedIds.add(post.getId());
+        replies.forEach(reply -> deletedIds.add(reply.getId()));
+        topicEventPublisher.postsDeleted(topic.getId(), deletedIds);
     }
     
     public Post likePost(String id, User currentUser) {
@@ -138,7 +159,10 @@ public class PostService {
             Post savedPost = postRepository.save(post);
             
             // Update gamification stats for the post author (not the current user who liked it)
-            gamificationService.updateUserStatsOnLikeReceived(post.getAuthor());
+            gamificationService.updateUserStatsOnLikeReceived(post.getAuthor(), post.getId(), currentUser.getId());
+            responseCacheService.invalidate(ResponseCacheService.POSTS, ResponseCacheService.LEADERBOARD);
+            topicEventPublisher.likesChanged(savedPost);
+            notificationService.postLiked(savedPost, currentUser);
             
             return savedPost;
         }
@@ -149,13 +173,19 @@ public class PostService {
     public Post unlikePost(String id, User currentUser) {
         Post post = getPostById(id);
         
-        post.getLikes().remove(currentUser.getId());
-        Post savedPost = postRepository.save(post);
-        
-        // Update gamification stats for the post author (decrease their score)
-        gamificationService.updateUserStatsOnLikeRemoved(post.getAuthor());
+        // only a like that exists can be taken back, otherwise the author would lose points for nothing
+        if (post.getLikes().remove(currentUser.getId())) {
+            Post savedPost = postRepository.save(post);
+            
+            // Update gamification stats for the post author (decrease their score)
+            gamificationService.updateUserStatsOnLikeRemoved(post.getAuthor(), post.getId(), currentUser.getId());
+            responseCacheService.invalidate(ResponseCacheService.POSTS, ResponseCacheService.LEADERBOARD);
+            topicEventPublisher.likesChanged(savedPost);
+            
+            return savedPost;
+        }
         
-        return savedPost;
+        return post;
     }
     
     public long getPostCountByTopic(Topic topic) {
@@ -0,0 +1,191 @@
+package ch.wiss.forum.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * serialized responses of the public GET endpoints, as sent to anonymous clients: the json bytes and,
+ * for larger bodies, their gzip compression made once when the entry is stored. entries are tagged
+ * with what they show (categories, topics, posts, leaderboard); the services invalidate a tag after a
+ * write, on this node and through redis pub/sub on every other node. a response that was computed
+ * while an invalidation happened is not stored.
+ */
+@Service
+@Slf4j
+public class ResponseCacheService {
+
+    public static final String INVALIDATION_CHANNEL = "wiss-forum:response-cache:invalidate";
+
+    public static final String CATEGORIES = "categories";
+    public static final String TOPICS = "topics";
+    public static final String POSTS = "posts";
+    public static final String LEADERBOARD = "leaderboard";
+
+    // below this a gzip copy saves less than its headers cost
+    private static final int MIN_GZIP_SIZE = 1024;
+
+    public record CachedResponse(String contentType, byte[] body, byte[] gzipped, Set<String> tags) {
+        int weight() {
+            return body.length + (gzipped != null ? gzipped.length : 0);
+        }
+    }
+
+    private final ObjectProvider<StringRedisTemplate> redisTemplate;
+    private final boolean crossNodeInvalidation;
+    private final boolean enabled;
+    private final long maxEntrySize;
+
+    private final Cache<String, CachedResponse> responses;
+
+    // bumped on every invalidation, a response computed across one is not stored
+    private final AtomicLong invalidationEpoch = new AtomicLong();
+
+    // identifies this node so it can ignore its own broadcasts
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder bypassed = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public ResponseCacheService(ObjectProvider<StringRedisTemplate> redisTemplate,
+                                @Value("${app.response-cache.enabled:true}") boolean enabled,
+                                @Value("${app.response-cache.max-bytes:32MB}") DataSize maxBytes,
+                                @Value("${app.response-cache.max-entry-size:512KB}") DataSize maxEntrySize,
+                                @Value("${app.response-cache.ttl:30s}") Duration ttl,
+                                @Value("${spring.cache.type:none}") String cacheType) {
+        this.redisTemplate = redisTemplate;
+        this.crossNodeInvalidation = "redis".equalsIgnoreCase(cacheType);
+        this.enabled = enabled;
+        this.maxEntrySize = maxEntrySize.toBytes();
+        this.responses = Caffeine.newBuilder()
+            .maximumWeight(maxBytes.toBytes())
+            .weigher((String key, CachedResponse response) -> response.weight())
+            .expireAfterWrite(ttl)
+            .recordStats()
+            .build();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public CachedResponse get(String key) {
+        CachedResponse cached = responses.getIfPresent(key);
+        if (cached != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return cached;
+    }
+
+    // taken before the response is computed, passed back to put
+    public long currentEpoch() {
+        return invalidationEpoch.get();
+    }
+
+    public void put(String key, String contentType, byte[] body, Set<String> tags, long epoch) {
+        if (body.length > maxEntrySize) {
+            return;
+        }
+        CachedResponse response = new CachedResponse(contentType, body, body.length >= MIN_GZIP_SIZE ? gzip(body) : null, tags);
+        responses.asMap().compute(key, (k, existing) ->
+            // invalidated while it was computed, it may show the state before the write
+            invalidationEpoch.get() == epoch ? response : existing);
+    }
+
+    public void recordBypass() {
+        bypassed.increment();
+    }
+
+    // drop every response showing one of the tags, here and on the other nodes
+    public void invalidate(String... tags) {
+        for (String tag : tags) {
+            invalidateLocal(tag);
+            broadcast(tag);
+        }
+    }
+
+    public void invalidateLocal(String tag) {
+        invalidationEpoch.incrementAndGet();
+        invalidations.increment();
+        responses.asMap().values().removeIf(response -> response.tags().contains(tag));
+    }
+
+    // handles an invalidation broadcast by another node ("<nodeId>|<tag>")
+    public void onInvalidationMessage(String message) {
+        int separator = message.indexOf('|');
+        if (separator < 0 || nodeId.equals(message.substring(0, separator))) {
+            return;
+        }
+        invalidateLocal(message.substring(separator + 1));
+    }
+
+    public Map<String, Object> getStats() {
+        CacheStats stats = responses.stats();
+        long lookups = hits.sum() + misses.sum();
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("enabled", enabled);
+        result.put("entries", responses.estimatedSize());
+        result.put("bytes", responses.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0L)).orElse(0L));
+        result.put("hits", hits.sum());
+        result.put("misses", misses.sum());
+        result.put("hitRate", lookups == 0 ? 0.0 : (double) hits.sum() / lookups);
+        result.put("bypassed", bypassed.sum());
+        result.put("invalidations", invalidations.sum());
+        result.put("evictions", stats.evictionCount());
+        result.put("crossNodeInvalidation", crossNodeInvalidation);
+        return result;
+    }
+
+    private void broadcast(String tag) {
+        if (!crossNodeInvalidation) {
+            return;
+        }
+
+        StringRedisTemplate template = redisTemplate.getIfAvailable();
+        if (template == null) {
+            return;
+        }
+
+        try {
+            template.convertAndSend(INVALIDATION_CHANNEL, nodeId + "|" + tag);
+        } catch (Exception e) {
+            // other nodes serve the old responses until their ttl
+            log.warn("Could not broadcast response cache invalidation for {}: {}", tag, e.getMessage());
+        }
+    }
+
+    private static byte[] gzip(byte[] body) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return compressed.toByteArray();
+    }
+}
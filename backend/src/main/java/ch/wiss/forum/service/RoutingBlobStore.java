@@ -0,0 +1,77 @@
+package ch.wiss.forum.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+
+/**
+ * the BlobStore the application uses: new content goes to the configured tier
+ * (app.file-storage.blob-store=gridfs|filesystem), existing content is read and deleted wherever
+ * its key says it is. switching the tier therefore needs no downtime, BlobStoreMigrationService
+ * moves the existing blobs over afterwards.
+ */
+@Service
+@Primary
+public class RoutingBlobStore implements BlobStore {
+
+    private final GridFsBlobStore gridFsBlobStore;
+    private final FileSystemBlobStore fileSystemBlobStore;
+    private final boolean fileSystemTarget;
+
+    public RoutingBlobStore(GridFsBlobStore gridFsBlobStore, FileSystemBlobStore fileSystemBlobStore,
+                            @Value("${app.file-storage.blob-store:gridfs}") String target) {
+        this.gridFsBlobStore = gridFsBlobStore;
+        this.fileSystemBlobStore = fileSystemBlobStore;
+        this.fileSystemTarget = "filesystem".equalsIgnoreCase(target);
+    }
+
+    @Override
+    public String store(InputStream content, String filename, String contentType) throws IOException {
+        return target().store(content, filename, contentType);
+    }
+
+    @Override
+    public InputStream open(String key, long offset) throws IOException {
+        return storeOf(key).open(key, offset);
+    }
+
+    @Override
+    public void delete(String key) {
+        storeOf(key).delete(key);
+    }
+
+    @Override
+    public Optional<Path> localPath(String key) {
+        return storeOf(key).localPath(key);
+    }
+
+    @Override
+    public Stream<Blob> listOlderThan(Instant cutoff) throws IOException {
+        Stream<Blob> gridFs = gridFsBlobStore.listOlderThan(cutoff);
+        try {
+            return Stream.concat(gridFs, fileSystemBlobStore.listOlderThan(cutoff));
+        } catch (IOException | RuntimeException e) {
+            gridFs.close();
+            throw e;
+        }
+    }
+
+    public boolean isFileSystemTarget() {
+        return fileSystemTarget;
+    }
+
+    private BlobStore target() {
+        return fileSystemTarget ? fileSystemBlobStore : gridFsBlobStore;
+    }
+
+    private BlobStore storeOf(String key) {
+        return fileSystemBlobStore.owns(key) ? fileSystemBlobStore : gridFsBlobStore;
+    }
+}
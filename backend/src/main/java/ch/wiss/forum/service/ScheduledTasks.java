@@ -2,6 +2,9 @@ package ch.wiss.forum.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
@@ -10,15 +13,18 @@ import org.springframework.stereotype.Service;
 @Slf4j
 public class ScheduledTasks {
     
+    public static final String STREAK_RESET_JOB = "user-streak-reset";
+    
     private final GamificationService gamificationService;
+    private final JobRunner jobRunner;
     
-    // update user streaks daily at midnight
+    // update user streaks daily at midnight, only one node runs it
     @Scheduled(cron = "0 0 0 * * *")
     public void updateUserStreaks() {
         log.info("Starting daily user streak update...");
         try {
-            gamificationService.updateAllUserStreaks();
-            log.info("Daily user streak update completed successfully");
+            jobRunner.runExclusively(STREAK_RESET_JOB, Duration.ofMinutes(10),
+                run -> gamificationService.updateAllUserStreaks());
         } catch (Exception e) {
             log.error("Error updating user streaks: ", e);
         }
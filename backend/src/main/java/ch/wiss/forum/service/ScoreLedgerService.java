@@ -0,0 +1,91 @@
+package ch.wiss.forum.service;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import com.mongodb.bulk.BulkWriteError;
+
+import ch.wiss.forum.model.ScoreEvent;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * writes gamification events to the score_events ledger, the source of truth of the user stats.
+ * an event is written before the stats it changes, so a crash in between leaves an event the stats
+ * miss (the next replay puts it back) and never stats the ledger does not know about. the event id
+ * is its idempotency key: recording an event that is already in the ledger returns false, and the
+ * caller does not apply it a second time.
+ */
+@Service
+@Slf4j
+public class ScoreLedgerService {
+
+    private static final int DUPLICATE_KEY = 11000;
+
+    private final MongoTemplate mongoTemplate;
+
+    private final LongAdder written = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+
+    public ScoreLedgerService(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    // true if the event is new, a failed write throws and the caller leaves the stats alone
+    public boolean record(ScoreEvent event) {
+        try {
+            mongoTemplate.insert(event);
+            written.increment();
+            return true;
+        } catch (DuplicateKeyException e) {
+            duplicates.increment();
+            log.debug("Score event {} is already in the ledger", event.getId());
+            return false;
+        }
+    }
+
+    // unordered bulk insert for batch jobs, events already in the ledger are skipped
+    public long recordAll(List<ScoreEvent> events) {
+        if (events.isEmpty()) {
+            return 0;
+        }
+        try {
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ScoreEvent.class);
+            bulk.insert(events);
+            int inserted = bulk.execute().getInsertedCount();
+            written.add(inserted);
+            return inserted;
+        } catch (BulkOperationException e) {
+            int inserted = e.getResult().getInsertedCount();
+            written.add(inserted);
+            for (BulkWriteError error : e.getErrors()) {
+                if (error.getCode() != DUPLICATE_KEY) {
+                    throw e;
+                }
+                duplicates.increment();
+            }
+            return inserted;
+        }
+    }
+
+    // events whose id starts with the prefix, served from the _id index
+    public long countWithIdPrefix(String prefix) {
+        return mongoTemplate.count(new Query(Criteria.where("_id").regex("^" + prefix)), ScoreEvent.class);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("written", written.sum());
+        stats.put("duplicates", duplicates.sum());
+        return stats;
+    }
+}
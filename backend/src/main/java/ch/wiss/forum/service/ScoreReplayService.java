@@ -0,0 +1,240 @@
+package ch.wiss.forum.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import ch.wiss.forum.model.JobRun;
+import ch.wiss.forum.model.ScoreEvent;
+import ch.wiss.forum.model.User;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * rebuilds the user stats projection from the score_events ledger.
+ * the user id space is split into ranges of about equal size (see UserIdRanges), each range is
+ * streamed in (userId, occurredAt) order over the user_time index and folded user by user through
+ * GamificationService.applyEvent, so a replay after a change of the score constants or level
+ * thresholds applies the new rules to every ledger event. the points of an opening balance are
+ * kept as recorded: they include streak bonuses that cannot be told apart from the counters,
+ * so what a user scored before the ledger existed is not recomputed.
+ * users that scored again after the replay started are left alone, their live state is newer,
+ * and so are users whose ledger does not start with an opening balance.
+ * the time-windowed leaderboards keep the deltas they recorded.
+ */
+@Service
+@Slf4j
+public class ScoreReplayService {
+
+    public static final String REPLAY_JOB = "score-replay";
+
+    private static final int PARTITIONS = 16;
+
+    private final MongoTemplate mongoTemplate;
+    private final GamificationService gamificationService;
+    private final UserCacheService userCacheService;
+    private final JobRunner jobRunner;
+
+    private final int writeBatchSize;
+    private final Duration settleTime;
+
+    private final ExecutorService triggerExecutor;
+    private final ExecutorService partitionExecutor;
+
+    public ScoreReplayService(MongoTemplate mongoTemplate, GamificationService gamificationService,
+                              UserCacheService userCacheService,
+                              JobRunner jobRunner,
+                              @Value("${app.score-ledger.replay-threads:4}") int replayThreads,
+                              @Value("${app.score-ledger.replay-batch-size:1000}") int writeBatchSize,
+                              @Value("${app.score-ledger.replay-settle-time:30s}") Duration settleTime) {
+        this.mongoTemplate = mongoTemplate;
+        this.gamificationService = gamificationService;
+        this.userCacheService = userCacheService;
+        this.jobRunner = jobRunner;
+        this.writeBatchSize = writeBatchSize;
+        this.settleTime = settleTime;
+
+        this.triggerExecutor = DaemonPools.fixed(1, 1, "score-replay", new ThreadPoolExecutor.DiscardPolicy());
+        this.partitionExecutor = DaemonPools.fixed(replayThreads, 64, "score-replay-partition", new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    // start a replay in the background, progress and result end up in job_runs
+    public void startReplay() {
+        triggerExecutor.execute(this::replay);
+    }
+
+    public Optional<JobRun> replay() {
+        return jobRunner.runExclusively(REPLAY_JOB, Duration.ofHours(1), this::replayAll);
+    }
+
+    private long replayAll(JobRun run) throws Exception {
+        // an event is written just before the stats it changes; events younger than the settle time
+        // may not be in the stats yet, they and their users are left for the next replay
+        LocalDateTime cutoff = LocalDateTime.now().minus(settleTime);
+
+        List<Future<PartitionResult>> futures = new ArrayList<>();
+        for (UserIdRanges.Range range : UserIdRanges.split(mongoTemplate, PARTITIONS)) {
+            futures.add(partitionExecutor.submit(() -> replayPartition(range.onHexStrings("userId"), cutoff)));
+        }
+
+        long events = 0;
+        long users = 0;
+        long updated = 0;
+        long unopened = 0;
+        for (Future<PartitionResult> future : futures) {
+            PartitionResult result = future.get();
+            events += result.events;
+            users += result.users;
+            updated += result.updated;
+            unopened += result.unopened;
+        }
+
+        // the bulk writes bypass the repository events
+        userCacheService.evictAll();
+
+        run.getDetails().put("cutoff", cutoff.toString());
+        run.getDetails().put("events", events);
+        run.getDetails().put("users", users);
+        run.getDetails().put("skippedUsers", users - updated);
+        run.getDetails().put("unopenedUsers", unopened);
+        return updated;
+    }
+
+    private PartitionResult replayPartition(Criteria range, LocalDateTime cutoff) {
+        PartitionResult result = new PartitionResult();
+        Query query = new Query(range.and("occurredAt").lte(cutoff))
+            .with(Sort.by(Sort.Order.asc("userId"), Sort.Order.asc("occurredAt")))
+            .cursorBatchSize(5000);
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, User.class);
+        int pending = 0;
+
+        String currentUserId = null;
+        User projection = null;
+        boolean opened = false;
+
+        try (Stream<ScoreEvent> events = mongoTemplate.stream(query, ScoreEvent.class)) {
+            var iterator = events.iterator();
+            while (iterator.hasNext()) {
+                ScoreEvent event = iterator.next();
+                result.events++;
+
+                if (!event.getUserId().equals(currentUserId)) {
+                    if (projection != null && opened) {
+                        write(bulk, currentUserId, projection, cutoff);
+                        if (++pending >= writeBatchSize) {
+                            result.updated += bulk.execute().getMatchedCount();
+                            bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, User.class);
+                            pending = 0;
+                        }
+                    }
+                    currentUserId = event.getUserId();
+                    projection = User.builder().build();
+                    result.users++;
+                    // without an opening balance the ledger does not know what the user had before,
+                    // rebuilding them from zero would wipe their score
+                    opened = event.getType() == ScoreEvent.Type.OPENING_BALANCE;
+                    if (!opened) {
+                        result.unopened++;
+                    }
+                }
+
+                if (event.getType() == ScoreEvent.Type.OPENING_BALANCE) {
+                    restore(projection, event.getSnapshot());
+                } else if (event.getType() == ScoreEvent.Type.CORRECTION) {
+                    correct(projection, event.getSnapshot());
+                }
+                gamificationService.applyEvent(projection, event.getType(), event.getCount(), event.getOccurredAt());
+            }
+        }
+
+        if (projection != null && opened) {
+            write(bulk, currentUserId, projection, cutoff);
+            pending++;
+        }
+        if (pending > 0) {
+            result.updated += bulk.execute().getMatchedCount();
+        }
+
+        return result;
+    }
+
+    private void write(BulkOperations bulk, String userId, User projection, LocalDateTime cutoff) {
+        gamificationService.expireStreak(projection, cutoff);
+
+        Query query = new Query(Criteria.where("_id").is(userId)
+            .orOperator(Criteria.where("scoredAt").is(null), Criteria.where("scoredAt").lte(cutoff)));
+        Update update = new Update()
+            .set("totalScore", projection.getTotalScore())
+            .set("level", projection.getLevel())
+            .set("topicsCreated", projection.getTopicsCreated())
+            .set("postsCreated", projection.getPostsCreated())
+            .set("likesReceived", projection.getLikesReceived())
+            .set("currentStreak", projection.getCurrentStreak())
+            .set("longestStreak", projection.getLongestStreak())
+            .set("lastActivityDate", projection.getLastActivityDate())
+            .set("badges", projection.getBadges())
+            .set("achievements", projection.getAchievements())
+            .set("achievementMask", projection.getAchievementMask());
+        bulk.updateOne(query, update);
+    }
+
+    // start from what the user had before the ledger, the score as recorded, the level with the current thresholds
+    private static void restore(User projection, ScoreEvent.Snapshot snapshot) {
+        if (snapshot == null) {
+            return;
+        }
+        projection.setTotalScore(snapshot.getTotalScore());
+        projection.setTopicsCreated(snapshot.getTopicsCreated());
+        projection.setPostsCreated(snapshot.getPostsCreated());
+        projection.setLikesReceived(snapshot.getLikesReceived());
+        projection.setCurrentStreak(snapshot.getCurrentStreak());
+        projection.setLongestStreak(snapshot.getLongestStreak());
+        projection.setLastActivityDate(snapshot.getLastActivityDate());
+        projection.setLevel(1);
+        projection.setBadges(snapshot.getBadges().stream()
+            .filter(badge -> !badge.startsWith("LEVEL_"))
+            .collect(Collectors.toCollection(ArrayList::new)));
+        projection.setAchievements(new ArrayList<>(snapshot.getAchievements()));
+    }
+
+    // a backfill correction, the snapshot holds what was added to each counter
+    private static void correct(User projection, ScoreEvent.Snapshot delta) {
+        if (delta == null) {
+            return;
+        }
+        projection.setTotalScore(Math.max(0, projection.getTotalScore() + delta.getTotalScore()));
+        projection.setTopicsCreated(Math.max(0, projection.getTopicsCreated() + delta.getTopicsCreated()));
+        projection.setPostsCreated(Math.max(0, projection.getPostsCreated() + delta.getPostsCreated()));
+        projection.setLikesReceived(Math.max(0, projection.getLikesReceived() + delta.getLikesReceived()));
+    }
+
+    private static class PartitionResult {
+        long events;
+        long users;
+        long updated;
+        long unopened;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        triggerExecutor.shutdown();
+        partitionExecutor.shutdown();
+    }
+}
@@ -0,0 +1,123 @@
+package ch.wiss.forum.service;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import ch.wiss.forum.model.FileEntity;
+import ch.wiss.forum.model.StorageUsage;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * per-user storage quota. the bytes used are a counter next to the files, charged with a conditional
+ * $inc that only matches while the new total stays within the quota, so concurrent uploads can't
+ * overshoot it together; deletions give the bytes back. a user's counter is created on first use from
+ * the files already stored, after that the files are never summed up again.
+ */
+@Service
+@Slf4j
+public class StorageQuotaService {
+
+    public static class QuotaExceededException extends RuntimeException {
+        public QuotaExceededException(long quota) {
+            super("Storage quota of " + DataSize.ofBytes(quota).toMegabytes() + "MB exceeded");
+        }
+    }
+
+    private final MongoTemplate mongoTemplate;
+    private final long quota;
+
+    public StorageQuotaService(MongoTemplate mongoTemplate,
+                               @Value("${app.file-storage.user-quota:200MB}") DataSize quota) {
+        this.mongoTemplate = mongoTemplate;
+        this.quota = quota.toBytes();
+    }
+
+    public long getQuota() {
+        return quota;
+    }
+
+    // bytes the user can still upload, the cheap check before an upload is read
+    public long remaining(String userId) {
+        return Math.max(0, quota - usageOf(userId).getBytesUsed());
+    }
+
+    // false if the file would take the user over the quota, nothing is charged then
+    public boolean tryCharge(String userId, long bytes) {
+        usageOf(userId);
+        Query withinQuota = new Query(Criteria.where("_id").is(userId).and("bytesUsed").lte(quota - bytes));
+        return mongoTemplate.updateFirst(withinQuota, charge(bytes), StorageUsage.class).getModifiedCount() > 0;
+    }
+
+    // files that were already there in another form (migrated avatars) count, but are never refused
+    public void forceCharge(String userId, long bytes) {
+        usageOf(userId);
+        mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(userId)), charge(bytes), StorageUsage.class);
+    }
+
+    public void refund(String userId, long bytes) {
+        if (userId == null) {
+            return;
+        }
+        Query query = new Query(Criteria.where("_id").is(userId).and("bytesUsed").gte(bytes).and("fileCount").gt(0));
+        Update update = new Update().inc("bytesUsed", -bytes).inc("fileCount", -1).set("updatedAt", LocalDateTime.now());
+        if (mongoTemplate.updateFirst(query, update, StorageUsage.class).getModifiedCount() == 0) {
+            log.warn("Storage usage of user {} is lower than the refunded {} bytes", userId, bytes);
+        }
+    }
+
+    public Map<String, Object> getUsage(String userId) {
+        StorageUsage usage = usageOf(userId);
+        Map<String, Object> result = new HashMap<>();
+        result.put("bytesUsed", usage.getBytesUsed());
+        result.put("fileCount", usage.getFileCount());
+        result.put("quota", quota);
+        result.put("remaining", Math.max(0, quota - usage.getBytesUsed()));
+        return result;
+    }
+
+    // the user's counter, created from the stored files on first use
+    private StorageUsage usageOf(String userId) {
+        StorageUsage usage = mongoTemplate.findById(userId, StorageUsage.class);
+        if (usage != null) {
+            return usage;
+        }
+
+        List<Document> pipeline = List.of(
+            new Document("$match", new Document("uploaded_by", userId)),
+            new Document("$group", new Document("_id", null)
+                .append("bytes", new Document("$sum", "$size"))
+                .append("files", new Document("$sum", 1))));
+        Document totals = mongoTemplate.getCollection(mongoTemplate.getCollectionName(FileEntity.class))
+            .aggregate(pipeline)
+            .first();
+
+        StorageUsage initial = StorageUsage.builder()
+            .id(userId)
+            .bytesUsed(totals != null ? ((Number) totals.get("bytes")).longValue() : 0L)
+            .fileCount(totals != null ? ((Number) totals.get("files")).longValue() : 0L)
+            .updatedAt(LocalDateTime.now())
+            .build();
+        try {
+            return mongoTemplate.insert(initial);
+        } catch (DuplicateKeyException e) {
+            // created by a concurrent upload
+            return mongoTemplate.findById(userId, StorageUsage.class);
+        }
+    }
+
+    private static Update charge(long bytes) {
+        return new Update().inc("bytesUsed", bytes).inc("fileCount", 1).set("updatedAt", LocalDateTime.now());
+    }
+}
@@ -0,0 +1,138 @@
+package ch.wiss.forum.service;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.bson.Document;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import ch.wiss.forum.model.StoredBlob;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * content-addressed blobs with reference counting. every FileEntity with the same SHA-256 points
+ * at one StoredBlob; taking and dropping a reference are single $inc updates, and the blob is only
+ * deleted after the conditional removal of its record at refCount 0 succeeded, so a reference taken
+ * concurrently always keeps the blob alive.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class StoredBlobService {
+
+    private final MongoTemplate mongoTemplate;
+    private final BlobStore blobStore;
+
+    // a reference to the existing content with this hash, empty if there is none
+    public Optional<StoredBlob> acquire(String sha256) {
+        if (sha256 == null) {
+            return Optional.empty();
+        }
+        Query query = new Query(Criteria.where("_id").is(sha256));
+        return Optional.ofNullable(mongoTemplate.findAndModify(query, new Update().inc("refCount", 1),
+            FindAndModifyOptions.options().returnNew(true), StoredBlob.class));
+    }
+
+    /**
+     * takes a reference for freshly stored content. if the same content is already stored the new
+     * copy is deleted again and the existing blob is returned, otherwise the new blob is registered.
+     */
+    public StoredBlob share(String sha256, String storageKey, long size) {
+        return share(sha256, storageKey, size, null, null);
+    }
+
+    // the same for content stored compressed, size is the one of the original
+    public StoredBlob share(String sha256, String storageKey, long size, String contentEncoding, Long storedSize) {
+        while (true) {
+            Optional<StoredBlob> existing = acquire(sha256);
+            if (existing.isPresent()) {
+                if (!existing.get().getStorageKey().equals(storageKey)) {
+                    blobStore.delete(storageKey);
+                }
+                return existing.get();
+            }
+
+            try {
+                return mongoTemplate.insert(StoredBlob.builder()
+                    .id(sha256)
+                    .storageKey(storageKey)
+                    .size(size)
+                    .contentEncoding(contentEncoding)
+                    .storedSize(storedSize)
+                    .refCount(1)
+                    .createdAt(LocalDateTime.now())
+                    .build());
+            } catch (DuplicateKeyException e) {
+                // stored concurrently, take a reference to that one instead
+                log.debug("Blob {} registered concurrently", sha256);
+            }
+        }
+    }
+
+    /**
+     * drops a file's reference, the last one deletes the content. false if the file's content is not
+     * a shared blob (stored before deduplication), the caller then owns and deletes it.
+     */
+    public boolean release(String sha256, String storageKey) {
+        if (sha256 == null) {
+            return false;
+        }
+        Query query = new Query(Criteria.where("_id").is(sha256).and("storageKey").is(storageKey).and("refCount").gt(0));
+        StoredBlob released = mongoTemplate.findAndModify(query, new Update().inc("refCount", -1),
+            FindAndModifyOptions.options().returnNew(true), StoredBlob.class);
+        if (released == null) {
+            return false;
+        }
+        if (released.getRefCount() > 0) {
+            return true;
+        }
+
+        // only whoever removes the record at 0 deletes the blob, a concurrent acquire makes this a no-op
+        Query unreferenced = new Query(Criteria.where("_id").is(sha256).and("refCount").is(0));
+        if (mongoTemplate.remove(unreferenced, StoredBlob.class).getDeletedCount() > 0) {
+            blobStore.delete(released.getStorageKey());
+            log.info("Deleted blob {} after its last reference", sha256);
+        }
+        return true;
+    }
+
+    // physical bytes stored (compressed where it is) versus the bytes all file records add up to
+    public Map<String, Object> getStats() {
+        List<Document> pipeline = List.of(new Document("$group", new Document("_id", null)
+            .append("blobs", new Document("$sum", 1))
+            .append("references", new Document("$sum", "$refCount"))
+            .append("storedBytes", new Document("$sum", new Document("$ifNull", List.of("$storedSize", "$size"))))
+            .append("referencedBytes", new Document("$sum", new Document("$multiply", List.of("$size", "$refCount"))))));
+
+        Document totals = mongoTemplate.getCollection(mongoTemplate.getCollectionName(StoredBlob.class))
+            .aggregate(pipeline)
+            .first();
+
+        long storedBytes = totals != null ? toLong(totals.get("storedBytes")) : 0L;
+        long referencedBytes = totals != null ? toLong(totals.get("referencedBytes")) : 0L;
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("blobs", totals != null ? toLong(totals.get("blobs")) : 0L);
+        stats.put("references", totals != null ? toLong(totals.get("references")) : 0L);
+        stats.put("storedBytes", storedBytes);
+        stats.put("referencedBytes", referencedBytes);
+        stats.put("savedBytes", referencedBytes - storedBytes);
+        stats.put("savedRatio", referencedBytes > 0 ? (double) (referencedBytes - storedBytes) / referencedBytes : 0.0);
+        return stats;
+    }
+
+    // $sum returns int or long depending on the magnitude
+    private static long toLong(Object value) {
+        return value instanceof Number number ? number.longValue() : 0L;
+    }
+}
@@ -0,0 +1,52 @@
+package ch.wiss.forum.service;
+
+import java.util.List;
+
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+import ch.wiss.forum.model.Post;
+import ch.wiss.forum.payload.response.TopicEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * pushes changes to a topic's posts to the clients subscribed to /topic/topics/{topicId}. the broker
+ * hands the message to each session's bounded send buffer, so a slow client never holds up the
+ * request that made the change.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TopicEventPublisher {
+
+    public static final String DESTINATION_PREFIX = "/topic/topics/";
+
+    private final SimpMessagingTemplate messagingTemplate;
+
+    public void postCreated(Post post) {
+        publish(TopicEvent.postCreated(post));
+    }
+
+    public void postUpdated(Post post) {
+        publish(TopicEvent.postUpdated(post));
+    }
+
+    public void postsDeleted(String topicId, List<String> postIds) {
+        publish(TopicEvent.postsDeleted(topicId, postIds));
+    }
+
+    public void likesChanged(Post post) {
+        publish(TopicEvent.likesChanged(post));
+    }
+
+    private void publish(TopicEvent event) {
+        try {
+            messagingTemplate.convertAndSend(DESTINATION_PREFIX + event.topicId(), event);
+        } catch (MessagingException e) {
+            // subscribers see the change on their next load
+            log.warn("Could not publish {} for topic {}: {}", event.type(), event.topicId(), e.getMessage());
+        }
+    }
+}
@@ -3,10 +3,13 @@ package ch.wiss.forum.service;
 import java.time.LocalDateTime;
 import java.util.List;
 
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 
+import ch.wiss.forum.config.CacheConfig;
 import ch.wiss.forum.model.Category;
 import ch.wiss.forum.model.Topic;
 import ch.wiss.forum.model.User;
@@ -21,6 +24,7 @@ public class TopicService {
     private final TopicRepository topicRepository;
     private final CategoryRepository categoryRepository;
     private final GamificationService gamificationService;
+    private final ResponseCacheService responseCacheService;
     
     public Page<Topic> getAllTopics(Pageable pageable) {
         return topicRepository.findAll(pageable);
@@ -52,6 +56,7 @@ public class TopicService {
                 .orElseThrow(() -> new RuntimeException("Topic not found with ID or slug: " + idOrSlug));
     }
     
+    @CacheEvict(cacheNames = CacheConfig.TOPICS, allEntries = true)
     public Topic createTopic(Topic topic, User currentUser) {
         // set creation metadata
         topic.setAuthor(currentUser);
@@ -82,24 +87,30 @@ public class TopicService {
         Topic savedTopic = topicRepository.save(topic);
         
         // update gamification stats
-        gamificationService.updateUserStatsOnTopicCreated(currentUser);
+        gamificationService.updateUserStatsOnTopicCreated(currentUser, savedTopic);
+        responseCacheService.invalidate(ResponseCacheService.TOPICS, ResponseCacheService.LEADERBOARD);
         
         return savedTopic;
     }
     
 
     
+    @CacheEvict(cacheNames = CacheConfig.TOPICS, allEntries = true)
     public void deleteTopic(String id) {
         Topic topic = getTopicById(id);
         topicRepository.delete(topic);
+        responseCacheService.invalidate(ResponseCacheService.TOPICS, ResponseCacheService.POSTS);
     }
     
+    // not invalidated, cached topics show a view count up to the response cache ttl old
     public Topic incrementViewCount(String id) {
         Topic topic = getTopicById(id);
         topic.setViewCount(topic.getViewCount() + 1);
         return topicRepository.save(topic);
     }
     
+    // posts move topics up as well, their evictions are in PostService
+    @Cacheable(cacheNames = CacheConfig.TOPICS, key = "'recent'", sync = true)
     public List<Topic> getRecentTopics() {
         return topicRepository.findTop5ByOrderByLastPostAtDesc();
     }
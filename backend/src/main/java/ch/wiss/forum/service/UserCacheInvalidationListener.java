@@ -0,0 +1,34 @@
+package ch.wiss.forum.service;
+
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.stereotype.Component;
+
+import ch.wiss.forum.model.User;
+import lombok.RequiredArgsConstructor;
+
+// evicts cached users on every repository/template save or delete, wherever it happens
+@Component
+@RequiredArgsConstructor
+public class UserCacheInvalidationListener extends AbstractMongoEventListener<User> {
+    
+    private final UserCacheService userCacheService;
+    
+    @Override
+    public void onAfterSave(AfterSaveEvent<User> event) {
+        // evicting by id also drops the old username/email keys after a rename
+        userCacheService.evict(event.getSource().getId(), true);
+    }
+    
+    @Override
+    public void onAfterDelete(AfterDeleteEvent<User> event) {
+        Object id = event.getSource().get("_id");
+        if (id instanceof ObjectId objectId) {
+            userCacheService.evict(objectId.toHexString(), true);
+        } else if (id != null) {
+            userCacheService.evict(id.toString(), true);
+        }
+    }
+}
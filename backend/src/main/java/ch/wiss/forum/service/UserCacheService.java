@@ -0,0 +1,304 @@
+package ch.wiss.forum.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import ch.wiss.forum.config.CacheConfig;
+import ch.wiss.forum.model.User;
+import ch.wiss.forum.repository.UserRepository;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * in-process cache of user entities, reachable by id, username or email.
+ * there is exactly one entry per user (keyed by id), the username and email maps only point
+ * at that id, so all three views always resolve to the same state. index changes happen inside
+ * the cache's compute for the id, which keeps a rename from leaving the old keys behind.
+ * callers always get a copy, mutating a returned user never changes the cached entry.
+ * invalidations are broadcast to the other nodes over redis pub/sub when redis caching is enabled.
+ * a load that raced with an invalidation of the same user is not cached, invalidations of other
+ * users don't affect it. the cached user summaries are only dropped by writes to a field they show.
+ */
+@Service
+@Slf4j
+public class UserCacheService {
+
+    public static final String INVALIDATION_CHANNEL = "wiss-forum:user-cache:invalidate";
+    private static final String ALL_USERS = "*";
+
+    private final UserRepository userRepository;
+    private final ObjectProvider<StringRedisTemplate> redisTemplate;
+    // absent when caching is disabled
+    private final ObjectProvider<CacheManager> cacheManager;
+    private final boolean crossNodeInvalidation;
+
+    private final Cache<String, User> usersById;
+    private final Map<String, String> idsByUsername = new ConcurrentHashMap<>();
+    private final Map<String, String> idsByEmail = new ConcurrentHashMap<>();
+
+    // invalidations are stamped from one sequence; a load that started before the latest stamp of
+    // its user (or of an evictAll) is not cached. stamps only matter while a load is in flight
+    private final AtomicLong invalidationSequence = new AtomicLong();
+    private final Cache<String, Long> invalidatedAt = Caffeine.newBuilder()
+        .expireAfterWrite(Duration.ofMinutes(1))
+        .build();
+    private volatile long allInvalidatedAt;
+
+    // identifies this node so it can ignore its own broadcasts
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final Map<String, LongAdder> hits = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> misses = new ConcurrentHashMap<>();
+    private final LongAdder invalidationsSent = new LongAdder();
+    private final LongAdder invalidationsReceived = new LongAdder();
+
+    public UserCacheService(UserRepository userRepository,
+                            ObjectProvider<StringRedisTemplate> redisTemplate,
+                            ObjectProvider<CacheManager> cacheManager,
+                            @Value("${app.user-cache.maximum-size:10000}") long maximumSize,
+                            @Value("${app.user-cache.ttl:10m}") Duration ttl,
+                            @Value("${spring.cache.type:none}") String cacheType) {
+        this.userRepository = userRepository;
+        this.redisTemplate = redisTemplate;
+        this.cacheManager = cacheManager;
+        this.crossNodeInvalidation = "redis".equalsIgnoreCase(cacheType);
+        this.usersById = Caffeine.newBuilder()
+            .maximumSize(maximumSize)
+            .expireAfterWrite(ttl)
+            .recordStats()
+            // runs atomically with the size/ttl eviction, so the secondary keys go with the entry
+            .evictionListener((String id, User user, RemovalCause cause) -> unindex(user))
+            .build();
+    }
+
+    public Optional<User> findById(String id) {
+        if (id == null) {
+            return Optional.empty();
+        }
+
+        User cached = usersById.getIfPresent(id);
+        if (cached != null) {
+            record(hits, "id");
+            return Optional.of(copy(cached));
+        }
+
+        record(misses, "id");
+        return load(() -> userRepository.findById(id));
+    }
+
+    public Optional<User> findByUsername(String username) {
+        return findBySecondaryKey("username", username, idsByUsername,
+            user -> username.equals(user.getUsername()),
+            () -> userRepository.findByUsername(username));
+    }
+
+    public Optional<User> findByEmail(String email) {
+        return findBySecondaryKey("email", email, idsByEmail,
+            user -> email.equals(user.getEmail()),
+            () -> userRepository.findByEmail(email));
+    }
+
+    // drop a user on this node and on every other node, for writes the user summaries don't show (stats)
+    public void evict(String userId) {
+        evict(userId, false);
+    }
+
+    // summariesChanged when the write touched a field of the public user summaries
+    public void evict(String userId, boolean summariesChanged) {
+        if (userId == null) {
+            return;
+        }
+
+        evictLocal(userId);
+        broadcast(userId);
+        if (summariesChanged) {
+            evictSummaries();
+        }
+    }
+
+    // drop every user, used after bulk updates of stats that bypass the repository
+    public void evictAll() {
+        evictAllLocal();
+        broadcast(ALL_USERS);
+    }
+
+    public void evictLocal(String userId) {
+        invalidatedAt.put(userId, invalidationSequence.incrementAndGet());
+        usersById.asMap().computeIfPresent(userId, (id, user) -> {
+            unindex(user);
+            return null;
+        });
+    }
+
+    public void evictAllLocal() {
+        allInvalidatedAt = invalidationSequence.incrementAndGet();
+        usersById.invalidateAll();
+        idsByUsername.clear();
+        idsByEmail.clear();
+    }
+
+    // handles an invalidation broadcast by another node ("<nodeId>|<userId or *>")
+    public void onInvalidationMessage(String message) {
+        int separator = message.indexOf('|');
+        if (separator < 0 || nodeId.equals(message.substring(0, separator))) {
+            return;
+        }
+
+        invalidationsReceived.increment();
+        String userId = message.substring(separator + 1);
+        if (ALL_USERS.equals(userId)) {
+            evictAllLocal();
+        } else {
+            evictLocal(userId);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        CacheStats stats = usersById.stats();
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("size", usersById.estimatedSize());
+        result.put("hitRate", stats.hitRate());
+        result.put("evictions", stats.evictionCount());
+        result.put("hitsByKey", snapshot(hits));
+        result.put("missesByKey", snapshot(misses));
+
+        long totalHits = hits.values().stream().mapToLong(LongAdder::sum).sum();
+        long totalMisses = misses.values().stream().mapToLong(LongAdder::sum).sum();
+        result.put("overallHitRate", totalHits + totalMisses == 0 ? 0.0 : (double) totalHits / (totalHits + totalMisses));
+
+        result.put("crossNodeInvalidation", crossNodeInvalidation);
+        result.put("invalidationsSent", invalidationsSent.sum());
+        result.put("invalidationsReceived", invalidationsReceived.sum());
+        return result;
+    }
+
+    private Optional<User> findBySecondaryKey(String keyType, String key, Map<String, String> index,
+                                              Predicate<User> stillMatches,
+                                              Supplier<Optional<User>> loader) {
+        if (key == null) {
+            return Optional.empty();
+        }
+
+        String id = index.get(key);
+        User cached = id != null ? usersById.getIfPresent(id) : null;
+        if (cached != null && stillMatches.test(cached)) {
+            record(hits, keyType);
+            return Optional.of(copy(cached));
+        }
+
+        record(misses, keyType);
+        return load(loader);
+    }
+
+    private Optional<User> load(Supplier<Optional<User>> loader) {
+        long loadStartedAt = invalidationSequence.get();
+        Optional<User> loaded = loader.get();
+        loaded.ifPresent(user -> cache(copy(user), loadStartedAt));
+        return loaded;
+    }
+
+    private void cache(User user, long loadStartedAt) {
+        if (user.getId() == null) {
+            return;
+        }
+
+        usersById.asMap().compute(user.getId(), (id, existing) -> {
+            Long userInvalidatedAt = invalidatedAt.getIfPresent(id);
+            if (allInvalidatedAt > loadStartedAt || (userInvalidatedAt != null && userInvalidatedAt > loadStartedAt)) {
+                // the user was invalidated while loading, the loaded state may already be stale
+                return existing;
+            }
+            if (existing != null) {
+                unindex(existing);
+            }
+            index(user);
+            return user;
+        });
+    }
+
+    private void index(User user) {
+        if (user.getUsername() != null) {
+            idsByUsername.put(user.getUsername(), user.getId());
+        }
+        if (user.getEmail() != null) {
+            idsByEmail.put(user.getEmail(), user.getId());
+        }
+    }
+
+    private void unindex(User user) {
+        if (user == null) {
+            return;
+        }
+        if (user.getUsername() != null) {
+            idsByUsername.remove(user.getUsername(), user.getId());
+        }
+        if (user.getEmail() != null) {
+            idsByEmail.remove(user.getEmail(), user.getId());
+        }
+    }
+
+    // the two-level cache broadcasts this itself
+    private void evictSummaries() {
+        CacheManager manager = cacheManager.getIfAvailable();
+        org.springframework.cache.Cache summaries = manager != null ? manager.getCache(CacheConfig.USER_SUMMARIES) : null;
+        if (summaries != null) {
+            summaries.clear();
+        }
+    }
+
+    private void broadcast(String userId) {
+        if (!crossNodeInvalidation) {
+            return;
+        }
+
+        StringRedisTemplate template = redisTemplate.getIfAvailable();
+        if (template == null) {
+            return;
+        }
+
+        try {
+            template.convertAndSend(INVALIDATION_CHANNEL, nodeId + "|" + userId);
+            invalidationsSent.increment();
+        } catch (Exception e) {
+            // other nodes fall back to the ttl
+            log.warn("Could not broadcast user cache invalidation for {}: {}", userId, e.getMessage());
+        }
+    }
+
+    private static User copy(User user) {
+        return user.toBuilder()
+            .badges(user.getBadges() != null ? new ArrayList<>(user.getBadges()) : null)
+            .achievements(user.getAchievements() != null ? new ArrayList<>(user.getAchievements()) : null)
+            .build();
+    }
+
+    private static void record(Map<String, LongAdder> counters, String keyType) {
+        counters.computeIfAbsent(keyType, k -> new LongAdder()).increment();
+    }
+
+    private static Map<String, Long> snapshot(Map<String, LongAdder> counters) {
+        Map<String, Long> result = new HashMap<>();
+        counters.forEach((key, value) -> result.put(key, value.sum()));
+        return result;
+    }
+}
@@ -0,0 +1,426 @@
+package ch.wiss.forum.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.stream.Collectors;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.mongodb.DBRef;
+
+import ch.wiss.forum.model.FileVariant;
+import ch.wiss.forum.model.Role;
+import ch.wiss.forum.model.StorageUsage;
+import ch.wiss.forum.model.User;
+import ch.wiss.forum.model.UserDeletionJob;
+import ch.wiss.forum.model.UserDeletionJob.LikeWithdrawal;
+import ch.wiss.forum.model.UserDeletionJob.Phase;
+import ch.wiss.forum.model.UserDeletionJob.Status;
+import ch.wiss.forum.repository.UserDeletionJobRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * deletes users in the background. the account is disabled when the deletion is requested.
+ * authored topics, posts and categories are re-pointed to a shared "deleted user" placeholder,
+ * the user's likes are withdrawn (and the liked authors' counters adjusted), their files,
+ * reset tokens and score buckets are removed, and the user document goes last.
+ * every phase works in chunks and stores its progress on the job, a job whose node died
+ * is picked up again once its lease expired. re-running a phase is safe because each chunk
+ * only selects documents that still reference the deleted user; a likes chunk stores the
+ * counter corrections it owes before it pulls the likes.
+ */
+@Service
+@Slf4j
+public class UserDeletionService {
+
+    // fixed id, so every node resolves the same placeholder without a lookup
+    public static final String TOMBSTONE_ID = "000000000000000000000000";
+    // contains a space, which the username validator rejects, so nobody can register it
+    public static final String TOMBSTONE_USERNAME = "deleted user";
+
+    private static final List<Status> ACTIVE = List.of(Status.QUEUED, Status.RUNNING);
+    private static final int MAX_ATTEMPTS = 5;
+
+    private final UserDeletionJobRepository jobRepository;
+    private final MongoTemplate mongoTemplate;
+    private final GamificationService gamificationService;
+    private final BlobStore blobStore;
+    private final StoredBlobService storedBlobService;
+    private final FileContentCache fileContentCache;
+    private final UserCacheService userCacheService;
+
+    private final int chunkSize;
+    private final Duration lease;
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final ExecutorService deletionExecutor;
+
+    public UserDeletionService(UserDeletionJobRepository jobRepository, MongoTemplate mongoTemplate,
+                               GamificationService gamificationService, BlobStore blobStore, StoredBlobService storedBlobService,
+                               FileContentCache fileContentCache, UserCacheService userCacheService,
+                               @Value("${app.user-deletion.chunk-size:500}") int chunkSize,
+                               @Value("${app.user-deletion.lease:2m}") Duration lease) {
+        this.jobRepository = jobRepository;
+        this.mongoTemplate = mongoTemplate;
+        this.gamificationService = gamificationService;
+        this.blobStore = blobStore;
+        this.storedBlobService = storedBlobService;
+        this.fileContentCache = fileContentCache;
+        this.userCacheService = userCacheService;
+        this.chunkSize = chunkSize;
+        this.lease = lease;
+
+        // a single worker keeps deletions from competing with request traffic,
+        // jobs that don't fit the queue stay QUEUED and are picked up by the resume sweep
+        this.deletionExecutor = DaemonPools.fixed(1, 100, "user-deletion", new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    // queue the deletion and return right away, an already running job for the user is reused
+    public UserDeletionJob requestDeletion(User user, User requestedBy) {
+        if (TOMBSTONE_ID.equals(user.getId())) {
+            throw new RuntimeException("The deleted user placeholder cannot be deleted");
+        }
+
+        // disabled before anything is counted, so the user cannot add likes or posts behind the job
+        mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(user.getId()).and("deletionRequestedAt").is(null)),
+            new Update().set("deletionRequestedAt", LocalDateTime.now()), User.class);
+        userCacheService.evict(user.getId());
+
+        UserDeletionJob existing = jobRepository.findFirstByUserIdAndStatusIn(user.getId(), ACTIVE).orElse(null);
+        if (existing != null) {
+            return existing;
+        }
+
+        DBRef userRef = userRef(user.getId());
+        Map<String, Long> totals = new HashMap<>();
+        totals.put(Phase.LIKES.name(), count("posts", Criteria.where("likes").is(user.getId())));
+        totals.put(Phase.POSTS.name(), count("posts", Criteria.where("author").is(userRef)));
+        totals.put(Phase.TOPICS.name(), count("topics", Criteria.where("author").is(userRef)));
+        totals.put(Phase.CATEGORIES.name(), count("categories", Criteria.where("createdBy").is(userRef)));
+        totals.put(Phase.FILES.name(), count("files", Criteria.where("uploaded_by").is(user.getId())));
+
+        UserDeletionJob job = UserDeletionJob.builder()
+            .userId(user.getId())
+            .username(user.getUsername())
+            .requestedBy(requestedBy != null ? requestedBy.getUsername() : null)
+            .status(Status.QUEUED)
+            .phase(Phase.LIKES)
+            .totals(totals)
+            .createdAt(LocalDateTime.now())
+            .updatedAt(LocalDateTime.now())
+            .build();
+
+        UserDeletionJob savedJob = jobRepository.save(job);
+        deletionExecutor.execute(() -> run(savedJob.getId()));
+
+        log.info("Queued deletion of user {} (job {})", user.getUsername(), savedJob.getId());
+        return savedJob;
+    }
+
+    public UserDeletionJob getJob(String id) {
+        return jobRepository.findById(id)
+            .orElseThrow(() -> new RuntimeException("Deletion job not found with id: " + id));
+    }
+
+    // pick up jobs that were never started or whose node stopped renewing the lease
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${app.user-deletion.resume-interval-ms:60000}", initialDelayString = "${app.user-deletion.resume-interval-ms:60000}")
+    public void resumePendingJobs() {
+        LocalDateTime now = LocalDateTime.now();
+        for (UserDeletionJob job : jobRepository.findByStatusIn(ACTIVE)) {
+            if (job.getLeaseUntil() == null || job.getLeaseUntil().isBefore(now)) {
+                deletionExecutor.execute(() -> run(job.getId()));
+            }
+        }
+    }
+
+    private void run(String jobId) {
+        UserDeletionJob job = claim(jobId);
+        if (job == null) {
+            // finished, or running on another node
+            return;
+        }
+
+        try {
+            while (job.getPhase() != Phase.DONE) {
+                runPhase(job);
+                job.setPhase(Phase.values()[job.getPhase().ordinal() + 1]);
+                checkpoint(job);
+            }
+
+            job.setStatus(Status.COMPLETED);
+            job.setCompletedAt(LocalDateTime.now());
+            job.setLeaseOwner(null);
+            job.setLeaseUntil(null);
+            job.setError(null);
+            checkpoint(job);
+
+            log.info("Deleted user {} (job {})", job.getUsername(), job.getId());
+        } catch (LeaseLostException e) {
+            log.warn("Lost the lease on deletion job {}, another node continues it", jobId);
+        } catch (Exception e) {
+            log.error("Deletion job {} failed in phase {}: ", jobId, job.getPhase(), e);
+
+            // release the lease so the resume sweep retries, unless we gave up
+            job.setStatus(job.getAttempts() >= MAX_ATTEMPTS ? Status.FAILED : Status.RUNNING);
+            job.setLeaseOwner(null);
+            job.setLeaseUntil(LocalDateTime.now());
+            job.setError(e.getMessage());
+            try {
+                checkpoint(job);
+            } catch (Exception ignored) {
+                // the lease runs out on its own
+            }
+        }
+    }
+
+    private void runPhase(UserDeletionJob job) {
+        String userId = job.getUserId();
+        DBRef userRef = userRef(userId);
+
+        switch (job.getPhase()) {
+            case LIKES -> withdrawLikes(job);
+            case POSTS -> repoint(job, "posts", "author", userRef);
+            case TOPICS -> repoint(job, "topics", "author", userRef);
+            case CATEGORIES -> repoint(job, "categories", "createdBy", userRef);
+            case FILES -> removeFiles(job, userId);
+            case TOKENS -> removeInChunks(job, "password_reset_tokens", Criteria.where("user").is(userRef));
+            case SCORE_BUCKETS -> removeInChunks(job, "score_buckets", Criteria.where("userId").is(userId));
+            case USER -> {
+                // the cache invalidation listener evicts the user on every node
+                mongoTemplate.findById(userId, User.class)
+                    .ifPresent(user -> mongoTemplate.remove(user));
+                addProcessed(job, 1);
+            }
+            case DONE -> { }
+        }
+    }
+
+    // pull the user's likes and take the points back from the liked authors
+    private void withdrawLikes(UserDeletionJob job) {
+        String userId = job.getUserId();
+
+        if (job.getPendingLikes() != null) {
+            // the previous run stopped inside this chunk, its likes may be pulled already
+            finishLikeWithdrawal(job);
+        }
+
+        while (true) {
+            Query query = new Query(Criteria.where("likes").is(userId)).limit(chunkSize);
+            query.fields().include("_id").include("author");
+            List<Document> posts = mongoTemplate.find(query, Document.class, "posts");
+            if (posts.isEmpty()) {
+                return;
+            }
+
+            Map<String, Integer> likesByAuthor = new HashMap<>();
+            for (Document post : posts) {
+                Object author = post.get("author");
+                if (author instanceof DBRef ref && !userId.equals(ref.getId().toString())) {
+                    likesByAuthor.merge(ref.getId().toString(), 1, Integer::sum);
+                }
+            }
+
+            // the deltas go onto the job before the pull, once pulled the posts no longer tell who to correct
+            List<Object> ids = posts.stream().map(post -> post.get("_id")).collect(Collectors.toList());
+            job.setPendingLikes(LikeWithdrawal.builder()
+                .key("deletion:" + job.getId() + ":" + ids.get(0))
+                .postIds(ids)
+                .likesByAuthor(likesByAuthor)
+                .build());
+            checkpoint(job);
+
+            finishLikeWithdrawal(job);
+        }
+    }
+
+    // both steps can run again: the pull matches nothing the second time, and the score events are
+    // keyed by chunk and author, so the ledger skips the ones a previous run already applied
+    private void finishLikeWithdrawal(UserDeletionJob job) {
+        LikeWithdrawal chunk = job.getPendingLikes();
+        mongoTemplate.updateMulti(
+            new Query(Criteria.where("_id").in(chunk.getPostIds()).and("likes").is(job.getUserId())),
+            new Update().pull("likes", job.getUserId()),
+            "posts");
+
+        chunk.getLikesByAuthor().forEach((authorId, count) ->
+            gamificationService.updateUserStatsOnLikesRemoved(authorId, count, chunk.getKey() + ":" + authorId));
+
+        addProcessed(job, chunk.getPostIds().size());
+        job.setPendingLikes(null);
+        checkpoint(job);
+    }
+
+    private void repoint(UserDeletionJob job, String collection, String field, DBRef userRef) {
+        DBRef tombstone = ensureTombstone();
+
+        while (true) {
+            List<Object> ids = findIds(collection, Criteria.where(field).is(userRef));
+            if (ids.isEmpty()) {
+                return;
+            }
+
+            long modified = mongoTemplate.updateMulti(
+                new Query(Criteria.where("_id").in(ids).and(field).is(userRef)),
+                new Update().set(field, tombstone),
+                collection).getModifiedCount();
+
+            addProcessed(job, modified);
+            checkpoint(job);
+        }
+    }
+
+    private void removeInChunks(UserDeletionJob job, String collection, Criteria criteria) {
+        while (true) {
+            List<Object> ids = findIds(collection, criteria);
+            if (ids.isEmpty()) {
+                return;
+            }
+
+            long removed = mongoTemplate.remove(new Query(Criteria.where("_id").in(ids)), collection).getDeletedCount();
+
+            addProcessed(job, removed);
+            checkpoint(job);
+        }
+    }
+
+    // like removeInChunks, the blobs go after their documents so a crash only leaves unreferenced blobs
+    private void removeFiles(UserDeletionJob job, String userId) {
+        while (true) {
+            Query query = new Query(Criteria.where("uploaded_by").is(userId)).limit(chunkSize);
+            query.fields().include("_id").include("storage_key").include("sha256");
+            List<Document> files = mongoTemplate.find(query, Document.class, "files");
+            if (files.isEmpty()) {
+                mongoTemplate.remove(new Query(Criteria.where("_id").is(userId)), StorageUsage.class);
+                return;
+            }
+
+            List<Object> ids = files.stream().map(file -> file.get("_id")).collect(Collectors.toList());
+            long removed = mongoTemplate.remove(new Query(Criteria.where("_id").in(ids)), "files").getDeletedCount();
+            for (Document file : files) {
+                fileContentCache.evict(file.get("_id").toString());
+                String storageKey = file.getString("storage_key");
+                if (storageKey != null && !storedBlobService.release(file.getString("sha256"), storageKey)) {
+                    blobStore.delete(storageKey);
+                }
+            }
+            removeVariants(ids);
+
+            addProcessed(job, removed);
+            checkpoint(job);
+        }
+    }
+
+    // the resized copies of removed images own their blobs
+    private void removeVariants(List<Object> fileIds) {
+        List<String> ids = fileIds.stream().map(Object::toString).collect(Collectors.toList());
+        Query query = new Query(Criteria.where("fileId").in(ids));
+        List<FileVariant> variants = mongoTemplate.find(query, FileVariant.class);
+        mongoTemplate.remove(query, FileVariant.class);
+        for (FileVariant variant : variants) {
+            fileContentCache.evict(variant.getId());
+            blobStore.delete(variant.getStorageKey());
+        }
+    }
+
+    private List<Object> findIds(String collection, Criteria criteria) {
+        Query query = new Query(criteria).limit(chunkSize);
+        query.fields().include("_id");
+        return mongoTemplate.find(query, Document.class, collection).stream()
+            .map(document -> document.get("_id"))
+            .collect(Collectors.toList());
+    }
+
+    // create the placeholder author on first use, concurrent upserts on the fixed id are harmless
+    private DBRef ensureTombstone() {
+        Update update = new Update()
+            .setOnInsert("username", TOMBSTONE_USERNAME)
+            .setOnInsert("email", "deleted-user@wiss-forum.invalid")
+            .setOnInsert("displayName", "Deleted user")
+            .setOnInsert("role", Role.STUDENT)
+            .setOnInsert("createdAt", LocalDateTime.now())
+            .setOnInsert("updatedAt", LocalDateTime.now());
+        mongoTemplate.upsert(new Query(Criteria.where("_id").is(new ObjectId(TOMBSTONE_ID))), update, User.class);
+
+        return userRef(TOMBSTONE_ID);
+    }
+
+    private UserDeletionJob claim(String jobId) {
+        LocalDateTime now = LocalDateTime.now();
+        Query query = new Query(Criteria.where("_id").is(jobId)
+            .and("status").in(ACTIVE)
+            .orOperator(Criteria.where("leaseUntil").is(null), Criteria.where("leaseUntil").lt(now)));
+        Update update = new Update()
+            .set("status", Status.RUNNING)
+            .set("leaseOwner", nodeId)
+            .set("leaseUntil", now.plus(lease))
+            .set("updatedAt", now)
+            .inc("attempts", 1);
+
+        return mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true), UserDeletionJob.class);
+    }
+
+    // store progress and renew the lease, fails if another node took the job over
+    private void checkpoint(UserDeletionJob job) {
+        LocalDateTime now = LocalDateTime.now();
+        job.setUpdatedAt(now);
+        if (job.getStatus() == Status.RUNNING && job.getLeaseOwner() != null) {
+            job.setLeaseUntil(now.plus(lease));
+        }
+
+        Query query = new Query(Criteria.where("_id").is(job.getId()).and("leaseOwner").is(nodeId));
+        Update update = new Update()
+            .set("status", job.getStatus())
+            .set("phase", job.getPhase())
+            .set("processed", job.getProcessed())
+            .set("leaseOwner", job.getLeaseOwner())
+            .set("leaseUntil", job.getLeaseUntil())
+            .set("error", job.getError())
+            .set("updatedAt", job.getUpdatedAt())
+            .set("completedAt", job.getCompletedAt())
+            .set("pendingLikes", job.getPendingLikes());
+
+        if (mongoTemplate.updateFirst(query, update, UserDeletionJob.class).getMatchedCount() == 0) {
+            throw new LeaseLostException();
+        }
+    }
+
+    private long count(String collection, Criteria criteria) {
+        return mongoTemplate.count(new Query(criteria), collection);
+    }
+
+    private static void addProcessed(UserDeletionJob job, long count) {
+        job.getProcessed().merge(job.getPhase().name(), count, Long::sum);
+    }
+
+    // users are stored with ObjectId ids, DBRefs have to carry the same type to match
+    private static DBRef userRef(String userId) {
+        return new DBRef("users", ObjectId.isValid(userId) ? new ObjectId(userId) : userId);
+    }
+
+    private static class LeaseLostException extends RuntimeException {
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        deletionExecutor.shutdown();
+    }
+}
@@ -5,25 +5,28 @@ import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
-import ch.wiss.forum.repository.UserRepository;
+import ch.wiss.forum.model.User;
 import lombok.RequiredArgsConstructor;
 
 @Service
 @RequiredArgsConstructor
 public class UserDetailsServiceImpl implements UserDetailsService {
     
-    private final UserRepository userRepository;
+    private final UserCacheService userCacheService;
     
+    // accounts queued for deletion are treated as gone, for sign-in and for tokens issued before
     @Override
     public UserDetails loadUserByUsername(String usernameOrEmail) throws UsernameNotFoundException {
         // check if the input is an email by looking for @ symbol
         if (usernameOrEmail.contains("@")) {
             System.out.println("Looking up user by email: " + usernameOrEmail);
-            return userRepository.findByEmail(usernameOrEmail)
+            return userCacheService.findByEmail(usernameOrEmail)
+                    .filter(User::isEnabled)
                     .orElseThrow(() -> new UsernameNotFoundException("User not found with email: " + usernameOrEmail));
         } else {
             System.out.println("Looking up user by username: " + usernameOrEmail);
-            return userRepository.findByUsername(usernameOrEmail)
+            return userCacheService.findByUsername(usernameOrEmail)
+                    .filter(User::isEnabled)
                     .orElseThrow(() -> new UsernameNotFoundException("User not found with username: " + usernameOrEmail));
         }
     }
@@ -0,0 +1,77 @@
+package ch.wiss.forum.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+
+import ch.wiss.forum.model.User;
+
+/**
+ * splits the user id space into ranges holding about the same number of users, for the jobs that
+ * process users on several threads. the bounds come from the stored ids ($bucketAuto over users._id):
+ * an ObjectId starts with its creation time, so fixed splits such as the first hex digit put every
+ * user of several years into one range. the first and last ranges are open, users created after the
+ * split still land in one of them.
+ */
+final class UserIdRanges {
+
+    private UserIdRanges() {
+    }
+
+    // from is inclusive, to exclusive, null is open
+    record Range(ObjectId from, ObjectId to) {
+
+        Criteria onObjectIds(String field) {
+            return criteria(field, from, to);
+        }
+
+        // for user ids stored as strings, lower-case hex of the same length sorts like the ObjectIds
+        Criteria onHexStrings(String field) {
+            return criteria(field, from != null ? from.toHexString() : null, to != null ? to.toHexString() : null);
+        }
+
+        private static Criteria criteria(String field, Object from, Object to) {
+            Criteria criteria = Criteria.where(field);
+            if (from == null && to == null) {
+                return criteria.exists(true);
+            }
+            if (from == null) {
+                // $not also takes ids of another bson type, a plain $lt would only compare within the type
+                return criteria.not().gte(to);
+            }
+            criteria = criteria.gte(from);
+            return to != null ? criteria.lt(to) : criteria;
+        }
+    }
+
+    static List<Range> split(MongoTemplate mongoTemplate, int partitions) {
+        List<ObjectId> bounds = new ArrayList<>();
+        if (partitions > 1) {
+            List<Document> pipeline = List.of(new Document("$bucketAuto",
+                new Document("groupBy", "$_id").append("buckets", partitions)));
+
+            // the buckets come sorted, every one but the first starts a range
+            int bucket = 0;
+            for (Document result : mongoTemplate.getCollection(mongoTemplate.getCollectionName(User.class))
+                    .aggregate(pipeline).allowDiskUse(true)) {
+                Object min = result.get("_id", Document.class).get("min");
+                if (bucket++ > 0 && min instanceof ObjectId id) {
+                    bounds.add(id);
+                }
+            }
+        }
+
+        List<Range> ranges = new ArrayList<>();
+        ObjectId from = null;
+        for (ObjectId bound : bounds) {
+            ranges.add(new Range(from, bound));
+            from = bound;
+        }
+        ranges.add(new Range(from, null));
+        return ranges;
+    }
+}
@@ -0,0 +1,170 @@
+package ch.wiss.forum.service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import com.mongodb.DBRef;
+
+import ch.wiss.forum.model.Post;
+import ch.wiss.forum.model.Topic;
+import ch.wiss.forum.model.User;
+import ch.wiss.forum.payload.response.UserProfileResponse;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * builds the aggregated profile overview.
+ * the user is resolved once, then recent topics, recent posts and the gamification stats
+ * are fetched in parallel on a small bounded pool. the recent topics and posts are read with
+ * projections of the fields the summaries show, their DBRefs (author, category, last post) are
+ * never resolved; the topics of the recent posts are looked up in one query for title and slug.
+ */
+@Service
+public class UserProfileService {
+
+    private static final int RECENT_ITEMS = 5;
+    private static final int EXCERPT_LENGTH = 200;
+
+    private final UserService userService;
+    private final GamificationService gamificationService;
+    private final MongoTemplate mongoTemplate;
+
+    private final ExecutorService queryExecutor;
+
+    public UserProfileService(UserService userService, GamificationService gamificationService,
+                              MongoTemplate mongoTemplate) {
+        this.userService = userService;
+        this.gamificationService = gamificationService;
+        this.mongoTemplate = mongoTemplate;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        // bounded queue, runs on the caller when saturated instead of failing the request
+        this.queryExecutor = new ThreadPoolExecutor(4, 16, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(200),
+            runnable -> {
+                Thread thread = new Thread(runnable, "profile-query-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            },
+            new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    public UserProfileResponse getProfileOverview(String username) {
+        User user = userService.getUserByUsername(username);
+
+        CompletableFuture<List<UserProfileResponse.TopicSummary>> topics = CompletableFuture.supplyAsync(
+            () -> recentTopics(user), queryExecutor);
+        CompletableFuture<List<UserProfileResponse.PostSummary>> posts = CompletableFuture.supplyAsync(
+            () -> recentPosts(user), queryExecutor);
+        CompletableFuture<Map<String, Object>> stats = CompletableFuture.supplyAsync(
+            () -> gamificationService.buildGamificationStats(user), queryExecutor);
+
+        try {
+            CompletableFuture.allOf(topics, posts, stats).join();
+        } catch (CompletionException e) {
+            throw new RuntimeException("Failed to load profile for " + username + ": " + e.getCause().getMessage(), e.getCause());
+        }
+
+        return UserProfileResponse.builder()
+            .id(user.getId())
+            .username(user.getUsername())
+            .displayName(user.getDisplayName())
+            .role(user.getRole() != null ? user.getRole().name() : null)
+            .avatar(user.getAvatar())
+            .bio(user.getBio())
+            .githubUrl(user.getGithubUrl())
+            .websiteUrl(user.getWebsiteUrl())
+            .linkedinUrl(user.getLinkedinUrl())
+            .twitterUrl(user.getTwitterUrl())
+            .createdAt(user.getCreatedAt())
+            .lastActive(user.getLastActive())
+            .stats(stats.join())
+            .recentTopics(topics.join())
+            .recentPosts(posts.join())
+            .build();
+    }
+
+    private List<UserProfileResponse.TopicSummary> recentTopics(User user) {
+        Query query = recentBy(user);
+        query.fields().include("title", "slug", "replyCount", "viewCount", "createdAt");
+        return mongoTemplate.find(query, UserProfileResponse.TopicSummary.class, mongoTemplate.getCollectionName(Topic.class));
+    }
+
+    // raw documents, mapped to Post the topic DBRef would load the whole topic with its own references
+    private List<UserProfileResponse.PostSummary> recentPosts(User user) {
+        Query query = recentBy(user);
+        query.fields().include("content", "topic", "likes", "createdAt");
+        List<Document> posts = mongoTemplate.find(query, Document.class, mongoTemplate.getCollectionName(Post.class));
+
+        List<Object> topicIds = posts.stream().map(post -> refId(post.get("topic"))).filter(Objects::nonNull).distinct().toList();
+        Query topicQuery = new Query(Criteria.where("_id").in(topicIds));
+        topicQuery.fields().include("title", "slug");
+        Map<String, UserProfileResponse.TopicSummary> topicsById = mongoTemplate
+            .find(topicQuery, UserProfileResponse.TopicSummary.class, mongoTemplate.getCollectionName(Topic.class))
+            .stream()
+            .collect(Collectors.toMap(UserProfileResponse.TopicSummary::getId, Function.identity()));
+
+        return posts.stream().map(post -> {
+            String content = post.getString("content") != null ? post.getString("content") : "";
+            Object topicId = refId(post.get("topic"));
+            UserProfileResponse.TopicSummary topic = topicId != null ? topicsById.get(topicId.toString()) : null;
+            List<?> likes = post.get("likes", List.class);
+            // read back the way the converter stores a LocalDateTime, in the system zone
+            Date createdAt = post.getDate("createdAt");
+
+            return UserProfileResponse.PostSummary.builder()
+                .id(post.get("_id").toString())
+                .excerpt(content.length() > EXCERPT_LENGTH ? content.substring(0, EXCERPT_LENGTH) + "..." : content)
+                .topicId(topicId != null ? topicId.toString() : null)
+                .topicTitle(topic != null ? topic.getTitle() : null)
+                .topicSlug(topic != null ? topic.getSlug() : null)
+                .likeCount(likes != null ? likes.size() : 0)
+                .createdAt(createdAt != null ? LocalDateTime.ofInstant(createdAt.toInstant(), ZoneId.systemDefault()) : null)
+                .build();
+        }).collect(Collectors.toList());
+    }
+
+    // the author DBRef holds the user id as an ObjectId
+    private static Query recentBy(User user) {
+        Object authorId = ObjectId.isValid(user.getId()) ? new ObjectId(user.getId()) : user.getId();
+        return new Query(Criteria.where("author.$id").is(authorId))
+            .with(Sort.by(Sort.Direction.DESC, "createdAt"))
+            .limit(RECENT_ITEMS);
+    }
+
+    // a DBRef read into a raw document is a DBRef or, depending on the codec, a plain document
+    private static Object refId(Object ref) {
+        if (ref instanceof DBRef dbRef) {
+            return dbRef.getId();
+        }
+        if (ref instanceof Document document) {
+            return document.get("$id");
+        }
+        return null;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        queryExecutor.shutdown();
+    }
+}
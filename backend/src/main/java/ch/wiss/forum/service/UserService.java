@@ -3,19 +3,30 @@ package ch.wiss.forum.service;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.HashMap;
 import java.util.ArrayList;
 
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
+import ch.wiss.forum.config.CacheConfig;
 import ch.wiss.forum.model.Role;
 import ch.wiss.forum.model.User;
+import ch.wiss.forum.model.UserDeletionJob;
 import ch.wiss.forum.repository.UserRepository;
 import ch.wiss.forum.model.Post;
 import ch.wiss.forum.repository.PostRepository;
 import ch.wiss.forum.security.PermissionUtils;
+import ch.wiss.forum.util.DuplicateKeys;
 import ch.wiss.forum.validation.UserValidator;
 import lombok.RequiredArgsConstructor;
 
@@ -23,15 +34,25 @@ import lombok.RequiredArgsConstructor;
 @RequiredArgsConstructor
 public class UserService {
     
+    // the fields sanitizeUserForPublic copies, a write to one of them drops the cached summaries
+    private static final Set<String> PUBLIC_FIELDS = Set.of(
+        "username", "displayName", "role", "avatar", "bio", "createdAt", "lastActive");
+    
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
     private final PostRepository postRepository;
     private final UserValidator userValidator;
+    private final UserCacheService userCacheService;
+    private final AvailabilityService availabilityService;
+    private final UserDeletionService userDeletionService;
+    private final MongoTemplate mongoTemplate;
     
     public List<User> getAllUsers() {
         return userRepository.findAll();
     }
     
+    // evicted on every write to one of the PUBLIC_FIELDS
+    @Cacheable(cacheNames = CacheConfig.USER_SUMMARIES, key = "'public'", sync = true)
     public List<User> getPublicUsersList() {
         return userRepository.findAll().stream()
             .map(this::sanitizeUserForPublic)
@@ -53,12 +74,12 @@ public class UserService {
     }
     
     public User getUserById(String id) {
-        return userRepository.findById(id)
+        return userCacheService.findById(id)
                 .orElseThrow(() -> new RuntimeException("User not found with id: " + id));
     }
     
     public User getUserByUsername(String username) {
-        return userRepository.findByUsername(username)
+        return userCacheService.findByUsername(username)
                 .orElseThrow(() -> new RuntimeException("User not found with username: " + username));
     }
     
@@ -84,7 +105,8 @@ public class UserService {
         
         User user = getUserById(id);
         
-        // only update fields that are allowed
+        // only update fields that are allowed, and only those are written
+        Update update = new Update();
         if (userDetails.getUsername() != null) {
             // validate username format
             if (!userValidator.isValidUsername(userDetails.getUsername())) {
@@ -93,10 +115,10 @@ public class UserService {
             
             // check if username is already taken
             if (!userDetails.getUsername().equals(user.getUsername()) && 
-                userRepository.existsByUsername(userDetails.getUsername())) {
+                availabilityService.isUsernameTaken(userDetails.getUsername())) {
                 throw new RuntimeException("Username is already taken");
             }
-            user.setUsername(userDetails.getUsername());
+            update.set("username", userDetails.getUsername());
         }
         
         if (userDetails.getEmail() != null) {
@@ -107,10 +129,10 @@ public class UserService {
             
             // check if email is already taken
             if (!userDetails.getEmail().equals(user.getEmail()) && 
-                userRepository.existsByEmail(userDetails.getEmail())) {
+                availabilityService.isEmailTaken(userDetails.getEmail())) {
                 throw new RuntimeException("Email is already taken");
             }
-            user.setEmail(userDetails.getEmail());
+            update.set("email", userDetails.getEmail());
         }
         
         if (userDetails.getDisplayName() != null) {
@@ -118,7 +140,7 @@ public class UserService {
             if (!userValidator.isValidDisplayName(userDetails.getDisplayName())) {
                 throw new RuntimeException("Display name must be between 3 and 50 characters");
             }
-            user.setDisplayName(userDetails.getDisplayName());
+            update.set("displayName", userDetails.getDisplayName());
         }
         
         if (userDetails.getBio() != null) {
@@ -126,11 +148,11 @@ public class UserService {
             if (!userValidator.isValidBio(userDetails.getBio())) {
                 throw new RuntimeException("Bio must not exceed 500 characters");
             }
-            user.setBio(userDetails.getBio());
+            update.set("bio", userDetails.getBio());
         }
         
         if (userDetails.getAvatar() != null) {
-            user.setAvatar(userDetails.getAvatar());
+            update.set("avatar", userDetails.getAvatar());
         }
         
         // validate and update social links
@@ -138,38 +160,46 @@ public class UserService {
             if (!userValidator.isValidGithubUrl(userDetails.getGithubUrl())) {
                 throw new RuntimeException("Invalid GitHub URL");
             }
-            user.setGithubUrl(userDetails.getGithubUrl().trim().isEmpty() ? null : userDetails.getGithubUrl());
+            update.set("githubUrl", userDetails.getGithubUrl().trim().isEmpty() ? null : userDetails.getGithubUrl());
         }
         
         if (userDetails.getWebsiteUrl() != null) {
             if (!userValidator.isValidUrl(userDetails.getWebsiteUrl())) {
                 throw new RuntimeException("Invalid website URL");
             }
-            user.setWebsiteUrl(userDetails.getWebsiteUrl().trim().isEmpty() ? null : userDetails.getWebsiteUrl());
+            update.set("websiteUrl", userDetails.getWebsiteUrl().trim().isEmpty() ? null : userDetails.getWebsiteUrl());
         }
         
         if (userDetails.getLinkedinUrl() != null) {
             if (!userValidator.isValidLinkedinUrl(userDetails.getLinkedinUrl())) {
                 throw new RuntimeException("Invalid LinkedIn URL");
             }
-            user.setLinkedinUrl(userDetails.getLinkedinUrl().trim().isEmpty() ? null : userDetails.getLinkedinUrl());
+            update.set("linkedinUrl", userDetails.getLinkedinUrl().trim().isEmpty() ? null : userDetails.getLinkedinUrl());
         }
         
         if (userDetails.getTwitterUrl() != null) {
             if (!userValidator.isValidTwitterUrl(userDetails.getTwitterUrl())) {
                 throw new RuntimeException("Invalid Twitter/X URL");
             }
-            user.setTwitterUrl(userDetails.getTwitterUrl().trim().isEmpty() ? null : userDetails.getTwitterUrl());
+            update.set("twitterUrl", userDetails.getTwitterUrl().trim().isEmpty() ? null : userDetails.getTwitterUrl());
         }
         
         // only admin can update roles
         if (userDetails.getRole() != null && PermissionUtils.canModifyUserRole(currentUser, user)) {
-            user.setRole(userDetails.getRole());
+            update.set("role", userDetails.getRole());
         }
         
-        user.setUpdatedAt(LocalDateTime.now());
+        update.set("updatedAt", LocalDateTime.now());
         
-        return userRepository.save(user);
+        User savedUser;
+        try {
+            savedUser = updateFields(id, update);
+        } catch (DuplicateKeyException e) {
+            // a concurrent update claimed the name first
+            throw new RuntimeException(DuplicateKeys.isOn(e, "username") ? "Username is already taken" : "Email is already taken");
+        }
+        availabilityService.recordUser(savedUser.getUsername(), savedUser.getEmail());
+        return savedUser;
     }
     
     public User updatePassword(String id, String currentPassword, String newPassword, User currentUser) {
@@ -187,15 +217,14 @@ public class UserService {
         
         // verify current password if not admin
         if (!id.equals(currentUser.getId()) || passwordEncoder.matches(currentPassword, user.getPassword())) {
-            user.setPassword(passwordEncoder.encode(newPassword));
-            user.setUpdatedAt(LocalDateTime.now());
-            return userRepository.save(user);
+            return changePassword(id, newPassword);
         } else {
             throw new RuntimeException("Current password is incorrect");
         }
     }
     
-    public void deleteUser(String id, User currentUser) {
+    // starts the background deletion, see UserDeletionService
+    public UserDeletionJob deleteUser(String id, User currentUser) {
         // check permissions using centralized utility
         if (!PermissionUtils.canModifyUser(currentUser, id)) {
             throw new RuntimeException("Not authorized to delete this user");
@@ -208,16 +237,28 @@ public class UserService {
             throw new RuntimeException("Admins cannot delete other admin accounts");
         }
         
-        userRepository.delete(userToDelete);
+        return userDeletionService.requestDeletion(userToDelete, currentUser);
     }
     
     public void updateLastActive(User user) {
-        user.setLastActive(LocalDateTime.now());
-        userRepository.save(user);
+        LocalDateTime now = LocalDateTime.now();
+        updateFields(user.getId(), new Update().set("lastActive", now));
+        user.setLastActive(now);
+    }
+    
+    // no permission check, for callers that did their own (password reset, bootstrap)
+    public User changePassword(String id, String newPassword) {
+        return updateFields(id, new Update()
+                .set("password", passwordEncoder.encode(newPassword))
+                .set("updatedAt", LocalDateTime.now()));
+    }
+    
+    public User changeRole(String id, Role role) {
+        return updateFields(id, new Update().set("role", role).set("updatedAt", LocalDateTime.now()));
     }
     
-    public User save(User user) {
-        return userRepository.save(user);
+    public User changeAvatar(String id, String avatar) {
+        return updateFields(id, new Update().set("avatar", avatar).set("updatedAt", LocalDateTime.now()));
     }
     
     public User updateUserRole(String id, Role newRole, User currentUser) {
@@ -229,12 +270,11 @@ public class UserService {
         }
         
         // update the role
-        targetUser.setRole(newRole);
-        targetUser.setUpdatedAt(LocalDateTime.now());
-        
-        return userRepository.save(targetUser);
+        return changeRole(id, newRole);
     }
     
+    // may lag behind new likes by the cache's ttl
+    @Cacheable(cacheNames = CacheConfig.LEADERBOARDS, key = "'likes'", sync = true)
     public List<Map<String, Object>> getUserLeaderboard() {
         // get all posts
         List<Post> allPosts = postRepository.findAll();
@@ -286,8 +326,7 @@ public class UserService {
     
     public User updateUserAvatar(String userId, String avatarDataUrl, User requestingUser) {
         // check if user exists
-        User user = userRepository.findById(userId)
-            .orElseThrow(() -> new RuntimeException("User not found with id: " + userId));
+        User user = getUserById(userId);
         
         // security check: only allow user to update their own avatar
         if (!PermissionUtils.canModifyUser(requestingUser, userId)) {
@@ -295,9 +334,22 @@ public class UserService {
         }
         
         // update avatar
-        user.setAvatar(avatarDataUrl);
-        user.setUpdatedAt(LocalDateTime.now());
-        
-        return userRepository.save(user);
+        return changeAvatar(user.getId(), avatarDataUrl);
+    }
+    
+    /**
+     * writes only the given fields and returns the user as stored afterwards. users handed out by the
+     * cache (and the authenticated principal) can be minutes old, saving one as a whole would roll back
+     * the counters GamificationService maintains with $inc in the meantime.
+     */
+    private User updateFields(String id, Update update) {
+        User updated = mongoTemplate.findAndModify(new Query(Criteria.where("_id").is(id)), update,
+                FindAndModifyOptions.options().returnNew(true), User.class);
+        if (updated == null) {
+            throw new RuntimeException("User not found with id: " + id);
+        }
+        // none of these writes go through the repository events
+        userCacheService.evict(id, PUBLIC_FIELDS.stream().anyMatch(update::modifies));
+        return updated;
     }
 } 
\ No newline at end of file
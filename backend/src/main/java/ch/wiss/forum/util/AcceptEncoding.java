@@ -0,0 +1,49 @@
+package ch.wiss.forum.util;
+
+import java.util.List;
+
+/**
+ * content negotiation for responses that exist pre-compressed (stored files, cached responses).
+ */
+public final class AcceptEncoding {
+
+    public static final String GZIP = "gzip";
+
+    private AcceptEncoding() {
+    }
+
+    // gzip listed in Accept-Encoding without q=0, or not listed but covered by *
+    public static boolean acceptsGzip(List<String> acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Double gzip = null;
+        Double any = null;
+        for (String header : acceptEncoding) {
+            for (String coding : header.split(",")) {
+                String[] parts = coding.split(";");
+                String name = parts[0].trim().toLowerCase();
+                if (name.equals(GZIP)) {
+                    gzip = quality(parts);
+                } else if (name.equals("*")) {
+                    any = quality(parts);
+                }
+            }
+        }
+        return gzip != null ? gzip > 0 : any != null && any > 0;
+    }
+
+    private static double quality(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            String parameter = parts[i].trim();
+            if (parameter.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(parameter.substring(2));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+}
@@ -0,0 +1,94 @@
+package ch.wiss.forum.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * thread-safe bloom filter for strings.
+ * mightContain == false means the value was definitely never added, true means "probably".
+ * uses double hashing over a 64-bit fnv-1a hash, bits are set with lock-free updates.
+ */
+public class BloomFilter {
+    
+    private final AtomicLongArray words;
+    private final long numBits;
+    private final int numHashes;
+    
+    private BloomFilter(long numBits, int numHashes) {
+        this.numBits = numBits;
+        this.numHashes = numHashes;
+        this.words = new AtomicLongArray((int) ((numBits + 63) / 64));
+    }
+    
+    /**
+     * creates a filter sized for the expected number of insertions and false positive rate
+     * 
+     * @param expectedInsertions number of values the filter should hold
+     * @param falsePositiveRate target probability of a false "probably contains", e.g. 0.01
+     * @return an empty filter
+     */
+    public static BloomFilter create(long expectedInsertions, double falsePositiveRate) {
+        long n = Math.max(1, expectedInsertions);
+        double p = Math.min(Math.max(falsePositiveRate, 1e-9), 0.5);
+        
+        long bits = (long) Math.ceil(-n * Math.log(p) / (Math.log(2) * Math.log(2)));
+        int hashes = Math.max(1, (int) Math.round((double) bits / n * Math.log(2)));
+        return new BloomFilter(Math.max(64, bits), hashes);
+    }
+    
+    public void put(String value) {
+        long hash = hash64(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        
+        for (int i = 1; i <= numHashes; i++) {
+            long bit = index(h1 + i * h2);
+            long mask = 1L << (bit & 63);
+            words.getAndUpdate((int) (bit >>> 6), word -> word | mask);
+        }
+    }
+    
+    public boolean mightContain(String value) {
+        long hash = hash64(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        
+        for (int i = 1; i <= numHashes; i++) {
+            long bit = index(h1 + i * h2);
+            if ((words.get((int) (bit >>> 6)) & (1L << (bit & 63))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    public long bitSize() {
+        return numBits;
+    }
+    
+    public int hashCount() {
+        return numHashes;
+    }
+    
+    private long index(int combinedHash) {
+        // flip negative values instead of abs() to keep the distribution even
+        int positive = combinedHash < 0 ? ~combinedHash : combinedHash;
+        return positive % numBits;
+    }
+    
+    // fnv-1a over the utf-8 bytes, finished with the murmur3 fmix64 avalanche
+    private static long hash64(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= (b & 0xff);
+            hash *= 0x100000001b3L;
+        }
+        
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
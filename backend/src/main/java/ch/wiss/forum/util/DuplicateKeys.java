@@ -0,0 +1,38 @@
+package ch.wiss.forum.util;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.dao.DuplicateKeyException;
+
+import com.mongodb.MongoCommandException;
+
+/**
+ * tells which unique index refused a write. the server answers a findAndModify with the key pattern,
+ * an insert only with the message, which names the index before the duplicate value
+ * (E11000 duplicate key error collection: forum.users index: username dup key: { username: "..." }).
+ * the value is never looked at, it may contain any field name.
+ */
+public final class DuplicateKeys {
+
+    private static final Pattern INDEX = Pattern.compile("index: (\\S+) dup key");
+
+    private DuplicateKeys() {
+    }
+
+    // whether the refusing index is the one on field, named after it by @Indexed or field_1 by the shell
+    public static boolean isOn(DuplicateKeyException e, String field) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof MongoCommandException command && command.getResponse().isDocument("keyPattern")) {
+                return command.getResponse().getDocument("keyPattern").containsKey(field);
+            }
+        }
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            Matcher index = cause.getMessage() != null ? INDEX.matcher(cause.getMessage()) : null;
+            if (index != null && index.find()) {
+                return index.group(1).equals(field) || index.group(1).startsWith(field + "_");
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,96 @@
+package ch.wiss.forum.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * reads the gzip compression of another stream, compressing one chunk at a time as it is read, so
+ * content can be compressed on its way into the blob store without being held in memory. counts the
+ * compressed bytes it returned.
+ */
+public class GzipCompressingInputStream extends InputStream {
+
+    private static final int CHUNK_SIZE = 8192;
+
+    // gives access to the buffer the compressed bytes are written to
+    private static class Output extends ByteArrayOutputStream {
+        Output() {
+            super(CHUNK_SIZE);
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+    }
+
+    private final InputStream source;
+    private final Output output = new Output();
+    private final GZIPOutputStream gzip;
+    private final byte[] chunk = new byte[CHUNK_SIZE];
+
+    private int position;
+    private boolean finished;
+    private long count;
+
+    public GzipCompressingInputStream(InputStream source) throws IOException {
+        this.source = source;
+        // writes the gzip header into the output right away
+        this.gzip = new GZIPOutputStream(output, CHUNK_SIZE);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        // the deflater may take a whole chunk without emitting anything yet
+        while (position == output.size()) {
+            if (finished) {
+                return -1;
+            }
+            output.reset();
+            position = 0;
+
+            int read = source.read(chunk);
+            if (read < 0) {
+                gzip.finish();
+                finished = true;
+            } else {
+                gzip.write(chunk, 0, read);
+            }
+        }
+
+        int available = Math.min(length, output.size() - position);
+        System.arraycopy(output.buffer(), position, buffer, offset, available);
+        position += available;
+        count += available;
+        return available;
+    }
+
+    @Override
+    public int available() {
+        return output.size() - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            // releases the deflater's native memory
+            gzip.close();
+        } finally {
+            source.close();
+        }
+    }
+}
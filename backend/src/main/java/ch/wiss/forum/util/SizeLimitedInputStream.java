@@ -0,0 +1,75 @@
+package ch.wiss.forum.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * counts the bytes read through it and fails as soon as they pass the limit, so an oversized
+ * upload is aborted after limit + 1 bytes instead of after it was received completely.
+ */
+public class SizeLimitedInputStream extends FilterInputStream {
+
+    public static class SizeLimitExceededException extends RuntimeException {
+        private final long limit;
+
+        public SizeLimitExceededException(long limit) {
+            super("Content is larger than " + limit + " bytes");
+            this.limit = limit;
+        }
+
+        public long getLimit() {
+            return limit;
+        }
+    }
+
+    private final long limit;
+    private long count;
+
+    public SizeLimitedInputStream(InputStream in, long limit) {
+        super(in);
+        this.limit = limit;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b != -1) {
+            add(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        int read = super.read(buffer, offset, length);
+        if (read > 0) {
+            add(read);
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        add(skipped);
+        return skipped;
+    }
+
+    // mark/reset would make the count wrong
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    private void add(long bytes) {
+        count += bytes;
+        if (count > limit) {
+            throw new SizeLimitExceededException(limit);
+        }
+    }
+}
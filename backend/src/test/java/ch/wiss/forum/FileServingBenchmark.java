@@ -0,0 +1,130 @@
+package ch.wiss.forum;
+
+/**
+ * Throughput and heap churn of the ways a stored file can be written to a client:
+ * the byte[] of an inline document, a stream from the blob store (FileContentResource)
+ * and FileChannel.transferTo from the local disk tier (what Tomcat's sendfile does).
+ * Not part of the regular build, run with:
+ * mvn test -Dtest=FileServingBenchmark -Dbenchmark=true
+ */
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class FileServingBenchmark {
+
+    private static final int FILE_SIZE = 8 * 1024 * 1024;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 40;
+
+    @FunctionalInterface
+    private interface ServePath {
+        void serve(Path file, SocketChannel client) throws Exception;
+    }
+
+    @Test
+    @DisplayName("Benchmark: inline byte[] vs blob stream vs transferTo")
+    void compareServingPaths(@TempDir Path directory) throws Exception {
+        Path file = directory.resolve("blob");
+        byte[] content = new byte[FILE_SIZE];
+        new Random(42).nextBytes(content);
+        Files.write(file, content);
+
+        // the content of a document with inline data, read into the heap as a whole
+        measure("inline byte[]", file, (path, client) -> {
+            byte[] data = Files.readAllBytes(path);
+            OutputStream out = Channels.newOutputStream(client);
+            out.write(data);
+            out.flush();
+        });
+
+        // the resource path of serveFile, copied through a heap buffer
+        measure("blob stream", file, (path, client) -> {
+            try (InputStream in = Files.newInputStream(path)) {
+                OutputStream out = Channels.newOutputStream(client);
+                in.transferTo(out);
+                out.flush();
+            }
+        });
+
+        // the sendfile path of serveFile for the local disk tier
+        measure("transferTo", file, (path, client) -> {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                long position = 0;
+                long size = channel.size();
+                while (position < size) {
+                    position += channel.transferTo(position, size - position, client);
+                }
+            }
+        });
+    }
+
+    private void measure(String name, Path file, ServePath servePath) throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().threadId();
+
+        ExecutorService drain = Executors.newSingleThreadExecutor();
+        try (ServerSocketChannel server = ServerSocketChannel.open().bind(new InetSocketAddress("127.0.0.1", 0))) {
+            for (int round = 0; round < WARMUP_ROUNDS; round++) {
+                serveOnce(server, drain, file, servePath);
+            }
+
+            long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+            long start = System.nanoTime();
+            for (int round = 0; round < ROUNDS; round++) {
+                serveOnce(server, drain, file, servePath);
+            }
+            long elapsed = System.nanoTime() - start;
+            long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+            double megabytes = (double) FILE_SIZE * ROUNDS / (1024 * 1024);
+            System.out.printf("%-14s %8.1f MB/s %12d bytes allocated per request%n",
+                name, megabytes / (elapsed / 1e9), allocated / ROUNDS);
+        } finally {
+            drain.shutdownNow();
+        }
+    }
+
+    // one request over a loopback connection, the client side reads and discards the body
+    private void serveOnce(ServerSocketChannel server, ExecutorService drain, Path file, ServePath servePath) throws Exception {
+        Future<Long> received = drain.submit(() -> {
+            try (SocketChannel client = SocketChannel.open(server.getLocalAddress())) {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+                long total = 0;
+                int read;
+                while ((read = client.read(buffer)) >= 0) {
+                    total += read;
+                    buffer.clear();
+                }
+                return total;
+            }
+        });
+
+        try (SocketChannel connection = server.accept()) {
+            servePath.serve(file, connection);
+        }
+        assertEquals(FILE_SIZE, received.get());
+    }
+}
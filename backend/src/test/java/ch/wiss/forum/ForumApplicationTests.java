@@ -23,11 +23,16 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
 import org.springframework.security.crypto.password.PasswordEncoder;
 
 import ch.wiss.forum.model.Category;
 import ch.wiss.forum.model.Post;
 import ch.wiss.forum.model.Role;
+import ch.wiss.forum.model.ScoreEvent;
 import ch.wiss.forum.model.Topic;
 import ch.wiss.forum.model.User;
 import ch.wiss.forum.payload.request.RegisterRequest;
@@ -37,10 +42,17 @@ import ch.wiss.forum.repository.TopicRepository;
 import ch.wiss.forum.repository.UserRepository;
 import ch.wiss.forum.security.JwtUtils;
 import ch.wiss.forum.service.AuthService;
+import ch.wiss.forum.service.AvailabilityService;
 import ch.wiss.forum.service.EmailService;
 import ch.wiss.forum.service.GamificationService;
+import ch.wiss.forum.service.LeaderboardService;
+import ch.wiss.forum.service.NotificationService;
 import ch.wiss.forum.service.PostService;
+import ch.wiss.forum.service.ResponseCacheService;
+import ch.wiss.forum.service.ScoreLedgerService;
+import ch.wiss.forum.service.TopicEventPublisher;
 import ch.wiss.forum.service.TopicService;
+import ch.wiss.forum.service.UserCacheService;
 import ch.wiss.forum.validation.UserValidator;
 
 @ExtendWith(MockitoExtension.class)
@@ -79,6 +91,30 @@ class ForumApplicationTests {
     @Mock
     private EmailService emailService;
     
+    @Mock
+    private LeaderboardService leaderboardService;
+    
+    @Mock
+    private UserCacheService userCacheService;
+    
+    @Mock
+    private AvailabilityService availabilityService;
+    
+    @Mock
+    private MongoTemplate mongoTemplate;
+    
+    @Mock
+    private ScoreLedgerService scoreLedgerService;
+    
+    @Mock
+    private ResponseCacheService responseCacheService;
+    
+    @Mock
+    private TopicEventPublisher topicEventPublisher;
+    
+    @Mock
+    private NotificationService notificationService;
+    
     @InjectMocks
     private UserValidator realUserValidator;
     
@@ -192,22 +228,28 @@ class ForumApplicationTests {
 				.lastActivityDate(null) // no previous activity for streak calculation
 				.build();
 		
-		when(userRepository.findById("user123")).thenReturn(Optional.of(user));
-		when(userRepository.save(any(User.class))).thenAnswer(invocation -> invocation.getArgument(0));
+		// the event is new to the ledger; post-images of the $inc and the streak update
+		when(scoreLedgerService.record(any(ScoreEvent.class))).thenReturn(true);
+		User afterInc = user.toBuilder().topicsCreated(1).totalScore(47).build();
+		User afterStreak = afterInc.toBuilder().totalScore(50).currentStreak(1).longestStreak(1)
+				.lastActivityDate(LocalDateTime.now()).build();
+		when(mongoTemplate.findAndModify(any(Query.class), any(UpdateDefinition.class), any(FindAndModifyOptions.class), eq(User.class)))
+				.thenReturn(afterInc, afterStreak);
 		
 		// act
 		realGamificationService.updateUserStatsOnTopicCreated(user);
 		
 		// assert - 4b) enhanced verification with proper interaction checking
-		verify(userRepository).save(argThat(savedUser -> {
-			assertEquals(1, savedUser.getTopicsCreated(), "topics created should be incremented");
-			assertEquals(50, savedUser.getTotalScore(), "score should increase by 13 points (10 + 3 streak bonus)");
-			assertEquals(2, savedUser.getLevel(), "user should level up to level 2");
-			return true;
-		}));
-		
-		// 4b) verify the method was called exactly once with correct user
-		verify(userRepository, times(1)).save(any(User.class));
+		assertEquals(1, user.getTopicsCreated(), "topics created should be incremented");
+		assertEquals(50, user.getTotalScore(), "score should increase by 13 points (10 + 3 streak bonus)");
+		assertEquals(2, user.getLevel(), "user should level up to level 2");
+		
+		// 4b) the promotion is a conditional update sent only because a threshold was crossed
+		verify(mongoTemplate).updateFirst(any(Query.class), argThat(update ->
+				update.getUpdateObject().toJson().contains("\"level\": 2")), eq(User.class));
+		verify(leaderboardService).recordScoreDelta("user123", 13);
+		
+		// 4b) the stats are no longer written by a full-document save
 		verifyNoMoreInteractions(userRepository);
 	}
 
@@ -226,23 +268,25 @@ class ForumApplicationTests {
 				.lastActivityDate(null) // no previous activity for streak calculation
 				.build();
 		
-		when(userRepository.findById("newuser123")).thenReturn(Optional.of(newUser));
-		when(userRepository.save(any(User.class))).thenAnswer(invocation -> invocation.getArgument(0));
+		when(scoreLedgerService.record(any(ScoreEvent.class))).thenReturn(true);
+		User afterInc = newUser.toBuilder().postsCreated(1).totalScore(5).achievements(new ArrayList<>()).build();
+		User afterStreak = afterInc.toBuilder().totalScore(8).currentStreak(1).longestStreak(1)
+				.lastActivityDate(LocalDateTime.now()).achievements(new ArrayList<>()).build();
+		when(mongoTemplate.findAndModify(any(Query.class), any(UpdateDefinition.class), any(FindAndModifyOptions.class), eq(User.class)))
+				.thenReturn(afterInc, afterStreak);
 		
 		// act
 		realGamificationService.updateUserStatsOnPostCreated(newUser);
 		
 		// assert - 4b) enhanced verification with interaction checking
-		verify(userRepository).save(argThat(savedUser -> {
-			assertEquals(1, savedUser.getPostsCreated(), "posts created should be incremented");
-			assertEquals(8, savedUser.getTotalScore(), "score should increase by 8 points (5 + 3 streak bonus)");
-			assertTrue(savedUser.getAchievements().contains("FIRST_POST"), 
-				"should award first_post achievement");
-			return true;
-		}));
-		
-		// 4b) verify exactly one save operation occurred
-		verify(userRepository, times(1)).save(any(User.class));
+		assertEquals(1, newUser.getPostsCreated(), "posts created should be incremented");
+		assertEquals(8, newUser.getTotalScore(), "score should increase by 8 points (5 + 3 streak bonus)");
+		assertTrue(newUser.getAchievements().contains("FIRST_POST"), 
+			"should award first_post achievement");
+		
+		// 4b) the achievement is added server-side with $addToSet
+		verify(mongoTemplate).updateFirst(any(Query.class), argThat(update ->
+				update.getUpdateObject().toJson().contains("FIRST_POST")), eq(User.class));
 		verifyNoMoreInteractions(userRepository);
 	}
 
@@ -324,8 +368,8 @@ class ForumApplicationTests {
 		when(userValidator.isValidPassword("password123")).thenReturn(true);
 		when(userValidator.isValidDisplayName("New User")).thenReturn(true);
 		
-		when(userRepository.existsByUsername("newuser")).thenReturn(false);
-		when(userRepository.existsByEmail("newuser@wiss-edu.ch")).thenReturn(false);
+		when(availabilityService.isUsernameTaken("newuser")).thenReturn(false);
+		when(availabilityService.isEmailTaken("newuser@wiss-edu.ch")).thenReturn(false);
 		when(passwordEncoder.encode("password123")).thenReturn("encoded_password");
 		when(userRepository.save(any(User.class))).thenAnswer(invocation -> {
 			User user = invocation.getArgument(0);
@@ -423,29 +467,31 @@ class ForumApplicationTests {
 		
 		// 4b) create a spy on the user repository to track interactions while keeping mock behavior
 		UserRepository spyUserRepository = spy(UserRepository.class);
-		when(spyUserRepository.save(any(User.class))).thenAnswer(invocation -> invocation.getArgument(0));
+		
+		// the event is new to the ledger; post-images of the $inc and the streak restart (last activity was 2 days ago)
+		when(scoreLedgerService.record(any(ScoreEvent.class))).thenReturn(true);
+		User afterInc = user.toBuilder().topicsCreated(2).totalScore(55).build();
+		User afterStreak = afterInc.toBuilder().totalScore(58).currentStreak(1).longestStreak(1)
+				.lastActivityDate(LocalDateTime.now()).build();
+		when(mongoTemplate.findAndModify(any(Query.class), any(UpdateDefinition.class), any(FindAndModifyOptions.class), eq(User.class)))
+				.thenReturn(afterInc, afterStreak);
 		
 		// create gamification service with spied repository
-		GamificationService gamificationServiceWithSpy = new GamificationService(spyUserRepository);
+		GamificationService gamificationServiceWithSpy = new GamificationService(spyUserRepository, leaderboardService, userCacheService, mongoTemplate, scoreLedgerService);
 		
 		// act - call real method on service which will use spied repository
 		gamificationServiceWithSpy.updateUserStatsOnTopicCreated(user);
 		
-		// assert - 4b) verify spy repository interactions occurred correctly
-		verify(spyUserRepository, times(1)).save(argThat(savedUser -> {
-			// verify gamification logic worked correctly
-			assertEquals(2, savedUser.getTopicsCreated(), "topics should be incremented");
-			assertEquals(58, savedUser.getTotalScore(), "score should increase by 13 points (10 + 3 streak bonus)");
-			assertEquals(2, savedUser.getLevel(), "user should level up to level 2");
-			return true;
-		}));
-		
-		// 4b) verify that only expected interactions occurred (gamification service may call findById and save)
-		verify(spyUserRepository, atLeastOnce()).save(any(User.class));
+		// assert - 4b) the stat change goes through atomic updates, the repository never rewrites the user
+		verify(mongoTemplate, times(2)).findAndModify(any(Query.class), any(UpdateDefinition.class), any(FindAndModifyOptions.class), eq(User.class));
+		verify(spyUserRepository, never()).save(any(User.class));
+		verify(userCacheService).evict("testuser123");
+		verify(leaderboardService).recordScoreDelta("testuser123", 13);
 		
 		// additional verification - ensure the service processed the user correctly
 		assertEquals(2, user.getTopicsCreated(), "original user object should be modified");
 		assertEquals(58, user.getTotalScore(), "original user total score should be updated");
+		assertEquals(2, user.getLevel(), "user should level up to level 2");
 	}
 
 	@Test
@@ -476,10 +522,10 @@ class ForumApplicationTests {
 		});
 		
 		// 4b) spy on gamification service to track method calls while keeping real behavior
-		GamificationService spyGamificationService = spy(new GamificationService(userRepository));
+		GamificationService spyGamificationService = spy(new GamificationService(userRepository, leaderboardService, userCacheService, mongoTemplate, scoreLedgerService));
 		
 		// create topic service with spy gamification service
-		TopicService topicServiceWithSpy = new TopicService(topicRepository, categoryRepository, spyGamificationService);
+		TopicService topicServiceWithSpy = new TopicService(topicRepository, categoryRepository, spyGamificationService, responseCacheService);
 		
 		// act
 		Topic createdTopic = topicServiceWithSpy.createTopic(newTopic, author);
@@ -499,7 +545,7 @@ class ForumApplicationTests {
 		));
 		
 		// 4b) verify spy gamification service was called - this demonstrates spy usage
-		verify(spyGamificationService, times(1)).updateUserStatsOnTopicCreated(author);
+		verify(spyGamificationService, times(1)).updateUserStatsOnTopicCreated(author, createdTopic);
 		
 		// verify no unexpected interactions
 		verifyNoMoreInteractions(topicRepository);
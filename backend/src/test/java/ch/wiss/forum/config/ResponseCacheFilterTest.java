@@ -0,0 +1,163 @@
+package ch.wiss.forum.config;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import ch.wiss.forum.service.ResponseCacheService;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.http.HttpServletResponse;
+
+@ExtendWith(MockitoExtension.class)
+class ResponseCacheFilterTest {
+
+	private static final byte[] BODY = "[{\"id\":\"topic123\"}]".getBytes(StandardCharsets.UTF_8);
+
+	@Mock
+	private ResponseCacheService responseCacheService;
+
+	@InjectMocks
+	private ResponseCacheFilter responseCacheFilter;
+
+	private MockHttpServletResponse response;
+	private AtomicInteger controllerCalls;
+
+	@BeforeEach
+	void setUp() {
+		response = new MockHttpServletResponse();
+		controllerCalls = new AtomicInteger();
+		lenient().when(responseCacheService.isEnabled()).thenReturn(true);
+	}
+
+	@Test
+	@DisplayName("Should store a miss under the path with sorted query parameters")
+	void testDoFilter_Miss_ShouldStoreUnderNormalizedKey() throws Exception {
+		// arrange
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/topics/category/general");
+		request.setParameter("size", "10");
+		request.setParameter("page", "0");
+		request.setParameter("q", "a b");
+		when(responseCacheService.currentEpoch()).thenReturn(7L);
+
+		// act
+		responseCacheFilter.doFilter(request, response, controller(HttpServletResponse.SC_OK));
+
+		// assert - topics show their category, so both tags are attached
+		assertEquals(1, controllerCalls.get());
+		assertEquals("MISS", response.getHeader("X-Response-Cache"));
+		assertArrayEquals(BODY, response.getContentAsByteArray(), "the body still reaches the client");
+		verify(responseCacheService).put(eq("/api/topics/category/general?page=0&q=a+b&size=10"), eq("application/json"),
+				aryEq(BODY), eq(Set.of(ResponseCacheService.TOPICS, ResponseCacheService.CATEGORIES)), eq(7L));
+	}
+
+	@Test
+	@DisplayName("Should serve a hit without calling the controller")
+	void testDoFilter_Hit_ShouldWriteCachedBody() throws Exception {
+		// arrange
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/categories");
+		when(responseCacheService.get("/api/categories")).thenReturn(
+				new ResponseCacheService.CachedResponse("application/json", BODY, null, Set.of(ResponseCacheService.CATEGORIES)));
+
+		// act
+		responseCacheFilter.doFilter(request, response, controller(HttpServletResponse.SC_OK));
+
+		// assert
+		assertEquals(0, controllerCalls.get());
+		assertEquals("HIT", response.getHeader("X-Response-Cache"));
+		assertEquals("application/json", response.getContentType());
+		assertArrayEquals(BODY, response.getContentAsByteArray());
+		assertNull(response.getHeader(HttpHeaders.CONTENT_ENCODING));
+	}
+
+	@Test
+	@DisplayName("Should serve the gzipped copy of a hit to clients that accept it")
+	void testDoFilter_HitAcceptingGzip_ShouldWriteGzippedBody() throws Exception {
+		// arrange
+		byte[] gzipped = { 0x1f, (byte) 0x8b, 8, 0 };
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/posts/topic/topic123");
+		request.addHeader(HttpHeaders.ACCEPT_ENCODING, "br, gzip");
+		when(responseCacheService.get("/api/posts/topic/topic123")).thenReturn(
+				new ResponseCacheService.CachedResponse("application/json", BODY, gzipped, Set.of(ResponseCacheService.POSTS)));
+
+		// act
+		responseCacheFilter.doFilter(request, response, controller(HttpServletResponse.SC_OK));
+
+		// assert
+		assertEquals("gzip", response.getHeader(HttpHeaders.CONTENT_ENCODING));
+		assertArrayEquals(gzipped, response.getContentAsByteArray());
+		assertTrue(response.getHeaders(HttpHeaders.VARY).contains(HttpHeaders.ACCEPT_ENCODING));
+	}
+
+	@Test
+	@DisplayName("Should pass requests with an Authorization header through untouched")
+	void testDoFilter_Authorized_ShouldBypassCache() throws Exception {
+		// arrange
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/topics");
+		request.addHeader(HttpHeaders.AUTHORIZATION, "Bearer token");
+
+		// act
+		responseCacheFilter.doFilter(request, response, controller(HttpServletResponse.SC_OK));
+
+		// assert
+		assertEquals(1, controllerCalls.get());
+		assertNull(response.getHeader("X-Response-Cache"));
+		verify(responseCacheService).recordBypass();
+		verify(responseCacheService, never()).get(anyString());
+		verify(responseCacheService, never()).put(anyString(), anyString(), any(), any(), anyLong());
+	}
+
+	@Test
+	@DisplayName("Should leave other methods, other paths and a disabled cache alone")
+	void testDoFilter_NotCached_ShouldSkipFilter() throws Exception {
+		// act
+		responseCacheFilter.doFilter(new MockHttpServletRequest("POST", "/api/topics"), response, controller(HttpServletResponse.SC_OK));
+		responseCacheFilter.doFilter(new MockHttpServletRequest("GET", "/api/users/me"), new MockHttpServletResponse(), controller(HttpServletResponse.SC_OK));
+		responseCacheFilter.doFilter(new MockHttpServletRequest("GET", "/api/topicsearch"), new MockHttpServletResponse(), controller(HttpServletResponse.SC_OK));
+		when(responseCacheService.isEnabled()).thenReturn(false);
+		responseCacheFilter.doFilter(new MockHttpServletRequest("GET", "/api/topics"), new MockHttpServletResponse(), controller(HttpServletResponse.SC_OK));
+
+		// assert - a prefix only matches whole path segments
+		assertEquals(4, controllerCalls.get());
+		verify(responseCacheService, never()).get(anyString());
+	}
+
+	@Test
+	@DisplayName("Should not store error responses")
+	void testDoFilter_ErrorResponse_ShouldNotStore() throws Exception {
+		// arrange
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/topics/missing");
+
+		// act
+		responseCacheFilter.doFilter(request, response, controller(HttpServletResponse.SC_NOT_FOUND));
+
+		// assert
+		assertEquals(HttpServletResponse.SC_NOT_FOUND, response.getStatus());
+		verify(responseCacheService, never()).put(anyString(), anyString(), any(), any(), anyLong());
+	}
+
+	// stands in for the controllers, answering with json
+	private FilterChain controller(int status) {
+		return (request, servletResponse) -> {
+			controllerCalls.incrementAndGet();
+			HttpServletResponse httpResponse = (HttpServletResponse) servletResponse;
+			httpResponse.setStatus(status);
+			httpResponse.setContentType("application/json");
+			httpResponse.getOutputStream().write(BODY);
+		};
+	}
+}
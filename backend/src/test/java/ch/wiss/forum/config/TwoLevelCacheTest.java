@@ -0,0 +1,124 @@
+package ch.wiss.forum.config;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+@ExtendWith(MockitoExtension.class)
+class TwoLevelCacheTest {
+
+	@Mock
+	private Cache shared;
+
+	@Mock
+	private TwoLevelCacheManager manager;
+
+	private TwoLevelCache cache;
+
+	@BeforeEach
+	void setUp() {
+		cache = new TwoLevelCache("user-summaries", shared, manager, Duration.ofMinutes(10), 100);
+	}
+
+	@Test
+	@DisplayName("Should load a miss once and serve it from this node afterwards")
+	void testGet_Miss_ShouldLoadOnceAndKeepLocal() {
+		// arrange
+		AtomicInteger loads = new AtomicInteger();
+
+		// act
+		String first = cache.get("alice", () -> "summary-" + loads.incrementAndGet());
+		String second = cache.get("alice", () -> "summary-" + loads.incrementAndGet());
+
+		// assert
+		assertEquals("summary-1", first);
+		assertEquals("summary-1", second);
+		assertEquals(1, loads.get());
+		verify(manager).readShared(shared, "alice");
+		verify(manager).writeShared(shared, "alice", "summary-1");
+	}
+
+	@Test
+	@DisplayName("Should not keep a loaded value that was invalidated while loading")
+	void testGet_EvictedDuringLoad_ShouldNotCacheStaleValue() {
+		// arrange - an invalidation from another node arrives while the loader runs
+		AtomicInteger loads = new AtomicInteger();
+
+		// act
+		String stale = cache.get("alice", () -> {
+			cache.evictLocal("alice");
+			return "summary-" + loads.incrementAndGet();
+		});
+		String fresh = cache.get("alice", () -> "summary-" + loads.incrementAndGet());
+
+		// assert - the caller still gets its value, but neither tier keeps it
+		assertEquals("summary-1", stale);
+		assertEquals("summary-2", fresh);
+		verify(manager, never()).writeShared(shared, "alice", "summary-1");
+		verify(manager).writeShared(shared, "alice", "summary-2");
+	}
+
+	@Test
+	@DisplayName("Should not keep a redis value that was invalidated while reading it")
+	void testLookup_EvictedDuringSharedRead_ShouldNotKeepLocal() {
+		// arrange
+		when(manager.readShared(shared, "alice")).thenAnswer(invocation -> {
+			cache.evictLocal("alice");
+			return new SimpleValueWrapper("old");
+		}).thenReturn(new SimpleValueWrapper("new"));
+
+		// act
+		Cache.ValueWrapper first = cache.get("alice");
+		Cache.ValueWrapper second = cache.get("alice");
+		Cache.ValueWrapper third = cache.get("alice");
+
+		// assert - only the read without an eviction in between is kept
+		assertEquals("old", first.get());
+		assertEquals("new", second.get());
+		assertEquals("new", third.get());
+		verify(manager, times(2)).readShared(shared, "alice");
+	}
+
+	@Test
+	@DisplayName("Should drop the entry on both tiers and tell the other nodes on evict")
+	void testEvict_ShouldInvalidateEverywhere() {
+		// arrange
+		cache.put("alice", "summary");
+
+		// act
+		cache.evict("alice");
+
+		// assert
+		assertNull(cache.get("alice"));
+		verify(manager).evictShared(shared, "alice");
+		verify(manager, times(2)).broadcast("user-summaries", "alice");
+	}
+
+	@Test
+	@DisplayName("Should drop every entry of this node on a clear broadcast")
+	void testClearLocal_ShouldDropAllEntries() {
+		// arrange
+		cache.put("alice", "a");
+		cache.put("bob", "b");
+
+		// act
+		cache.clearLocal();
+
+		// assert
+		assertNull(cache.get("alice"));
+		assertNull(cache.get("bob"));
+		verify(manager, never()).clearShared(any());
+	}
+}
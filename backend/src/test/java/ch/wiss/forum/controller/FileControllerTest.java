@@ -0,0 +1,211 @@
+package ch.wiss.forum.controller;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import ch.wiss.forum.model.FileEntity;
+import ch.wiss.forum.service.FileStorageService;
+import ch.wiss.forum.service.ImageVariantService;
+
+@ExtendWith(MockitoExtension.class)
+class FileControllerTest {
+
+	private static final String SHA256 = "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08";
+	private static final String ETAG = "\"" + SHA256 + "\"";
+
+	@Mock
+	private FileStorageService fileStorageService;
+
+	@Mock
+	private ImageVariantService imageVariantService;
+
+	@InjectMocks
+	private FileController fileController;
+
+	private FileEntity file;
+	private Resource content;
+	private long lastModified;
+	private HttpHeaders requestHeaders;
+	private MockHttpServletRequest request;
+
+	@BeforeEach
+	void setUp() {
+		file = new FileEntity("user123_file.txt", "notes.txt", "text/plain", 11L, null, "user123");
+		file.setId("file123");
+		file.setSha256(SHA256);
+		file.setUploadedAt(LocalDateTime.of(2026, 1, 15, 10, 30, 0));
+		lastModified = file.getUploadedAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+
+		content = new ByteArrayResource("hello world".getBytes(StandardCharsets.UTF_8));
+		requestHeaders = new HttpHeaders();
+		request = new MockHttpServletRequest("GET", "/api/files/file123");
+
+		lenient().when(fileStorageService.getFile("file123")).thenReturn(Optional.of(file));
+	}
+
+	@Test
+	@DisplayName("Should serve the content with a strong ETag and immutable caching")
+	void testServeFile_FullRequest_ShouldSetValidators() {
+		// arrange
+		when(fileStorageService.loadContent(file)).thenReturn(content);
+
+		// act
+		ResponseEntity<Resource> response = serve();
+
+		// assert
+		assertEquals(HttpStatus.OK, response.getStatusCode());
+		assertSame(content, response.getBody());
+		assertEquals(ETAG, response.getHeaders().getETag());
+		assertEquals(lastModified, response.getHeaders().getLastModified());
+		assertTrue(response.getHeaders().getCacheControl().contains("immutable"));
+		assertTrue(response.getHeaders().getCacheControl().contains("max-age=31536000"));
+	}
+
+	@Test
+	@DisplayName("Should answer a matching If-None-Match with 304 without loading the content")
+	void testServeFile_IfNoneMatch_ShouldReturnNotModified() {
+		// arrange - weak comparison, so a W/ prefix still matches
+		requestHeaders.setIfNoneMatch(List.of("\"something-else\"", "W/" + ETAG));
+
+		// act
+		ResponseEntity<Resource> response = serve();
+		requestHeaders.setIfNoneMatch("*");
+		ResponseEntity<Resource> wildcard = serve();
+
+		// assert
+		assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+		assertEquals(HttpStatus.NOT_MODIFIED, wildcard.getStatusCode());
+		assertNull(response.getBody());
+		assertEquals(ETAG, response.getHeaders().getETag());
+		verify(fileStorageService, never()).loadContent(any());
+		verify(fileStorageService, never()).localPath(any());
+	}
+
+	@Test
+	@DisplayName("Should serve the content when If-None-Match does not match, ignoring If-Modified-Since")
+	void testServeFile_IfNoneMatchMismatch_ShouldReturnContent() {
+		// arrange - If-None-Match takes precedence over the date
+		when(fileStorageService.loadContent(file)).thenReturn(content);
+		requestHeaders.setIfNoneMatch("\"other\"");
+		requestHeaders.setIfModifiedSince(lastModified);
+
+		// act & assert
+		assertEquals(HttpStatus.OK, serve().getStatusCode());
+	}
+
+	@Test
+	@DisplayName("Should compare If-Modified-Since with the upload date")
+	void testServeFile_IfModifiedSince_ShouldCompareDates() {
+		// arrange
+		when(fileStorageService.loadContent(file)).thenReturn(content);
+
+		// act
+		requestHeaders.setIfModifiedSince(lastModified);
+		ResponseEntity<Resource> unchanged = serve();
+		requestHeaders.setIfModifiedSince(lastModified - 1000);
+		ResponseEntity<Resource> older = serve();
+
+		// assert
+		assertEquals(HttpStatus.NOT_MODIFIED, unchanged.getStatusCode());
+		assertEquals(HttpStatus.OK, older.getStatusCode());
+	}
+
+	@Test
+	@DisplayName("Should leave a range with a current If-Range to Spring")
+	void testServeFile_RangeWithMatchingIfRange_ShouldKeepResource() {
+		// arrange
+		when(fileStorageService.loadContent(file)).thenReturn(content);
+		requestHeaders.setRange(List.of(HttpRange.createByteRange(0, 4)));
+
+		// act - by ETag and by date
+		requestHeaders.set(HttpHeaders.IF_RANGE, ETAG);
+		ResponseEntity<Resource> byETag = serve();
+		requestHeaders.set(HttpHeaders.IF_RANGE,
+				DateTimeFormatter.RFC_1123_DATE_TIME.format(Instant.ofEpochMilli(lastModified).atZone(ZoneOffset.UTC)));
+		ResponseEntity<Resource> byDate = serve();
+
+		// assert - the resource goes out as is, Spring cuts the range from it
+		assertSame(content, byETag.getBody());
+		assertSame(content, byDate.getBody());
+	}
+
+	@Test
+	@DisplayName("Should send the full body when If-Range is stale")
+	void testServeFile_RangeWithStaleIfRange_ShouldSendFullBody() {
+		// arrange
+		when(fileStorageService.loadContent(file)).thenReturn(content);
+		requestHeaders.setRange(List.of(HttpRange.createByteRange(0, 4)));
+		requestHeaders.set(HttpHeaders.IF_RANGE, "\"an-older-version\"");
+
+		// act
+		ResponseEntity<Resource> response = serve();
+
+		// assert - an InputStreamResource makes Spring ignore the Range header
+		assertEquals(HttpStatus.OK, response.getStatusCode());
+		assertInstanceOf(InputStreamResource.class, response.getBody());
+		assertEquals(11, response.getHeaders().getContentLength());
+	}
+
+	@Test
+	@DisplayName("Should send a gzip-stored file compressed to clients that accept it, with its own ETag")
+	void testServeFile_GzipStored_ShouldNegotiateEncoding() {
+		// arrange
+		file.setContentEncoding(FileStorageService.GZIP);
+		Resource encoded = new ByteArrayResource(new byte[] { 0x1f, (byte) 0x8b });
+		when(fileStorageService.localPath(file)).thenReturn(Optional.empty());
+		when(fileStorageService.loadEncodedContent(file)).thenReturn(encoded);
+		requestHeaders.set(HttpHeaders.ACCEPT_ENCODING, "gzip, br");
+
+		// act
+		ResponseEntity<Resource> response = serve();
+
+		// assert
+		assertSame(encoded, response.getBody());
+		assertEquals("gzip", response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+		assertEquals("\"" + SHA256 + "-gzip\"", response.getHeaders().getETag());
+		assertEquals(List.of(HttpHeaders.ACCEPT_ENCODING), response.getHeaders().getVary());
+	}
+
+	@Test
+	@DisplayName("Should answer 404 for an unknown file")
+	void testServeFile_Unknown_ShouldReturnNotFound() {
+		// arrange
+		when(fileStorageService.getFile("missing")).thenReturn(Optional.empty());
+
+		// act
+		ResponseEntity<Resource> response = fileController.serveFile("missing", null, requestHeaders, request);
+
+		// assert
+		assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+	}
+
+	private ResponseEntity<Resource> serve() {
+		return fileController.serveFile("file123", null, requestHeaders, request);
+	}
+}
@@ -0,0 +1,106 @@
+package ch.wiss.forum.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import ch.wiss.forum.model.User;
+import ch.wiss.forum.service.AchievementRules.Counter;
+
+class AchievementRulesTest {
+
+	private static final Counter[] POSTS = { Counter.POSTS_CREATED };
+	private static final Counter[] TOPICS_AND_LIKES = { Counter.TOPICS_CREATED, Counter.LIKES_RECEIVED };
+
+	private final AchievementRules rules = AchievementRules.fromClasspath();
+
+	@Test
+	@DisplayName("Should award every achievement whose threshold is reached")
+	void testEvaluate_ThresholdsReached_ShouldAwardAllUpToValue() {
+		// arrange
+		User user = User.builder().topicsCreated(10).likesReceived(49).build();
+
+		// act
+		long earned = rules.evaluate(user, TOPICS_AND_LIKES);
+
+		// assert - 10 topics reach FIRST_TOPIC and DISCUSSION_STARTER, 49 likes reach nothing
+		assertEquals(rules.maskOf(List.of("FIRST_TOPIC", "DISCUSSION_STARTER")), earned);
+		assertEquals(earned, user.getAchievementMask());
+		assertEquals(List.of("FIRST_TOPIC", "DISCUSSION_STARTER"), user.getAchievements());
+	}
+
+	@Test
+	@DisplayName("Should only look at the counters that changed")
+	void testEvaluate_OtherCounterChanged_ShouldAwardNothing() {
+		// arrange
+		User user = User.builder().topicsCreated(25).postsCreated(0).build();
+
+		// act
+		long earned = rules.evaluate(user, POSTS);
+
+		// assert
+		assertEquals(0L, earned);
+		assertTrue(user.getAchievements().isEmpty());
+	}
+
+	@Test
+	@DisplayName("Should not award an achievement twice")
+	void testEvaluate_AlreadyEarned_ShouldReturnOnlyNewBits() {
+		// arrange
+		User user = User.builder().postsCreated(1).build();
+		rules.evaluate(user, POSTS);
+
+		// act
+		user.setPostsCreated(50);
+		long earned = rules.evaluate(user, POSTS);
+		long again = rules.evaluate(user, POSTS);
+
+		// assert
+		assertEquals(rules.maskOf(List.of("ACTIVE_PARTICIPANT")), earned);
+		assertEquals(0L, again);
+		assertEquals(List.of("FIRST_POST", "ACTIVE_PARTICIPANT"), user.getAchievements());
+	}
+
+	@Test
+	@DisplayName("Should derive the mask of users from before the mask existed")
+	void testEvaluate_LegacyList_ShouldDeriveMaskFirst() {
+		// arrange - earned before the mask was stored
+		User user = User.builder().postsCreated(1).achievementMask(0L)
+				.achievements(new ArrayList<>(List.of("FIRST_POST"))).build();
+
+		// act
+		long earned = rules.evaluate(user, POSTS);
+
+		// assert
+		assertEquals(0L, earned, "FIRST_POST is already in the list");
+		assertEquals(rules.maskOf(List.of("FIRST_POST")), user.getAchievementMask());
+		assertEquals(List.of("FIRST_POST"), user.getAchievements());
+	}
+
+	@Test
+	@DisplayName("Should translate between ids and mask bits")
+	void testIdsOfAndMaskOf_ShouldRoundTrip() {
+		// arrange
+		List<String> ids = List.of("FIRST_POST", "STREAK_MASTER", "COMMUNITY_FAVORITE");
+
+		// act
+		long mask = rules.maskOf(ids);
+
+		// assert - bits 0, 5 and 7 of achievements.json, unknown ids are ignored
+		assertEquals((1L << 0) | (1L << 5) | (1L << 7), mask);
+		assertEquals(ids, rules.idsOf(mask));
+		assertEquals(0L, rules.maskOf(List.of("NOT_AN_ACHIEVEMENT")));
+	}
+
+	@Test
+	@DisplayName("Should reject definitions that reuse a bit")
+	void testFromClasspath_DuplicateBit_ShouldThrow() {
+		// act & assert
+		assertThrows(IllegalArgumentException.class,
+				() -> AchievementRules.fromClasspath("gamification/duplicate-bit.json"));
+	}
+}
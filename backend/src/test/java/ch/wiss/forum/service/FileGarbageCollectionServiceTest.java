@@ -0,0 +1,170 @@
+package ch.wiss.forum.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import ch.wiss.forum.model.FileEntity;
+import ch.wiss.forum.model.FileVariant;
+import ch.wiss.forum.model.JobRun;
+import ch.wiss.forum.model.StoredBlob;
+
+@ExtendWith(MockitoExtension.class)
+class FileGarbageCollectionServiceTest {
+
+	private static final String KEPT = "aaaaaaaaaaaaaaaaaaaaaaaa";
+	private static final String REUSED = "bbbbbbbbbbbbbbbbbbbbbbbb";
+	private static final String ORPHAN = "cccccccccccccccccccccccc";
+
+	@Mock
+	private MongoTemplate mongoTemplate;
+
+	@Mock
+	private FileStorageService fileStorageService;
+
+	@Mock
+	private BlobStore blobStore;
+
+	@Mock
+	private JobRunner jobRunner;
+
+	private FileGarbageCollectionService gcService;
+
+	// what the mark phase streams and what the check right before a delete finds, by collection
+	private final Map<String, List<Document>> marked = new HashMap<>();
+	private final Map<String, List<Document>> current = new HashMap<>();
+
+	@BeforeEach
+	void setUp() throws Exception {
+		// batches of 2, no pause between them
+		gcService = new FileGarbageCollectionService(mongoTemplate, fileStorageService, blobStore, jobRunner,
+				false, Duration.ofDays(7), 2, 0, 200);
+
+		lenient().when(jobRunner.runExclusively(eq(FileGarbageCollectionService.GC_JOB), any(), any())).thenAnswer(invocation -> {
+			JobRun run = JobRun.builder().jobName(FileGarbageCollectionService.GC_JOB).build();
+			run.setAffected(invocation.<JobRunner.Job>getArgument(2).run(run));
+			return Optional.of(run);
+		});
+		lenient().when(mongoTemplate.stream(any(Query.class), eq(Document.class), anyString())).thenAnswer(
+				invocation -> marked.getOrDefault(invocation.getArgument(2), List.of()).stream());
+		lenient().when(mongoTemplate.find(any(Query.class), eq(Document.class), anyString())).thenAnswer(
+				invocation -> current.getOrDefault(invocation.getArgument(2), List.of()));
+		lenient().when(mongoTemplate.getCollectionName(FileEntity.class)).thenReturn("files");
+		lenient().when(mongoTemplate.getCollectionName(StoredBlob.class)).thenReturn("stored_blobs");
+		lenient().when(mongoTemplate.getCollectionName(FileVariant.class)).thenReturn("file_variants");
+	}
+
+	@AfterEach
+	void tearDown() {
+		gcService.shutdown();
+	}
+
+	@Test
+	@DisplayName("Should delete only the files and blobs nothing references")
+	void testCollect_Apply_ShouldDeleteUnreferenced() throws Exception {
+		// arrange
+		givenFilesAndBlobs();
+
+		// act
+		JobRun run = gcService.collect(true).orElseThrow();
+
+		// assert - file ids in urls are matched case-insensitively
+		verify(fileStorageService).deleteFile(ORPHAN);
+		verify(fileStorageService, never()).deleteFile(KEPT);
+		verify(fileStorageService, never()).deleteFile(REUSED);
+		verify(blobStore).delete("blobs/orphan");
+		verify(blobStore, never()).delete("blobs/kept");
+		assertEquals(2, run.getAffected());
+		assertEquals("apply", run.getDetails().get("mode"));
+	}
+
+	@Test
+	@DisplayName("Should only report what a dry run would reclaim")
+	void testCollect_DryRun_ShouldReportWithoutDeleting() throws Exception {
+		// arrange
+		givenFilesAndBlobs();
+
+		// act
+		JobRun run = gcService.collect(false).orElseThrow();
+
+		// assert
+		verify(fileStorageService, never()).deleteFile(anyString());
+		verify(blobStore, never()).delete(anyString());
+		assertEquals(0, run.getAffected());
+		assertEquals("dry-run", run.getDetails().get("mode"));
+		assertEquals(1, run.getDetails().get("referencedFiles"));
+		assertEquals(1L, run.getDetails().get("unreferencedFiles"));
+		assertEquals(300L, run.getDetails().get("reclaimedFileBytes"));
+		assertEquals(1L, run.getDetails().get("orphanedBlobs"));
+		assertEquals(20L, run.getDetails().get("reclaimedBlobBytes"));
+		List<?> report = (List<?>) run.getDetails().get("files");
+		assertEquals(ORPHAN, ((Map<?, ?>) report.get(0)).get("id"));
+	}
+
+	@Test
+	@DisplayName("Should sweep in batches, checking references and renewing the lock for each")
+	void testCollect_ManyCandidates_ShouldSweepInBatches() throws Exception {
+		// arrange - three candidates in batches of two
+		when(mongoTemplate.stream(any(Query.class), eq(FileEntity.class))).thenReturn(
+				Stream.of(file(KEPT, 100L), file(REUSED, 200L), file(ORPHAN, 300L)));
+
+		// act
+		gcService.collect(true);
+
+		// assert - one reference query per collection and batch
+		verify(fileStorageService, times(3)).deleteFile(anyString());
+		verify(mongoTemplate, times(6)).find(any(Query.class), eq(Document.class), anyString());
+		verify(jobRunner, times(2)).renewLock(any(JobRun.class), any());
+	}
+
+	@Test
+	@DisplayName("Should do nothing when another node holds the lock")
+	void testCollect_Locked_ShouldSkip() {
+		// arrange
+		doReturn(Optional.empty()).when(jobRunner).runExclusively(eq(FileGarbageCollectionService.GC_JOB), any(), any());
+
+		// act & assert
+		assertTrue(gcService.collect(true).isEmpty());
+		verifyNoInteractions(fileStorageService, blobStore);
+	}
+
+	// KEPT is in an avatar, REUSED gets linked in a post while the job runs, ORPHAN is left over;
+	// of the stored blobs one belongs to a file record, the other to nothing
+	private void givenFilesAndBlobs() throws Exception {
+		marked.put("users", List.of(new Document("avatar", "http://localhost:8080/api/files/" + KEPT.toUpperCase())));
+		marked.put("files", List.of(new Document("storage_key", "blobs/kept")));
+		current.put("posts", List.of(new Document("content", "see ![diagram](/api/files/" + REUSED + ")")));
+
+		when(mongoTemplate.stream(any(Query.class), eq(FileEntity.class))).thenReturn(
+				Stream.of(file(KEPT, 100L), file(REUSED, 200L), file(ORPHAN, 300L)));
+		when(blobStore.listOlderThan(any(Instant.class))).thenReturn(
+				Stream.of(new BlobStore.Blob("blobs/kept", 10L), new BlobStore.Blob("blobs/orphan", 20L)));
+	}
+
+	private static FileEntity file(String id, Long size) {
+		FileEntity file = new FileEntity("user123_" + id, id + ".png", "image/png", size, null, "user123");
+		file.setId(id);
+		file.setUploadedAt(LocalDateTime.now().minusDays(30));
+		return file;
+	}
+}
@@ -0,0 +1,137 @@
+package ch.wiss.forum.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+
+import ch.wiss.forum.model.ScoreEvent;
+import ch.wiss.forum.model.User;
+import ch.wiss.forum.repository.UserRepository;
+
+@ExtendWith(MockitoExtension.class)
+class GamificationServiceTest {
+
+	@Mock
+	private UserRepository userRepository;
+
+	@Mock
+	private LeaderboardService leaderboardService;
+
+	@Mock
+	private UserCacheService userCacheService;
+
+	@Mock
+	private MongoTemplate mongoTemplate;
+
+	@Mock
+	private ScoreLedgerService scoreLedgerService;
+
+	@InjectMocks
+	private GamificationService gamificationService;
+
+	private User user;
+
+	@BeforeEach
+	void setUp() {
+		// scored before, active yesterday, so today's first post extends the streak
+		user = User.builder()
+				.id("user123")
+				.username("testuser")
+				.postsCreated(3)
+				.totalScore(20)
+				.currentStreak(2)
+				.longestStreak(2)
+				.lastActivityDate(LocalDateTime.now().minusDays(1).truncatedTo(ChronoUnit.DAYS))
+				.scoredAt(LocalDateTime.now().minusDays(1))
+				.build();
+		when(scoreLedgerService.record(any(ScoreEvent.class))).thenReturn(true);
+	}
+
+	@Test
+	@DisplayName("Should add the streak bonus to the leaderboard when its own update extended the streak")
+	void testPostCreated_WonStreakUpdate_ShouldCountBonus() {
+		// arrange - the $inc, then the guarded streak update matches
+		User afterPost = copy(user, 4, 25, user.getLastActivityDate(), 2);
+		User afterStreak = copy(user, 4, 28, LocalDateTime.now().truncatedTo(ChronoUnit.DAYS), 3);
+		when(mongoTemplate.findAndModify(any(Query.class), any(UpdateDefinition.class), any(FindAndModifyOptions.class), eq(User.class)))
+				.thenReturn(afterPost)
+				.thenReturn(afterStreak);
+
+		// act
+		gamificationService.updateUserStatsOnPostCreated(user);
+
+		// assert
+		verify(leaderboardService).recordScoreDelta("user123", 5 + 3);
+		assertEquals(3, user.getCurrentStreak());
+		assertEquals(28, user.getTotalScore());
+	}
+
+	@Test
+	@DisplayName("Should not add the streak bonus when a concurrent event extended the streak first")
+	void testPostCreated_LostStreakUpdate_ShouldNotCountBonus() {
+		// arrange - the guarded update misses, the re-read shows the other event's streak of today
+		User afterPost = copy(user, 4, 25, user.getLastActivityDate(), 2);
+		User afterOther = copy(user, 5, 33, LocalDateTime.now().truncatedTo(ChronoUnit.DAYS), 3);
+		when(mongoTemplate.findAndModify(any(Query.class), any(UpdateDefinition.class), any(FindAndModifyOptions.class), eq(User.class)))
+				.thenReturn(afterPost)
+				.thenReturn(null);
+		when(mongoTemplate.findById("user123", User.class)).thenReturn(afterOther);
+
+		// act
+		gamificationService.updateUserStatsOnPostCreated(user);
+
+		// assert - mongo got the +3 once, from the other event
+		verify(leaderboardService).recordScoreDelta("user123", 5);
+		assertEquals(3, user.getCurrentStreak());
+	}
+
+	@Test
+	@DisplayName("Should move counters and score with a single $inc and no full-document save")
+	void testPostCreated_ShouldIncrementAtomically() {
+		// arrange - same day, no streak update
+		user.setLastActivityDate(LocalDateTime.now().truncatedTo(ChronoUnit.DAYS));
+		when(mongoTemplate.findAndModify(any(Query.class), any(UpdateDefinition.class), any(FindAndModifyOptions.class), eq(User.class)))
+				.thenReturn(copy(user, 4, 25, user.getLastActivityDate(), 2));
+
+		// act
+		gamificationService.updateUserStatsOnPostCreated(user);
+
+		// assert
+		ArgumentCaptor<UpdateDefinition> update = ArgumentCaptor.forClass(UpdateDefinition.class);
+		verify(mongoTemplate).findAndModify(any(Query.class), update.capture(), any(FindAndModifyOptions.class), eq(User.class));
+		Document increments = ((Update) update.getValue()).getUpdateObject().get("$inc", Document.class);
+		assertEquals(1, increments.get("postsCreated"));
+		assertEquals(5, increments.get("totalScore"));
+		verify(userRepository, never()).save(any());
+		verify(userCacheService).evict("user123");
+		verify(leaderboardService).recordScoreDelta("user123", 5);
+	}
+
+	private static User copy(User user, int postsCreated, int totalScore, LocalDateTime lastActivityDate, int streak) {
+		return user.toBuilder()
+				.postsCreated(postsCreated)
+				.totalScore(totalScore)
+				.lastActivityDate(lastActivityDate)
+				.currentStreak(streak)
+				.longestStreak(Math.max(streak, user.getLongestStreak()))
+				.build();
+	}
+}
@@ -0,0 +1,127 @@
+package ch.wiss.forum.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import ch.wiss.forum.model.FileEntity;
+import ch.wiss.forum.model.FileVariant;
+import ch.wiss.forum.repository.FileVariantRepository;
+
+@ExtendWith(MockitoExtension.class)
+class ImageVariantServiceTest {
+
+	@Mock
+	private FileStorageService fileStorageService;
+
+	@Mock
+	private FileVariantRepository fileVariantRepository;
+
+	@Mock
+	private BlobStore blobStore;
+
+	private ImageVariantService imageVariantService;
+
+	// holds the decodes of a test until it lets them go
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	@BeforeEach
+	void setUp() {
+		// one worker, one queued task, a short wait for a size that doesn't exist yet
+		imageVariantService = new ImageVariantService(fileStorageService, fileVariantRepository, blobStore,
+				List.of(48, 96), 40_000_000, 1, 1, Duration.ofMillis(500), Duration.ofMinutes(10));
+	}
+
+	@AfterEach
+	void tearDown() {
+		release.countDown();
+		imageVariantService.shutdown();
+	}
+
+	@Test
+	@DisplayName("Should decode on the variant pool and serve the original when the wait runs out")
+	void testGetVariant_SlowDecode_ShouldServeOriginal() throws Exception {
+		// arrange
+		FileEntity file = image("file1");
+		CountDownLatch started = new CountDownLatch(1);
+		AtomicReference<String> decodingThread = new AtomicReference<>();
+		when(fileStorageService.loadContent(file)).thenAnswer(invocation -> {
+			decodingThread.set(Thread.currentThread().getName());
+			started.countDown();
+			release.await();
+			throw new IllegalStateException("content gone");
+		});
+
+		// act
+		Optional<FileVariant> variant = imageVariantService.getVariant(file, 48);
+
+		// assert
+		assertTrue(variant.isEmpty());
+		assertTrue(started.await(1, TimeUnit.SECONDS));
+		assertTrue(decodingThread.get().startsWith("image-variants"), "never decoded on the request thread");
+	}
+
+	@Test
+	@DisplayName("Should serve the original without queueing when the variant pool is full")
+	void testGetVariant_PoolFull_ShouldNotQueue() throws Exception {
+		// arrange - file1 occupies the worker, file2 the queue
+		FileEntity busy = image("file1");
+		FileEntity queued = image("file2");
+		FileEntity rejected = image("file3");
+		when(fileStorageService.loadContent(any(FileEntity.class))).thenAnswer(invocation -> {
+			release.await();
+			throw new IllegalStateException("content gone");
+		});
+		imageVariantService.getVariant(busy, 48);
+		imageVariantService.getVariant(queued, 48);
+
+		// act
+		Optional<FileVariant> variant = imageVariantService.getVariant(rejected, 48);
+
+		// assert - once the pool drains, only the accepted generations have run
+		assertTrue(variant.isEmpty());
+		release.countDown();
+		imageVariantService.shutdown();
+		verify(fileStorageService, timeout(1000)).loadContent(queued);
+		verify(fileStorageService, never()).loadContent(rejected);
+	}
+
+	@Test
+	@DisplayName("Should not decode an image again after its generation failed")
+	void testGetVariant_FailedBefore_ShouldServeOriginal() {
+		// arrange
+		FileEntity file = image("file1");
+		when(fileStorageService.loadContent(file)).thenThrow(new IllegalStateException("content gone"));
+
+		// act
+		Optional<FileVariant> first = imageVariantService.getVariant(file, 48);
+		Optional<FileVariant> second = imageVariantService.getVariant(file, 96);
+
+		// assert
+		assertTrue(first.isEmpty());
+		assertTrue(second.isEmpty());
+		verify(fileStorageService, times(1)).loadContent(file);
+	}
+
+	private static FileEntity image(String id) {
+		FileEntity file = new FileEntity();
+		file.setId(id);
+		file.setContentType("image/png");
+		return file;
+	}
+}
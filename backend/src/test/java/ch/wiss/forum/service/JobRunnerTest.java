@@ -0,0 +1,105 @@
+package ch.wiss.forum.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import com.mongodb.client.result.UpdateResult;
+
+import ch.wiss.forum.model.JobLock;
+import ch.wiss.forum.model.JobRun;
+import ch.wiss.forum.repository.JobRunRepository;
+
+@ExtendWith(MockitoExtension.class)
+class JobRunnerTest {
+
+	private static final Duration LOCK_DURATION = Duration.ofMinutes(10);
+
+	@Mock
+	private MongoTemplate mongoTemplate;
+
+	@Mock
+	private JobRunRepository jobRunRepository;
+
+	@InjectMocks
+	private JobRunner jobRunner;
+
+	@BeforeEach
+	void setUp() {
+		lenient().when(jobRunRepository.save(any(JobRun.class))).thenAnswer(invocation -> invocation.getArgument(0));
+	}
+
+	@Test
+	@DisplayName("Should skip a second run of a job on the same node while the first holds the lock")
+	void testRunExclusively_SecondRunOnSameNode_ShouldSkip() {
+		// arrange - the held lock no longer matches the acquire query, so the upsert collides on the id
+		when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(JobLock.class)))
+				.thenReturn(new JobLock())
+				.thenThrow(new DuplicateKeyException("E11000 duplicate key error"));
+		List<Optional<JobRun>> nested = new ArrayList<>();
+
+		// act
+		Optional<JobRun> first = jobRunner.runExclusively("file-gc", LOCK_DURATION, run -> {
+			nested.add(jobRunner.runExclusively("file-gc", LOCK_DURATION, inner -> 1));
+			return 0;
+		});
+
+		// assert
+		assertEquals(JobRun.Status.SUCCEEDED, first.orElseThrow().getStatus());
+		assertTrue(nested.get(0).isEmpty());
+		ArgumentCaptor<Query> acquire = ArgumentCaptor.forClass(Query.class);
+		verify(mongoTemplate, times(2)).findAndModify(acquire.capture(), any(Update.class), any(FindAndModifyOptions.class), eq(JobLock.class));
+		assertEquals(Set.of("_id", "lockedUntil"), acquire.getValue().getQueryObject().keySet(), "the owner never re-enters a held lock");
+		// only the first run releases, and only its own lock
+		ArgumentCaptor<Query> release = ArgumentCaptor.forClass(Query.class);
+		verify(mongoTemplate).remove(release.capture(), eq(JobLock.class));
+		assertEquals(first.get().getLockToken(), release.getValue().getQueryObject().get("owner"));
+	}
+
+	@Test
+	@DisplayName("Should renew and release the lock with the token of the run holding it")
+	void testRenewLock_ShouldMatchTheRunsToken() {
+		// arrange
+		when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(JobLock.class)))
+				.thenReturn(new JobLock());
+		when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(JobLock.class)))
+				.thenReturn(UpdateResult.acknowledged(1, 1L, null));
+
+		// act
+		JobRun first = jobRunner.runExclusively("file-gc", LOCK_DURATION, run -> jobRunner.renewLock(run, LOCK_DURATION) ? 1 : 0).orElseThrow();
+		JobRun second = jobRunner.runExclusively("file-gc", LOCK_DURATION, run -> 0).orElseThrow();
+
+		// assert
+		assertEquals(1, first.getAffected());
+		assertNotEquals(first.getLockToken(), second.getLockToken(), "every run gets a token of its own");
+		ArgumentCaptor<Query> renew = ArgumentCaptor.forClass(Query.class);
+		verify(mongoTemplate).updateFirst(renew.capture(), any(Update.class), eq(JobLock.class));
+		Document renewed = renew.getValue().getQueryObject();
+		assertEquals("file-gc", renewed.get("_id"));
+		assertEquals(first.getLockToken(), renewed.get("owner"));
+		ArgumentCaptor<Update> acquire = ArgumentCaptor.forClass(Update.class);
+		verify(mongoTemplate, times(2)).findAndModify(any(Query.class), acquire.capture(), any(FindAndModifyOptions.class), eq(JobLock.class));
+		assertEquals(first.getLockToken(), acquire.getAllValues().get(0).getUpdateObject().get("$set", Document.class).get("owner"));
+	}
+}
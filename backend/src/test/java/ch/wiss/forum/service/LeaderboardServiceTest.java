@@ -0,0 +1,185 @@
+package ch.wiss.forum.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+
+import ch.wiss.forum.model.Role;
+import ch.wiss.forum.model.ScoreBucket;
+import ch.wiss.forum.model.User;
+import ch.wiss.forum.repository.ScoreBucketRepository;
+import ch.wiss.forum.repository.UserRepository;
+import ch.wiss.forum.service.LeaderboardService.Window;
+
+@ExtendWith(MockitoExtension.class)
+class LeaderboardServiceTest {
+
+	@Mock
+	private ScoreBucketRepository scoreBucketRepository;
+
+	@Mock
+	private UserRepository userRepository;
+
+	@Mock
+	private MongoTemplate mongoTemplate;
+
+	@InjectMocks
+	private LeaderboardService leaderboardService;
+
+	private final LocalDate today = LocalDate.now();
+
+	@BeforeEach
+	void setUp() {
+		lenient().when(userRepository.findAllById(any())).thenReturn(List.of(user("alice"), user("bob")));
+	}
+
+	@Test
+	@DisplayName("Should rank recorded deltas in both windows")
+	void testRecordScoreDelta_ShouldRankUsersByWindowTotal() {
+		// act
+		leaderboardService.recordScoreDelta("alice", 10);
+		leaderboardService.recordScoreDelta("bob", 15);
+		leaderboardService.recordScoreDelta("alice", 3);
+
+		// assert
+		List<Map<String, Object>> weekly = leaderboardService.getWindowLeaderboard(Window.WEEKLY);
+		assertEquals(List.of("bob", "alice"), usernames(weekly));
+		assertEquals(15, weekly.get(0).get("score"));
+		assertEquals(13, weekly.get(1).get("score"));
+		assertEquals(1, weekly.get(0).get("rank"));
+		assertEquals(usernames(weekly), usernames(leaderboardService.getWindowLeaderboard(Window.MONTHLY)));
+
+		// every delta goes to the day bucket first
+		verify(mongoTemplate, times(3)).upsert(any(Query.class), any(UpdateDefinition.class), eq(ScoreBucket.class));
+	}
+
+	@Test
+	@DisplayName("Should only count a day in the windows that still cover it")
+	void testRecordScoreDelta_OlderDay_ShouldOnlyCountInMonthly() {
+		// act
+		leaderboardService.recordScoreDelta("alice", 20, today.minusDays(10));
+		leaderboardService.recordScoreDelta("bob", 5, today);
+		leaderboardService.recordScoreDelta("bob", 50, today.minusDays(40));
+
+		// assert - 10 days ago is outside the week, 40 days ago outside both windows
+		assertEquals(List.of("bob"), usernames(leaderboardService.getWindowLeaderboard(Window.WEEKLY)));
+
+		List<Map<String, Object>> monthly = leaderboardService.getWindowLeaderboard(Window.MONTHLY);
+		assertEquals(List.of("alice", "bob"), usernames(monthly));
+		assertEquals(5, monthly.get(1).get("score"));
+	}
+
+	@Test
+	@DisplayName("Should leave users whose points were taken back out of the ranking")
+	void testRecordScoreDelta_NetZeroOrNegative_ShouldNotRank() {
+		// act
+		leaderboardService.recordScoreDelta("alice", 5);
+		leaderboardService.recordScoreDelta("alice", -5);
+		leaderboardService.recordScoreDelta("bob", -3);
+
+		// assert
+		assertTrue(leaderboardService.getWindowLeaderboard(Window.WEEKLY).isEmpty());
+	}
+
+	@Test
+	@DisplayName("Should rebuild both windows from the stored buckets")
+	void testRebuildWindows_ShouldReplaceTotalsWithBuckets() {
+		// arrange - a local delta the buckets of all nodes supersede
+		leaderboardService.recordScoreDelta("bob", 100);
+		when(scoreBucketRepository.streamByDayGreaterThanEqual(today.minusDays(29))).thenReturn(Stream.of(
+				bucket("alice", today, 4),
+				bucket("alice", today.minusDays(20), 30),
+				bucket("bob", today.minusDays(2), 7)));
+
+		// act
+		leaderboardService.rebuildWindows();
+
+		// assert
+		List<Map<String, Object>> weekly = leaderboardService.getWindowLeaderboard(Window.WEEKLY);
+		assertEquals(List.of("bob", "alice"), usernames(weekly));
+		assertEquals(7, weekly.get(0).get("score"));
+		assertEquals(4, weekly.get(1).get("score"));
+
+		List<Map<String, Object>> monthly = leaderboardService.getWindowLeaderboard(Window.MONTHLY);
+		assertEquals(List.of("alice", "bob"), usernames(monthly));
+		assertEquals(34, monthly.get(0).get("score"));
+	}
+
+	@Test
+	@DisplayName("Should record during a rebuild and count the delta exactly once")
+	void testRecordScoreDelta_DuringRebuild_ShouldRereadRecordedUsers() throws Exception {
+		// arrange - the rebuild blocks while it reads the buckets, its stream misses the delta
+		CountDownLatch reading = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		when(scoreBucketRepository.streamByDayGreaterThanEqual(any())).thenAnswer(invocation -> {
+			reading.countDown();
+			release.await(5, TimeUnit.SECONDS);
+			return Stream.of(bucket("alice", today, 5), bucket("bob", today, 2));
+		});
+		when(scoreBucketRepository.findByUserIdInAndDayGreaterThanEqual(Set.of("alice"), today.minusDays(29)))
+				.thenReturn(List.of(bucket("alice", today, 8)));
+
+		Thread rebuild = new Thread(leaderboardService::rebuildWindows);
+		rebuild.start();
+		assertTrue(reading.await(5, TimeUnit.SECONDS));
+
+		// act - the recording doesn't wait for the read
+		leaderboardService.recordScoreDelta("alice", 3);
+
+		// assert - the swap takes alice's buckets as they are now
+		verify(mongoTemplate).upsert(any(Query.class), any(UpdateDefinition.class), eq(ScoreBucket.class));
+		release.countDown();
+		rebuild.join(5000);
+
+		List<Map<String, Object>> weekly = leaderboardService.getWindowLeaderboard(Window.WEEKLY);
+		assertEquals(List.of("alice", "bob"), usernames(weekly));
+		assertEquals(8, weekly.get(0).get("score"), "the delta is neither lost nor counted twice");
+		assertEquals(2, weekly.get(1).get("score"));
+	}
+
+	@Test
+	@DisplayName("Should not read buckets again when nobody recorded during a rebuild")
+	void testRebuildWindows_NoRecordings_ShouldNotReread() {
+		// arrange
+		when(scoreBucketRepository.streamByDayGreaterThanEqual(any())).thenReturn(Stream.of(bucket("alice", today, 5)));
+
+		// act
+		leaderboardService.rebuildWindows();
+		leaderboardService.recordScoreDelta("alice", 1);
+
+		// assert - a recording after the swap goes to the new windows
+		verify(scoreBucketRepository, never()).findByUserIdInAndDayGreaterThanEqual(any(), any());
+		assertEquals(6, leaderboardService.getWindowLeaderboard(Window.WEEKLY).get(0).get("score"));
+	}
+
+	private static User user(String id) {
+		return User.builder().id(id).username(id).displayName(id).role(Role.STUDENT).build();
+	}
+
+	private static ScoreBucket bucket(String userId, LocalDate day, int points) {
+		return ScoreBucket.builder().userId(userId).day(day).points(points).build();
+	}
+
+	private static List<Object> usernames(List<Map<String, Object>> leaderboard) {
+		return leaderboard.stream().map(entry -> entry.get("username")).toList();
+	}
+}
@@ -0,0 +1,152 @@
+package ch.wiss.forum.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.MockedConstruction;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import ch.wiss.forum.payload.response.Notification;
+
+class NotificationHubTest {
+
+	private static final Pattern EVENT_ID = Pattern.compile("id:(\\d+)");
+
+	// every SseEmitter the hub creates is a mock that records what is sent to it
+	private MockedConstruction<SseEmitter> emitters;
+
+	private NotificationHub hub;
+
+	@BeforeEach
+	void setUp() {
+		emitters = mockConstruction(SseEmitter.class);
+		// no heartbeats during a test, a replay buffer of 3 and at most 2 streams per user
+		hub = new NotificationHub(Duration.ofHours(1), Duration.ofMinutes(30), 3, Duration.ofMinutes(10), 100, 10, 2);
+	}
+
+	@AfterEach
+	void tearDown() {
+		emitters.close();
+	}
+
+	@Test
+	@DisplayName("Should deliver published notifications to an open stream in order")
+	void testPublish_OpenStream_ShouldDeliverInOrder() throws Exception {
+		// arrange
+		hub.subscribe("user123", null);
+		SseEmitter stream = emitters.constructed().get(0);
+
+		// act
+		hub.publish("user123", notification("post1"));
+		hub.publish("user123", notification("post2"));
+		hub.publish("other", notification("post3"));
+
+		// assert
+		List<SseEmitter.SseEventBuilder> events = sent(stream, 2);
+		assertEquals(List.of("post1", "post2"), postIds(events));
+		assertTrue(ids(events).get(0) < ids(events).get(1), "event ids grow");
+	}
+
+	@Test
+	@DisplayName("Should replay only what was published after the Last-Event-ID")
+	void testSubscribe_WithLastEventId_ShouldReplayNewerNotifications() throws Exception {
+		// arrange - a first connection sees three notifications, then drops
+		hub.subscribe("user123", null);
+		hub.publish("user123", notification("post1"));
+		hub.publish("user123", notification("post2"));
+		hub.publish("user123", notification("post3"));
+		List<Long> ids = ids(sent(emitters.constructed().get(0), 3));
+
+		// act - the client reconnects with the id of the first one
+		hub.subscribe("user123", Long.toString(ids.get(0)));
+
+		// assert
+		List<SseEmitter.SseEventBuilder> replayed = sent(emitters.constructed().get(1), 2);
+		assertEquals(List.of("post2", "post3"), postIds(replayed));
+		assertEquals(ids.subList(1, 3), ids(replayed), "replayed events keep their ids");
+		assertEquals(2L, hub.getStats().get("replayed"));
+	}
+
+	@Test
+	@DisplayName("Should replay at most the buffered notifications and nothing without a valid id")
+	void testSubscribe_ReplayLimits_ShouldRespectBufferAndId() throws Exception {
+		// arrange - one more than the replay buffer holds
+		for (int i = 1; i <= 4; i++) {
+			hub.publish("user123", notification("post" + i));
+		}
+
+		// act
+		hub.subscribe("user123", "0");
+		hub.subscribe("user123", "not-a-number");
+
+		// assert - the oldest was dropped from the buffer, an unreadable id starts fresh
+		assertEquals(List.of("post2", "post3", "post4"), postIds(sent(emitters.constructed().get(0), 3)));
+		verify(emitters.constructed().get(1), after(200).never()).send(any(SseEmitter.SseEventBuilder.class));
+	}
+
+	@Test
+	@DisplayName("Should close the oldest stream when a user opens one too many")
+	void testSubscribe_OverStreamLimit_ShouldCloseOldest() {
+		// act
+		hub.subscribe("user123", null);
+		hub.subscribe("user123", null);
+		hub.subscribe("user123", null);
+
+		// assert
+		List<SseEmitter> streams = emitters.constructed();
+		verify(streams.get(0)).complete();
+		verify(streams.get(1), never()).complete();
+		verify(streams.get(2), never()).complete();
+		assertEquals(2, hub.getStats().get("streams"));
+	}
+
+	private static Notification notification(String postId) {
+		return new Notification(Notification.Type.POST_LIKED, "topic123", "Test Topic", postId, "bob", LocalDateTime.now());
+	}
+
+	// waits for the stream's virtual thread to send the events
+	private static List<SseEmitter.SseEventBuilder> sent(SseEmitter emitter, int count) throws Exception {
+		ArgumentCaptor<SseEmitter.SseEventBuilder> events = ArgumentCaptor.forClass(SseEmitter.SseEventBuilder.class);
+		verify(emitter, timeout(2000).times(count)).send(events.capture());
+		return events.getAllValues();
+	}
+
+	private static List<String> postIds(List<SseEmitter.SseEventBuilder> events) {
+		List<String> postIds = new ArrayList<>();
+		for (SseEmitter.SseEventBuilder event : events) {
+			for (ResponseBodyEmitter.DataWithMediaType part : event.build()) {
+				if (part.getData() instanceof Notification notification) {
+					postIds.add(notification.postId());
+				}
+			}
+		}
+		return postIds;
+	}
+
+	private static List<Long> ids(List<SseEmitter.SseEventBuilder> events) {
+		List<Long> ids = new ArrayList<>();
+		for (SseEmitter.SseEventBuilder event : events) {
+			for (ResponseBodyEmitter.DataWithMediaType part : event.build()) {
+				Matcher matcher = EVENT_ID.matcher(String.valueOf(part.getData()));
+				if (matcher.find()) {
+					ids.add(Long.parseLong(matcher.group(1)));
+				}
+			}
+		}
+		return ids;
+	}
+}
@@ -0,0 +1,194 @@
+package ch.wiss.forum.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import ch.wiss.forum.config.CacheConfig;
+import ch.wiss.forum.model.Role;
+import ch.wiss.forum.model.User;
+import ch.wiss.forum.repository.UserRepository;
+
+@ExtendWith(MockitoExtension.class)
+class UserCacheServiceTest {
+
+	@Mock
+	private UserRepository userRepository;
+
+	@Mock
+	private ObjectProvider<StringRedisTemplate> redisTemplate;
+
+	@Mock
+	private ObjectProvider<CacheManager> cacheManager;
+
+	private UserCacheService userCacheService;
+
+	private User alice;
+
+	@BeforeEach
+	void setUp() {
+		userCacheService = new UserCacheService(userRepository, redisTemplate, cacheManager, 100, Duration.ofMinutes(10), "none");
+		alice = User.builder()
+				.id("user123")
+				.username("alice")
+				.email("alice@wiss-edu.ch")
+				.role(Role.STUDENT)
+				.totalScore(10)
+				.build();
+	}
+
+	@Test
+	@DisplayName("Should load a user once and serve every key from the cached entry")
+	void testFind_AfterLoad_ShouldHitCacheForAllKeys() {
+		// arrange
+		when(userRepository.findById("user123")).thenReturn(Optional.of(alice));
+
+		// act
+		userCacheService.findById("user123");
+		Optional<User> byId = userCacheService.findById("user123");
+		Optional<User> byUsername = userCacheService.findByUsername("alice");
+		Optional<User> byEmail = userCacheService.findByEmail("alice@wiss-edu.ch");
+
+		// assert - one load, the username and email point at the same entry
+		assertEquals("alice", byId.orElseThrow().getUsername());
+		assertEquals("user123", byUsername.orElseThrow().getId());
+		assertEquals("user123", byEmail.orElseThrow().getId());
+		verify(userRepository, times(1)).findById("user123");
+		verifyNoMoreInteractions(userRepository);
+	}
+
+	@Test
+	@DisplayName("Should hand out copies that do not change the cached entry")
+	void testFindById_MutatedResult_ShouldNotChangeCache() {
+		// arrange
+		when(userRepository.findById("user123")).thenReturn(Optional.of(alice));
+		userCacheService.findById("user123").orElseThrow().setTotalScore(999);
+
+		// act
+		User cached = userCacheService.findById("user123").orElseThrow();
+
+		// assert
+		assertEquals(10, cached.getTotalScore());
+	}
+
+	@Test
+	@DisplayName("Should not cache a user loaded while an invalidation happened")
+	void testFindById_EvictedDuringLoad_ShouldNotCacheStaleUser() {
+		// arrange - the user is written (and evicted) between the read and the cache put
+		when(userRepository.findById("user123")).thenAnswer(invocation -> {
+			userCacheService.evictLocal("user123");
+			return Optional.of(alice);
+		}).thenReturn(Optional.of(alice.toBuilder().totalScore(20).build()));
+
+		// act
+		User stale = userCacheService.findById("user123").orElseThrow();
+		User fresh = userCacheService.findById("user123").orElseThrow();
+		User cached = userCacheService.findById("user123").orElseThrow();
+
+		// assert - the stale read is returned once but never served from the cache
+		assertEquals(10, stale.getTotalScore());
+		assertEquals(20, fresh.getTotalScore());
+		assertEquals(20, cached.getTotalScore());
+		verify(userRepository, times(2)).findById("user123");
+	}
+
+	@Test
+	@DisplayName("Should still cache a user loaded while another user was invalidated")
+	void testFindById_OtherUserEvictedDuringLoad_ShouldCache() {
+		// arrange
+		when(userRepository.findById("user123")).thenAnswer(invocation -> {
+			userCacheService.evictLocal("user456");
+			return Optional.of(alice);
+		});
+
+		// act
+		userCacheService.findById("user123");
+		userCacheService.findById("user123");
+
+		// assert
+		verify(userRepository, times(1)).findById("user123");
+	}
+
+	@Test
+	@DisplayName("Should only clear the user summaries when a field they show changed")
+	void testEvict_SummariesChanged_ShouldClearSummaries() {
+		// arrange
+		CacheManager manager = mock(CacheManager.class);
+		Cache summaries = mock(Cache.class);
+		when(cacheManager.getIfAvailable()).thenReturn(manager);
+		when(manager.getCache(CacheConfig.USER_SUMMARIES)).thenReturn(summaries);
+
+		// act
+		userCacheService.evict("user123");
+		userCacheService.evictAll();
+		userCacheService.evict("user123", true);
+
+		// assert
+		verify(summaries, times(1)).clear();
+	}
+
+	@Test
+	@DisplayName("Should drop the username and email keys with the entry on evict")
+	void testEvict_ShouldDropSecondaryKeys() {
+		// arrange
+		when(userRepository.findByUsername("alice")).thenReturn(Optional.of(alice));
+		userCacheService.findByUsername("alice");
+
+		// act
+		userCacheService.evict("user123");
+		userCacheService.findByUsername("alice");
+
+		// assert
+		verify(userRepository, times(2)).findByUsername("alice");
+	}
+
+	@Test
+	@DisplayName("Should not resolve a renamed user by their old username")
+	void testFindByUsername_AfterRename_ShouldMissOldName() {
+		// arrange
+		User renamed = alice.toBuilder().username("alicia").build();
+		when(userRepository.findByUsername("alice")).thenReturn(Optional.of(alice), Optional.empty());
+		when(userRepository.findByUsername("alicia")).thenReturn(Optional.of(renamed));
+		userCacheService.findByUsername("alice");
+
+		// act
+		userCacheService.evict("user123");
+		Optional<User> byNewName = userCacheService.findByUsername("alicia");
+		Optional<User> byOldName = userCacheService.findByUsername("alice");
+
+		// assert
+		assertEquals("user123", byNewName.orElseThrow().getId());
+		assertTrue(byOldName.isEmpty());
+	}
+
+	@Test
+	@DisplayName("Should clear everything on a broadcast from another node and ignore malformed ones")
+	void testOnInvalidationMessage_ShouldHandleOtherNodes() {
+		// arrange
+		when(userRepository.findById("user123")).thenReturn(Optional.of(alice));
+		userCacheService.findById("user123");
+
+		// act
+		userCacheService.onInvalidationMessage("no separator");
+		userCacheService.findById("user123");
+		userCacheService.onInvalidationMessage("other-node|*");
+		userCacheService.findById("user123");
+
+		// assert - one load before, one after the broadcast
+		verify(userRepository, times(2)).findById("user123");
+		assertEquals(1L, userCacheService.getStats().get("invalidationsReceived"));
+	}
+}
@@ -0,0 +1,102 @@
+package ch.wiss.forum.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Iterator;
+import java.util.List;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import com.mongodb.client.AggregateIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+
+import ch.wiss.forum.model.User;
+
+@ExtendWith(MockitoExtension.class)
+class UserIdRangesTest {
+
+	// ObjectIds of users created in 2023, 2024 and 2025, all starting with 6
+	private static final ObjectId FIRST = new ObjectId("64a000000000000000000000");
+	private static final ObjectId SECOND = new ObjectId("65b000000000000000000000");
+	private static final ObjectId THIRD = new ObjectId("67c000000000000000000000");
+
+	@Mock
+	private MongoTemplate mongoTemplate;
+
+	@Mock
+	private MongoCollection<Document> users;
+
+	@Mock
+	private AggregateIterable<Document> buckets;
+
+	@Mock
+	private MongoCursor<Document> cursor;
+
+	@Test
+	@DisplayName("Should start a range at every bucket but the first, with open ends")
+	void testSplit_ShouldUseBucketBounds() {
+		// arrange
+		givenBuckets(bucket(FIRST), bucket(SECOND), bucket(THIRD));
+
+		// act
+		List<UserIdRanges.Range> ranges = UserIdRanges.split(mongoTemplate, 3);
+
+		// assert - the users of the last years spread over all ranges
+		assertEquals(List.of(
+				new UserIdRanges.Range(null, SECOND),
+				new UserIdRanges.Range(SECOND, THIRD),
+				new UserIdRanges.Range(THIRD, null)), ranges);
+	}
+
+	@Test
+	@DisplayName("Should fall back to one open range without a split")
+	void testSplit_SinglePartition_ShouldReturnOpenRange() {
+		// act
+		List<UserIdRanges.Range> ranges = UserIdRanges.split(mongoTemplate, 1);
+
+		// assert
+		assertEquals(List.of(new UserIdRanges.Range(null, null)), ranges);
+		verifyNoInteractions(mongoTemplate);
+	}
+
+	@Test
+	@DisplayName("Should build range criteria for ObjectIds and hex strings")
+	void testRange_ShouldBuildCriteria() {
+		// arrange
+		UserIdRanges.Range first = new UserIdRanges.Range(null, SECOND);
+		UserIdRanges.Range middle = new UserIdRanges.Range(SECOND, THIRD);
+
+		// act
+		Document open = first.onObjectIds("_id").getCriteriaObject();
+		Document bounded = middle.onHexStrings("userId").getCriteriaObject();
+
+		// assert - the open range also takes ids of another type
+		assertEquals(new Document("$not", new Document("$gte", SECOND)), open.get("_id"));
+		assertEquals(new Document("$gte", SECOND.toHexString()).append("$lt", THIRD.toHexString()), bounded.get("userId"));
+	}
+
+	private void givenBuckets(Document... results) {
+		when(mongoTemplate.getCollectionName(User.class)).thenReturn("users");
+		when(mongoTemplate.getCollection("users")).thenReturn(users);
+		when(users.aggregate(anyList())).thenReturn(buckets);
+		when(buckets.allowDiskUse(true)).thenReturn(buckets);
+		Iterator<Document> iterator = List.of(results).iterator();
+		when(buckets.iterator()).thenReturn(cursor);
+		when(cursor.hasNext()).thenAnswer(invocation -> iterator.hasNext());
+		when(cursor.next()).thenAnswer(invocation -> iterator.next());
+	}
+
+	private static Document bucket(ObjectId min) {
+		return new Document("_id", new Document("min", min).append("max", min)).append("count", 10);
+	}
+}
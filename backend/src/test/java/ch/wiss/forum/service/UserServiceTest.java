@@ -0,0 +1,127 @@
+package ch.wiss.forum.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Optional;
+import java.util.Set;
+
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import ch.wiss.forum.model.Role;
+import ch.wiss.forum.model.User;
+import ch.wiss.forum.repository.PostRepository;
+import ch.wiss.forum.repository.UserRepository;
+import ch.wiss.forum.validation.UserValidator;
+
+@ExtendWith(MockitoExtension.class)
+class UserServiceTest {
+
+	@Mock
+	private UserRepository userRepository;
+
+	@Mock
+	private PasswordEncoder passwordEncoder;
+
+	@Mock
+	private PostRepository postRepository;
+
+	@Mock
+	private UserValidator userValidator;
+
+	@Mock
+	private UserCacheService userCacheService;
+
+	@Mock
+	private AvailabilityService availabilityService;
+
+	@Mock
+	private UserDeletionService userDeletionService;
+
+	@Mock
+	private MongoTemplate mongoTemplate;
+
+	@InjectMocks
+	private UserService userService;
+
+	private User cachedUser;
+	private User storedUser;
+
+	@BeforeEach
+	void setUp() {
+		// the cached copy is minutes old, gamification has moved the stored counters since
+		cachedUser = User.builder().id("user123").username("testuser").email("test@wiss-edu.ch")
+				.role(Role.STUDENT).totalScore(10).postsCreated(1).build();
+		storedUser = cachedUser.toBuilder().totalScore(55).postsCreated(10).build();
+		lenient().when(mongoTemplate.findAndModify(any(Query.class), any(UpdateDefinition.class), any(FindAndModifyOptions.class), eq(User.class)))
+				.thenReturn(storedUser);
+	}
+
+	@Test
+	@DisplayName("Should write only the changed profile fields, never the counters of a cached copy")
+	void testUpdateUser_ShouldSetOnlyChangedFields() {
+		// arrange
+		when(userCacheService.findById("user123")).thenReturn(Optional.of(cachedUser));
+		when(userValidator.isValidDisplayName("New Name")).thenReturn(true);
+		User details = new User();
+		details.setDisplayName("New Name");
+
+		// act
+		User result = userService.updateUser("user123", details, cachedUser);
+
+		// assert
+		assertEquals(Set.of("displayName", "updatedAt"), setFields().keySet());
+		assertEquals(55, result.getTotalScore(), "the stored counters come back untouched");
+		verify(userRepository, never()).save(any());
+		verify(userCacheService).evict("user123", true);
+	}
+
+	@Test
+	@DisplayName("Should only set lastActive when recording activity of a principal")
+	void testUpdateLastActive_ShouldSetOnlyLastActive() {
+		// act
+		userService.updateLastActive(cachedUser);
+
+		// assert
+		assertEquals(Set.of("lastActive"), setFields().keySet());
+		assertNotNull(cachedUser.getLastActive());
+		verify(userRepository, never()).save(any());
+	}
+
+	@Test
+	@DisplayName("Should change the role with a targeted update")
+	void testUpdateUserRole_ShouldSetOnlyRole() {
+		// arrange
+		User admin = User.builder().id("admin1").role(Role.ADMIN).build();
+		when(userCacheService.findById("user123")).thenReturn(Optional.of(cachedUser));
+
+		// act
+		userService.updateUserRole("user123", Role.TEACHER, admin);
+
+		// assert
+		Document set = setFields();
+		assertEquals(Set.of("role", "updatedAt"), set.keySet());
+		verify(userRepository, never()).save(any());
+	}
+
+	private Document setFields() {
+		ArgumentCaptor<UpdateDefinition> update = ArgumentCaptor.forClass(UpdateDefinition.class);
+		verify(mongoTemplate).findAndModify(any(Query.class), update.capture(), any(FindAndModifyOptions.class), eq(User.class));
+		return ((Update) update.getValue()).getUpdateObject().get("$set", Document.class);
+	}
+}
@@ -0,0 +1,46 @@
+package ch.wiss.forum.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class AcceptEncodingTest {
+
+	@Test
+	@DisplayName("Should accept gzip when it is listed")
+	void testAcceptsGzip_Listed_ShouldReturnTrue() {
+		assertTrue(AcceptEncoding.acceptsGzip(List.of("gzip")));
+		assertTrue(AcceptEncoding.acceptsGzip(List.of("gzip, deflate, br")));
+		assertTrue(AcceptEncoding.acceptsGzip(List.of("br;q=1.0, GZIP;q=0.5")));
+		assertTrue(AcceptEncoding.acceptsGzip(List.of("deflate", "gzip")), "the header may be sent more than once");
+	}
+
+	@Test
+	@DisplayName("Should refuse gzip when it is missing or has q=0")
+	void testAcceptsGzip_MissingOrZeroQuality_ShouldReturnFalse() {
+		assertFalse(AcceptEncoding.acceptsGzip(null));
+		assertFalse(AcceptEncoding.acceptsGzip(List.of()));
+		assertFalse(AcceptEncoding.acceptsGzip(List.of("identity")));
+		assertFalse(AcceptEncoding.acceptsGzip(List.of("br, deflate")));
+		assertFalse(AcceptEncoding.acceptsGzip(List.of("gzip;q=0")));
+		assertFalse(AcceptEncoding.acceptsGzip(List.of("gzip; q=0.0, deflate")));
+	}
+
+	@Test
+	@DisplayName("Should follow the wildcard unless gzip is listed explicitly")
+	void testAcceptsGzip_Wildcard_ShouldApplyToUnlistedGzip() {
+		assertTrue(AcceptEncoding.acceptsGzip(List.of("*")));
+		assertFalse(AcceptEncoding.acceptsGzip(List.of("*;q=0")));
+		assertFalse(AcceptEncoding.acceptsGzip(List.of("*, gzip;q=0")), "an explicit gzip entry wins over *");
+		assertTrue(AcceptEncoding.acceptsGzip(List.of("*;q=0, gzip")));
+	}
+
+	@Test
+	@DisplayName("Should treat an unreadable quality as q=0")
+	void testAcceptsGzip_MalformedQuality_ShouldReturnFalse() {
+		assertFalse(AcceptEncoding.acceptsGzip(List.of("gzip;q=abc")));
+	}
+}
@@ -0,0 +1,77 @@
+package ch.wiss.forum.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class BloomFilterTest {
+
+	@Test
+	@DisplayName("Should report every added value as possibly contained")
+	void testMightContain_AddedValues_ShouldNeverBeMissed() {
+		// arrange
+		BloomFilter filter = BloomFilter.create(10_000, 0.01);
+
+		// act
+		for (int i = 0; i < 10_000; i++) {
+			filter.put("user" + i);
+		}
+
+		// assert - a bloom filter has no false negatives
+		for (int i = 0; i < 10_000; i++) {
+			assertTrue(filter.mightContain("user" + i), "added value user" + i + " must not be reported as absent");
+		}
+	}
+
+	@Test
+	@DisplayName("Should keep the false positive rate near the configured target")
+	void testMightContain_UnknownValues_ShouldStayNearFalsePositiveRate() {
+		// arrange
+		BloomFilter filter = BloomFilter.create(10_000, 0.01);
+		for (int i = 0; i < 10_000; i++) {
+			filter.put("user" + i);
+		}
+
+		// act
+		int falsePositives = 0;
+		int probes = 100_000;
+		for (int i = 0; i < probes; i++) {
+			if (filter.mightContain("other" + i)) {
+				falsePositives++;
+			}
+		}
+
+		// assert - twice the target leaves room for the hash, not for a broken filter
+		double rate = (double) falsePositives / probes;
+		assertTrue(rate < 0.02, "false positive rate " + rate + " should stay close to 0.01");
+	}
+
+	@Test
+	@DisplayName("Should report nothing as contained in an empty filter")
+	void testMightContain_EmptyFilter_ShouldReturnFalse() {
+		// arrange
+		BloomFilter filter = BloomFilter.create(1_000, 0.01);
+
+		// act & assert
+		assertFalse(filter.mightContain("testuser"));
+		assertFalse(filter.mightContain("test@wiss-edu.ch"));
+		assertFalse(filter.mightContain(""));
+	}
+
+	@Test
+	@DisplayName("Should size the filter from the expected insertions and rate")
+	void testCreate_ShouldSizeBitsAndHashes() {
+		// act
+		BloomFilter filter = BloomFilter.create(10_000, 0.01);
+
+		// assert - m = -n ln p / (ln 2)^2, k = m / n ln 2
+		assertEquals(95_851, filter.bitSize());
+		assertEquals(7, filter.hashCount());
+
+		// degenerate arguments still give a usable filter
+		BloomFilter tiny = BloomFilter.create(0, 0);
+		assertTrue(tiny.bitSize() >= 64);
+		assertTrue(tiny.hashCount() >= 1);
+	}
+}
@@ -0,0 +1,48 @@
+package ch.wiss.forum.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.ServerAddress;
+
+class DuplicateKeysTest {
+
+	@Test
+	@DisplayName("Should tell the index from the message, whatever the duplicate value contains")
+	void testIsOn_Message_ShouldUseIndexName() {
+		DuplicateKeyException email = new DuplicateKeyException(
+				"E11000 duplicate key error collection: forum.users index: email dup key: { email: \"username@wiss-edu.ch\" }");
+		DuplicateKeyException username = new DuplicateKeyException(
+				"E11000 duplicate key error collection: forum.users index: username_1 dup key: { username: \"email\" }");
+
+		assertFalse(DuplicateKeys.isOn(email, "username"));
+		assertTrue(DuplicateKeys.isOn(email, "email"));
+		assertTrue(DuplicateKeys.isOn(username, "username"));
+		assertFalse(DuplicateKeys.isOn(username, "email"));
+	}
+
+	@Test
+	@DisplayName("Should prefer the key pattern of a command response")
+	void testIsOn_CommandResponse_ShouldUseKeyPattern() {
+		BsonDocument response = new BsonDocument("ok", new BsonInt32(0))
+				.append("code", new BsonInt32(11000))
+				.append("keyPattern", new BsonDocument("email", new BsonInt32(1)));
+		DuplicateKeyException e = new DuplicateKeyException("duplicate key",
+				new MongoCommandException(response, new ServerAddress()));
+
+		assertTrue(DuplicateKeys.isOn(e, "email"));
+		assertFalse(DuplicateKeys.isOn(e, "username"));
+	}
+
+	@Test
+	@DisplayName("Should not guess without an index name")
+	void testIsOn_UnknownMessage_ShouldReturnFalse() {
+		assertFalse(DuplicateKeys.isOn(new DuplicateKeyException("username"), "username"));
+	}
+}
@@ -0,0 +1,71 @@
+package ch.wiss.forum.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class GzipCompressingInputStreamTest {
+
+	@Test
+	@DisplayName("Should produce gzip that decompresses to the original content")
+	void testRead_ShouldRoundTrip() throws IOException {
+		// arrange - several chunks of compressible text
+		byte[] original = "the quick brown fox jumps over the lazy dog\n".repeat(2_000).getBytes(StandardCharsets.UTF_8);
+
+		// act
+		GzipCompressingInputStream compressed = new GzipCompressingInputStream(new ByteArrayInputStream(original));
+		byte[] gzip = compressed.readAllBytes();
+
+		// assert
+		assertArrayEquals(original, gunzip(gzip));
+		assertEquals(gzip.length, compressed.getCount());
+		assertTrue(gzip.length < original.length / 10, "repeated text should compress well");
+	}
+
+	@Test
+	@DisplayName("Should round trip incompressible content read one byte at a time")
+	void testReadSingleBytes_Incompressible_ShouldRoundTrip() throws IOException {
+		// arrange
+		byte[] original = new byte[20_000];
+		new Random(42).nextBytes(original);
+		GzipCompressingInputStream compressed = new GzipCompressingInputStream(new ByteArrayInputStream(original));
+
+		// act
+		ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+		int b;
+		while ((b = compressed.read()) != -1) {
+			gzip.write(b);
+		}
+
+		// assert
+		assertArrayEquals(original, gunzip(gzip.toByteArray()));
+		assertEquals(gzip.size(), compressed.getCount());
+	}
+
+	@Test
+	@DisplayName("Should produce a valid gzip stream for empty content")
+	void testRead_Empty_ShouldRoundTrip() throws IOException {
+		// act
+		GzipCompressingInputStream compressed = new GzipCompressingInputStream(new ByteArrayInputStream(new byte[0]));
+		byte[] gzip = compressed.readAllBytes();
+
+		// assert
+		assertEquals(0, gunzip(gzip).length);
+		assertEquals(-1, compressed.read(new byte[8], 0, 8));
+		assertEquals(0, compressed.read(new byte[8], 0, 0));
+	}
+
+	private static byte[] gunzip(byte[] gzip) throws IOException {
+		try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzip))) {
+			return in.readAllBytes();
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package ch.wiss.forum.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import ch.wiss.forum.util.SizeLimitedInputStream.SizeLimitExceededException;
+
+class SizeLimitedInputStreamTest {
+
+	@Test
+	@DisplayName("Should pass content up to the limit through and count it")
+	void testRead_AtLimit_ShouldCountAllBytes() throws IOException {
+		// arrange
+		SizeLimitedInputStream limited = new SizeLimitedInputStream(new ByteArrayInputStream(new byte[100]), 100);
+
+		// act
+		byte[] content = limited.readAllBytes();
+
+		// assert
+		assertEquals(100, content.length);
+		assertEquals(100, limited.getCount());
+	}
+
+	@Test
+	@DisplayName("Should fail as soon as the limit is passed")
+	void testRead_OverLimit_ShouldThrowWithLimit() {
+		// arrange
+		SizeLimitedInputStream limited = new SizeLimitedInputStream(new ByteArrayInputStream(new byte[101]), 100);
+
+		// act & assert
+		SizeLimitExceededException e = assertThrows(SizeLimitExceededException.class, limited::readAllBytes);
+		assertEquals(100, e.getLimit());
+	}
+
+	@Test
+	@DisplayName("Should stop reading right after the limit instead of consuming the whole source")
+	void testRead_LargeSource_ShouldAbortEarly() {
+		// arrange - a source far larger than the limit
+		CountingSource source = new CountingSource(10_000_000);
+		SizeLimitedInputStream limited = new SizeLimitedInputStream(source, 1_000);
+		byte[] buffer = new byte[256];
+
+		// act
+		assertThrows(SizeLimitExceededException.class, () -> {
+			while (limited.read(buffer, 0, buffer.length) != -1) {
+				// keep reading
+			}
+		});
+
+		// assert - at most one buffer past the limit
+		assertTrue(source.served <= 1_000 + buffer.length, "read " + source.served + " bytes");
+	}
+
+	@Test
+	@DisplayName("Should count single byte reads and skips towards the limit")
+	void testReadAndSkip_ShouldCountTowardsLimit() throws IOException {
+		// arrange
+		SizeLimitedInputStream limited = new SizeLimitedInputStream(new ByteArrayInputStream(new byte[10]), 5);
+
+		// act
+		limited.read();
+		limited.skip(4);
+
+		// assert
+		assertEquals(5, limited.getCount());
+		assertThrows(SizeLimitExceededException.class, limited::read);
+		assertFalse(limited.markSupported());
+	}
+
+	// serves zeros and counts how many were asked for
+	private static class CountingSource extends InputStream {
+		private final long size;
+		private long served;
+
+		CountingSource(long size) {
+			this.size = size;
+		}
+
+		@Override
+		public int read() {
+			if (served >= size) {
+				return -1;
+			}
+			served++;
+			return 0;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) {
+			if (served >= size) {
+				return -1;
+			}
+			int read = (int) Math.min(length, size - served);
+			served += read;
+			return read;
+		}
+	}
+}
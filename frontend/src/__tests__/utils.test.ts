@@ -72,6 +72,11 @@ describe('utils', () => {
       const result = getAvatarUrl('user123', '');
       expect(result).toBe('https://api.dicebear.com/9.x/thumbs/svg?seed=user123'); // empty string is falsy, so generates URL
     });
+
+    it('requests a resized variant of uploaded avatars only', () => {
+      expect(getAvatarUrl('user123', 'http://localhost:8080/api/files/abc', 96)).toBe('http://localhost:8080/api/files/abc?size=96');
+      expect(getAvatarUrl('user123', 'https://example.com/avatar.jpg', 96)).toBe('https://example.com/avatar.jpg');
+    });
   });
 
   describe('getRoleBadgeColor', () => {
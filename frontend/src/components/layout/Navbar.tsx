@@ -122,7 +122,7 @@ export function Navbar() {
                       <div className="px-4 py-3 border-b border-border">
                         <div className="flex items-center gap-3">
                           <Avatar className="h-10 w-10 border border-primary/20">
-                            <AvatarImage src={getAvatarUrl(user?._id || 'user', user?.avatar)} alt={user?.displayName} />
+                            <AvatarImage src={getAvatarUrl(user?._id || 'user', user?.avatar, 96)} alt={user?.displayName} />
                             <AvatarFallback className="bg-primary text-primary-foreground font-medium">
                               {user?.displayName ? getInitials(user.displayName) : 'U'}
                             </AvatarFallback>
@@ -184,7 +184,7 @@ export function Navbar() {
                     >
                       <div className="relative">
                         <Avatar className="h-8 w-8 border-2 border-primary/20 shadow-sm">
-                          <AvatarImage src={getAvatarUrl(user?._id || 'user', user?.avatar)} alt={user?.displayName} />
+                          <AvatarImage src={getAvatarUrl(user?._id || 'user', user?.avatar, 96)} alt={user?.displayName} />
                           <AvatarFallback className="bg-gradient-to-br from-primary to-primary/80 text-primary-foreground font-medium text-sm">
                             {user?.displayName ? getInitials(user.displayName) : 'U'}
                           </AvatarFallback>
@@ -201,7 +201,7 @@ export function Navbar() {
                     <DropdownMenuLabel className="p-0 mb-3">
                       <div className="flex items-center gap-3 p-3 bg-gradient-to-r from-primary/5 to-primary/10 rounded-lg border border-primary/10">
                         <Avatar className="h-12 w-12 border-2 border-primary/20 shadow-sm">
-                          <AvatarImage src={getAvatarUrl(user?._id || 'user', user?.avatar)} alt={user?.displayName} />
+                          <AvatarImage src={getAvatarUrl(user?._id || 'user', user?.avatar, 96)} alt={user?.displayName} />
                           <AvatarFallback className="bg-gradient-to-br from-primary to-primary/80 text-primary-foreground font-medium">
                             {user?.displayName ? getInitials(user.displayName) : 'U'}
                           </AvatarFallback>
@@ -407,6 +407,11 @@ export const authAPI = {
     return normalizeAuthResponse(response.data);
   },
   
+  checkAvailability: async (params: { username?: string; email?: string }) => {
+    const response = await api.get('/auth/availability', { params });
+    return response.data;
+  },
+  
   forgotPassword: async (email: string) => {
     try {
       const response = await api.post('/auth/forgot-password', { email });
@@ -467,6 +472,12 @@ export const userAPI = {
     }
   },
   
+  // user, gamification stats and recent topics/posts in a single request
+  getUserProfileOverview: async (username: string) => {
+    const response = await api.get(`/users/${username}/overview`);
+    return normalizeId(response.data);
+  },
+  
   getPublicUserProfile: async (usernameOrId: string) => {
     try {
       // First try by username
@@ -517,6 +528,11 @@ export const userAPI = {
     return response.data;
   },
 
+  getDeletionJob: async (jobId: string) => {
+    const response = await api.get(`/users/deletions/${jobId}`);
+    return response.data;
+  },
+
   uploadAvatar: async (formData: FormData) => {
     const response = await api.post('/users/profile/avatar', formData, {
       headers: {
@@ -23,10 +23,14 @@ export function formatDate(date: Date) {
  * Generates a consistent avatar URL from userId using Dicebear
  * @param userId - The user ID to generate avatar for 
  * @param avatar - Optional avatar URL
+ * @param size - Optional size in pixels, uploaded avatars are then served resized
  * @returns URL to the avatar image
  */
-export function getAvatarUrl(userId: string, avatar?: string): string {
+export function getAvatarUrl(userId: string, avatar?: string, size?: number): string {
   if (avatar) {
+    if (size && avatar.includes('/api/files/') && !avatar.includes('?')) {
+      return `${avatar}?size=${size}`;
+    }
     return avatar;
   }
   return `https://api.dicebear.com/9.x/thumbs/svg?seed=${userId}`;
@@ -727,7 +727,7 @@ export function TopicDetail() {
               <div className="flex items-start gap-3">
                 <Avatar className="h-10 w-10 border border-border ring-2 ring-background">
                   <AvatarImage 
-                    src={getAvatarUrl(post.author?._id || 'unknown', post.author?.avatar)}
+                    src={getAvatarUrl(post.author?._id || 'unknown', post.author?.avatar, 96)}
                     alt={post.author?.displayName || post.author?.username || 'Unknown'} 
                     className="object-cover"
                   />
@@ -1107,7 +1107,7 @@ export function TopicDetail() {
               <div className="flex items-center gap-2">
                 <Avatar className="h-5 w-5">
                   <AvatarImage 
-                    src={getAvatarUrl(topic.author?._id || 'unknown', topic.author?.avatar)} 
+                    src={getAvatarUrl(topic.author?._id || 'unknown', topic.author?.avatar, 96)} 
                     alt={topic.author?.displayName || topic.author?.username || 'Unknown'} 
                   />
                   <AvatarFallback className="text-xs">
@@ -1144,7 +1144,7 @@ export function TopicDetail() {
           <div className="flex items-start gap-3">
             <Avatar className="h-10 w-10 border border-border">
               <AvatarImage 
-                src={getAvatarUrl(topic.author?._id || 'unknown', topic.author?.avatar)} 
+                src={getAvatarUrl(topic.author?._id || 'unknown', topic.author?.avatar, 96)} 
                 alt={topic.author?.displayName || topic.author?.username || 'Unknown'} 
               />
               <AvatarFallback>
@@ -154,7 +154,7 @@ export function Users() {
                   <div className="flex-grow">
                     <Avatar className="h-20 w-20 mx-auto mb-4 border-2 group-hover:border-primary/50 transition-colors">
                       <AvatarImage 
-                        src={getAvatarUrl(user._id, user.avatar)} 
+                        src={getAvatarUrl(user._id, user.avatar, 96)} 
                         alt={user.displayName || user.username} 
                       />
                       <AvatarFallback className="text-2xl bg-muted">